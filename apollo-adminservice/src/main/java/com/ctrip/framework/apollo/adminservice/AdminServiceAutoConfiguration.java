@@ -2,6 +2,10 @@ package com.ctrip.framework.apollo.adminservice;
 
 import com.ctrip.framework.apollo.adminservice.filter.AdminServiceAuthenticationFilter;
 import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.message.HttpReleaseMessageBroadcaster;
+import com.ctrip.framework.apollo.biz.message.ReleaseMessageBroadcaster;
+import com.netflix.discovery.EurekaClient;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -29,4 +33,9 @@ public class AdminServiceAutoConfiguration {
 
     return filterRegistrationBean;
   }
+
+  @Bean
+  public ReleaseMessageBroadcaster releaseMessageBroadcaster(ObjectProvider<EurekaClient> eurekaClientProvider) {
+    return new HttpReleaseMessageBroadcaster(bizConfig, eurekaClientProvider);
+  }
 }
@@ -1,10 +1,8 @@
 package com.ctrip.framework.apollo.adminservice.filter;
 
 import com.ctrip.framework.apollo.biz.config.BizConfig;
-import com.google.common.base.Splitter;
-import com.google.common.base.Strings;
+import com.ctrip.framework.apollo.biz.utils.AdminServiceAccessTokenUtil;
 import java.io.IOException;
-import java.util.List;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -21,15 +19,13 @@ public class AdminServiceAuthenticationFilter implements Filter {
 
   private static final Logger logger = LoggerFactory
       .getLogger(AdminServiceAuthenticationFilter.class);
-  private static final Splitter ACCESS_TOKEN_SPLITTER = Splitter.on(",").omitEmptyStrings()
-      .trimResults();
 
   private final BizConfig bizConfig;
-  private volatile String lastAccessTokens;
-  private volatile List<String> accessTokenList;
+  private final AdminServiceAccessTokenUtil accessTokenUtil;
 
   public AdminServiceAuthenticationFilter(BizConfig bizConfig) {
     this.bizConfig = bizConfig;
+    this.accessTokenUtil = new AdminServiceAccessTokenUtil(bizConfig);
   }
 
   @Override
@@ -46,7 +42,7 @@ public class AdminServiceAuthenticationFilter implements Filter {
 
       String token = request.getHeader(HttpHeaders.AUTHORIZATION);
 
-      if (!checkAccessToken(token)) {
+      if (!accessTokenUtil.checkAccessToken(token)) {
         logger.warn("Invalid access token: {} for uri: {}", token, request.getRequestURI());
         response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Unauthorized");
         return;
@@ -56,30 +52,6 @@ public class AdminServiceAuthenticationFilter implements Filter {
     chain.doFilter(req, resp);
   }
 
-  private boolean checkAccessToken(String token) {
-    String accessTokens = bizConfig.getAdminServiceAccessTokens();
-
-    // if user forget to configure access tokens, then default to pass
-    if (Strings.isNullOrEmpty(accessTokens)) {
-      return true;
-    }
-
-    // no need to check
-    if (Strings.isNullOrEmpty(token)) {
-      return false;
-    }
-
-    // update cache
-    if (!accessTokens.equals(lastAccessTokens)) {
-      synchronized (this) {
-        accessTokenList = ACCESS_TOKEN_SPLITTER.splitToList(accessTokens);
-        lastAccessTokens = accessTokens;
-      }
-    }
-
-    return accessTokenList.contains(token);
-  }
-
   @Override
   public void destroy() {
 
@@ -19,16 +19,26 @@ public class BizConfig extends RefreshableConfig {
 
   private static final int DEFAULT_ITEM_KEY_LENGTH = 128;
   private static final int DEFAULT_ITEM_VALUE_LENGTH = 20000;
-  private static final int DEFAULT_APPNAMESPACE_CACHE_REBUILD_INTERVAL = 60; //60s
+  private static final int DEFAULT_APPNAMESPACE_CACHE_REBUILD_INTERVAL = 3600; //1 hour
   private static final int DEFAULT_GRAY_RELEASE_RULE_SCAN_INTERVAL = 60; //60s
+  private static final int DEFAULT_GRAY_RELEASE_RULE_REBUILD_INTERVAL = 3600; //1 hour
   private static final int DEFAULT_APPNAMESPACE_CACHE_SCAN_INTERVAL = 1; //1s
   private static final int DEFAULT_ACCESSKEY_CACHE_SCAN_INTERVAL = 1; //1s
   private static final int DEFAULT_ACCESSKEY_CACHE_REBUILD_INTERVAL = 60; //60s
   private static final int DEFAULT_RELEASE_MESSAGE_CACHE_SCAN_INTERVAL = 1; //1s
   private static final int DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_IN_MS = 1000; //1000ms
+  private static final int DEFAULT_RELEASE_MESSAGE_FALLBACK_SCAN_INTERVAL_IN_MS = 10000; //10s
   private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH = 100;
   private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH_INTERVAL_IN_MILLI = 100;//100ms
+  private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_FAN_OUT_THREADS = 4;
   private static final int DEFAULT_LONG_POLLING_TIMEOUT = 60; //60s
+  private static final int DEFAULT_NOTIFICATION_STREAM_TIMEOUT = 600; //600s
+  private static final int DEFAULT_RELEASE_MESSAGE_BROADCAST_TIMEOUT_IN_MILLI = 1000; //1000ms
+  private static final int DEFAULT_CONFIG_SERVICE_CACHE_MAX_WEIGHT_IN_MB = 512; //512MB
+  private static final int DEFAULT_CONFIG_SERVICE_BATCH_QUERY_MAX_NAMESPACES = 100;
+  private static final int DEFAULT_INSTANCE_CONFIG_AUDIT_THREADS = 2;
+  private static final int DEFAULT_INSTANCE_CONFIG_AUDIT_BATCH = 100;
+  private static final int DEFAULT_INSTANCE_CONFIG_AUDIT_QUEUE_SIZE = 10000;
 
   private static final Gson GSON = new Gson();
 
@@ -61,12 +71,30 @@ public class BizConfig extends RefreshableConfig {
     return checkInt(interval, 1, Integer.MAX_VALUE, DEFAULT_GRAY_RELEASE_RULE_SCAN_INTERVAL);
   }
 
+  public int grayReleaseRuleRebuildInterval() {
+    int interval = getIntProperty("apollo.gray-release-rule-rebuild.interval",
+        DEFAULT_GRAY_RELEASE_RULE_REBUILD_INTERVAL);
+    return checkInt(interval, 1, Integer.MAX_VALUE, DEFAULT_GRAY_RELEASE_RULE_REBUILD_INTERVAL);
+  }
+
   public long longPollingTimeoutInMilli() {
     int timeout = getIntProperty("long.polling.timeout", DEFAULT_LONG_POLLING_TIMEOUT);
     // java client's long polling timeout is 90 seconds, so server side long polling timeout must be less than 90
     return 1000 * checkInt(timeout, 1, 90, DEFAULT_LONG_POLLING_TIMEOUT);
   }
 
+  public boolean isNotificationStreamEnabled() {
+    return getBooleanProperty("apollo.notification-stream.enabled", false);
+  }
+
+  /**
+   * @return how long a notification stream is kept before the client has to reconnect
+   */
+  public long notificationStreamTimeoutInMilli() {
+    int timeout = getIntProperty("apollo.notification-stream.timeout", DEFAULT_NOTIFICATION_STREAM_TIMEOUT);
+    return 1000L * checkInt(timeout, 60, 3600, DEFAULT_NOTIFICATION_STREAM_TIMEOUT);
+  }
+
   public int itemKeyLengthLimit() {
     int limit = getIntProperty("item.key.length.limit", DEFAULT_ITEM_KEY_LENGTH);
     return checkInt(limit, 5, Integer.MAX_VALUE, DEFAULT_ITEM_KEY_LENGTH);
@@ -148,7 +176,16 @@ public class BizConfig extends RefreshableConfig {
     return TimeUnit.SECONDS;
   }
 
+  /**
+   * @return the interval of the release message database scan, which is only a fallback when the release messages
+   * are broadcast, so it's much longer then
+   */
   public int releaseMessageScanIntervalInMilli() {
+    if (isReleaseMessageBroadcastEnabled()) {
+      int interval = getIntProperty("apollo.message-scan.fallback.interval",
+          DEFAULT_RELEASE_MESSAGE_FALLBACK_SCAN_INTERVAL_IN_MS);
+      return checkInt(interval, 100, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_FALLBACK_SCAN_INTERVAL_IN_MS);
+    }
     int interval = getIntProperty("apollo.message-scan.interval", DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_IN_MS);
     return checkInt(interval, 100, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_IN_MS);
   }
@@ -163,10 +200,87 @@ public class BizConfig extends RefreshableConfig {
     return checkInt(interval, 10, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH_INTERVAL_IN_MILLI);
   }
 
+  /**
+   * @return the max number of clients notified per second during a fan-out, defaults to
+   * releaseMessageNotificationBatch per releaseMessageNotificationBatchIntervalInMilli
+   */
+  public int releaseMessageNotificationRate() {
+    int defaultRate =
+        Math.max(1, releaseMessageNotificationBatch() * 1000 / releaseMessageNotificationBatchIntervalInMilli());
+    int rate = getIntProperty("apollo.release-message.notification.rate", defaultRate);
+    return checkInt(rate, 1, Integer.MAX_VALUE, defaultRate);
+  }
+
+  public int releaseMessageNotificationFanOutThreads() {
+    int threads = getIntProperty("apollo.release-message.notification.fan-out.threads",
+        DEFAULT_RELEASE_MESSAGE_NOTIFICATION_FAN_OUT_THREADS);
+    return checkInt(threads, 1, 64, DEFAULT_RELEASE_MESSAGE_NOTIFICATION_FAN_OUT_THREADS);
+  }
+
+  /**
+   * Incremental changes cost extra release lookups per config query, so they are off by default
+   */
+  public boolean isConfigServiceIncrementalChangeEnabled() {
+    return getBooleanProperty("config-service.incremental.change.enabled", false);
+  }
+
+  /**
+   * Whether the admin services broadcast the release messages to the config services, which are authenticated by the
+   * admin service access tokens. Note that the broadcast endpoint of the config services accepts anyone if
+   * admin-service.access.control.enabled is off, which is the default.
+   */
+  public boolean isReleaseMessageBroadcastEnabled() {
+    return getBooleanProperty("apollo.release-message.broadcast.enabled", false);
+  }
+
+  public int releaseMessageBroadcastTimeoutInMilli() {
+    int timeout = getIntProperty("apollo.release-message.broadcast.timeout", DEFAULT_RELEASE_MESSAGE_BROADCAST_TIMEOUT_IN_MILLI);
+    return checkInt(timeout, 10, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_BROADCAST_TIMEOUT_IN_MILLI);
+  }
+
   public boolean isConfigServiceCacheEnabled() {
     return getBooleanProperty("config-service.cache.enabled", false);
   }
 
+  /**
+   * @return the max estimated memory of the releases cached by config service, in MB
+   */
+  public int configServiceCacheMaxWeightInMB() {
+    int weight = getIntProperty("config-service.cache.max-weight-in-mb", DEFAULT_CONFIG_SERVICE_CACHE_MAX_WEIGHT_IN_MB);
+    return checkInt(weight, 1, Integer.MAX_VALUE, DEFAULT_CONFIG_SERVICE_CACHE_MAX_WEIGHT_IN_MB);
+  }
+
+  /**
+   * @return the max number of namespaces queried in one request, as each of them is loaded and audited like a
+   * single config query
+   */
+  public int configServiceBatchQueryMaxNamespaces() {
+    int max = getIntProperty("config-service.batch-query.max-namespaces",
+        DEFAULT_CONFIG_SERVICE_BATCH_QUERY_MAX_NAMESPACES);
+    return checkInt(max, 1, Integer.MAX_VALUE, DEFAULT_CONFIG_SERVICE_BATCH_QUERY_MAX_NAMESPACES);
+  }
+
+  public int instanceConfigAuditThreads() {
+    int threads = getIntProperty("apollo.instance-config.audit.threads", DEFAULT_INSTANCE_CONFIG_AUDIT_THREADS);
+    return checkInt(threads, 1, 64, DEFAULT_INSTANCE_CONFIG_AUDIT_THREADS);
+  }
+
+  /**
+   * @return the max number of audits written to db together
+   */
+  public int instanceConfigAuditBatch() {
+    int batch = getIntProperty("apollo.instance-config.audit.batch", DEFAULT_INSTANCE_CONFIG_AUDIT_BATCH);
+    return checkInt(batch, 1, 1000, DEFAULT_INSTANCE_CONFIG_AUDIT_BATCH);
+  }
+
+  /**
+   * @return the max number of audits waiting to be written, the audits beyond are dropped
+   */
+  public int instanceConfigAuditQueueSize() {
+    int size = getIntProperty("apollo.instance-config.audit.queue-size", DEFAULT_INSTANCE_CONFIG_AUDIT_QUEUE_SIZE);
+    return checkInt(size, 1, Integer.MAX_VALUE, DEFAULT_INSTANCE_CONFIG_AUDIT_QUEUE_SIZE);
+  }
+
   int checkInt(int value, int min, int max, int defaultValue) {
     if (value >= min && value <= max) {
       return value;
@@ -0,0 +1,88 @@
+package com.ctrip.framework.apollo.biz.grayReleaseRule;
+
+import com.ctrip.framework.apollo.common.constants.NamespaceBranchStatus;
+import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The immutable gray release rules of one namespace, with the client app id and ip mapped to the release id directly.
+ *
+ * <p>The rules are checked in the order of rule id, so the first active rule matched wins, which is the same as
+ * checking the rules one by one.</p>
+ */
+class GrayReleaseRuleIndex {
+  private final List<GrayReleaseRuleCache> rules;
+  //lower case client app id -> client ip -> the first active rule matched
+  private final Map<String, Map<String, Match>> ipMatches;
+  //lower case client app id -> the first active rule matching all ips
+  private final Map<String, Match> allIpMatches;
+
+  GrayReleaseRuleIndex(List<GrayReleaseRuleCache> rules) {
+    this.rules = ImmutableList.sortedCopyOf(Ordering.natural(), rules);
+    this.ipMatches = Maps.newHashMap();
+    this.allIpMatches = Maps.newHashMap();
+
+    for (GrayReleaseRuleCache rule : this.rules) {
+      if (rule.getBranchStatus() != NamespaceBranchStatus.ACTIVE) {
+        continue;
+      }
+      Match match = new Match(rule.getRuleId(), rule.getReleaseId());
+      for (GrayReleaseRuleItemDTO ruleItem : rule.getRuleItems()) {
+        if (ruleItem.getClientAppId() == null) {
+          continue;
+        }
+        String clientAppId = normalize(ruleItem.getClientAppId());
+        for (String clientIp : ruleItem.getClientIpList()) {
+          if (GrayReleaseRuleItemDTO.ALL_IP.equals(clientIp)) {
+            allIpMatches.putIfAbsent(clientAppId, match);
+          } else {
+            ipMatches.computeIfAbsent(clientAppId, key -> Maps.newHashMap()).putIfAbsent(clientIp, match);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the rules sorted by rule id, including the inactive ones
+   */
+  List<GrayReleaseRuleCache> getRules() {
+    return rules;
+  }
+
+  Long findReleaseId(String clientAppId, String clientIp) {
+    if (clientAppId == null) {
+      return null;
+    }
+    clientAppId = normalize(clientAppId);
+    Map<String, Match> matches = ipMatches.get(clientAppId);
+    Match match = matches == null ? null : matches.get(clientIp);
+    Match allIpMatch = allIpMatches.get(clientAppId);
+    if (match == null || (allIpMatch != null && allIpMatch.ruleId < match.ruleId)) {
+      match = allIpMatch;
+    }
+    return match == null ? null : match.releaseId;
+  }
+
+  private static String normalize(String clientAppId) {
+    //no new string is created if it's in lower case already
+    return clientAppId.toLowerCase(Locale.ROOT);
+  }
+
+  private static class Match {
+    private final long ruleId;
+    //boxed once, so that the lookups don't allocate
+    private final Long releaseId;
+
+    Match(long ruleId, long releaseId) {
+      this.ruleId = ruleId;
+      this.releaseId = releaseId;
+    }
+  }
+}
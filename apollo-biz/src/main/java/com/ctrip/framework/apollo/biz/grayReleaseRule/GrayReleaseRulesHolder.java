@@ -4,6 +4,7 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.Ordering;
@@ -30,8 +31,12 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.CollectionUtils;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -52,18 +57,20 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
   private BizConfig bizConfig;
 
   private int databaseScanInterval;
+  private int databaseRebuildInterval;
   private ScheduledExecutorService executorService;
-  //store configAppId+configCluster+configNamespace -> GrayReleaseRuleCache map
-  private Multimap<String, GrayReleaseRuleCache> grayReleaseRuleCache;
+  //store configAppId+configCluster+configNamespace -> GrayReleaseRuleIndex map, the indexes are replaced on change
+  private ConcurrentMap<String, GrayReleaseRuleIndex> grayReleaseRuleCache;
   //store clientAppId+clientNamespace+ip -> ruleId map
   private Multimap<String, Long> reversedGrayReleaseRuleCache;
-  //an auto increment version to indicate the age of rules
+  //an auto increment version to indicate the age of rules, increased on each rebuild
   private AtomicLong loadVersion;
+  //the max id of the rules scanned, all the rules are appended as new records
+  private volatile long maxIdScanned;
 
   public GrayReleaseRulesHolder() {
     loadVersion = new AtomicLong();
-    grayReleaseRuleCache = Multimaps.synchronizedSetMultimap(
-        TreeMultimap.create(String.CASE_INSENSITIVE_ORDER, Ordering.natural()));
+    grayReleaseRuleCache = new ConcurrentSkipListMap<>(String.CASE_INSENSITIVE_ORDER);
     reversedGrayReleaseRuleCache = Multimaps.synchronizedSetMultimap(
         TreeMultimap.create(String.CASE_INSENSITIVE_ORDER, Ordering.natural()));
     executorService = Executors.newScheduledThreadPool(1, ApolloThreadFactory
@@ -74,10 +81,13 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
   public void afterPropertiesSet() throws Exception {
     populateDataBaseInterval();
     //force sync load for the first time
-    periodicScanRules();
+    periodicRebuildRules();
     executorService.scheduleWithFixedDelay(this::periodicScanRules,
         getDatabaseScanIntervalSecond(), getDatabaseScanIntervalSecond(), getDatabaseScanTimeUnit()
     );
+    executorService.scheduleWithFixedDelay(this::periodicRebuildRules,
+        getDatabaseRebuildIntervalSecond(), getDatabaseRebuildIntervalSecond(), getDatabaseScanTimeUnit()
+    );
   }
 
   @Override
@@ -103,12 +113,14 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     mergeGrayReleaseRules(rules);
   }
 
+  /**
+   * Scan the rules created since last scan only, as the rules are never updated in place
+   */
   private void periodicScanRules() {
     Transaction transaction = Tracer.newTransaction("Apollo.GrayReleaseRulesScanner",
         "scanGrayReleaseRules");
     try {
-      loadVersion.incrementAndGet();
-      scanGrayReleaseRules();
+      scanGrayReleaseRules(maxIdScanned);
       transaction.setStatus(Transaction.SUCCESS);
     } catch (Throwable ex) {
       transaction.setStatus(ex);
@@ -118,24 +130,35 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     }
   }
 
+  /**
+   * Scan all the rules, so that the rules missed by the incremental scans are loaded and the rules deleted are removed
+   */
+  private void periodicRebuildRules() {
+    Transaction transaction = Tracer.newTransaction("Apollo.GrayReleaseRulesScanner",
+        "rebuildGrayReleaseRules");
+    try {
+      long version = loadVersion.incrementAndGet();
+      Set<Long> ruleIdsScanned = scanGrayReleaseRules(0);
+      if (!Thread.currentThread().isInterrupted()) {
+        removeGrayReleaseRulesNotScanned(ruleIdsScanned, version);
+      }
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.error("Rebuild gray release rule failed", ex);
+    } finally {
+      transaction.complete();
+    }
+  }
+
   public Long findReleaseIdFromGrayReleaseRule(String clientAppId, String clientIp, String
       configAppId, String configCluster, String configNamespaceName) {
     String key = assembleGrayReleaseRuleKey(configAppId, configCluster, configNamespaceName);
-    if (!grayReleaseRuleCache.containsKey(key)) {
+    GrayReleaseRuleIndex ruleIndex = grayReleaseRuleCache.get(key);
+    if (ruleIndex == null) {
       return null;
     }
-    //create a new list to avoid ConcurrentModificationException
-    List<GrayReleaseRuleCache> rules = Lists.newArrayList(grayReleaseRuleCache.get(key));
-    for (GrayReleaseRuleCache rule : rules) {
-      //check branch status
-      if (rule.getBranchStatus() != NamespaceBranchStatus.ACTIVE) {
-        continue;
-      }
-      if (rule.matches(clientAppId, clientIp)) {
-        return rule.getReleaseId();
-      }
-    }
-    return null;
+    return ruleIndex.findReleaseId(clientAppId, clientIp);
   }
 
   /**
@@ -150,28 +173,62 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
             .ALL_IP));
   }
 
-  private void scanGrayReleaseRules() {
-    long maxIdScanned = 0;
+  /**
+   * @return the ids of the rules scanned
+   */
+  private Set<Long> scanGrayReleaseRules(long startId) {
+    Set<Long> ruleIdsScanned = Sets.newHashSet();
     boolean hasMore = true;
 
     while (hasMore && !Thread.currentThread().isInterrupted()) {
       List<GrayReleaseRule> grayReleaseRules = grayReleaseRuleRepository
-          .findFirst500ByIdGreaterThanOrderByIdAsc(maxIdScanned);
+          .findFirst500ByIdGreaterThanOrderByIdAsc(startId);
       if (CollectionUtils.isEmpty(grayReleaseRules)) {
         break;
       }
       mergeGrayReleaseRules(grayReleaseRules);
+      for (GrayReleaseRule grayReleaseRule : grayReleaseRules) {
+        ruleIdsScanned.add(grayReleaseRule.getId());
+      }
       int rulesScanned = grayReleaseRules.size();
-      maxIdScanned = grayReleaseRules.get(rulesScanned - 1).getId();
+      startId = grayReleaseRules.get(rulesScanned - 1).getId();
+      maxIdScanned = Math.max(maxIdScanned, startId);
       //batch is 500
       hasMore = rulesScanned == 500;
     }
+    return ruleIdsScanned;
   }
 
-  private void mergeGrayReleaseRules(List<GrayReleaseRule> grayReleaseRules) {
+  private synchronized void removeGrayReleaseRulesNotScanned(Set<Long> ruleIdsScanned, long version) {
+    for (Map.Entry<String, GrayReleaseRuleIndex> entry : grayReleaseRuleCache.entrySet()) {
+      List<GrayReleaseRuleCache> rules = null;
+      for (GrayReleaseRuleCache rule : entry.getValue().getRules()) {
+        //the rules merged during the rebuild are kept
+        if (rule.getLoadVersion() >= version || ruleIdsScanned.contains(rule.getRuleId())) {
+          continue;
+        }
+        if (rules == null) {
+          rules = Lists.newArrayList(entry.getValue().getRules());
+        }
+        removeCache(rules, rule);
+        logger.info("Found gray release rule deleted, {}", rule.getRuleId());
+      }
+      if (rules != null) {
+        updateCache(entry.getKey(), rules);
+      }
+    }
+  }
+
+  /**
+   * The rules are merged into copies and the indexes are replaced after all merged, so the readers are not blocked.
+   * The writers, i.e. the periodic scan and the release message handling, are serialized.
+   */
+  private synchronized void mergeGrayReleaseRules(List<GrayReleaseRule> grayReleaseRules) {
     if (CollectionUtils.isEmpty(grayReleaseRules)) {
       return;
     }
+    //the copies of the rules changed
+    Map<String, List<GrayReleaseRuleCache>> changedRules = Maps.newTreeMap(String.CASE_INSENSITIVE_ORDER);
     for (GrayReleaseRule grayReleaseRule : grayReleaseRules) {
       if (grayReleaseRule.getReleaseId() == null || grayReleaseRule.getReleaseId() == 0) {
         //filter rules with no release id, i.e. never released
@@ -179,8 +236,7 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
       }
       String key = assembleGrayReleaseRuleKey(grayReleaseRule.getAppId(), grayReleaseRule
           .getClusterName(), grayReleaseRule.getNamespaceName());
-      //create a new list to avoid ConcurrentModificationException
-      List<GrayReleaseRuleCache> rules = Lists.newArrayList(grayReleaseRuleCache.get(key));
+      List<GrayReleaseRuleCache> rules = changedRules.containsKey(key) ? changedRules.get(key) : getRules(key);
       GrayReleaseRuleCache oldRule = null;
       for (GrayReleaseRuleCache ruleCache : rules) {
         if (ruleCache.getBranchName().equals(grayReleaseRule.getBranchName())) {
@@ -196,9 +252,10 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
 
       //use id comparison to avoid synchronization
       if (oldRule == null || grayReleaseRule.getId() > oldRule.getRuleId()) {
-        addCache(key, transformRuleToRuleCache(grayReleaseRule));
+        rules = changedRules.computeIfAbsent(key, k -> Lists.newArrayList(getRules(k)));
+        addCache(rules, transformRuleToRuleCache(grayReleaseRule));
         if (oldRule != null) {
-          removeCache(key, oldRule);
+          removeCache(rules, oldRule);
         }
       } else {
         if (oldRule.getBranchStatus() == NamespaceBranchStatus.ACTIVE) {
@@ -206,13 +263,31 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
           oldRule.setLoadVersion(loadVersion.get());
         } else if ((loadVersion.get() - oldRule.getLoadVersion()) > 1) {
           //remove outdated inactive branch rule after 2 update cycles
-          removeCache(key, oldRule);
+          rules = changedRules.computeIfAbsent(key, k -> Lists.newArrayList(getRules(k)));
+          removeCache(rules, oldRule);
         }
       }
     }
+
+    for (Map.Entry<String, List<GrayReleaseRuleCache>> entry : changedRules.entrySet()) {
+      updateCache(entry.getKey(), entry.getValue());
+    }
+  }
+
+  private void updateCache(String key, List<GrayReleaseRuleCache> rules) {
+    if (rules.isEmpty()) {
+      grayReleaseRuleCache.remove(key);
+    } else {
+      grayReleaseRuleCache.put(key, new GrayReleaseRuleIndex(rules));
+    }
+  }
+
+  private List<GrayReleaseRuleCache> getRules(String key) {
+    GrayReleaseRuleIndex ruleIndex = grayReleaseRuleCache.get(key);
+    return ruleIndex == null ? Collections.emptyList() : ruleIndex.getRules();
   }
 
-  private void addCache(String key, GrayReleaseRuleCache ruleCache) {
+  private void addCache(List<GrayReleaseRuleCache> rules, GrayReleaseRuleCache ruleCache) {
     if (ruleCache.getBranchStatus() == NamespaceBranchStatus.ACTIVE) {
       for (GrayReleaseRuleItemDTO ruleItemDTO : ruleCache.getRuleItems()) {
         for (String clientIp : ruleItemDTO.getClientIpList()) {
@@ -221,11 +296,11 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
         }
       }
     }
-    grayReleaseRuleCache.put(key, ruleCache);
+    rules.add(ruleCache);
   }
 
-  private void removeCache(String key, GrayReleaseRuleCache ruleCache) {
-    grayReleaseRuleCache.remove(key, ruleCache);
+  private void removeCache(List<GrayReleaseRuleCache> rules, GrayReleaseRuleCache ruleCache) {
+    rules.remove(ruleCache);
     for (GrayReleaseRuleItemDTO ruleItemDTO : ruleCache.getRuleItems()) {
       for (String clientIp : ruleItemDTO.getClientIpList()) {
         reversedGrayReleaseRuleCache.remove(assembleReversedGrayReleaseRuleKey(ruleItemDTO
@@ -253,12 +328,17 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
 
   private void populateDataBaseInterval() {
     databaseScanInterval = bizConfig.grayReleaseRuleScanInterval();
+    databaseRebuildInterval = bizConfig.grayReleaseRuleRebuildInterval();
   }
 
   private int getDatabaseScanIntervalSecond() {
     return databaseScanInterval;
   }
 
+  private int getDatabaseRebuildIntervalSecond() {
+    return databaseRebuildInterval;
+  }
+
   private TimeUnit getDatabaseScanTimeUnit() {
     return TimeUnit.SECONDS;
   }
@@ -5,20 +5,29 @@ import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
-import com.google.common.collect.Queues;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.PostConstruct;
 import java.util.List;
-import java.util.Objects;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -27,32 +36,72 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class DatabaseMessageSender implements MessageSender {
   private static final Logger logger = LoggerFactory.getLogger(DatabaseMessageSender.class);
   private static final int CLEAN_QUEUE_MAX_SIZE = 100;
-  private BlockingQueue<Long> toClean = Queues.newLinkedBlockingQueue(CLEAN_QUEUE_MAX_SIZE);
-  private final ExecutorService cleanExecutorService;
+  private static final int DEFAULT_CLEAN_BATCH_SIZE = 1000;
+  private static final long CLEAN_INTERVAL_IN_SECONDS = 5;
+  private static final long COMPACT_INTERVAL_IN_MINUTES = 60;
+  private static final Set<String> SUPPORTED_TOPICS = ImmutableSet.of(Topics.APOLLO_RELEASE_TOPIC,
+      Topics.APOLLO_APP_NAMESPACE_TOPIC);
+  //message -> the latest release message id, so that the bursts of the same message are cleaned once
+  private final ConcurrentMap<String, Long> toClean = Maps.newConcurrentMap();
+  private final ScheduledExecutorService cleanExecutorService;
   private final AtomicBoolean cleanStopped;
+  private final AtomicLong cleanedCount;
+  private final AtomicLong releaseMessageCount;
+  private int cleanBatchSize = DEFAULT_CLEAN_BATCH_SIZE;
 
   private final ReleaseMessageRepository releaseMessageRepository;
+  private final ReleaseMessageBroadcaster releaseMessageBroadcaster;
 
   public DatabaseMessageSender(final ReleaseMessageRepository releaseMessageRepository) {
-    cleanExecutorService = Executors.newSingleThreadExecutor(ApolloThreadFactory.create("DatabaseMessageSender", true));
+    this(releaseMessageRepository, (ReleaseMessageBroadcaster) null, null);
+  }
+
+  @Autowired
+  public DatabaseMessageSender(final ReleaseMessageRepository releaseMessageRepository,
+      final ObjectProvider<ReleaseMessageBroadcaster> releaseMessageBroadcasterProvider,
+      final ObjectProvider<MeterRegistry> meterRegistryProvider) {
+    this(releaseMessageRepository, releaseMessageBroadcasterProvider.getIfAvailable(),
+        meterRegistryProvider.getIfAvailable());
+  }
+
+  DatabaseMessageSender(final ReleaseMessageRepository releaseMessageRepository,
+      final ReleaseMessageBroadcaster releaseMessageBroadcaster) {
+    this(releaseMessageRepository, releaseMessageBroadcaster, null);
+  }
+
+  DatabaseMessageSender(final ReleaseMessageRepository releaseMessageRepository,
+      final ReleaseMessageBroadcaster releaseMessageBroadcaster, final MeterRegistry meterRegistry) {
+    cleanExecutorService = Executors.newSingleThreadScheduledExecutor(
+        ApolloThreadFactory.create("DatabaseMessageSender", true));
     cleanStopped = new AtomicBoolean(false);
+    cleanedCount = new AtomicLong(0);
+    releaseMessageCount = new AtomicLong(0);
     this.releaseMessageRepository = releaseMessageRepository;
+    this.releaseMessageBroadcaster = releaseMessageBroadcaster;
+    if (meterRegistry != null) {
+      FunctionCounter.builder("apollo.release-message.cleaned", cleanedCount, AtomicLong::get)
+          .register(meterRegistry);
+      Gauge.builder("apollo.release-message.count", releaseMessageCount, AtomicLong::get)
+          .register(meterRegistry);
+    }
   }
 
   @Override
   @Transactional
   public void sendMessage(String message, String channel) {
     logger.info("Sending message {} to channel {}", message, channel);
-    if (!Objects.equals(channel, Topics.APOLLO_RELEASE_TOPIC)) {
+    if (!SUPPORTED_TOPICS.contains(channel)) {
       logger.warn("Channel {} not supported by DatabaseMessageSender!", channel);
       return;
     }
 
-    Tracer.logEvent("Apollo.AdminService.ReleaseMessage", message);
+    String savedMessage = Topics.assembleMessage(channel, message);
+    Tracer.logEvent("Apollo.AdminService.ReleaseMessage", savedMessage);
     Transaction transaction = Tracer.newTransaction("Apollo.AdminService", "sendMessage");
     try {
-      ReleaseMessage newMessage = releaseMessageRepository.save(new ReleaseMessage(message));
-      toClean.offer(newMessage.getId());
+      ReleaseMessage newMessage = releaseMessageRepository.save(new ReleaseMessage(savedMessage));
+      offerToClean(savedMessage, newMessage.getId());
+      broadcastAfterCommit(newMessage.getId());
       transaction.setStatus(Transaction.SUCCESS);
     } catch (Throwable ex) {
       logger.error("Sending message to database failed", ex);
@@ -63,41 +112,125 @@ public class DatabaseMessageSender implements MessageSender {
     }
   }
 
+  /**
+   * The message could only be scanned by others after the transaction is committed
+   */
+  private void broadcastAfterCommit(long messageId) {
+    if (releaseMessageBroadcaster == null) {
+      return;
+    }
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      broadcast(messageId);
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCommit() {
+        broadcast(messageId);
+      }
+    });
+  }
+
+  private void broadcast(long messageId) {
+    try {
+      releaseMessageBroadcaster.broadcast(messageId);
+    } catch (Throwable ex) {
+      //the message will be picked up by the periodic scan anyway
+      Tracer.logError(ex);
+      logger.warn("Broadcast release message {} failed", messageId, ex);
+    }
+  }
+
+  private void offerToClean(String message, long id) {
+    //the messages left would be cleaned by the periodic compaction
+    if (toClean.size() >= CLEAN_QUEUE_MAX_SIZE && !toClean.containsKey(message)) {
+      return;
+    }
+    toClean.merge(message, id, Math::max);
+  }
+
   @PostConstruct
   private void initialize() {
-    cleanExecutorService.submit(() -> {
-      while (!cleanStopped.get() && !Thread.currentThread().isInterrupted()) {
-        try {
-          Long rm = toClean.poll(1, TimeUnit.SECONDS);
-          if (rm != null) {
-            cleanMessage(rm);
-          } else {
-            TimeUnit.SECONDS.sleep(5);
-          }
-        } catch (Throwable ex) {
-          Tracer.logError(ex);
+    cleanExecutorService.scheduleWithFixedDelay(this::cleanMessages, CLEAN_INTERVAL_IN_SECONDS,
+        CLEAN_INTERVAL_IN_SECONDS, TimeUnit.SECONDS);
+    cleanExecutorService.scheduleWithFixedDelay(this::compactMessages, COMPACT_INTERVAL_IN_MINUTES,
+        COMPACT_INTERVAL_IN_MINUTES, TimeUnit.MINUTES);
+  }
+
+  /**
+   * Clean the release messages superseded by the ones sent recently
+   */
+  void cleanMessages() {
+    try {
+      for (String message : toClean.keySet()) {
+        if (cleanStopped.get() || Thread.currentThread().isInterrupted()) {
+          return;
+        }
+        Long id = toClean.remove(message);
+        //double check in case the release message is rolled back
+        if (id == null || !releaseMessageRepository.existsById(id)) {
+          continue;
         }
+        cleanMessage(message, id);
       }
-    });
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+    }
   }
 
-  private void cleanMessage(Long id) {
-    //double check in case the release message is rolled back
-    ReleaseMessage releaseMessage = releaseMessageRepository.findById(id).orElse(null);
-    if (releaseMessage == null) {
+  /**
+   * Clean all the superseded release messages, so that only the latest one of each message is kept
+   */
+  void compactMessages() {
+    if (cleanStopped.get()) {
       return;
     }
-    boolean hasMore = true;
-    while (hasMore && !Thread.currentThread().isInterrupted()) {
-      List<ReleaseMessage> messages = releaseMessageRepository.findFirst100ByMessageAndIdLessThanOrderByIdAsc(
-          releaseMessage.getMessage(), releaseMessage.getId());
+    Transaction transaction = Tracer.newTransaction("Apollo.AdminService", "compactReleaseMessages");
+    try {
+      List<Object[]> latestReleaseMessages = releaseMessageRepository
+          .findLatestReleaseMessagesGroupByMessagesWithSuperseded();
+      long cleaned = 0;
+      for (Object[] latestReleaseMessage : latestReleaseMessages) {
+        if (cleanStopped.get() || Thread.currentThread().isInterrupted()) {
+          break;
+        }
+        cleaned += cleanMessage((String) latestReleaseMessage[0], (Long) latestReleaseMessage[1]);
+      }
+      releaseMessageCount.set(releaseMessageRepository.count());
+      logger.info("Compacted release messages, {} cleaned and {} left", cleaned, releaseMessageCount.get());
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      Tracer.logError(ex);
+    } finally {
+      transaction.complete();
+    }
+  }
 
-      releaseMessageRepository.deleteAll(messages);
-      hasMore = messages.size() == 100;
+  /**
+   * Delete the release messages of the message with id less than the given one, in batches to keep the transactions
+   * short
+   *
+   * @return the number of release messages deleted
+   */
+  private long cleanMessage(String message, long id) {
+    long cleaned = 0;
+    int deleted;
+    do {
+      deleted = releaseMessageRepository.deleteSupersededReleaseMessages(message, id, cleanBatchSize);
+      cleaned += deleted;
+    } while (deleted == cleanBatchSize && !Thread.currentThread().isInterrupted());
 
-      messages.forEach(toRemove -> Tracer.logEvent(
-          String.format("ReleaseMessage.Clean.%s", toRemove.getMessage()), String.valueOf(toRemove.getId())));
+    if (cleaned > 0) {
+      cleanedCount.addAndGet(cleaned);
+      Tracer.logEvent(String.format("ReleaseMessage.Clean.%s", message), String.valueOf(cleaned));
     }
+    return cleaned;
+  }
+
+  //only for test use
+  void setCleanBatchSize(int cleanBatchSize) {
+    this.cleanBatchSize = cleanBatchSize;
   }
 
   void stopClean() {
@@ -0,0 +1,115 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.utils.AdminServiceAccessTokenUtil;
+import com.ctrip.framework.apollo.core.ServiceNameConsts;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.collect.Queues;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.EurekaClient;
+import com.netflix.discovery.shared.Application;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.util.CollectionUtils;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Broadcast release message ids to all the config service instances registered in eureka via http.
+ *
+ * <p>Messages are dropped when the broadcast queue is full or a config service is unreachable, since
+ * config services will find them in the next database scan anyway.</p>
+ */
+public class HttpReleaseMessageBroadcaster implements ReleaseMessageBroadcaster {
+  private static final Logger logger = LoggerFactory.getLogger(HttpReleaseMessageBroadcaster.class);
+  private static final int BROADCAST_QUEUE_MAX_SIZE = 1000;
+  private static final int BROADCAST_THREAD_COUNT = 4;
+  private static final String NOTIFY_PATH = "release-messages/%d";
+
+  private final BizConfig bizConfig;
+  private final AdminServiceAccessTokenUtil accessTokenUtil;
+  private final ObjectProvider<EurekaClient> eurekaClientProvider;
+  private final ExecutorService broadcastExecutorService;
+  private final RestTemplate restTemplate;
+
+  public HttpReleaseMessageBroadcaster(final BizConfig bizConfig,
+      final ObjectProvider<EurekaClient> eurekaClientProvider) {
+    this.bizConfig = bizConfig;
+    this.accessTokenUtil = new AdminServiceAccessTokenUtil(bizConfig);
+    this.eurekaClientProvider = eurekaClientProvider;
+    this.broadcastExecutorService = new ThreadPoolExecutor(BROADCAST_THREAD_COUNT, BROADCAST_THREAD_COUNT,
+        0L, TimeUnit.MILLISECONDS, Queues.newLinkedBlockingQueue(BROADCAST_QUEUE_MAX_SIZE),
+        ApolloThreadFactory.create("HttpReleaseMessageBroadcaster", true),
+        new ThreadPoolExecutor.DiscardPolicy());
+
+    SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+    requestFactory.setConnectTimeout(bizConfig.releaseMessageBroadcastTimeoutInMilli());
+    requestFactory.setReadTimeout(bizConfig.releaseMessageBroadcastTimeoutInMilli());
+    this.restTemplate = new RestTemplate(requestFactory);
+  }
+
+  @Override
+  public void broadcast(long messageId) {
+    if (!bizConfig.isReleaseMessageBroadcastEnabled()) {
+      return;
+    }
+
+    HttpEntity<Void> request = new HttpEntity<>(assembleHeaders());
+    for (String homepageUrl : findConfigServiceHomepageUrls()) {
+      broadcastExecutorService.execute(() -> notifyConfigService(homepageUrl, messageId, request));
+    }
+  }
+
+  /**
+   * Config services authenticate the broadcasts with the admin service access tokens, the same as the ones
+   * portals use to call admin services
+   */
+  private HttpHeaders assembleHeaders() {
+    HttpHeaders headers = new HttpHeaders();
+    if (!bizConfig.isAdminServiceAccessControlEnabled()) {
+      return headers;
+    }
+    List<String> accessTokens = accessTokenUtil.getAccessTokens();
+    if (!accessTokens.isEmpty()) {
+      headers.set(HttpHeaders.AUTHORIZATION, accessTokens.get(0));
+    }
+    return headers;
+  }
+
+  private List<String> findConfigServiceHomepageUrls() {
+    EurekaClient eurekaClient = eurekaClientProvider.getIfAvailable();
+    if (eurekaClient == null) {
+      return Collections.emptyList();
+    }
+
+    Application application = eurekaClient.getApplication(ServiceNameConsts.APOLLO_CONFIGSERVICE);
+    if (application == null || CollectionUtils.isEmpty(application.getInstances())) {
+      Tracer.logEvent("Apollo.ReleaseMessageBroadcaster.NotFound", ServiceNameConsts.APOLLO_CONFIGSERVICE);
+      return Collections.emptyList();
+    }
+
+    return application.getInstances().stream().map(InstanceInfo::getHomePageUrl)
+        .collect(Collectors.toList());
+  }
+
+  private void notifyConfigService(String homepageUrl, long messageId, HttpEntity<Void> request) {
+    String url = homepageUrl.endsWith("/") ? homepageUrl : homepageUrl + "/";
+    url += String.format(NOTIFY_PATH, messageId);
+    try {
+      restTemplate.postForEntity(url, request, Void.class);
+    } catch (Throwable ex) {
+      Tracer.logEvent("Apollo.ReleaseMessageBroadcaster.Failed", url);
+      logger.debug("Broadcast release message {} to {} failed", messageId, url, ex);
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package com.ctrip.framework.apollo.biz.message;
+
+/**
+ * Broadcast the id of a newly persisted release message to the nodes running {@link ReleaseMessageScanner},
+ * so that they could scan it right away instead of waiting for the next scan interval.
+ *
+ * <p>Broadcasting is best effort, the database scan is always the source of truth.</p>
+ */
+public interface ReleaseMessageBroadcaster {
+
+  /**
+   * @param messageId the id of the release message which is committed to database
+   */
+  void broadcast(long messageId);
+}
@@ -1,9 +1,12 @@
 package com.ctrip.framework.apollo.biz.message;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,12 +21,16 @@ import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 public class ReleaseMessageScanner implements InitializingBean {
   private static final Logger logger = LoggerFactory.getLogger(ReleaseMessageScanner.class);
+  //the missing messages are given up after that many scan intervals, as they are most likely rolled back
+  private static final int MISSING_RELEASE_MESSAGE_MAX_AGE_IN_SCAN_INTERVALS = 10;
   @Autowired
   private BizConfig bizConfig;
   @Autowired
@@ -31,10 +38,16 @@ public class ReleaseMessageScanner implements InitializingBean {
   private int databaseScanInterval;
   private List<ReleaseMessageListener> listeners;
   private ScheduledExecutorService executorService;
-  private long maxIdScanned;
+  private volatile long maxIdScanned;
+  private volatile boolean started;
+  private final AtomicBoolean scanRequested;
+  //missing release message id -> the time it's found missing, only accessed in the scan thread
+  private final Map<Long, Long> missingReleaseMessages;
 
   public ReleaseMessageScanner() {
     listeners = Lists.newCopyOnWriteArrayList();
+    scanRequested = new AtomicBoolean(false);
+    missingReleaseMessages = Maps.newHashMap();
     executorService = Executors.newScheduledThreadPool(1, ApolloThreadFactory
         .create("ReleaseMessageScanner", true));
   }
@@ -43,19 +56,44 @@ public class ReleaseMessageScanner implements InitializingBean {
   public void afterPropertiesSet() throws Exception {
     databaseScanInterval = bizConfig.releaseMessageScanIntervalInMilli();
     maxIdScanned = loadLargestMessageId();
-    executorService.scheduleWithFixedDelay(() -> {
-      Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageScanner", "scanMessage");
-      try {
-        scanMessages();
-        transaction.setStatus(Transaction.SUCCESS);
-      } catch (Throwable ex) {
-        transaction.setStatus(ex);
-        logger.error("Scan and send message failed", ex);
-      } finally {
-        transaction.complete();
-      }
-    }, databaseScanInterval, databaseScanInterval, TimeUnit.MILLISECONDS);
+    started = true;
+    executorService.scheduleWithFixedDelay(() -> scanMessagesWithTransaction("scanMessage"),
+        databaseScanInterval, databaseScanInterval, TimeUnit.MILLISECONDS);
+  }
 
+  /**
+   * Notify the scanner that a new release message is committed, so it could be scanned right away
+   * instead of waiting for the next scan interval.
+   * Requests arriving while a scan is pending are coalesced into that scan.
+   *
+   * @param messageId the new release message id
+   */
+  public void notifyNewMessage(long messageId) {
+    if (!started || messageId <= maxIdScanned) {
+      return;
+    }
+    if (!scanRequested.compareAndSet(false, true)) {
+      return;
+    }
+    Tracer.logEvent("Apollo.ReleaseMessageScanner.Notified", String.valueOf(messageId));
+    executorService.submit(() -> {
+      scanRequested.set(false);
+      scanMessagesWithTransaction("scanNotifiedMessage");
+    });
+  }
+
+  private void scanMessagesWithTransaction(String transactionName) {
+    Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageScanner", transactionName);
+    try {
+      scanMissingMessages();
+      scanMessages();
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.error("Scan and send message failed", ex);
+    } finally {
+      transaction.complete();
+    }
   }
 
   /**
@@ -92,10 +130,48 @@ public class ReleaseMessageScanner implements InitializingBean {
     }
     fireMessageScanned(releaseMessages);
     int messageScanned = releaseMessages.size();
-    maxIdScanned = releaseMessages.get(messageScanned - 1).getId();
+    long newMaxIdScanned = releaseMessages.get(messageScanned - 1).getId();
+    //id gaps found, the messages might be committed later than the ones after them, e.g. sent concurrently
+    if (newMaxIdScanned - maxIdScanned > messageScanned) {
+      recordMissingReleaseMessageIds(releaseMessages);
+    }
+    maxIdScanned = newMaxIdScanned;
     return messageScanned == 500;
   }
 
+  private void recordMissingReleaseMessageIds(List<ReleaseMessage> releaseMessages) {
+    //the ids before the first message are not missing if there was no message at all when started
+    long previousId = maxIdScanned > 0 ? maxIdScanned : releaseMessages.get(0).getId();
+    long now = System.currentTimeMillis();
+    for (ReleaseMessage releaseMessage : releaseMessages) {
+      for (long missingId = previousId + 1; missingId < releaseMessage.getId(); missingId++) {
+        missingReleaseMessages.put(missingId, now);
+      }
+      previousId = releaseMessage.getId();
+    }
+  }
+
+  /**
+   * Scan the messages missing in the previous scans, as they might be committed since then
+   */
+  private void scanMissingMessages() {
+    if (missingReleaseMessages.isEmpty()) {
+      return;
+    }
+    Set<Long> missingIds = Sets.newHashSet(missingReleaseMessages.keySet());
+    List<ReleaseMessage> releaseMessages = Lists.newArrayList(releaseMessageRepository.findAllById(missingIds));
+    if (!releaseMessages.isEmpty()) {
+      logger.info("Found {} missing release messages", releaseMessages.size());
+      fireMessageScanned(releaseMessages);
+      for (ReleaseMessage releaseMessage : releaseMessages) {
+        missingReleaseMessages.remove(releaseMessage.getId());
+      }
+    }
+    long expiredBefore = System.currentTimeMillis()
+        - (long) databaseScanInterval * MISSING_RELEASE_MESSAGE_MAX_AGE_IN_SCAN_INTERVALS;
+    missingReleaseMessages.values().removeIf(missedTime -> missedTime < expiredBefore);
+  }
+
   /**
    * find largest message id as the current start point
    * @return current largest message id
@@ -111,9 +187,13 @@ public class ReleaseMessageScanner implements InitializingBean {
    */
   private void fireMessageScanned(List<ReleaseMessage> messages) {
     for (ReleaseMessage message : messages) {
+      String topic = Topics.resolveTopic(message.getMessage());
+      if (!Topics.APOLLO_RELEASE_TOPIC.equals(topic)) {
+        message = stripTopic(message);
+      }
       for (ReleaseMessageListener listener : listeners) {
         try {
-          listener.handleMessage(message, Topics.APOLLO_RELEASE_TOPIC);
+          listener.handleMessage(message, topic);
         } catch (Throwable ex) {
           Tracer.logError(ex);
           logger.error("Failed to invoke message listener {}", listener.getClass(), ex);
@@ -121,4 +201,10 @@ public class ReleaseMessageScanner implements InitializingBean {
       }
     }
   }
+
+  private ReleaseMessage stripTopic(ReleaseMessage savedMessage) {
+    ReleaseMessage message = new ReleaseMessage(Topics.resolveMessage(savedMessage.getMessage()));
+    message.setId(savedMessage.getId());
+    return message;
+  }
 }
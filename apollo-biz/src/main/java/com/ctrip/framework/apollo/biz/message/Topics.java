@@ -5,4 +5,38 @@ package com.ctrip.framework.apollo.biz.message;
  */
 public class Topics {
   public static final String APOLLO_RELEASE_TOPIC = "apollo-release";
+  /**
+   * The message is the app id whose app namespaces are created, updated or deleted
+   */
+  public static final String APOLLO_APP_NAMESPACE_TOPIC = "apollo-app-namespace";
+
+  /**
+   * The messages of the topics other than the release topic share the same table with the release messages, so they
+   * are saved with the topic as the prefix, e.g. apollo-app-namespace:someAppId. The separator never shows up in
+   * the release messages as it's not allowed in the app id, cluster name or namespace name.
+   */
+  private static final String TOPIC_SEPARATOR = ":";
+
+  public static String assembleMessage(String topic, String message) {
+    if (APOLLO_RELEASE_TOPIC.equals(topic)) {
+      return message;
+    }
+    return topic + TOPIC_SEPARATOR + message;
+  }
+
+  /**
+   * @return the topic of the saved message
+   */
+  public static String resolveTopic(String savedMessage) {
+    int index = savedMessage == null ? -1 : savedMessage.indexOf(TOPIC_SEPARATOR);
+    return index < 0 ? APOLLO_RELEASE_TOPIC : savedMessage.substring(0, index);
+  }
+
+  /**
+   * @return the message without the topic prefix
+   */
+  public static String resolveMessage(String savedMessage) {
+    int index = savedMessage == null ? -1 : savedMessage.indexOf(TOPIC_SEPARATOR);
+    return index < 0 ? savedMessage : savedMessage.substring(index + TOPIC_SEPARATOR.length());
+  }
 }
@@ -18,6 +18,9 @@ public interface InstanceConfigRepository extends PagingAndSortingRepository<Ins
   InstanceConfig findByInstanceIdAndConfigAppIdAndConfigNamespaceName(long instanceId, String
       configAppId, String configNamespaceName);
 
+  List<InstanceConfig> findByConfigAppIdAndConfigNamespaceNameAndInstanceIdIn(String configAppId,
+      String configNamespaceName, Set<Long> instanceIds);
+
   Page<InstanceConfig> findByReleaseKeyAndDataChangeLastModifiedTimeAfter(String releaseKey, Date
       validDate, Pageable pageable);
 
@@ -31,6 +34,15 @@ public interface InstanceConfigRepository extends PagingAndSortingRepository<Ins
   @Query("delete from InstanceConfig  where ConfigAppId=?1 and ConfigClusterName=?2 and ConfigNamespaceName = ?3")
   int batchDelete(String appId, String clusterName, String namespaceName);
 
+  @Modifying(clearAutomatically = true)
+  @Query("update InstanceConfig set configClusterName = ?2, releaseKey = ?3, releaseDeliveryTime = ?4, "
+      + "dataChangeLastModifiedTime = ?4 where id in ?1")
+  int batchUpdateReleaseKey(Set<Long> ids, String configClusterName, String releaseKey, Date releaseDeliveryTime);
+
+  @Modifying(clearAutomatically = true)
+  @Query("update InstanceConfig set dataChangeLastModifiedTime = ?2 where id in ?1")
+  int batchUpdateLastModifiedTime(Set<Long> ids, Date lastModifiedTime);
+
   @Query(
       value = "select b.Id from `InstanceConfig` a inner join `Instance` b on b.Id =" +
           " a.`InstanceId` where a.`ConfigAppId` = :configAppId and a.`ConfigClusterName` = " +
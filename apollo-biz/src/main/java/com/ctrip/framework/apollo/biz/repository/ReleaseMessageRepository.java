@@ -2,9 +2,11 @@ package com.ctrip.framework.apollo.biz.repository;
 
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Collection;
 import java.util.List;
@@ -19,8 +21,17 @@ public interface ReleaseMessageRepository extends PagingAndSortingRepository<Rel
 
   ReleaseMessage findTopByMessageInOrderByIdDesc(Collection<String> messages);
 
-  List<ReleaseMessage> findFirst100ByMessageAndIdLessThanOrderByIdAsc(String message, Long id);
-
   @Query("select message, max(id) as id from ReleaseMessage where message in :messages group by message")
   List<Object[]> findLatestReleaseMessagesGroupByMessages(@Param("messages") Collection<String> messages);
+
+  @Query("select message, max(id) as id from ReleaseMessage group by message")
+  List<Object[]> findLatestReleaseMessagesGroupByMessages();
+
+  @Query("select message, max(id) as id from ReleaseMessage group by message having count(id) > 1")
+  List<Object[]> findLatestReleaseMessagesGroupByMessagesWithSuperseded();
+
+  @Transactional
+  @Modifying
+  @Query(value = "delete from ReleaseMessage where Message = ?1 and Id < ?2 limit ?3", nativeQuery = true)
+  int deleteSupersededReleaseMessages(String message, long id, int limit);
 }
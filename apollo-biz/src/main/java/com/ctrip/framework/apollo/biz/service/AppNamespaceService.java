@@ -3,6 +3,8 @@ package com.ctrip.framework.apollo.biz.service;
 import com.ctrip.framework.apollo.biz.entity.Audit;
 import com.ctrip.framework.apollo.biz.entity.Cluster;
 import com.ctrip.framework.apollo.biz.entity.Namespace;
+import com.ctrip.framework.apollo.biz.message.MessageSender;
+import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.repository.AppNamespaceRepository;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.ctrip.framework.apollo.common.exception.ServiceException;
@@ -32,16 +34,19 @@ public class AppNamespaceService {
   private final NamespaceService namespaceService;
   private final ClusterService clusterService;
   private final AuditService auditService;
+  private final MessageSender messageSender;
 
   public AppNamespaceService(
       final AppNamespaceRepository appNamespaceRepository,
       final @Lazy NamespaceService namespaceService,
       final @Lazy ClusterService clusterService,
-      final AuditService auditService) {
+      final AuditService auditService,
+      final MessageSender messageSender) {
     this.appNamespaceRepository = appNamespaceRepository;
     this.namespaceService = namespaceService;
     this.clusterService = clusterService;
     this.auditService = auditService;
+    this.messageSender = messageSender;
   }
 
   public boolean isAppNamespaceNameUnique(String appId, String namespaceName) {
@@ -101,6 +106,8 @@ public class AppNamespaceService {
 
     auditService.audit(AppNamespace.class.getSimpleName(), appNs.getId(), Audit.OP.INSERT,
                        createBy);
+
+    notifyAppNamespaceChanged(appId);
   }
 
   @Transactional
@@ -118,6 +125,8 @@ public class AppNamespaceService {
     createNamespaceForAppNamespaceInAllCluster(appNamespace.getAppId(), appNamespace.getName(), createBy);
 
     auditService.audit(AppNamespace.class.getSimpleName(), appNamespace.getId(), Audit.OP.INSERT, createBy);
+
+    notifyAppNamespaceChanged(appNamespace.getAppId());
     return appNamespace;
   }
 
@@ -129,6 +138,7 @@ public class AppNamespaceService {
     auditService.audit(AppNamespace.class.getSimpleName(), managedNs.getId(), Audit.OP.UPDATE,
                        managedNs.getDataChangeLastModifiedBy());
 
+    notifyAppNamespaceChanged(managedNs.getAppId());
     return managedNs;
   }
 
@@ -156,6 +166,8 @@ public class AppNamespaceService {
   @Transactional
   public void batchDelete(String appId, String operator) {
     appNamespaceRepository.batchDeleteByAppId(appId, operator);
+
+    notifyAppNamespaceChanged(appId);
   }
 
   @Transactional
@@ -176,5 +188,12 @@ public class AppNamespaceService {
 
     // 2. delete app namespace
     appNamespaceRepository.delete(appId, namespaceName, operator);
+
+    // 3. notify config services to update the app namespace cache
+    notifyAppNamespaceChanged(appId);
+  }
+
+  private void notifyAppNamespaceChanged(String appId) {
+    messageSender.sendMessage(appId, Topics.APOLLO_APP_NAMESPACE_TOPIC);
   }
 }
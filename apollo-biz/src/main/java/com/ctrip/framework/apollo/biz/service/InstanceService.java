@@ -61,6 +61,15 @@ public class InstanceService {
             instanceId, configAppId, configNamespaceName);
   }
 
+  public List<InstanceConfig> findInstanceConfigs(String configAppId, String configNamespaceName,
+                                                  Set<Long> instanceIds) {
+    if (CollectionUtils.isEmpty(instanceIds)) {
+      return Collections.emptyList();
+    }
+    return instanceConfigRepository.findByConfigAppIdAndConfigNamespaceNameAndInstanceIdIn(configAppId,
+        configNamespaceName, instanceIds);
+  }
+
   public Page<InstanceConfig> findActiveInstanceConfigsByReleaseKey(String releaseKey, Pageable
       pageable) {
     return instanceConfigRepository.findByReleaseKeyAndDataChangeLastModifiedTimeAfter(releaseKey,
@@ -154,6 +163,33 @@ public class InstanceService {
     return instanceConfigRepository.save(instanceConfig);
   }
 
+  @Transactional
+  public List<InstanceConfig> batchCreateInstanceConfigs(List<InstanceConfig> instanceConfigs) {
+    for (InstanceConfig instanceConfig : instanceConfigs) {
+      instanceConfig.setId(0); //protection
+    }
+
+    return Lists.newArrayList(instanceConfigRepository.saveAll(instanceConfigs));
+  }
+
+  /**
+   * Update the release key of the instance configs, e.g. the instances which receive the same release
+   */
+  @Transactional
+  public int batchUpdateInstanceConfigReleaseKey(Set<Long> instanceConfigIds, String configClusterName,
+                                                 String releaseKey, Date releaseDeliveryTime) {
+    return instanceConfigRepository.batchUpdateReleaseKey(instanceConfigIds, configClusterName, releaseKey,
+        releaseDeliveryTime);
+  }
+
+  /**
+   * Refresh the last modified time of the instance configs whose release key is not changed
+   */
+  @Transactional
+  public int batchUpdateInstanceConfigLastModifiedTime(Set<Long> instanceConfigIds, Date lastModifiedTime) {
+    return instanceConfigRepository.batchUpdateLastModifiedTime(instanceConfigIds, lastModifiedTime);
+  }
+
   @Transactional
   public InstanceConfig updateInstanceConfig(InstanceConfig instanceConfig) {
     InstanceConfig existedInstanceConfig = instanceConfigRepository.findById(instanceConfig.getId()).orElse(null);
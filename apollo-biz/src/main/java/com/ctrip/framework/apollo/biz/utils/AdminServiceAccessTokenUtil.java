@@ -0,0 +1,70 @@
+package com.ctrip.framework.apollo.biz.utils;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The admin service access tokens are split once and cached until they are changed in the config
+ */
+public class AdminServiceAccessTokenUtil {
+
+  private static final Splitter ACCESS_TOKEN_SPLITTER = Splitter.on(",").omitEmptyStrings()
+      .trimResults();
+
+  private final BizConfig bizConfig;
+  private volatile AccessTokens accessTokens = new AccessTokens(null, Collections.emptyList());
+
+  public AdminServiceAccessTokenUtil(BizConfig bizConfig) {
+    this.bizConfig = bizConfig;
+  }
+
+  /**
+   * @return whether the token is one of the access tokens, or true if no access token is configured
+   */
+  public boolean checkAccessToken(String token) {
+    List<String> accessTokenList = getAccessTokens();
+
+    // if user forget to configure access tokens, then default to pass
+    if (accessTokenList.isEmpty()) {
+      return true;
+    }
+
+    // no need to check
+    if (Strings.isNullOrEmpty(token)) {
+      return false;
+    }
+
+    return accessTokenList.contains(token);
+  }
+
+  /**
+   * @return the access tokens configured, or an empty list if there is none
+   */
+  public List<String> getAccessTokens() {
+    String tokens = bizConfig.getAdminServiceAccessTokens();
+    if (Strings.isNullOrEmpty(tokens)) {
+      return Collections.emptyList();
+    }
+
+    AccessTokens current = accessTokens;
+    // update cache
+    if (!tokens.equals(current.tokens)) {
+      current = new AccessTokens(tokens, ACCESS_TOKEN_SPLITTER.splitToList(tokens));
+      accessTokens = current;
+    }
+    return current.tokenList;
+  }
+
+  private static class AccessTokens {
+    private final String tokens;
+    private final List<String> tokenList;
+
+    AccessTokens(String tokens, List<String> tokenList) {
+      this.tokens = tokens;
+      this.tokenList = tokenList;
+    }
+  }
+}
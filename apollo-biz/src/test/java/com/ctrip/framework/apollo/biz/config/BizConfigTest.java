@@ -62,6 +62,18 @@ public class BizConfigTest {
     assertEquals(defaultBatch, bizConfig.releaseMessageNotificationBatch());
   }
 
+  @Test
+  public void testReleaseMessageScanIntervalWithBroadcastEnabled() throws Exception {
+    int defaultInterval = 1000;
+    int defaultFallbackInterval = 10000;
+
+    assertEquals(defaultInterval, bizConfig.releaseMessageScanIntervalInMilli());
+
+    when(environment.getProperty("apollo.release-message.broadcast.enabled")).thenReturn("true");
+
+    assertEquals(defaultFallbackInterval, bizConfig.releaseMessageScanIntervalInMilli());
+  }
+
   @Test
   public void testCheckInt() throws Exception {
     int someInvalidValue = 1;
@@ -0,0 +1,71 @@
+package com.ctrip.framework.apollo.biz.grayReleaseRule;
+
+import com.ctrip.framework.apollo.common.constants.NamespaceBranchStatus;
+import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class GrayReleaseRuleIndexTest {
+  private String someClientAppId = "someClientAppId";
+  private String anotherClientAppId = "anotherClientAppId";
+  private String someClientIp = "1.1.1.1";
+  private String anotherClientIp = "2.2.2.2";
+
+  @Test
+  public void testFindReleaseId() throws Exception {
+    long someReleaseId = 1;
+    GrayReleaseRuleCache someRule = assembleRule(1, "someBranch", someReleaseId, NamespaceBranchStatus.ACTIVE,
+        assembleRuleItem(someClientAppId, Sets.newHashSet(someClientIp)));
+
+    GrayReleaseRuleIndex ruleIndex = new GrayReleaseRuleIndex(Lists.newArrayList(someRule));
+
+    assertEquals(someReleaseId, (long) ruleIndex.findReleaseId(someClientAppId, someClientIp));
+    assertEquals(someReleaseId, (long) ruleIndex.findReleaseId(someClientAppId.toUpperCase(), someClientIp));
+    assertNull(ruleIndex.findReleaseId(someClientAppId, anotherClientIp));
+    assertNull(ruleIndex.findReleaseId(anotherClientAppId, someClientIp));
+    assertNull(ruleIndex.findReleaseId(null, someClientIp));
+    assertNull(ruleIndex.findReleaseId(someClientAppId, null));
+  }
+
+  @Test
+  public void testFindReleaseIdInRuleIdOrder() throws Exception {
+    long someReleaseId = 1;
+    long anotherReleaseId = 2;
+    long yetAnotherReleaseId = 3;
+    GrayReleaseRuleCache someAllIpRule = assembleRule(2, "someBranch", someReleaseId,
+        NamespaceBranchStatus.ACTIVE, assembleRuleItem(someClientAppId, Sets.newHashSet(GrayReleaseRuleItemDTO.ALL_IP)));
+    GrayReleaseRuleCache anotherRule = assembleRule(3, "anotherBranch", anotherReleaseId,
+        NamespaceBranchStatus.ACTIVE, assembleRuleItem(someClientAppId, Sets.newHashSet(someClientIp)),
+        assembleRuleItem(anotherClientAppId, Sets.newHashSet(someClientIp)));
+    GrayReleaseRuleCache yetAnotherRule = assembleRule(1, "yetAnotherBranch", yetAnotherReleaseId,
+        NamespaceBranchStatus.DELETED, assembleRuleItem(anotherClientAppId, Sets.newHashSet(someClientIp)));
+
+    GrayReleaseRuleIndex ruleIndex = new GrayReleaseRuleIndex(Lists.newArrayList(anotherRule, someAllIpRule,
+        yetAnotherRule));
+
+    //the rule with smaller id wins
+    assertEquals(someReleaseId, (long) ruleIndex.findReleaseId(someClientAppId, someClientIp));
+    assertEquals(someReleaseId, (long) ruleIndex.findReleaseId(someClientAppId, anotherClientIp));
+    //the inactive rules are skipped
+    assertEquals(anotherReleaseId, (long) ruleIndex.findReleaseId(anotherClientAppId, someClientIp));
+    assertNull(ruleIndex.findReleaseId(anotherClientAppId, anotherClientIp));
+
+    assertEquals(Lists.newArrayList(yetAnotherRule, someAllIpRule, anotherRule), ruleIndex.getRules());
+  }
+
+  private GrayReleaseRuleCache assembleRule(long ruleId, String branchName, long releaseId, int branchStatus,
+                                            GrayReleaseRuleItemDTO... ruleItems) {
+    return new GrayReleaseRuleCache(ruleId, branchName, "someNamespace", releaseId, branchStatus, 0,
+        Sets.newHashSet(ruleItems));
+  }
+
+  private GrayReleaseRuleItemDTO assembleRuleItem(String clientAppId, Set<String> clientIpList) {
+    return new GrayReleaseRuleItemDTO(clientAppId, clientIpList);
+  }
+}
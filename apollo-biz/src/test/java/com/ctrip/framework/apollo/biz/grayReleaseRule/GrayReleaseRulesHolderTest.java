@@ -30,6 +30,8 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -76,6 +78,7 @@ public class GrayReleaseRulesHolderTest {
             (someClientIp))), someReleaseId, activeBranchStatus);
 
     when(bizConfig.grayReleaseRuleScanInterval()).thenReturn(30);
+    when(bizConfig.grayReleaseRuleRebuildInterval()).thenReturn(3600);
     when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists
         .newArrayList(someRule));
 
@@ -137,6 +140,78 @@ public class GrayReleaseRulesHolderTest {
         anotherNamespaceName));
   }
 
+  @Test
+  public void testScanNewGrayReleaseRulesIncrementally() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someNamespaceName = "someNamespaceName";
+    String anotherNamespaceName = "anotherNamespaceName";
+    Long someReleaseId = 1L;
+    Long anotherReleaseId = 2L;
+    String someClientAppId = "clientAppId1";
+    String someClientIp = "1.1.1.1";
+
+    GrayReleaseRule someRule = assembleGrayReleaseRule(someAppId, someClusterName, someNamespaceName,
+        Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet(someClientIp))), someReleaseId,
+        NamespaceBranchStatus.ACTIVE);
+    GrayReleaseRule anotherRule = assembleGrayReleaseRule(someAppId, someClusterName, anotherNamespaceName,
+        Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet(someClientIp))), anotherReleaseId,
+        NamespaceBranchStatus.ACTIVE);
+
+    when(bizConfig.grayReleaseRuleScanInterval()).thenReturn(30);
+    when(bizConfig.grayReleaseRuleRebuildInterval()).thenReturn(3600);
+    when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists
+        .newArrayList(someRule));
+    when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(someRule.getId())).thenReturn(Lists
+        .newArrayList(anotherRule));
+
+    grayReleaseRulesHolder.afterPropertiesSet();
+
+    assertNull(grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(someClientAppId, someClientIp, someAppId,
+        someClusterName, anotherNamespaceName));
+
+    ReflectionTestUtils.invokeMethod(grayReleaseRulesHolder, "periodicScanRules");
+
+    assertEquals(someReleaseId, grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(someClientAppId,
+        someClientIp, someAppId, someClusterName, someNamespaceName));
+    assertEquals(anotherReleaseId, grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(someClientAppId,
+        someClientIp, someAppId, someClusterName, anotherNamespaceName));
+    //only the new rules are scanned
+    verify(grayReleaseRuleRepository, times(1)).findFirst500ByIdGreaterThanOrderByIdAsc(0L);
+  }
+
+  @Test
+  public void testRebuildGrayReleaseRules() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someNamespaceName = "someNamespaceName";
+    Long someReleaseId = 1L;
+    String someClientAppId = "clientAppId1";
+    String someClientIp = "1.1.1.1";
+
+    GrayReleaseRule someRule = assembleGrayReleaseRule(someAppId, someClusterName, someNamespaceName,
+        Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet(someClientIp))), someReleaseId,
+        NamespaceBranchStatus.ACTIVE);
+
+    when(bizConfig.grayReleaseRuleScanInterval()).thenReturn(30);
+    when(bizConfig.grayReleaseRuleRebuildInterval()).thenReturn(3600);
+    //the rule is deleted after the first scan
+    when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists
+        .newArrayList(someRule), Lists.newArrayList());
+
+    grayReleaseRulesHolder.afterPropertiesSet();
+
+    assertEquals(someReleaseId, grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(someClientAppId,
+        someClientIp, someAppId, someClusterName, someNamespaceName));
+    assertTrue(grayReleaseRulesHolder.hasGrayReleaseRule(someClientAppId, someClientIp, someNamespaceName));
+
+    ReflectionTestUtils.invokeMethod(grayReleaseRulesHolder, "periodicRebuildRules");
+
+    assertNull(grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(someClientAppId, someClientIp, someAppId,
+        someClusterName, someNamespaceName));
+    assertFalse(grayReleaseRulesHolder.hasGrayReleaseRule(someClientAppId, someClientIp, someNamespaceName));
+  }
+
   private GrayReleaseRule assembleGrayReleaseRule(String appId, String clusterName, String
       namespaceName, List<GrayReleaseRuleItemDTO> ruleItems, long releaseId, int branchStatus) {
     GrayReleaseRule rule = new GrayReleaseRule();
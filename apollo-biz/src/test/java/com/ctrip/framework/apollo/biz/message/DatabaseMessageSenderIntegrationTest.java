@@ -0,0 +1,62 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.AbstractIntegrationTest;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DatabaseMessageSenderIntegrationTest extends AbstractIntegrationTest {
+  @Autowired
+  private DatabaseMessageSender messageSender;
+  @Autowired
+  private ReleaseMessageRepository releaseMessageRepository;
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Test(timeout = 60000)
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  @Sql(statements = "DELETE FROM ReleaseMessage", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+  public void testCompactMessages() throws Exception {
+    int someMessageCount = 100;
+    int someReleaseMessageCount = 5000;
+    //smaller than the superseded messages of each message, so that they are deleted in multiple batches
+    int someCleanBatchSize = 10;
+    jdbcTemplate.update("INSERT INTO ReleaseMessage (Message, DataChange_LastTime) "
+        + "SELECT CONCAT('someAppId+default+', MOD(X, ?)), NOW() FROM SYSTEM_RANGE(1, ?)",
+        someMessageCount, someReleaseMessageCount);
+
+    //the same index as the production schema, created after the insertion which is faster
+    jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS IX_Message ON ReleaseMessage (Message)");
+
+    long maxId = releaseMessageRepository.findTopByOrderByIdDesc().getId();
+
+    assertEquals(someReleaseMessageCount, releaseMessageRepository.count());
+
+    messageSender.setCleanBatchSize(someCleanBatchSize);
+    try {
+      messageSender.compactMessages();
+    } finally {
+      messageSender.setCleanBatchSize(1000);
+    }
+
+    Iterable<ReleaseMessage> releaseMessages = releaseMessageRepository.findAll();
+    List<Object[]> latestReleaseMessages = releaseMessageRepository.findLatestReleaseMessagesGroupByMessages();
+
+    assertEquals(someMessageCount, releaseMessageRepository.count());
+    assertEquals(someMessageCount, latestReleaseMessages.size());
+    //only the latest one of each message is kept
+    for (ReleaseMessage releaseMessage : releaseMessages) {
+      assertTrue(releaseMessage.getId() > maxId - someMessageCount);
+    }
+  }
+}
@@ -6,8 +6,13 @@ import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.mockito.Mock;
 
+import java.util.Arrays;
+import java.util.Collections;
+
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.*;
 
@@ -18,6 +23,8 @@ public class DatabaseMessageSenderTest extends AbstractUnitTest{
   private DatabaseMessageSender messageSender;
   @Mock
   private ReleaseMessageRepository releaseMessageRepository;
+  @Mock
+  private ReleaseMessageBroadcaster releaseMessageBroadcaster;
 
   @Before
   public void setUp() throws Exception {
@@ -40,6 +47,37 @@ public class DatabaseMessageSenderTest extends AbstractUnitTest{
     assertEquals(someMessage, captor.getValue().getMessage());
   }
 
+  @Test
+  public void testSendAppNamespaceMessage() throws Exception {
+    String someAppId = "someAppId";
+    long someId = 1;
+    ReleaseMessage someReleaseMessage = mock(ReleaseMessage.class);
+    when(someReleaseMessage.getId()).thenReturn(someId);
+    when(releaseMessageRepository.save(any(ReleaseMessage.class))).thenReturn(someReleaseMessage);
+
+    ArgumentCaptor<ReleaseMessage> captor = ArgumentCaptor.forClass(ReleaseMessage.class);
+
+    messageSender.sendMessage(someAppId, Topics.APOLLO_APP_NAMESPACE_TOPIC);
+
+    verify(releaseMessageRepository, times(1)).save(captor.capture());
+    String savedMessage = captor.getValue().getMessage();
+    assertEquals(Topics.APOLLO_APP_NAMESPACE_TOPIC, Topics.resolveTopic(savedMessage));
+    assertEquals(someAppId, Topics.resolveMessage(savedMessage));
+  }
+
+  @Test
+  public void testSendMessageAndBroadcast() throws Exception {
+    long someId = 1;
+    ReleaseMessage someReleaseMessage = mock(ReleaseMessage.class);
+    when(someReleaseMessage.getId()).thenReturn(someId);
+    when(releaseMessageRepository.save(any(ReleaseMessage.class))).thenReturn(someReleaseMessage);
+
+    messageSender = new DatabaseMessageSender(releaseMessageRepository, releaseMessageBroadcaster);
+    messageSender.sendMessage("some-message", Topics.APOLLO_RELEASE_TOPIC);
+
+    verify(releaseMessageBroadcaster, times(1)).broadcast(someId);
+  }
+
   @Test
   public void testSendUnsupportedMessage() throws Exception {
     String someMessage = "some-message";
@@ -57,4 +95,80 @@ public class DatabaseMessageSenderTest extends AbstractUnitTest{
 
     messageSender.sendMessage(someMessage, Topics.APOLLO_RELEASE_TOPIC);
   }
+
+  @Test
+  public void testCleanMessages() throws Exception {
+    String someMessage = "some-message";
+    long someId = 1;
+    long anotherId = 2;
+    ReleaseMessage someReleaseMessage = mock(ReleaseMessage.class);
+    ReleaseMessage anotherReleaseMessage = mock(ReleaseMessage.class);
+    when(someReleaseMessage.getId()).thenReturn(someId);
+    when(anotherReleaseMessage.getId()).thenReturn(anotherId);
+    when(releaseMessageRepository.save(any(ReleaseMessage.class))).thenReturn(someReleaseMessage,
+        anotherReleaseMessage);
+    when(releaseMessageRepository.existsById(anotherId)).thenReturn(true);
+    when(releaseMessageRepository.deleteSupersededReleaseMessages(someMessage, anotherId, 1000)).thenReturn(1000, 1);
+
+    messageSender.sendMessage(someMessage, Topics.APOLLO_RELEASE_TOPIC);
+    messageSender.sendMessage(someMessage, Topics.APOLLO_RELEASE_TOPIC);
+    messageSender.cleanMessages();
+
+    //the messages sent in a burst are cleaned once
+    verify(releaseMessageRepository, times(1)).existsById(anyLong());
+    verify(releaseMessageRepository, times(2)).deleteSupersededReleaseMessages(someMessage, anotherId, 1000);
+
+    messageSender.cleanMessages();
+
+    verify(releaseMessageRepository, times(1)).existsById(anyLong());
+  }
+
+  @Test
+  public void testCleanRolledBackMessages() throws Exception {
+    String someMessage = "some-message";
+    long someId = 1;
+    ReleaseMessage someReleaseMessage = mock(ReleaseMessage.class);
+    when(someReleaseMessage.getId()).thenReturn(someId);
+    when(releaseMessageRepository.save(any(ReleaseMessage.class))).thenReturn(someReleaseMessage);
+    when(releaseMessageRepository.existsById(someId)).thenReturn(false);
+
+    messageSender.sendMessage(someMessage, Topics.APOLLO_RELEASE_TOPIC);
+    messageSender.cleanMessages();
+
+    verify(releaseMessageRepository, never()).deleteSupersededReleaseMessages(anyString(), anyLong(), anyInt());
+  }
+
+  @Test
+  public void testCompactMessages() throws Exception {
+    String someMessage = "some-message";
+    String anotherMessage = "another-message";
+    long someId = 10;
+    long anotherId = 20;
+    when(releaseMessageRepository.findLatestReleaseMessagesGroupByMessagesWithSuperseded()).thenReturn(
+        Arrays.asList(new Object[]{someMessage, someId}, new Object[]{anotherMessage, anotherId}));
+
+    messageSender.compactMessages();
+
+    verify(releaseMessageRepository, times(1)).deleteSupersededReleaseMessages(someMessage, someId, 1000);
+    verify(releaseMessageRepository, times(1)).deleteSupersededReleaseMessages(anotherMessage, anotherId, 1000);
+    verify(releaseMessageRepository, times(1)).count();
+  }
+
+  @Test
+  public void testCompactMessagesMetrics() throws Exception {
+    String someMessage = "some-message";
+    long someId = 10;
+    MeterRegistry someMeterRegistry = new SimpleMeterRegistry();
+    messageSender = new DatabaseMessageSender(releaseMessageRepository, releaseMessageBroadcaster,
+        someMeterRegistry);
+    when(releaseMessageRepository.findLatestReleaseMessagesGroupByMessagesWithSuperseded()).thenReturn(
+        Collections.singletonList(new Object[]{someMessage, someId}));
+    when(releaseMessageRepository.deleteSupersededReleaseMessages(someMessage, someId, 1000)).thenReturn(5);
+    when(releaseMessageRepository.count()).thenReturn(1L);
+
+    messageSender.compactMessages();
+
+    assertEquals(5, someMeterRegistry.get("apollo.release-message.cleaned").functionCounter().count(), 0);
+    assertEquals(1, someMeterRegistry.get("apollo.release-message.count").gauge().value(), 0);
+  }
 }
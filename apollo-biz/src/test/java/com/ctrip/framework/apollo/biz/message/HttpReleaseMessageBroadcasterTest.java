@@ -0,0 +1,128 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import com.ctrip.framework.apollo.biz.AbstractUnitTest;
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
+import com.ctrip.framework.apollo.core.ServiceNameConsts;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.SettableFuture;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.EurekaClient;
+import com.netflix.discovery.shared.Application;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+public class HttpReleaseMessageBroadcasterTest extends AbstractUnitTest {
+  @Mock
+  private BizConfig bizConfig;
+  @Mock
+  private ObjectProvider<EurekaClient> eurekaClientProvider;
+  @Mock
+  private EurekaClient eurekaClient;
+  @Mock
+  private Application configServiceApplication;
+  @Mock
+  private InstanceInfo someConfigServiceInstance;
+  @Mock
+  private InstanceInfo anotherConfigServiceInstance;
+  @Mock
+  private ReleaseMessageRepository releaseMessageRepository;
+
+  private String someHomepageUrl;
+  private String anotherHomepageUrl;
+  private String someAccessToken;
+
+  private HttpReleaseMessageBroadcaster releaseMessageBroadcaster;
+  private MockRestServiceServer configServiceServer;
+
+  @Before
+  public void setUp() throws Exception {
+    someHomepageUrl = "http://someConfigService:8080/";
+    anotherHomepageUrl = "http://anotherConfigService:8080";
+    someAccessToken = "someAccessToken";
+
+    when(bizConfig.releaseMessageBroadcastTimeoutInMilli()).thenReturn(1000);
+    when(bizConfig.isReleaseMessageBroadcastEnabled()).thenReturn(true);
+    when(bizConfig.isAdminServiceAccessControlEnabled()).thenReturn(true);
+    when(bizConfig.getAdminServiceAccessTokens()).thenReturn(someAccessToken + ",anotherAccessToken");
+    when(eurekaClientProvider.getIfAvailable()).thenReturn(eurekaClient);
+    when(eurekaClient.getApplication(ServiceNameConsts.APOLLO_CONFIGSERVICE)).thenReturn(configServiceApplication);
+    when(configServiceApplication.getInstances()).thenReturn(
+        Lists.newArrayList(someConfigServiceInstance, anotherConfigServiceInstance));
+    when(someConfigServiceInstance.getHomePageUrl()).thenReturn(someHomepageUrl);
+    when(anotherConfigServiceInstance.getHomePageUrl()).thenReturn(anotherHomepageUrl);
+
+    releaseMessageBroadcaster = new HttpReleaseMessageBroadcaster(bizConfig, eurekaClientProvider);
+    configServiceServer = MockRestServiceServer
+        .bindTo((RestTemplate) ReflectionTestUtils.getField(releaseMessageBroadcaster, "restTemplate"))
+        .ignoreExpectOrder(true).build();
+  }
+
+  @Test
+  public void testMessageSentOnAdminServiceIsScannedByAllConfigServices() throws Exception {
+    long someMessageId = 100;
+    String someMessage = "someMessage";
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someMessage);
+    someReleaseMessage.setId(someMessageId);
+    when(releaseMessageRepository.save(any(ReleaseMessage.class))).thenReturn(someReleaseMessage);
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
+        .thenReturn(Lists.newArrayList(someReleaseMessage));
+
+    // the scan intervals are long enough that only the broadcast could trigger the scans in time
+    when(bizConfig.releaseMessageScanIntervalInMilli()).thenReturn(60000);
+    ReleaseMessageScanner someConfigServiceScanner = assembleReleaseMessageScanner();
+    ReleaseMessageScanner anotherConfigServiceScanner = assembleReleaseMessageScanner();
+    SettableFuture<ReleaseMessage> someConfigServiceFuture = SettableFuture.create();
+    SettableFuture<ReleaseMessage> anotherConfigServiceFuture = SettableFuture.create();
+    someConfigServiceScanner.addMessageListener((message, channel) -> someConfigServiceFuture.set(message));
+    anotherConfigServiceScanner.addMessageListener((message, channel) -> anotherConfigServiceFuture.set(message));
+
+    expectBroadcast(someHomepageUrl + "release-messages/" + someMessageId, someConfigServiceScanner,
+        someMessageId);
+    expectBroadcast(anotherHomepageUrl + "/release-messages/" + someMessageId, anotherConfigServiceScanner,
+        someMessageId);
+
+    DatabaseMessageSender messageSender = new DatabaseMessageSender(releaseMessageRepository,
+        releaseMessageBroadcaster);
+    messageSender.sendMessage(someMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    assertEquals(someMessage, someConfigServiceFuture.get(5000, TimeUnit.MILLISECONDS).getMessage());
+    assertEquals(someMessage, anotherConfigServiceFuture.get(5000, TimeUnit.MILLISECONDS).getMessage());
+    configServiceServer.verify();
+  }
+
+  private void expectBroadcast(String url, ReleaseMessageScanner configServiceScanner, long messageId) {
+    configServiceServer.expect(requestTo(url))
+        .andExpect(method(HttpMethod.POST))
+        .andExpect(header(HttpHeaders.AUTHORIZATION, someAccessToken))
+        .andRespond(request -> {
+          configServiceScanner.notifyNewMessage(messageId);
+          return withSuccess().createResponse(request);
+        });
+  }
+
+  private ReleaseMessageScanner assembleReleaseMessageScanner() throws Exception {
+    ReleaseMessageScanner releaseMessageScanner = new ReleaseMessageScanner();
+    ReflectionTestUtils.setField(releaseMessageScanner, "releaseMessageRepository", releaseMessageRepository);
+    ReflectionTestUtils.setField(releaseMessageScanner, "bizConfig", bizConfig);
+    releaseMessageScanner.afterPropertiesSet();
+    return releaseMessageScanner;
+  }
+}
@@ -2,6 +2,7 @@ package com.ctrip.framework.apollo.biz.message;
 
 import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.SettableFuture;
 
 import com.ctrip.framework.apollo.biz.AbstractUnitTest;
@@ -13,9 +14,14 @@ import org.junit.Test;
 import org.mockito.Mock;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.when;
 
 /**
@@ -78,6 +84,95 @@ public class ReleaseMessageScannerTest extends AbstractUnitTest {
 
   }
 
+  @Test
+  public void testScanMessageOfOtherTopic() throws Exception {
+    SettableFuture<String> someChannelFuture = SettableFuture.create();
+    SettableFuture<ReleaseMessage> someListenerFuture = SettableFuture.create();
+    releaseMessageScanner.addMessageListener((message, channel) -> {
+      someChannelFuture.set(channel);
+      someListenerFuture.set(message);
+    });
+
+    String someAppId = "someAppId";
+    long someId = 100;
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(someId,
+        Topics.assembleMessage(Topics.APOLLO_APP_NAMESPACE_TOPIC, someAppId));
+
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(
+        Lists.newArrayList(someReleaseMessage));
+
+    ReleaseMessage someListenerMessage = someListenerFuture.get(5000, TimeUnit.MILLISECONDS);
+
+    assertEquals(Topics.APOLLO_APP_NAMESPACE_TOPIC, someChannelFuture.get());
+    assertEquals(someAppId, someListenerMessage.getMessage());
+    assertEquals(someId, someListenerMessage.getId());
+  }
+
+  @Test
+  public void testNotifyNewMessageScansImmediately() throws Exception {
+    // a scan interval long enough that only the notification could trigger the scan in time
+    ReleaseMessageScanner anotherScanner = new ReleaseMessageScanner();
+    ReflectionTestUtils.setField(anotherScanner, "releaseMessageRepository", releaseMessageRepository);
+    ReflectionTestUtils.setField(anotherScanner, "bizConfig", bizConfig);
+    when(bizConfig.releaseMessageScanIntervalInMilli()).thenReturn(60000);
+    anotherScanner.afterPropertiesSet();
+
+    SettableFuture<ReleaseMessage> someListenerFuture = SettableFuture.create();
+    anotherScanner.addMessageListener((message, channel) -> someListenerFuture.set(message));
+
+    long someId = 100;
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(someId, "someMessage");
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(
+        Lists.newArrayList(someReleaseMessage));
+
+    anotherScanner.notifyNewMessage(someId);
+
+    assertEquals(someId, someListenerFuture.get(5000, TimeUnit.MILLISECONDS).getId());
+  }
+
+  @Test
+  public void testScanMissingMessageCommittedLater() throws Exception {
+    // a scan interval long enough that only the notifications could trigger the scans in time
+    ReleaseMessageScanner anotherScanner = new ReleaseMessageScanner();
+    ReflectionTestUtils.setField(anotherScanner, "releaseMessageRepository", releaseMessageRepository);
+    ReflectionTestUtils.setField(anotherScanner, "bizConfig", bizConfig);
+    when(bizConfig.releaseMessageScanIntervalInMilli()).thenReturn(60000);
+    when(releaseMessageRepository.findTopByOrderByIdDesc()).thenReturn(assembleReleaseMessage(99, "someMessage"));
+    anotherScanner.afterPropertiesSet();
+
+    BlockingQueue<ReleaseMessage> listenerMessages = new LinkedBlockingQueue<>();
+    anotherScanner.addMessageListener((message, channel) -> listenerMessages.add(message));
+
+    //message 100 is not committed yet when message 101 is committed and notified
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(100, "someMessage");
+    ReleaseMessage anotherReleaseMessage = assembleReleaseMessage(101, "anotherMessage");
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(99L)).thenReturn(
+        Lists.newArrayList(anotherReleaseMessage));
+
+    anotherScanner.notifyNewMessage(101);
+
+    assertEquals(101, listenerMessages.poll(5000, TimeUnit.MILLISECONDS).getId());
+
+    //message 100 is committed afterwards
+    when(releaseMessageRepository.findAllById(Sets.newHashSet(100L))).thenReturn(
+        Lists.newArrayList(someReleaseMessage));
+
+    anotherScanner.notifyNewMessage(102);
+
+    assertEquals(100, listenerMessages.poll(5000, TimeUnit.MILLISECONDS).getId());
+    assertNull(listenerMessages.poll(100, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testNotifyScannedMessage() throws Exception {
+    long someId = 100;
+    ReflectionTestUtils.setField(releaseMessageScanner, "maxIdScanned", someId);
+
+    releaseMessageScanner.notifyNewMessage(someId);
+
+    assertFalse(((AtomicBoolean) ReflectionTestUtils.getField(releaseMessageScanner, "scanRequested")).get());
+  }
+
   private ReleaseMessage assembleReleaseMessage(long id, String message) {
     ReleaseMessage releaseMessage = new ReleaseMessage();
     releaseMessage.setId(id);
@@ -110,6 +110,50 @@ public class InstanceServiceTest extends AbstractIntegrationTest {
     assertEquals(anotherReleaseKey, updated.getReleaseKey());
   }
 
+  @Test
+  @Rollback
+  public void testBatchCreateAndUpdateInstanceConfigs() throws Exception {
+    long someInstanceId = 1;
+    long anotherInstanceId = 2;
+    String someConfigAppId = "someConfigAppId";
+    String someConfigClusterName = "someConfigClusterName";
+    String anotherConfigClusterName = "anotherConfigClusterName";
+    String someConfigNamespaceName = "someConfigNamespaceName";
+    String someReleaseKey = "someReleaseKey";
+    String anotherReleaseKey = "anotherReleaseKey";
+    Date someReleaseDeliveryTime = new Date(System.currentTimeMillis() - 1000);
+
+    List<InstanceConfig> instanceConfigs = instanceService.batchCreateInstanceConfigs(Lists.newArrayList(
+        assembleInstanceConfig(someInstanceId, someConfigAppId, someConfigClusterName, someConfigNamespaceName,
+            someReleaseKey),
+        assembleInstanceConfig(anotherInstanceId, someConfigAppId, someConfigClusterName, someConfigNamespaceName,
+            someReleaseKey)));
+    Set<Long> instanceConfigIds = instanceConfigs.stream().map(InstanceConfig::getId).collect(Collectors.toSet());
+
+    assertEquals(2, instanceService.findInstanceConfigs(someConfigAppId, someConfigNamespaceName,
+        Sets.newHashSet(someInstanceId, anotherInstanceId)).size());
+
+    assertEquals(2, instanceService.batchUpdateInstanceConfigReleaseKey(instanceConfigIds,
+        anotherConfigClusterName, anotherReleaseKey, someReleaseDeliveryTime));
+
+    InstanceConfig updated = instanceService.findInstanceConfig(anotherInstanceId, someConfigAppId,
+        someConfigNamespaceName);
+
+    assertEquals(anotherConfigClusterName, updated.getConfigClusterName());
+    assertEquals(anotherReleaseKey, updated.getReleaseKey());
+    assertEquals(someReleaseDeliveryTime.getTime(), updated.getReleaseDeliveryTime().getTime());
+
+    Date someLastModifiedTime = new Date();
+    assertEquals(2, instanceService.batchUpdateInstanceConfigLastModifiedTime(instanceConfigIds,
+        someLastModifiedTime));
+
+    updated = instanceService.findInstanceConfig(someInstanceId, someConfigAppId, someConfigNamespaceName);
+
+    assertEquals(anotherReleaseKey, updated.getReleaseKey());
+    assertEquals(someReleaseDeliveryTime.getTime(), updated.getReleaseDeliveryTime().getTime());
+    assertEquals(someLastModifiedTime.getTime(), updated.getDataChangeLastModifiedTime().getTime());
+  }
+
   @Test
   @Rollback
   public void testFindActiveInstanceConfigs() throws Exception {
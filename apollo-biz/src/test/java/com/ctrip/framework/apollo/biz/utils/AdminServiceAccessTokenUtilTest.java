@@ -0,0 +1,55 @@
+package com.ctrip.framework.apollo.biz.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.biz.AbstractUnitTest;
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.google.common.collect.Lists;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+public class AdminServiceAccessTokenUtilTest extends AbstractUnitTest {
+  @Mock
+  private BizConfig bizConfig;
+
+  private AdminServiceAccessTokenUtil accessTokenUtil;
+
+  @Before
+  public void setUp() throws Exception {
+    accessTokenUtil = new AdminServiceAccessTokenUtil(bizConfig);
+  }
+
+  @Test
+  public void testCheckAccessToken() throws Exception {
+    when(bizConfig.getAdminServiceAccessTokens()).thenReturn(" someToken, anotherToken ");
+
+    assertTrue(accessTokenUtil.checkAccessToken("someToken"));
+    assertTrue(accessTokenUtil.checkAccessToken("anotherToken"));
+    assertFalse(accessTokenUtil.checkAccessToken("someInvalidToken"));
+    assertFalse(accessTokenUtil.checkAccessToken(null));
+  }
+
+  @Test
+  public void testCheckAccessTokenWithNoAccessTokens() throws Exception {
+    assertTrue(accessTokenUtil.checkAccessToken(null));
+    assertTrue(accessTokenUtil.checkAccessToken("someToken"));
+  }
+
+  @Test
+  public void testGetAccessTokensCachedUntilChanged() throws Exception {
+    when(bizConfig.getAdminServiceAccessTokens()).thenReturn("someToken,anotherToken", "someToken,anotherToken",
+        "yetAnotherToken");
+
+    List<String> accessTokens = accessTokenUtil.getAccessTokens();
+
+    assertEquals(Lists.newArrayList("someToken", "anotherToken"), accessTokens);
+    assertSame(accessTokens, accessTokenUtil.getAccessTokens());
+    assertEquals(Lists.newArrayList("yetAnotherToken"), accessTokenUtil.getAccessTokens());
+  }
+}
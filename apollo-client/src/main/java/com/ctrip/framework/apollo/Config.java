@@ -30,6 +30,17 @@ public interface Config {
    */
   Integer getIntProperty(String key, Integer defaultValue);
 
+  /**
+   * Return the int property value with the given key, or {@code defaultValue} if the key doesn't
+   * exist. Unlike {@link #getIntProperty(String, Integer)}, it doesn't box the default value, so it's preferred
+   * for the frequent reads.
+   *
+   * @param key          the property name
+   * @param defaultValue the default value when key is not found or any error occurred
+   * @return the property value as int
+   */
+  int getInt(String key, int defaultValue);
+
   /**
    * Return the long property value with the given key, or {@code defaultValue} if the key doesn't
    * exist.
@@ -40,6 +51,17 @@ public interface Config {
    */
   Long getLongProperty(String key, Long defaultValue);
 
+  /**
+   * Return the long property value with the given key, or {@code defaultValue} if the key doesn't
+   * exist. Unlike {@link #getLongProperty(String, Long)}, it doesn't box the default value, so it's preferred
+   * for the frequent reads.
+   *
+   * @param key          the property name
+   * @param defaultValue the default value when key is not found or any error occurred
+   * @return the property value as long
+   */
+  long getLong(String key, long defaultValue);
+
   /**
    * Return the short property value with the given key, or {@code defaultValue} if the key doesn't
    * exist.
@@ -90,6 +112,16 @@ public interface Config {
    */
   Boolean getBooleanProperty(String key, Boolean defaultValue);
 
+  /**
+   * Return the boolean property value with the given key, or {@code defaultValue} if the key
+   * doesn't exist. It's the primitive variant of {@link #getBooleanProperty(String, Boolean)}.
+   *
+   * @param key          the property name
+   * @param defaultValue the default value when key is not found or any error occurred
+   * @return the property value as boolean
+   */
+  boolean getBoolean(String key, boolean defaultValue);
+
   /**
    * Return the array property value with the given key, or {@code defaultValue} if the key doesn't exist.
    *
@@ -227,6 +259,21 @@ public interface Config {
    */
   <T> T getProperty(String key, Function<String, T> function, T defaultValue);
 
+  /**
+   * Bind the property with the given key to a handle, whose value is parsed only when the property is changed.
+   * The handle should be kept and reused, as it lives as long as this config. Binding the same key with the same
+   * function and default value again returns the same handle.
+   *
+   * @param key          the property name
+   * @param function     the transform {@link Function}. from String to user-defined type
+   * @param defaultValue the default value when key is not found or any error occurred
+   * @param <T>          user-defined type
+   * @return the property handle
+   *
+   * @since 1.8.0
+   */
+  <T> ConfigProperty<T> bind(String key, Function<String, T> function, T defaultValue);
+
   /**
    * Return the config's source type, i.e. where is the config loaded from
    *
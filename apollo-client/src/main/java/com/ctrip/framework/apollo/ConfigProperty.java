@@ -0,0 +1,22 @@
+package com.ctrip.framework.apollo;
+
+/**
+ * A long-lived handle of one property, which is kept up to date when the property is changed.
+ *
+ * @param <T> the property value type
+ * @see Config#bind(String, com.google.common.base.Function, Object)
+ */
+public interface ConfigProperty<T> {
+  /**
+   * @return the property name
+   */
+  String getKey();
+
+  /**
+   * Return the latest property value, or the default value if the property doesn't exist or couldn't be parsed.
+   * It's as cheap as a volatile field read, so it's preferred for the frequent reads.
+   *
+   * @return the property value
+   */
+  T get();
+}
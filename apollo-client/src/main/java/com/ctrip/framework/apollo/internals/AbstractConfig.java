@@ -2,6 +2,7 @@ package com.ctrip.framework.apollo.internals;
 
 import com.ctrip.framework.apollo.Config;
 import com.ctrip.framework.apollo.ConfigChangeListener;
+import com.ctrip.framework.apollo.ConfigProperty;
 import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.enums.PropertyChangeType;
@@ -10,29 +11,31 @@ import com.ctrip.framework.apollo.model.ConfigChange;
 import com.ctrip.framework.apollo.model.ConfigChangeEvent;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
-import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.OrderedProperties;
 import com.ctrip.framework.apollo.util.factory.PropertiesFactory;
 import com.ctrip.framework.apollo.util.function.Functions;
 import com.ctrip.framework.apollo.util.parser.Parsers;
 import com.google.common.base.Function;
 import com.google.common.base.Objects;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -42,22 +45,10 @@ public abstract class AbstractConfig implements Config {
 
   private static final ExecutorService m_executorService;
 
-  private final List<ConfigChangeListener> m_listeners = Lists.newCopyOnWriteArrayList();
-  private final Map<ConfigChangeListener, Set<String>> m_interestedKeys = Maps.newConcurrentMap();
-  private final Map<ConfigChangeListener, Set<String>> m_interestedKeyPrefixes = Maps.newConcurrentMap();
-  private final ConfigUtil m_configUtil;
-  private volatile Cache<String, Integer> m_integerCache;
-  private volatile Cache<String, Long> m_longCache;
-  private volatile Cache<String, Short> m_shortCache;
-  private volatile Cache<String, Float> m_floatCache;
-  private volatile Cache<String, Double> m_doubleCache;
-  private volatile Cache<String, Byte> m_byteCache;
-  private volatile Cache<String, Boolean> m_booleanCache;
-  private volatile Cache<String, Date> m_dateCache;
-  private volatile Cache<String, Long> m_durationCache;
-  private final Map<String, Cache<String, String[]>> m_arrayCache;
-  private final List<Cache> allCaches;
-  private final AtomicLong m_configVersion; //indicate config version
+  private final ConfigChangeListenerIndex m_listenerIndex = new ConfigChangeListenerIndex();
+  private final ConcurrentMap<ConfigChangeListener, ListenerDispatcher> m_dispatchers = Maps.newConcurrentMap();
+  private volatile ParsedValues m_parsedValues;
+  private final ConcurrentMap<String, List<BoundProperty<?>>> m_boundProperties = Maps.newConcurrentMap();
 
   protected PropertiesFactory propertiesFactory;
 
@@ -67,10 +58,7 @@ public abstract class AbstractConfig implements Config {
   }
 
   public AbstractConfig() {
-    m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
-    m_configVersion = new AtomicLong();
-    m_arrayCache = Maps.newConcurrentMap();
-    allCaches = Lists.newArrayList();
+    m_parsedValues = new ParsedValues();
     propertiesFactory = ApolloInjector.getInstance(PropertiesFactory.class);
   }
 
@@ -86,36 +74,25 @@ public abstract class AbstractConfig implements Config {
 
   @Override
   public void addChangeListener(ConfigChangeListener listener, Set<String> interestedKeys, Set<String> interestedKeyPrefixes) {
-    if (!m_listeners.contains(listener)) {
-      m_listeners.add(listener);
-      if (interestedKeys != null && !interestedKeys.isEmpty()) {
-        m_interestedKeys.put(listener, Sets.newHashSet(interestedKeys));
-      }
-      if (interestedKeyPrefixes != null && !interestedKeyPrefixes.isEmpty()) {
-        m_interestedKeyPrefixes.put(listener, Sets.newHashSet(interestedKeyPrefixes));
-      }
+    ListenerDispatcher dispatcher = new ListenerDispatcher(listener);
+    //the dispatcher is ready before the listener could be found
+    if (m_dispatchers.putIfAbsent(listener, dispatcher) == null) {
+      m_listenerIndex.add(listener, interestedKeys == null ? null : Sets.newHashSet(interestedKeys),
+          interestedKeyPrefixes == null ? null : Sets.newHashSet(interestedKeyPrefixes));
     }
   }
 
   @Override
   public boolean removeChangeListener(ConfigChangeListener listener) {
-    m_interestedKeys.remove(listener);
-    m_interestedKeyPrefixes.remove(listener);
-    return m_listeners.remove(listener);
+    boolean removed = m_listenerIndex.remove(listener);
+    m_dispatchers.remove(listener);
+    return removed;
   }
 
   @Override
   public Integer getIntProperty(String key, Integer defaultValue) {
     try {
-      if (m_integerCache == null) {
-        synchronized (this) {
-          if (m_integerCache == null) {
-            m_integerCache = newCache();
-          }
-        }
-      }
-
-      return getValueFromCache(key, Functions.TO_INT_FUNCTION, m_integerCache, defaultValue);
+      return getValueFromCache(key, Functions.TO_INT_FUNCTION, defaultValue);
     } catch (Throwable ex) {
       Tracer.logError(new ApolloConfigException(
           String.format("getIntProperty for %s failed, return default value %d", key,
@@ -125,17 +102,22 @@ public abstract class AbstractConfig implements Config {
   }
 
   @Override
-  public Long getLongProperty(String key, Long defaultValue) {
+  public int getInt(String key, int defaultValue) {
     try {
-      if (m_longCache == null) {
-        synchronized (this) {
-          if (m_longCache == null) {
-            m_longCache = newCache();
-          }
-        }
-      }
+      Integer value = getValueFromCache(key, Functions.TO_INT_FUNCTION, null);
+      return value == null ? defaultValue : value;
+    } catch (Throwable ex) {
+      Tracer.logError(new ApolloConfigException(
+          String.format("getInt for %s failed, return default value %d", key,
+              defaultValue), ex));
+    }
+    return defaultValue;
+  }
 
-      return getValueFromCache(key, Functions.TO_LONG_FUNCTION, m_longCache, defaultValue);
+  @Override
+  public Long getLongProperty(String key, Long defaultValue) {
+    try {
+      return getValueFromCache(key, Functions.TO_LONG_FUNCTION, defaultValue);
     } catch (Throwable ex) {
       Tracer.logError(new ApolloConfigException(
           String.format("getLongProperty for %s failed, return default value %d", key,
@@ -145,17 +127,22 @@ public abstract class AbstractConfig implements Config {
   }
 
   @Override
-  public Short getShortProperty(String key, Short defaultValue) {
+  public long getLong(String key, long defaultValue) {
     try {
-      if (m_shortCache == null) {
-        synchronized (this) {
-          if (m_shortCache == null) {
-            m_shortCache = newCache();
-          }
-        }
-      }
+      Long value = getValueFromCache(key, Functions.TO_LONG_FUNCTION, null);
+      return value == null ? defaultValue : value;
+    } catch (Throwable ex) {
+      Tracer.logError(new ApolloConfigException(
+          String.format("getLong for %s failed, return default value %d", key,
+              defaultValue), ex));
+    }
+    return defaultValue;
+  }
 
-      return getValueFromCache(key, Functions.TO_SHORT_FUNCTION, m_shortCache, defaultValue);
+  @Override
+  public Short getShortProperty(String key, Short defaultValue) {
+    try {
+      return getValueFromCache(key, Functions.TO_SHORT_FUNCTION, defaultValue);
     } catch (Throwable ex) {
       Tracer.logError(new ApolloConfigException(
           String.format("getShortProperty for %s failed, return default value %d", key,
@@ -167,15 +154,7 @@ public abstract class AbstractConfig implements Config {
   @Override
   public Float getFloatProperty(String key, Float defaultValue) {
     try {
-      if (m_floatCache == null) {
-        synchronized (this) {
-          if (m_floatCache == null) {
-            m_floatCache = newCache();
-          }
-        }
-      }
-
-      return getValueFromCache(key, Functions.TO_FLOAT_FUNCTION, m_floatCache, defaultValue);
+      return getValueFromCache(key, Functions.TO_FLOAT_FUNCTION, defaultValue);
     } catch (Throwable ex) {
       Tracer.logError(new ApolloConfigException(
           String.format("getFloatProperty for %s failed, return default value %f", key,
@@ -187,15 +166,7 @@ public abstract class AbstractConfig implements Config {
   @Override
   public Double getDoubleProperty(String key, Double defaultValue) {
     try {
-      if (m_doubleCache == null) {
-        synchronized (this) {
-          if (m_doubleCache == null) {
-            m_doubleCache = newCache();
-          }
-        }
-      }
-
-      return getValueFromCache(key, Functions.TO_DOUBLE_FUNCTION, m_doubleCache, defaultValue);
+      return getValueFromCache(key, Functions.TO_DOUBLE_FUNCTION, defaultValue);
     } catch (Throwable ex) {
       Tracer.logError(new ApolloConfigException(
           String.format("getDoubleProperty for %s failed, return default value %f", key,
@@ -207,15 +178,7 @@ public abstract class AbstractConfig implements Config {
   @Override
   public Byte getByteProperty(String key, Byte defaultValue) {
     try {
-      if (m_byteCache == null) {
-        synchronized (this) {
-          if (m_byteCache == null) {
-            m_byteCache = newCache();
-          }
-        }
-      }
-
-      return getValueFromCache(key, Functions.TO_BYTE_FUNCTION, m_byteCache, defaultValue);
+      return getValueFromCache(key, Functions.TO_BYTE_FUNCTION, defaultValue);
     } catch (Throwable ex) {
       Tracer.logError(new ApolloConfigException(
           String.format("getByteProperty for %s failed, return default value %d", key,
@@ -227,15 +190,7 @@ public abstract class AbstractConfig implements Config {
   @Override
   public Boolean getBooleanProperty(String key, Boolean defaultValue) {
     try {
-      if (m_booleanCache == null) {
-        synchronized (this) {
-          if (m_booleanCache == null) {
-            m_booleanCache = newCache();
-          }
-        }
-      }
-
-      return getValueFromCache(key, Functions.TO_BOOLEAN_FUNCTION, m_booleanCache, defaultValue);
+      return getValueFromCache(key, Functions.TO_BOOLEAN_FUNCTION, defaultValue);
     } catch (Throwable ex) {
       Tracer.logError(new ApolloConfigException(
           String.format("getBooleanProperty for %s failed, return default value %b", key,
@@ -245,18 +200,23 @@ public abstract class AbstractConfig implements Config {
   }
 
   @Override
-  public String[] getArrayProperty(String key, final String delimiter, String[] defaultValue) {
+  public boolean getBoolean(String key, boolean defaultValue) {
     try {
-      if (!m_arrayCache.containsKey(delimiter)) {
-        synchronized (this) {
-          if (!m_arrayCache.containsKey(delimiter)) {
-            m_arrayCache.put(delimiter, this.<String[]>newCache());
-          }
-        }
-      }
+      Boolean value = getValueFromCache(key, Functions.TO_BOOLEAN_FUNCTION, null);
+      return value == null ? defaultValue : value;
+    } catch (Throwable ex) {
+      Tracer.logError(new ApolloConfigException(
+          String.format("getBoolean for %s failed, return default value %b", key,
+              defaultValue), ex));
+    }
+    return defaultValue;
+  }
 
-      Cache<String, String[]> cache = m_arrayCache.get(delimiter);
-      String[] result = cache.getIfPresent(key);
+  @Override
+  public String[] getArrayProperty(String key, final String delimiter, String[] defaultValue) {
+    try {
+      ConcurrentMap<String, Object> cache = m_parsedValues.of(delimiter);
+      String[] result = (String[]) cache.get(key);
 
       if (result != null) {
         return result;
@@ -295,15 +255,7 @@ public abstract class AbstractConfig implements Config {
   @Override
   public Date getDateProperty(String key, Date defaultValue) {
     try {
-      if (m_dateCache == null) {
-        synchronized (this) {
-          if (m_dateCache == null) {
-            m_dateCache = newCache();
-          }
-        }
-      }
-
-      return getValueFromCache(key, Functions.TO_DATE_FUNCTION, m_dateCache, defaultValue);
+      return getValueFromCache(key, Functions.TO_DATE_FUNCTION, defaultValue);
     } catch (Throwable ex) {
       Tracer.logError(new ApolloConfigException(
           String.format("getDateProperty for %s failed, return default value %s", key,
@@ -350,15 +302,9 @@ public abstract class AbstractConfig implements Config {
   @Override
   public long getDurationProperty(String key, long defaultValue) {
     try {
-      if (m_durationCache == null) {
-        synchronized (this) {
-          if (m_durationCache == null) {
-            m_durationCache = newCache();
-          }
-        }
-      }
-
-      return getValueFromCache(key, Functions.TO_DURATION_FUNCTION, m_durationCache, defaultValue);
+      //the default value is not boxed, so that the reads don't allocate
+      Long value = getValueFromCache(key, Functions.TO_DURATION_FUNCTION, null);
+      return value == null ? defaultValue : value;
     } catch (Throwable ex) {
       Tracer.logError(new ApolloConfigException(
           String.format("getDurationProperty for %s failed, return default value %d", key,
@@ -385,8 +331,47 @@ public abstract class AbstractConfig implements Config {
     return defaultValue;
   }
 
-  private <T> T getValueFromCache(String key, Function<String, T> parser, Cache<String, T> cache, T defaultValue) {
-    T result = cache.getIfPresent(key);
+  @Override
+  public <T> ConfigProperty<T> bind(String key, Function<String, T> function, T defaultValue) {
+    List<BoundProperty<?>> properties = m_boundProperties.get(key);
+    if (properties == null) {
+      List<BoundProperty<?>> newProperties = Lists.newCopyOnWriteArrayList();
+      properties = m_boundProperties.putIfAbsent(key, newProperties);
+      if (properties == null) {
+        properties = newProperties;
+      }
+    }
+    BoundProperty<T> property;
+    //the same binding shares one handle, so that binding again and again doesn't pile up the handles
+    synchronized (properties) {
+      property = findBoundProperty(properties, function, defaultValue);
+      if (property != null) {
+        return property;
+      }
+      property = new BoundProperty<>(this, key, function, defaultValue);
+      //register before the first refresh, so that the changes meanwhile are not missed
+      properties.add(property);
+    }
+    property.refresh();
+    return property;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> BoundProperty<T> findBoundProperty(List<BoundProperty<?>> properties, Function<String, T> function,
+      T defaultValue) {
+    for (BoundProperty<?> property : properties) {
+      if (property.isBoundWith(function, defaultValue)) {
+        //the same function gives the same type
+        return (BoundProperty<T>) property;
+      }
+    }
+    return null;
+  }
+
+  private <T> T getValueFromCache(String key, Function<String, T> parser, T defaultValue) {
+    ConcurrentMap<String, Object> cache = m_parsedValues.of(parser);
+    @SuppressWarnings("unchecked")
+    T result = (T) cache.get(key);
 
     if (result != null) {
       return result;
@@ -395,19 +380,16 @@ public abstract class AbstractConfig implements Config {
     return getValueAndStoreToCache(key, parser, cache, defaultValue);
   }
 
-  private <T> T getValueAndStoreToCache(String key, Function<String, T> parser, Cache<String, T> cache, T defaultValue) {
-    long currentConfigVersion = m_configVersion.get();
+  private <T> T getValueAndStoreToCache(String key, Function<String, T> parser, ConcurrentMap<String, Object> cache,
+      T defaultValue) {
     String value = getProperty(key, null);
 
     if (value != null) {
       T result = parser.apply(value);
 
       if (result != null) {
-        synchronized (this) {
-          if (m_configVersion.get() == currentConfigVersion) {
-            cache.put(key, result);
-          }
-        }
+        //it might be stored into a replaced table if the config is changed meanwhile, which is harmless
+        cache.putIfAbsent(key, result);
         return result;
       }
     }
@@ -415,83 +397,60 @@ public abstract class AbstractConfig implements Config {
     return defaultValue;
   }
 
-  private <T> Cache<String, T> newCache() {
-    Cache<String, T> cache = CacheBuilder.newBuilder()
-        .maximumSize(m_configUtil.getMaxConfigCacheSize())
-        .expireAfterAccess(m_configUtil.getConfigCacheExpireTime(), m_configUtil.getConfigCacheExpireTimeUnit())
-        .build();
-    allCaches.add(cache);
-    return cache;
-  }
-
   /**
    * Clear config cache
    */
   protected void clearConfigCache() {
-    synchronized (this) {
-      for (Cache c : allCaches) {
-        if (c != null) {
-          c.invalidateAll();
+    m_parsedValues = new ParsedValues();
+  }
+
+  /**
+   * Refresh the bound properties of the changed keys, should be called after the config is updated
+   */
+  protected void refreshBoundProperties(Set<String> changedKeys) {
+    if (m_boundProperties.isEmpty()) {
+      return;
+    }
+    //walk through the smaller side, as there might be plenty of changes but only a few bound properties
+    if (changedKeys.size() > m_boundProperties.size()) {
+      for (Map.Entry<String, List<BoundProperty<?>>> entry : m_boundProperties.entrySet()) {
+        if (changedKeys.contains(entry.getKey())) {
+          refreshBoundProperties(entry.getValue());
         }
       }
-      m_configVersion.incrementAndGet();
+      return;
     }
-  }
-
-  protected void fireConfigChange(final ConfigChangeEvent changeEvent) {
-    for (final ConfigChangeListener listener : m_listeners) {
-      // check whether the listener is interested in this change event
-      if (!isConfigChangeListenerInterested(listener, changeEvent)) {
-        continue;
+    for (String changedKey : changedKeys) {
+      List<BoundProperty<?>> properties = m_boundProperties.get(changedKey);
+      if (properties != null) {
+        refreshBoundProperties(properties);
       }
-      m_executorService.submit(new Runnable() {
-        @Override
-        public void run() {
-          String listenerName = listener.getClass().getName();
-          Transaction transaction = Tracer.newTransaction("Apollo.ConfigChangeListener", listenerName);
-          try {
-            listener.onChange(changeEvent);
-            transaction.setStatus(Transaction.SUCCESS);
-          } catch (Throwable ex) {
-            transaction.setStatus(ex);
-            Tracer.logError(ex);
-            logger.error("Failed to invoke config change listener {}", listenerName, ex);
-          } finally {
-            transaction.complete();
-          }
-        }
-      });
     }
   }
 
-  private boolean isConfigChangeListenerInterested(ConfigChangeListener configChangeListener, ConfigChangeEvent configChangeEvent) {
-    Set<String> interestedKeys = m_interestedKeys.get(configChangeListener);
-    Set<String> interestedKeyPrefixes = m_interestedKeyPrefixes.get(configChangeListener);
-
-    if ((interestedKeys == null || interestedKeys.isEmpty())
-        && (interestedKeyPrefixes == null || interestedKeyPrefixes.isEmpty())) {
-      return true; // no interested keys means interested in all keys
+  /**
+   * Refresh all the bound properties, should be called after the config is updated without knowing the changed keys
+   */
+  protected void refreshBoundProperties() {
+    for (List<BoundProperty<?>> properties : m_boundProperties.values()) {
+      refreshBoundProperties(properties);
     }
+  }
 
-    if (interestedKeys != null) {
-      for (String interestedKey : interestedKeys) {
-        if (configChangeEvent.isChanged(interestedKey)) {
-          return true;
-        }
-      }
+  private void refreshBoundProperties(List<BoundProperty<?>> properties) {
+    for (BoundProperty<?> property : properties) {
+      property.refresh();
     }
+  }
 
-    if (interestedKeyPrefixes != null) {
-      for (String prefix : interestedKeyPrefixes) {
-        for (final String changedKey : configChangeEvent.changedKeys()) {
-          if (changedKey.startsWith(prefix)) {
-            return true;
-          }
-        }
+  protected void fireConfigChange(final ConfigChangeEvent changeEvent) {
+    for (ConfigChangeListener listener : m_listenerIndex.findInterestedListeners(changeEvent.changedKeys())) {
+      ListenerDispatcher dispatcher = m_dispatchers.get(listener);
+      //null if removed meanwhile
+      if (dispatcher != null) {
+        dispatcher.dispatch(changeEvent);
       }
     }
-
-    return false;
   }
 
   List<ConfigChange> calcPropertyChanges(String namespace, Properties previous,
@@ -504,35 +463,155 @@ public abstract class AbstractConfig implements Config {
       current =  propertiesFactory.getPropertiesInstance();
     }
 
-    Set<String> previousKeys = previous.stringPropertyNames();
-    Set<String> currentKeys = current.stringPropertyNames();
+    //a single pass over each side, without building any key set
+    List<ConfigChange> changes = Lists.newArrayList();
 
-    Set<String> commonKeys = Sets.intersection(previousKeys, currentKeys);
-    Set<String> newKeys = Sets.difference(currentKeys, commonKeys);
-    Set<String> removedKeys = Sets.difference(previousKeys, commonKeys);
+    for (Object key : keysOf(current)) {
+      if (!(key instanceof String)) {
+        continue;
+      }
+      String currentKey = (String) key;
+      String currentValue = current.getProperty(currentKey);
+      String previousValue = previous.getProperty(currentKey);
+      if (previousValue == null) {
+        changes.add(new ConfigChange(namespace, currentKey, null, currentValue, PropertyChangeType.ADDED));
+      } else if (!previousValue.equals(currentValue)) {
+        changes.add(new ConfigChange(namespace, currentKey, previousValue, currentValue,
+            PropertyChangeType.MODIFIED));
+      }
+    }
 
-    List<ConfigChange> changes = Lists.newArrayList();
+    for (Object key : keysOf(previous)) {
+      if (!(key instanceof String)) {
+        continue;
+      }
+      String previousKey = (String) key;
+      if (current.getProperty(previousKey) == null) {
+        changes.add(new ConfigChange(namespace, previousKey, previous.getProperty(previousKey), null,
+            PropertyChangeType.DELETED));
+      }
+    }
+
+    return changes;
+  }
 
-    for (String newKey : newKeys) {
-      changes.add(new ConfigChange(namespace, newKey, null, current.getProperty(newKey),
-          PropertyChangeType.ADDED));
+  private Collection<?> keysOf(Properties properties) {
+    //the property names of OrderedProperties are kept in order, while its key set is a copy
+    if (properties instanceof OrderedProperties) {
+      return properties.stringPropertyNames();
     }
+    return properties.keySet();
+  }
 
-    for (String removedKey : removedKeys) {
-      changes.add(new ConfigChange(namespace, removedKey, previous.getProperty(removedKey), null,
-          PropertyChangeType.DELETED));
+  /**
+   * The values parsed from one version of the config. It's replaced as a whole once the config is changed, so the
+   * readers never need a lock or an invalidation.
+   */
+  private static class ParsedValues {
+    //parser function or array delimiter -> property key -> parsed value
+    private final ConcurrentMap<Object, ConcurrentMap<String, Object>> m_values = Maps.newConcurrentMap();
+
+    ConcurrentMap<String, Object> of(Object type) {
+      ConcurrentMap<String, Object> values = m_values.get(type);
+      if (values == null) {
+        ConcurrentMap<String, Object> newValues = Maps.newConcurrentMap();
+        values = m_values.putIfAbsent(type, newValues);
+        if (values == null) {
+          values = newValues;
+        }
+      }
+      return values;
     }
+  }
 
-    for (String commonKey : commonKeys) {
-      String previousValue = previous.getProperty(commonKey);
-      String currentValue = current.getProperty(commonKey);
-      if (Objects.equal(previousValue, currentValue)) {
-        continue;
+  private static class BoundProperty<T> implements ConfigProperty<T> {
+    private final Config m_config;
+    private final String m_key;
+    private final Function<String, T> m_function;
+    private final T m_defaultValue;
+    private volatile T m_value;
+
+    BoundProperty(Config config, String key, Function<String, T> function, T defaultValue) {
+      m_config = config;
+      m_key = key;
+      m_function = function;
+      m_defaultValue = defaultValue;
+      m_value = defaultValue;
+    }
+
+    @Override
+    public String getKey() {
+      return m_key;
+    }
+
+    @Override
+    public T get() {
+      return m_value;
+    }
+
+    boolean isBoundWith(Function<String, ?> function, Object defaultValue) {
+      return m_function.equals(function) && Objects.equal(m_defaultValue, defaultValue);
+    }
+
+    //synchronized so that a refresh reading the older config never overwrites a later one
+    synchronized void refresh() {
+      m_value = m_config.getProperty(m_key, m_function, m_defaultValue);
+    }
+
+    @Override
+    public String toString() {
+      return m_key + "=" + m_value;
+    }
+  }
+
+  /**
+   * Delivers the change events to one listener in order, one at a time, while the listeners are still notified in
+   * parallel. So a listener takes at most one thread of the shared pool however frequently the config is changed.
+   */
+  private static class ListenerDispatcher implements Runnable {
+    private final ConfigChangeListener m_listener;
+    private final Queue<ConfigChangeEvent> m_events = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean m_scheduled = new AtomicBoolean(false);
+
+    ListenerDispatcher(ConfigChangeListener listener) {
+      m_listener = listener;
+    }
+
+    void dispatch(ConfigChangeEvent changeEvent) {
+      m_events.offer(changeEvent);
+      if (m_scheduled.compareAndSet(false, true)) {
+        m_executorService.execute(this);
       }
-      changes.add(new ConfigChange(namespace, commonKey, previousValue, currentValue,
-          PropertyChangeType.MODIFIED));
     }
 
-    return changes;
+    @Override
+    public void run() {
+      while (true) {
+        ConfigChangeEvent changeEvent;
+        while ((changeEvent = m_events.poll()) != null) {
+          notifyListener(changeEvent);
+        }
+        m_scheduled.set(false);
+        //check again, in case an event is offered after the last poll but saw the flag still set
+        if (m_events.isEmpty() || !m_scheduled.compareAndSet(false, true)) {
+          return;
+        }
+      }
+    }
+
+    private void notifyListener(ConfigChangeEvent changeEvent) {
+      String listenerName = m_listener.getClass().getName();
+      Transaction transaction = Tracer.newTransaction("Apollo.ConfigChangeListener", listenerName);
+      try {
+        m_listener.onChange(changeEvent);
+        transaction.setStatus(Transaction.SUCCESS);
+      } catch (Throwable ex) {
+        transaction.setStatus(ex);
+        Tracer.logError(ex);
+        logger.error("Failed to invoke config change listener {}", listenerName, ex);
+      } finally {
+        transaction.complete();
+      }
+    }
   }
 }
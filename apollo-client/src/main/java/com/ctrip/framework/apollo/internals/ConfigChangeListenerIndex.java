@@ -0,0 +1,231 @@
+package com.ctrip.framework.apollo.internals;
+
+import com.ctrip.framework.apollo.ConfigChangeListener;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The config change listeners indexed by their interested keys and key prefixes, so that finding the interested
+ * listeners of a change costs in proportion to the changed keys and the matches, rather than checking every
+ * listener against every changed key.
+ *
+ * <p>The index is rebuilt on registration, which is rare, and published as an immutable snapshot, so the lookups
+ * are lock free.</p>
+ */
+class ConfigChangeListenerIndex {
+  //guarded by this, in registration order
+  private final Map<ConfigChangeListener, Registration> m_registrations = Maps.newLinkedHashMap();
+  private volatile Snapshot m_snapshot = new Snapshot(Collections.<Registration>emptyList());
+
+  /**
+   * @return false if the listener is registered already, in which case its interests are not changed
+   */
+  synchronized boolean add(ConfigChangeListener listener, Set<String> interestedKeys,
+      Set<String> interestedKeyPrefixes) {
+    if (m_registrations.containsKey(listener)) {
+      return false;
+    }
+    m_registrations.put(listener, new Registration(listener, interestedKeys, interestedKeyPrefixes));
+    m_snapshot = new Snapshot(Lists.newArrayList(m_registrations.values()));
+    return true;
+  }
+
+  synchronized boolean remove(ConfigChangeListener listener) {
+    if (m_registrations.remove(listener) == null) {
+      return false;
+    }
+    m_snapshot = new Snapshot(Lists.newArrayList(m_registrations.values()));
+    return true;
+  }
+
+  /**
+   * @return the listeners interested in any of the changed keys, in registration order
+   */
+  List<ConfigChangeListener> findInterestedListeners(Set<String> changedKeys) {
+    return m_snapshot.findInterestedListeners(changedKeys);
+  }
+
+  private static class Registration {
+    private final ConfigChangeListener listener;
+    private final Set<String> interestedKeys;
+    private final Set<String> interestedKeyPrefixes;
+
+    Registration(ConfigChangeListener listener, Set<String> interestedKeys, Set<String> interestedKeyPrefixes) {
+      this.listener = listener;
+      this.interestedKeys = interestedKeys == null ? Collections.<String>emptySet() : interestedKeys;
+      this.interestedKeyPrefixes =
+          interestedKeyPrefixes == null ? Collections.<String>emptySet() : interestedKeyPrefixes;
+    }
+
+    // no interested keys means interested in all keys
+    boolean isInterestedInAllKeys() {
+      return interestedKeys.isEmpty() && interestedKeyPrefixes.isEmpty();
+    }
+  }
+
+  private static class Snapshot {
+    private final ConfigChangeListener[] listeners;
+    //the positions of the listeners interested in all keys
+    private final int[] allKeysListeners;
+    //interested key -> the positions of the listeners
+    private final Map<String, int[]> keyListeners;
+    //the trie of the interested key prefixes
+    private final PrefixNode prefixRoot;
+    //the number of the listeners with interested keys or key prefixes
+    private final int indexedListenerCount;
+
+    Snapshot(List<Registration> registrations) {
+      listeners = new ConfigChangeListener[registrations.size()];
+      List<Integer> allKeys = Lists.newArrayList();
+      Map<String, List<Integer>> keys = Maps.newHashMap();
+      prefixRoot = new PrefixNode();
+      int indexed = 0;
+
+      for (int i = 0; i < registrations.size(); i++) {
+        Registration registration = registrations.get(i);
+        listeners[i] = registration.listener;
+        if (registration.isInterestedInAllKeys()) {
+          allKeys.add(i);
+          continue;
+        }
+        indexed++;
+        for (String key : registration.interestedKeys) {
+          List<Integer> positions = keys.get(key);
+          if (positions == null) {
+            positions = Lists.newArrayList();
+            keys.put(key, positions);
+          }
+          positions.add(i);
+        }
+        for (String prefix : registration.interestedKeyPrefixes) {
+          prefixRoot.add(prefix, i);
+        }
+      }
+
+      allKeysListeners = Ints.toArray(allKeys);
+      keyListeners = Maps.newHashMapWithExpectedSize(keys.size());
+      for (Map.Entry<String, List<Integer>> entry : keys.entrySet()) {
+        keyListeners.put(entry.getKey(), Ints.toArray(entry.getValue()));
+      }
+      prefixRoot.seal();
+      indexedListenerCount = indexed;
+    }
+
+    List<ConfigChangeListener> findInterestedListeners(Set<String> changedKeys) {
+      if (listeners.length == 0) {
+        return Collections.emptyList();
+      }
+
+      BitSet matched = new BitSet(listeners.length);
+      for (int position : allKeysListeners) {
+        matched.set(position);
+      }
+
+      int remaining = indexedListenerCount;
+      if (remaining > 0 && !keyListeners.isEmpty()) {
+        //walk through the smaller side
+        if (changedKeys.size() > keyListeners.size()) {
+          for (Map.Entry<String, int[]> entry : keyListeners.entrySet()) {
+            if (changedKeys.contains(entry.getKey())) {
+              remaining -= mark(matched, entry.getValue());
+            }
+          }
+        } else {
+          for (String changedKey : changedKeys) {
+            int[] positions = keyListeners.get(changedKey);
+            if (positions != null) {
+              remaining -= mark(matched, positions);
+            }
+          }
+        }
+      }
+
+      if (remaining > 0 && !prefixRoot.isEmpty()) {
+        for (String changedKey : changedKeys) {
+          remaining -= prefixRoot.markMatches(changedKey, matched);
+          if (remaining == 0) {
+            break;
+          }
+        }
+      }
+
+      List<ConfigChangeListener> result = Lists.newArrayListWithCapacity(matched.cardinality());
+      for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+        result.add(listeners[i]);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * @return the number of the newly matched listeners
+   */
+  private static int mark(BitSet matched, int[] positions) {
+    int count = 0;
+    for (int position : positions) {
+      if (!matched.get(position)) {
+        matched.set(position);
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static class PrefixNode {
+    private Map<Character, PrefixNode> children = Maps.newHashMap();
+    //the positions of the listeners whose prefix ends at this node
+    private List<Integer> positionList = Lists.newArrayList();
+    private int[] positions;
+
+    void add(String prefix, int position) {
+      PrefixNode node = this;
+      for (int i = 0; i < prefix.length(); i++) {
+        Character c = prefix.charAt(i);
+        PrefixNode child = node.children.get(c);
+        if (child == null) {
+          child = new PrefixNode();
+          node.children.put(c, child);
+        }
+        node = child;
+      }
+      node.positionList.add(position);
+    }
+
+    void seal() {
+      positions = Ints.toArray(positionList);
+      positionList = null;
+      for (PrefixNode child : children.values()) {
+        child.seal();
+      }
+    }
+
+    boolean isEmpty() {
+      return positions.length == 0 && children.isEmpty();
+    }
+
+    /**
+     * Walk down along the key, every node passed by is a prefix of the key.
+     *
+     * @return the number of the newly matched listeners
+     */
+    int markMatches(String key, BitSet matched) {
+      int count = mark(matched, positions);
+      PrefixNode node = this;
+      for (int i = 0; i < key.length(); i++) {
+        node = node.children.get(key.charAt(i));
+        if (node == null) {
+          break;
+        }
+        count += mark(matched, node.positions);
+      }
+      return count;
+    }
+  }
+}
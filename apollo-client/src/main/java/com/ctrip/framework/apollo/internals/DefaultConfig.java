@@ -4,12 +4,14 @@ import com.ctrip.framework.apollo.enums.ConfigSourceType;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
@@ -22,6 +24,7 @@ import com.ctrip.framework.apollo.model.ConfigChangeEvent;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.util.ExceptionUtil;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.RateLimiter;
 
 
@@ -30,6 +33,9 @@ import com.google.common.util.concurrent.RateLimiter;
  */
 public class DefaultConfig extends AbstractConfig implements RepositoryChangeListener {
   private static final Logger logger = LoggerFactory.getLogger(DefaultConfig.class);
+  //the live instances, so that the snapshots could be rebuilt when system properties are changed
+  private static final Set<DefaultConfig> s_instances =
+      Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<DefaultConfig, Boolean>()));
   private final String m_namespace;
   private final Properties m_resourceProperties;
   private final AtomicReference<Properties> m_configProperties;
@@ -37,6 +43,7 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
   private final RateLimiter m_warnLogRateLimiter;
 
   private volatile ConfigSourceType m_sourceType = ConfigSourceType.NONE;
+  private volatile PropertiesSnapshot m_snapshot;
 
   /**
    * Constructor.
@@ -50,9 +57,25 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
     m_configRepository = configRepository;
     m_configProperties = new AtomicReference<>();
     m_warnLogRateLimiter = RateLimiter.create(0.017); // 1 warning log output per minute
+    m_snapshot = buildSnapshot(null);
+    s_instances.add(this);
     initialize();
   }
 
+  /**
+   * Rebuild the property snapshots of all the config instances, should be called after system properties are changed
+   * at runtime, as system properties are only read when the snapshots are built.
+   */
+  public static void refreshSystemProperties() {
+    List<DefaultConfig> instances;
+    synchronized (s_instances) {
+      instances = Lists.newArrayList(s_instances);
+    }
+    for (DefaultConfig instance : instances) {
+      instance.rebuildSnapshot();
+    }
+  }
+
   private void initialize() {
     try {
       updateConfig(m_configRepository.getConfig(), m_configRepository.getSourceType());
@@ -69,29 +92,10 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
 
   @Override
   public String getProperty(String key, String defaultValue) {
-    // step 1: check system properties, i.e. -Dkey=value
-    String value = System.getProperty(key);
-
-    // step 2: check local cached properties file
-    if (value == null && m_configProperties.get() != null) {
-      value = m_configProperties.get().getProperty(key);
-    }
-
-    /**
-     * step 3: check env variable, i.e. PATH=...
-     * normally system environment variables are in UPPERCASE, however there might be exceptions.
-     * so the caller should provide the key in the right case
-     */
-    if (value == null) {
-      value = System.getenv(key);
-    }
-
-    // step 4: check properties file from classpath
-    if (value == null && m_resourceProperties != null) {
-      value = m_resourceProperties.getProperty(key);
-    }
+    PropertiesSnapshot snapshot = m_snapshot;
+    String value = snapshot.properties.get(key);
 
-    if (value == null && m_configProperties.get() == null && m_warnLogRateLimiter.tryAcquire()) {
+    if (value == null && !snapshot.configPropertiesLoaded && m_warnLogRateLimiter.tryAcquire()) {
       logger.warn("Could not load config for namespace {} from Apollo, please check whether the configs are released in Apollo! Return default value now!", m_namespace);
     }
 
@@ -128,7 +132,11 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
 
   @Override
   public synchronized void onRepositoryChange(String namespace, Properties newProperties) {
-    if (newProperties.equals(m_configProperties.get())) {
+    Properties previousProperties = m_configProperties.get();
+    List<ConfigChange> configChanges = calcPropertyChanges(m_namespace, previousProperties, newProperties);
+
+    //the diff tells whether anything is changed, so the properties are not compared beforehand
+    if (configChanges.isEmpty() && previousProperties != null) {
       return;
     }
 
@@ -136,13 +144,16 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
     Properties newConfigProperties = propertiesFactory.getPropertiesInstance();
     newConfigProperties.putAll(newProperties);
 
-    Map<String, ConfigChange> actualChanges = updateAndCalcConfigChanges(newConfigProperties, sourceType);
+    Map<String, ConfigChange> actualChanges =
+        updateAndCalcConfigChanges(configChanges, newConfigProperties, sourceType);
 
     //check double checked result
     if (actualChanges.isEmpty()) {
       return;
     }
 
+    refreshBoundProperties(actualChanges.keySet());
+
     this.fireConfigChange(new ConfigChangeEvent(m_namespace, actualChanges));
 
     Tracer.logEvent("Apollo.Client.ConfigChanges", m_namespace);
@@ -151,30 +162,64 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
   private void updateConfig(Properties newConfigProperties, ConfigSourceType sourceType) {
     m_configProperties.set(newConfigProperties);
     m_sourceType = sourceType;
+    m_snapshot = buildSnapshot(newConfigProperties);
   }
 
-  private Map<String, ConfigChange> updateAndCalcConfigChanges(Properties newConfigProperties,
-      ConfigSourceType sourceType) {
-    List<ConfigChange> configChanges =
-        calcPropertyChanges(m_namespace, m_configProperties.get(), newConfigProperties);
+  private synchronized void rebuildSnapshot() {
+    m_snapshot = buildSnapshot(m_configProperties.get());
+    clearConfigCache();
+    refreshBoundProperties();
+  }
 
+  /**
+   * Merge all the config sources, so that the reads don't need to check them one by one.
+   * The priority from high to low is:
+   * <ol>
+   *   <li>system properties, i.e. -Dkey=value</li>
+   *   <li>local cached properties file, i.e. the configs from Apollo</li>
+   *   <li>env variables, i.e. PATH=..., normally they are in UPPERCASE, however there might be exceptions, so the
+   *   caller should provide the key in the right case</li>
+   *   <li>properties file from classpath</li>
+   * </ol>
+   */
+  private PropertiesSnapshot buildSnapshot(Properties configProperties) {
+    Map<String, String> properties = new HashMap<>();
+    putAll(properties, m_resourceProperties);
+    properties.putAll(System.getenv());
+    putAll(properties, configProperties);
+    putAll(properties, System.getProperties());
+    return new PropertiesSnapshot(ImmutableMap.copyOf(properties), configProperties != null);
+  }
+
+  private void putAll(Map<String, String> target, Properties source) {
+    if (source == null) {
+      return;
+    }
+    for (String key : source.stringPropertyNames()) {
+      String value = source.getProperty(key);
+      if (value != null) {
+        target.put(key, value);
+      }
+    }
+  }
+
+  private Map<String, ConfigChange> updateAndCalcConfigChanges(List<ConfigChange> configChanges,
+      Properties newConfigProperties, ConfigSourceType sourceType) {
     ImmutableMap.Builder<String, ConfigChange> actualChanges =
         new ImmutableMap.Builder<>();
 
     /** === Double check since DefaultConfig has multiple config sources ==== **/
 
-    //1. use getProperty to update configChanges's old value
-    for (ConfigChange change : configChanges) {
-      change.setOldValue(this.getProperty(change.getPropertyName(), change.getOldValue()));
-    }
-
-    //2. update m_configProperties
+    //1. update m_configProperties, the snapshots before and after have all the config sources resolved
+    PropertiesSnapshot previousSnapshot = m_snapshot;
     updateConfig(newConfigProperties, sourceType);
     clearConfigCache();
+    PropertiesSnapshot currentSnapshot = m_snapshot;
 
-    //3. use getProperty to update configChange's new value and calc the final changes
+    //2. use the snapshots to update configChange's old and new value and calc the final changes
     for (ConfigChange change : configChanges) {
-      change.setNewValue(this.getProperty(change.getPropertyName(), change.getNewValue()));
+      change.setOldValue(previousSnapshot.getProperty(change.getPropertyName(), change.getOldValue()));
+      change.setNewValue(currentSnapshot.getProperty(change.getPropertyName(), change.getNewValue()));
       switch (change.getChangeType()) {
         case ADDED:
           if (Objects.equals(change.getOldValue(), change.getNewValue())) {
@@ -231,4 +276,19 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
 
     return properties;
   }
+
+  private static class PropertiesSnapshot {
+    private final Map<String, String> properties;
+    private final boolean configPropertiesLoaded;
+
+    PropertiesSnapshot(Map<String, String> properties, boolean configPropertiesLoaded) {
+      this.properties = properties;
+      this.configPropertiesLoaded = configPropertiesLoaded;
+    }
+
+    String getProperty(String key, String defaultValue) {
+      String value = properties.get(key);
+      return value == null ? defaultValue : value;
+    }
+  }
 }
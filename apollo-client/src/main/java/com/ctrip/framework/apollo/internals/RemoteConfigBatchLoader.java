@@ -0,0 +1,284 @@
+package com.ctrip.framework.apollo.internals;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.core.signature.Signature;
+import com.ctrip.framework.apollo.core.utils.StringUtils;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.ctrip.framework.apollo.util.http.HttpRequest;
+import com.ctrip.framework.apollo.util.http.HttpResponse;
+import com.ctrip.framework.apollo.util.http.HttpUtil;
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.escape.Escaper;
+import com.google.common.net.UrlEscapers;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads the configs of multiple namespaces from config service in one request, so that the remote config
+ * repositories initialized or notified together don't have to query config service one by one.
+ *
+ * <p>The loaded configs are kept until the repository of each namespace consumes it in its next sync.</p>
+ */
+public class RemoteConfigBatchLoader {
+  private static final Logger logger = LoggerFactory.getLogger(RemoteConfigBatchLoader.class);
+  private static final Joiner.MapJoiner MAP_JOINER = Joiner.on("&").withKeyValueSeparator("=");
+  private static final Escaper pathEscaper = UrlEscapers.urlPathSegmentEscaper();
+  private static final Escaper queryParamEscaper = UrlEscapers.urlFormParameterEscaper();
+  //the prefetched configs not consumed in time are considered stale
+  private static final long PREFETCHED_CONFIG_EXPIRE_TIME_IN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+  //no more than the default max namespaces config service accepts in one query
+  private static final int MAX_NAMESPACES_PER_QUERY = 100;
+  //keep the url well below the 8KB request header limit of most web servers
+  private static final int MAX_NAMESPACES_QUERY_PARAM_LENGTH = 4096;
+  private static final Gson GSON = new Gson();
+
+  private final HttpUtil m_httpUtil;
+  private final ConfigUtil m_configUtil;
+  private final Type m_responseType;
+  private final ConcurrentMap<String, PrefetchedConfig> m_prefetchedConfigs;
+  private final Set<String> m_loadedNamespaces;
+  private volatile boolean m_batchQueryUnsupported = false;
+
+  public RemoteConfigBatchLoader() {
+    m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
+    m_responseType = new TypeToken<List<ApolloConfig>>() {
+    }.getType();
+    m_prefetchedConfigs = Maps.newConcurrentMap();
+    m_loadedNamespaces = Sets.newConcurrentHashSet();
+  }
+
+  /**
+   * Prefetch the configs of the namespaces which are about to be initialized, e.g. the namespaces of the
+   * property sources. The namespaces already loaded are skipped.
+   *
+   * @param namespaces the namespaces
+   */
+  public void prefetch(Collection<String> namespaces) {
+    Map<String, ApolloConfig> previousConfigs = Maps.newLinkedHashMap();
+    for (String namespace : namespaces) {
+      if (!m_loadedNamespaces.contains(namespace)) {
+        previousConfigs.put(namespace, null);
+      }
+    }
+    prefetch(previousConfigs, null, null);
+  }
+
+  /**
+   * Prefetch the configs of the namespaces which are notified together.
+   *
+   * @param previousConfigs the configs the repositories hold currently, by namespace
+   * @param preferredService the config service to access first, e.g. the one notifies the client
+   * @param remoteMessages the notification messages
+   */
+  void prefetch(Map<String, ApolloConfig> previousConfigs, ServiceDTO preferredService,
+                ApolloNotificationMessages remoteMessages) {
+    //no need to batch a single namespace
+    if (!m_configUtil.isConfigBatchQueryEnabled() || m_batchQueryUnsupported || previousConfigs.size() < 2) {
+      return;
+    }
+
+    for (Map<String, ApolloConfig> chunk : partition(previousConfigs)) {
+      if (m_batchQueryUnsupported) {
+        return;
+      }
+      if (chunk.size() > 1) {
+        doPrefetch(chunk, preferredService, remoteMessages);
+      }
+    }
+  }
+
+  private void doPrefetch(Map<String, ApolloConfig> previousConfigs, ServiceDTO preferredService,
+                          ApolloNotificationMessages remoteMessages) {
+    String appId = m_configUtil.getAppId();
+    String cluster = m_configUtil.getCluster();
+    String secret = m_configUtil.getAccessKeySecret();
+
+    Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "queryConfigs");
+    try {
+      ServiceDTO configService = preferredService != null ? preferredService : randomConfigService();
+      if (configService == null) {
+        transaction.setStatus(Transaction.SUCCESS);
+        return;
+      }
+
+      String url = assembleQueryConfigsUrl(configService.getHomepageUrl(), appId, cluster,
+          m_configUtil.getDataCenter(), previousConfigs, remoteMessages);
+      transaction.addData("Url", url);
+      logger.debug("Loading configs from {}", url);
+
+      HttpRequest request = new HttpRequest(url);
+      if (!StringUtils.isBlank(secret)) {
+        Map<String, String> headers = Signature.buildHttpHeaders(url, appId, secret);
+        request.setHeaders(headers);
+      }
+
+      HttpResponse<List<ApolloConfig>> response = m_httpUtil.doGet(request, m_responseType);
+      transaction.addData("StatusCode", response.getStatusCode());
+
+      List<ApolloConfig> loadedConfigs = response.getBody();
+      if (loadedConfigs != null) {
+        long loadedTime = System.currentTimeMillis();
+        for (ApolloConfig loadedConfig : loadedConfigs) {
+          String namespace = loadedConfig.getNamespaceName();
+          if (namespace == null || !previousConfigs.containsKey(namespace)) {
+            continue;
+          }
+          ApolloConfig previousConfig = previousConfigs.get(namespace);
+          //the config is not modified if it's returned without configurations
+          ApolloConfig currentConfig = loadedConfig.getConfigurations() == null ? previousConfig : loadedConfig;
+          if (currentConfig != null) {
+            m_prefetchedConfigs.put(namespace, new PrefetchedConfig(previousConfig, currentConfig, loadedTime));
+          }
+        }
+      }
+
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (ApolloConfigStatusCodeException ex) {
+      //the config service doesn't support batch query, so load the configs one by one
+      if (ex.getStatusCode() == 404 || ex.getStatusCode() == 405) {
+        m_batchQueryUnsupported = true;
+      }
+      Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
+      transaction.setStatus(ex);
+      logger.warn("Batch load configs failed, will load them one by one, reason: {}",
+          ExceptionUtil.getDetailMessage(ex));
+    } catch (Throwable ex) {
+      Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
+      transaction.setStatus(ex);
+      logger.warn("Batch load configs failed, will load them one by one, reason: {}",
+          ExceptionUtil.getDetailMessage(ex));
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  /**
+   * Take the prefetched config of the namespace.
+   *
+   * @param namespace the namespace
+   * @param previousConfig the config the repository holds currently
+   * @return the prefetched config, or null if there is none or it's not based on the previous config
+   */
+  ApolloConfig consume(String namespace, ApolloConfig previousConfig) {
+    m_loadedNamespaces.add(namespace);
+    PrefetchedConfig prefetchedConfig = m_prefetchedConfigs.remove(namespace);
+    if (prefetchedConfig == null) {
+      return null;
+    }
+    //the repository is refreshed by itself in the meantime, or the prefetched config is too old
+    if (prefetchedConfig.previousConfig != previousConfig || System.currentTimeMillis() - prefetchedConfig
+        .loadedTime > PREFETCHED_CONFIG_EXPIRE_TIME_IN_MILLIS) {
+      return null;
+    }
+    return prefetchedConfig.currentConfig;
+  }
+
+  /**
+   * Split the namespaces into chunks, so that each query is accepted by config service and its url is not too long
+   */
+  List<Map<String, ApolloConfig>> partition(Map<String, ApolloConfig> previousConfigs) {
+    List<Map<String, ApolloConfig>> chunks = Lists.newArrayList();
+    Map<String, ApolloConfig> chunk = Maps.newLinkedHashMap();
+    int chunkQueryParamLength = 0;
+    for (Map.Entry<String, ApolloConfig> entry : previousConfigs.entrySet()) {
+      //the escaped "namespace":"releaseKey", plus the escaped separator
+      int queryParamLength = queryParamEscaper.escape(GSON.toJson(entry.getKey()) + ":"
+          + GSON.toJson(releaseKey(entry.getValue()))).length() + 3;
+      if (!chunk.isEmpty() && (chunk.size() >= MAX_NAMESPACES_PER_QUERY
+          || chunkQueryParamLength + queryParamLength > MAX_NAMESPACES_QUERY_PARAM_LENGTH)) {
+        chunks.add(chunk);
+        chunk = Maps.newLinkedHashMap();
+        chunkQueryParamLength = 0;
+      }
+      chunk.put(entry.getKey(), entry.getValue());
+      chunkQueryParamLength += queryParamLength;
+    }
+    if (!chunk.isEmpty()) {
+      chunks.add(chunk);
+    }
+    return chunks;
+  }
+
+  String assembleQueryConfigsUrl(String uri, String appId, String cluster, String dataCenter,
+                                 Map<String, ApolloConfig> previousConfigs,
+                                 ApolloNotificationMessages remoteMessages) {
+    String path = "configs/%s/%s";
+    List<String> pathParams = Lists.newArrayList(pathEscaper.escape(appId), pathEscaper.escape(cluster));
+    Map<String, String> queryParams = Maps.newLinkedHashMap();
+
+    Map<String, String> releaseKeys = Maps.newLinkedHashMap();
+    for (Map.Entry<String, ApolloConfig> entry : previousConfigs.entrySet()) {
+      releaseKeys.put(entry.getKey(), releaseKey(entry.getValue()));
+    }
+    queryParams.put("namespaces", queryParamEscaper.escape(GSON.toJson(releaseKeys)));
+
+    if (!Strings.isNullOrEmpty(dataCenter)) {
+      queryParams.put("dataCenter", queryParamEscaper.escape(dataCenter));
+    }
+
+    String localIp = m_configUtil.getLocalIp();
+    if (!Strings.isNullOrEmpty(localIp)) {
+      queryParams.put("ip", queryParamEscaper.escape(localIp));
+    }
+
+    if (remoteMessages != null) {
+      queryParams.put("messages", queryParamEscaper.escape(GSON.toJson(remoteMessages)));
+    }
+
+    String pathExpanded = String.format(path, pathParams.toArray()) + "?" + MAP_JOINER.join(queryParams);
+
+    if (!uri.endsWith("/")) {
+      uri += "/";
+    }
+    return uri + pathExpanded;
+  }
+
+  private static String releaseKey(ApolloConfig config) {
+    return config == null ? "" : config.getReleaseKey();
+  }
+
+  private ServiceDTO randomConfigService() {
+    //the locator is not initialized until the batch query is needed, as it accesses the meta server
+    ConfigServiceLocator serviceLocator = ApolloInjector.getInstance(ConfigServiceLocator.class);
+    List<ServiceDTO> configServices = Lists.newArrayList(serviceLocator.getConfigServices());
+    if (configServices.isEmpty()) {
+      return null;
+    }
+    Collections.shuffle(configServices);
+    return configServices.get(0);
+  }
+
+  private static class PrefetchedConfig {
+    private final ApolloConfig previousConfig;
+    private final ApolloConfig currentConfig;
+    private final long loadedTime;
+
+    PrefetchedConfig(ApolloConfig previousConfig, ApolloConfig currentConfig, long loadedTime) {
+      this.previousConfig = previousConfig;
+      this.currentConfig = currentConfig;
+      this.loadedTime = loadedTime;
+    }
+  }
+}
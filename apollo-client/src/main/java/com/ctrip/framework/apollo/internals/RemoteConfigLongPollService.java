@@ -2,6 +2,7 @@ package com.ctrip.framework.apollo.internals;
 
 import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.ctrip.framework.apollo.core.dto.ServiceDTO;
@@ -12,10 +13,12 @@ import com.ctrip.framework.apollo.core.signature.Signature;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.core.utils.StringUtils;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.ctrip.framework.apollo.util.http.HttpEventHandler;
 import com.ctrip.framework.apollo.util.http.HttpRequest;
 import com.ctrip.framework.apollo.util.http.HttpResponse;
 import com.ctrip.framework.apollo.util.http.HttpUtil;
@@ -54,11 +57,15 @@ public class RemoteConfigLongPollService {
   private static final long INIT_NOTIFICATION_ID = ConfigConsts.NOTIFICATION_ID_PLACEHOLDER;
   //90 seconds, should be longer than server side's long polling timeout, which is now 60 seconds
   private static final int LONG_POLLING_READ_TIMEOUT = 90 * 1000;
+  //90 seconds, should be longer than server side's notification stream heartbeat interval, which is now 30 seconds
+  private static final int NOTIFICATION_STREAM_READ_TIMEOUT = 90 * 1000;
   private final ExecutorService m_longPollingService;
   private final AtomicBoolean m_longPollingStopped;
   private SchedulePolicy m_longPollFailSchedulePolicyInSecond;
   private RateLimiter m_longPollRateLimiter;
   private final AtomicBoolean m_longPollStarted;
+  //false if the config service doesn't support notification stream, then always fall back to long polling
+  private volatile boolean m_notificationStreamSupported;
   private final Multimap<String, RemoteConfigRepository> m_longPollNamespaces;
   private final ConcurrentMap<String, Long> m_notifications;
   private final Map<String, ApolloNotificationMessages> m_remoteNotificationMessages;//namespaceName -> watchedKey -> notificationId
@@ -66,6 +73,7 @@ public class RemoteConfigLongPollService {
   private static final Gson GSON = new Gson();
   private ConfigUtil m_configUtil;
   private HttpUtil m_httpUtil;
+  private RemoteConfigBatchLoader m_batchLoader;
   private ConfigServiceLocator m_serviceLocator;
 
   /**
@@ -77,6 +85,7 @@ public class RemoteConfigLongPollService {
     m_longPollingService = Executors.newSingleThreadExecutor(
         ApolloThreadFactory.create("RemoteConfigLongPollService", true));
     m_longPollStarted = new AtomicBoolean(false);
+    m_notificationStreamSupported = true;
     m_longPollNamespaces =
         Multimaps.synchronizedSetMultimap(HashMultimap.<String, RemoteConfigRepository>create());
     m_notifications = Maps.newConcurrentMap();
@@ -85,6 +94,7 @@ public class RemoteConfigLongPollService {
     }.getType();
     m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
     m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
+    m_batchLoader = ApolloInjector.getInstance(RemoteConfigBatchLoader.class);
     m_serviceLocator = ApolloInjector.getInstance(ConfigServiceLocator.class);
     m_longPollRateLimiter = RateLimiter.create(m_configUtil.getLongPollQPS());
   }
@@ -139,6 +149,7 @@ public class RemoteConfigLongPollService {
   private void doLongPollingRefresh(String appId, String cluster, String dataCenter, String secret) {
     final Random random = new Random();
     ServiceDTO lastServiceDto = null;
+    boolean lastStreamFailed = false;
     while (!m_longPollingStopped.get() && !Thread.currentThread().isInterrupted()) {
       if (!m_longPollRateLimiter.tryAcquire(5, TimeUnit.SECONDS)) {
         //wait at most 5 seconds
@@ -147,7 +158,11 @@ public class RemoteConfigLongPollService {
         } catch (InterruptedException e) {
         }
       }
-      Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "pollNotification");
+      //fall back to long polling for one round if the stream failed, so that changes are not missed
+      boolean streaming = m_configUtil.isNotificationStreamEnabled() && m_notificationStreamSupported
+          && !lastStreamFailed;
+      Transaction transaction = Tracer.newTransaction("Apollo.ConfigService",
+          streaming ? "streamNotification" : "pollNotification");
       String url = null;
       try {
         if (lastServiceDto == null) {
@@ -155,6 +170,20 @@ public class RemoteConfigLongPollService {
           lastServiceDto = configServices.get(random.nextInt(configServices.size()));
         }
 
+        if (streaming) {
+          url = assembleNotificationStreamUrl(lastServiceDto.getHomepageUrl(), appId, cluster, dataCenter,
+              m_notifications);
+          transaction.addData("Url", url);
+          doStreamNotifications(lastServiceDto, url, appId, secret);
+          //the stream is closed by server, try to load balance when reconnecting
+          if (random.nextBoolean()) {
+            lastServiceDto = null;
+          }
+          m_longPollFailSchedulePolicyInSecond.success();
+          transaction.setStatus(Transaction.SUCCESS);
+          continue;
+        }
+
         url =
             assembleLongPollRefreshUrl(lastServiceDto.getHomepageUrl(), appId, cluster, dataCenter,
                 m_notifications);
@@ -163,10 +192,7 @@ public class RemoteConfigLongPollService {
 
         HttpRequest request = new HttpRequest(url);
         request.setReadTimeout(LONG_POLLING_READ_TIMEOUT);
-        if (!StringUtils.isBlank(secret)) {
-          Map<String, String> headers = Signature.buildHttpHeaders(url, appId, secret);
-          request.setHeaders(headers);
-        }
+        setSignatureHeaders(request, url, appId, secret);
 
         transaction.addData("Url", url);
 
@@ -186,6 +212,7 @@ public class RemoteConfigLongPollService {
           lastServiceDto = null;
         }
 
+        lastStreamFailed = false;
         m_longPollFailSchedulePolicyInSecond.success();
         transaction.addData("StatusCode", response.getStatusCode());
         transaction.setStatus(Transaction.SUCCESS);
@@ -193,6 +220,16 @@ public class RemoteConfigLongPollService {
         lastServiceDto = null;
         Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
         transaction.setStatus(ex);
+        if (streaming) {
+          lastStreamFailed = true;
+          if (isNotificationStreamUnsupported(ex)) {
+            m_notificationStreamSupported = false;
+          }
+          logger.warn("Notification stream failed, will fall back to long polling. appId: {}, cluster: {}, "
+                  + "namespaces: {}, notification stream url: {}, reason: {}", appId, cluster, assembleNamespaces(),
+              url, ExceptionUtil.getDetailMessage(ex));
+          continue;
+        }
         long sleepTimeInSecond = m_longPollFailSchedulePolicyInSecond.fail();
         logger.warn(
             "Long polling failed, will retry in {} seconds. appId: {}, cluster: {}, namespaces: {}, long polling url: {}, reason: {}",
@@ -208,28 +245,92 @@ public class RemoteConfigLongPollService {
     }
   }
 
+  private void doStreamNotifications(final ServiceDTO serviceDto, String url, String appId, String secret) {
+    logger.debug("Streaming notifications from {}", url);
+
+    HttpRequest request = new HttpRequest(url);
+    request.setReadTimeout(NOTIFICATION_STREAM_READ_TIMEOUT);
+    setSignatureHeaders(request, url, appId, secret);
+
+    m_httpUtil.doGetEventStream(request, m_responseType, new HttpEventHandler<List<ApolloConfigNotification>>() {
+      @Override
+      public boolean onEvent(List<ApolloConfigNotification> notifications) {
+        if (notifications != null) {
+          updateNotifications(notifications);
+          updateRemoteNotifications(notifications);
+          RemoteConfigLongPollService.this.notify(serviceDto, notifications);
+        }
+        return !m_longPollingStopped.get();
+      }
+    });
+  }
+
+  private boolean isNotificationStreamUnsupported(Throwable ex) {
+    if (!(ex instanceof ApolloConfigStatusCodeException)) {
+      return false;
+    }
+    int statusCode = ((ApolloConfigStatusCodeException) ex).getStatusCode();
+    //older config services or the ones with notification stream disabled
+    return statusCode == 404 || statusCode == 405;
+  }
+
+  private void setSignatureHeaders(HttpRequest request, String url, String appId, String secret) {
+    if (!StringUtils.isBlank(secret)) {
+      Map<String, String> headers = Signature.buildHttpHeaders(url, appId, secret);
+      request.setHeaders(headers);
+    }
+  }
+
   private void notify(ServiceDTO lastServiceDto, List<ApolloConfigNotification> notifications) {
     if (notifications == null || notifications.isEmpty()) {
       return;
     }
+    Map<RemoteConfigRepository, ApolloNotificationMessages> toBeNotified = Maps.newLinkedHashMap();
     for (ApolloConfigNotification notification : notifications) {
       String namespaceName = notification.getNamespaceName();
       //create a new list to avoid ConcurrentModificationException
-      List<RemoteConfigRepository> toBeNotified =
+      List<RemoteConfigRepository> repositories =
           Lists.newArrayList(m_longPollNamespaces.get(namespaceName));
       ApolloNotificationMessages originalMessages = m_remoteNotificationMessages.get(namespaceName);
       ApolloNotificationMessages remoteMessages = originalMessages == null ? null : originalMessages.clone();
       //since .properties are filtered out by default, so we need to check if there is any listener for it
-      toBeNotified.addAll(m_longPollNamespaces
+      repositories.addAll(m_longPollNamespaces
           .get(String.format("%s.%s", namespaceName, ConfigFileFormat.Properties.getValue())));
-      for (RemoteConfigRepository remoteConfigRepository : toBeNotified) {
-        try {
-          remoteConfigRepository.onLongPollNotified(lastServiceDto, remoteMessages);
-        } catch (Throwable ex) {
-          Tracer.logError(ex);
-        }
+      for (RemoteConfigRepository remoteConfigRepository : repositories) {
+        toBeNotified.put(remoteConfigRepository, remoteMessages);
       }
     }
+
+    prefetchConfigs(lastServiceDto, toBeNotified);
+
+    for (Map.Entry<RemoteConfigRepository, ApolloNotificationMessages> entry : toBeNotified.entrySet()) {
+      try {
+        entry.getKey().onLongPollNotified(lastServiceDto, entry.getValue());
+      } catch (Throwable ex) {
+        Tracer.logError(ex);
+      }
+    }
+  }
+
+  /**
+   * Load the configs of the namespaces notified together in one request, before the repositories sync.
+   */
+  private void prefetchConfigs(ServiceDTO lastServiceDto,
+                               Map<RemoteConfigRepository, ApolloNotificationMessages> toBeNotified) {
+    if (toBeNotified.size() < 2 || !m_configUtil.isConfigBatchQueryEnabled()) {
+      return;
+    }
+    Map<String, ApolloConfig> previousConfigs = Maps.newLinkedHashMap();
+    ApolloNotificationMessages remoteMessages = new ApolloNotificationMessages();
+    for (Map.Entry<RemoteConfigRepository, ApolloNotificationMessages> entry : toBeNotified.entrySet()) {
+      previousConfigs.put(entry.getKey().getNamespace(), entry.getKey().getApolloConfig());
+      remoteMessages.mergeFrom(entry.getValue());
+    }
+    try {
+      m_batchLoader.prefetch(previousConfigs, lastServiceDto, remoteMessages.isEmpty() ? null : remoteMessages);
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+    }
   }
 
   private void updateNotifications(List<ApolloConfigNotification> deltaNotifications) {
@@ -277,6 +378,16 @@ public class RemoteConfigLongPollService {
 
   String assembleLongPollRefreshUrl(String uri, String appId, String cluster, String dataCenter,
                                     Map<String, Long> notificationsMap) {
+    return assembleNotificationUrl(uri, "notifications/v2", appId, cluster, dataCenter, notificationsMap);
+  }
+
+  String assembleNotificationStreamUrl(String uri, String appId, String cluster, String dataCenter,
+                                       Map<String, Long> notificationsMap) {
+    return assembleNotificationUrl(uri, "notifications/v2/stream", appId, cluster, dataCenter, notificationsMap);
+  }
+
+  private String assembleNotificationUrl(String uri, String path, String appId, String cluster, String dataCenter,
+                                         Map<String, Long> notificationsMap) {
     Map<String, String> queryParams = Maps.newHashMap();
     queryParams.put("appId", queryParamEscaper.escape(appId));
     queryParams.put("cluster", queryParamEscaper.escape(cluster));
@@ -296,7 +407,7 @@ public class RemoteConfigLongPollService {
       uri += "/";
     }
 
-    return uri + "notifications/v2?" + params;
+    return uri + path + "?" + params;
   }
 
   String assembleNotifications(Map<String, Long> notificationsMap) {
@@ -5,7 +5,10 @@ import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfig;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.core.dto.ConfigurationChange;
 import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.core.enums.ConfigSyncType;
+import com.ctrip.framework.apollo.core.enums.ConfigurationChangeType;
 import com.ctrip.framework.apollo.core.schedule.ExponentialSchedulePolicy;
 import com.ctrip.framework.apollo.core.schedule.SchedulePolicy;
 import com.ctrip.framework.apollo.core.signature.Signature;
@@ -55,6 +58,7 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
   private final HttpUtil m_httpUtil;
   private final ConfigUtil m_configUtil;
   private final RemoteConfigLongPollService remoteConfigLongPollService;
+  private final RemoteConfigBatchLoader remoteConfigBatchLoader;
   private volatile AtomicReference<ApolloConfig> m_configCache;
   private final String m_namespace;
   private final static ScheduledExecutorService m_executorService;
@@ -82,6 +86,7 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
     m_serviceLocator = ApolloInjector.getInstance(ConfigServiceLocator.class);
     remoteConfigLongPollService = ApolloInjector.getInstance(RemoteConfigLongPollService.class);
+    remoteConfigBatchLoader = ApolloInjector.getInstance(RemoteConfigBatchLoader.class);
     m_longPollServiceDto = new AtomicReference<>();
     m_remoteMessages = new AtomicReference<>();
     m_loadConfigRateLimiter = RateLimiter.create(m_configUtil.getLoadConfigQPS());
@@ -163,6 +168,16 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
   }
 
   private ApolloConfig loadApolloConfig() {
+    //the config might be loaded together with other namespaces already
+    ApolloConfig prefetchedConfig = remoteConfigBatchLoader.consume(m_namespace, m_configCache.get());
+    if (prefetchedConfig != null) {
+      logger.debug("Loaded prefetched config for {}: {}", m_namespace, prefetchedConfig);
+      m_longPollServiceDto.set(null);
+      m_configNeedForceRefresh.set(false);
+      m_loadConfigFailSchedulePolicy.success();
+      return prefetchedConfig;
+    }
+
     if (!m_loadConfigRateLimiter.tryAcquire(5, TimeUnit.SECONDS)) {
       //wait at most 5 seconds
       try {
@@ -232,6 +247,10 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
 
           ApolloConfig result = response.getBody();
 
+          if (result != null && ConfigSyncType.INCREMENTAL_SYNC.getValue().equals(result.getConfigSyncType())) {
+            result = mergeConfigurationChanges(m_configCache.get(), result);
+          }
+
           logger.debug("Loaded config for {}: {}", m_namespace, result);
 
           return result;
@@ -283,6 +302,8 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
 
     if (previousConfig != null) {
       queryParams.put("releaseKey", queryParamEscaper.escape(previousConfig.getReleaseKey()));
+      //only the changes are needed as the client holds the previous release
+      queryParams.put("incrementalSync", "true");
     }
 
     if (!Strings.isNullOrEmpty(dataCenter)) {
@@ -309,6 +330,48 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     return uri + pathExpanded;
   }
 
+  /**
+   * Apply the changes the config service responds with to the config the client holds
+   *
+   * @param previousConfig the config the client holds
+   * @param result         the config with changes only
+   * @return the config with full configurations
+   */
+  ApolloConfig mergeConfigurationChanges(ApolloConfig previousConfig, ApolloConfig result) {
+    if (previousConfig == null) {
+      throw new ApolloConfigException(String.format(
+          "Config service responds with incremental changes while no config is held for namespace %s",
+          m_namespace));
+    }
+
+    Map<String, String> configurations = Maps.newLinkedHashMap(previousConfig.getConfigurations());
+    if (result.getConfigurationChanges() != null) {
+      for (ConfigurationChange change : result.getConfigurationChanges()) {
+        if (ConfigurationChangeType.DELETED.name().equals(change.getConfigurationChangeType())) {
+          configurations.remove(change.getKey());
+        } else {
+          configurations.put(change.getKey(), change.getNewValue());
+        }
+      }
+    }
+
+    ApolloConfig merged = new ApolloConfig(result.getAppId(), result.getCluster(), result.getNamespaceName(),
+        result.getReleaseKey());
+    merged.setConfigurations(configurations);
+    return merged;
+  }
+
+  String getNamespace() {
+    return m_namespace;
+  }
+
+  /**
+   * @return the config currently held, or null if not loaded yet
+   */
+  ApolloConfig getApolloConfig() {
+    return m_configCache.get();
+  }
+
   private void scheduleLongPollingRefresh() {
     remoteConfigLongPollService.submit(m_namespace, this);
   }
@@ -78,13 +78,13 @@ public class SimpleConfig extends AbstractConfig implements RepositoryChangeList
 
   @Override
   public synchronized void onRepositoryChange(String namespace, Properties newProperties) {
-    if (newProperties.equals(m_configProperties)) {
+    List<ConfigChange> changes = calcPropertyChanges(namespace, m_configProperties, newProperties);
+    //the diff tells whether anything is changed, so the properties are not compared beforehand
+    if (changes.isEmpty() && m_configProperties != null) {
       return;
     }
     Properties newConfigProperties = propertiesFactory.getPropertiesInstance();
     newConfigProperties.putAll(newProperties);
-
-    List<ConfigChange> changes = calcPropertyChanges(namespace, m_configProperties, newConfigProperties);
     Map<String, ConfigChange> changeMap = Maps.uniqueIndex(changes,
         new Function<ConfigChange, String>() {
           @Override
@@ -95,6 +95,7 @@ public class SimpleConfig extends AbstractConfig implements RepositoryChangeList
 
     updateConfig(newConfigProperties, m_configRepository.getSourceType());
     clearConfigCache();
+    refreshBoundProperties(changeMap.keySet());
 
     this.fireConfigChange(new ConfigChangeEvent(m_namespace, changeMap));
 
@@ -1,6 +1,7 @@
 package com.ctrip.framework.apollo.spring.config;
 
 import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.internals.RemoteConfigBatchLoader;
 import com.ctrip.framework.apollo.spring.property.AutoUpdateConfigChangeListener;
 import com.ctrip.framework.apollo.spring.util.SpringInjector;
 import com.ctrip.framework.apollo.util.ConfigUtil;
@@ -47,6 +48,8 @@ public class PropertySourcesProcessor implements BeanFactoryPostProcessor, Envir
   private final ConfigPropertySourceFactory configPropertySourceFactory = SpringInjector
       .getInstance(ConfigPropertySourceFactory.class);
   private final ConfigUtil configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+  private final RemoteConfigBatchLoader remoteConfigBatchLoader =
+      ApolloInjector.getInstance(RemoteConfigBatchLoader.class);
   private ConfigurableEnvironment environment;
 
   public static boolean addNamespaces(Collection<String> namespaces, int order) {
@@ -70,6 +73,9 @@ public class PropertySourcesProcessor implements BeanFactoryPostProcessor, Envir
     ImmutableSortedSet<Integer> orders = ImmutableSortedSet.copyOf(NAMESPACE_NAMES.keySet());
     Iterator<Integer> iterator = orders.iterator();
 
+    //load the configs of all the namespaces in one request if possible
+    remoteConfigBatchLoader.prefetch(Sets.newLinkedHashSet(NAMESPACE_NAMES.values()));
+
     while (iterator.hasNext()) {
       int order = iterator.next();
       for (String namespace : NAMESPACE_NAMES.get(order)) {
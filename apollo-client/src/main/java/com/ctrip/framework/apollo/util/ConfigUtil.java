@@ -32,7 +32,7 @@ public class ConfigUtil {
   //for on error retry
   private long onErrorRetryInterval = 1;//1 second
   private TimeUnit onErrorRetryIntervalTimeUnit = TimeUnit.SECONDS;//1 second
-  //for typed config cache of parser result, e.g. integer, double, long, etc.
+  //for typed config cache of parser result, e.g. integer, double, long, etc., not used any more
   private long maxConfigCacheSize = 500;//500 cache key
   private long configCacheExpireTime = 1;//1 minute
   private TimeUnit configCacheExpireTimeUnit = TimeUnit.MINUTES;//1 minute
@@ -40,6 +40,8 @@ public class ConfigUtil {
   private boolean autoUpdateInjectedSpringProperties = true;
   private final RateLimiter warnLogRateLimiter;
   private boolean propertiesOrdered = false;
+  private boolean notificationStreamEnabled = false;
+  private boolean configBatchQueryEnabled = false;
 
   public ConfigUtil() {
     warnLogRateLimiter = RateLimiter.create(0.017); // 1 warning log output per minute
@@ -52,6 +54,8 @@ public class ConfigUtil {
     initLongPollingInitialDelayInMills();
     initAutoUpdateInjectedSpringProperties();
     initPropertiesOrdered();
+    initNotificationStreamEnabled();
+    initConfigBatchQueryEnabled();
   }
 
   /**
@@ -273,14 +277,28 @@ public class ConfigUtil {
     }
   }
 
+  /**
+   * @deprecated the parsed values of the typed getters are kept per config version, so they are already bounded by
+   * the keys in the config and apollo.configCacheSize is not used any more
+   */
+  @Deprecated
   public long getMaxConfigCacheSize() {
     return maxConfigCacheSize;
   }
 
+  /**
+   * @deprecated the parsed values of the typed getters are dropped once the config is changed instead of expired, so
+   * the expire time is not used any more
+   */
+  @Deprecated
   public long getConfigCacheExpireTime() {
     return configCacheExpireTime;
   }
 
+  /**
+   * @deprecated see {@link #getConfigCacheExpireTime()}
+   */
+  @Deprecated
   public TimeUnit getConfigCacheExpireTimeUnit() {
     return configCacheExpireTimeUnit;
   }
@@ -339,4 +357,44 @@ public class ConfigUtil {
   public boolean isPropertiesOrderEnabled() {
     return propertiesOrdered;
   }
+
+  private void initNotificationStreamEnabled() {
+    // 1. Get from System Property
+    String enableNotificationStream = System.getProperty("apollo.notificationStreamEnabled");
+    if (Strings.isNullOrEmpty(enableNotificationStream)) {
+      // 2. Get from app.properties
+      enableNotificationStream = Foundation.app().getProperty("apollo.notificationStreamEnabled", null);
+    }
+    if (!Strings.isNullOrEmpty(enableNotificationStream)) {
+      notificationStreamEnabled = Boolean.parseBoolean(enableNotificationStream.trim());
+    }
+  }
+
+  /**
+   * Whether to receive notifications from the server-sent events stream instead of long polling,
+   * it falls back to long polling automatically if the config service doesn't support it.
+   */
+  public boolean isNotificationStreamEnabled() {
+    return notificationStreamEnabled;
+  }
+
+  private void initConfigBatchQueryEnabled() {
+    // 1. Get from System Property
+    String enableConfigBatchQuery = System.getProperty("apollo.configBatchQueryEnabled");
+    if (Strings.isNullOrEmpty(enableConfigBatchQuery)) {
+      // 2. Get from app.properties
+      enableConfigBatchQuery = Foundation.app().getProperty("apollo.configBatchQueryEnabled", null);
+    }
+    if (!Strings.isNullOrEmpty(enableConfigBatchQuery)) {
+      configBatchQueryEnabled = Boolean.parseBoolean(enableConfigBatchQuery.trim());
+    }
+  }
+
+  /**
+   * Whether to load the configs of namespaces initialized or notified together in one request,
+   * it falls back to loading them one by one automatically if the config service doesn't support it.
+   */
+  public boolean isConfigBatchQueryEnabled() {
+    return configBatchQueryEnabled;
+  }
 }
@@ -0,0 +1,15 @@
+package com.ctrip.framework.apollo.util.http;
+
+/**
+ * Handles the events received from a server-sent events stream.
+ *
+ * @param <T> the event data type
+ */
+public interface HttpEventHandler<T> {
+
+  /**
+   * @param event the event data
+   * @return true to keep reading the stream, false to close it
+   */
+  boolean onEvent(T event);
+}
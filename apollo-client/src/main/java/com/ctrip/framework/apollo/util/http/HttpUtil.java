@@ -5,16 +5,20 @@ import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
 import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.google.common.base.Function;
-import com.google.common.io.CharStreams;
+import com.google.common.io.ByteStreams;
 import com.google.gson.Gson;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.lang.reflect.Type;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -22,6 +26,9 @@ import java.util.Map;
 public class HttpUtil {
   private ConfigUtil m_configUtil;
   private static final Gson GSON = new Gson();
+  private static final String EVENT_STREAM_DATA_FIELD = "data:";
+  private static final String ACCEPT_ENCODING = "Accept-Encoding";
+  private static final String SUPPORTED_ENCODINGS = "gzip, deflate";
 
   /**
    * Constructor.
@@ -39,9 +46,9 @@ public class HttpUtil {
    * @throws ApolloConfigException if any error happened or response code is neither 200 nor 304
    */
   public <T> HttpResponse<T> doGet(HttpRequest httpRequest, final Class<T> responseType) {
-    Function<String, T> convertResponse = new Function<String, T>() {
+    Function<Reader, T> convertResponse = new Function<Reader, T>() {
       @Override
-      public T apply(String input) {
+      public T apply(Reader input) {
         return GSON.fromJson(input, responseType);
       }
     };
@@ -58,9 +65,9 @@ public class HttpUtil {
    * @throws ApolloConfigException if any error happened or response code is neither 200 nor 304
    */
   public <T> HttpResponse<T> doGet(HttpRequest httpRequest, final Type responseType) {
-    Function<String, T> convertResponse = new Function<String, T>() {
+    Function<Reader, T> convertResponse = new Function<Reader, T>() {
       @Override
-      public T apply(String input) {
+      public T apply(Reader input) {
         return GSON.fromJson(input, responseType);
       }
     };
@@ -69,55 +76,35 @@ public class HttpUtil {
   }
 
   private <T> HttpResponse<T> doGetWithSerializeFunction(HttpRequest httpRequest,
-                                                         Function<String, T> serializeFunction) {
-    InputStreamReader isr = null;
-    InputStreamReader esr = null;
+                                                         Function<Reader, T> serializeFunction) {
+    InputStream is = null;
+    InputStream es = null;
     int statusCode;
     try {
-      HttpURLConnection conn = (HttpURLConnection) new URL(httpRequest.getUrl()).openConnection();
-
-      conn.setRequestMethod("GET");
+      HttpURLConnection conn = openConnection(httpRequest);
 
       Map<String, String> headers = httpRequest.getHeaders();
-      if (headers != null && headers.size() > 0) {
-        for (Map.Entry<String, String> entry : headers.entrySet()) {
-          conn.setRequestProperty(entry.getKey(), entry.getValue());
-        }
-      }
-
-      int connectTimeout = httpRequest.getConnectTimeout();
-      if (connectTimeout < 0) {
-        connectTimeout = m_configUtil.getConnectTimeout();
+      if (headers == null || !headers.containsKey(ACCEPT_ENCODING)) {
+        conn.setRequestProperty(ACCEPT_ENCODING, SUPPORTED_ENCODINGS);
       }
 
-      int readTimeout = httpRequest.getReadTimeout();
-      if (readTimeout < 0) {
-        readTimeout = m_configUtil.getReadTimeout();
-      }
-
-      conn.setConnectTimeout(connectTimeout);
-      conn.setReadTimeout(readTimeout);
-
       conn.connect();
 
       statusCode = conn.getResponseCode();
-      String response;
 
       try {
-        isr = new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8);
-        response = CharStreams.toString(isr);
+        is = conn.getInputStream();
       } catch (IOException ex) {
         /**
          * according to https://docs.oracle.com/javase/7/docs/technotes/guides/net/http-keepalive.html,
          * we should clean up the connection by reading the response body so that the connection
          * could be reused.
          */
-        InputStream errorStream = conn.getErrorStream();
+        es = conn.getErrorStream();
 
-        if (errorStream != null) {
-          esr = new InputStreamReader(errorStream, StandardCharsets.UTF_8);
+        if (es != null) {
           try {
-            CharStreams.toString(esr);
+            ByteStreams.exhaust(es);
           } catch (IOException ioe) {
             //ignore
           }
@@ -132,9 +119,16 @@ public class HttpUtil {
       }
 
       if (statusCode == 200) {
-        return new HttpResponse<>(statusCode, serializeFunction.apply(response));
+        // parse the json from the decoded stream directly, so the payload is never held as a whole string
+        is = decode(is, conn.getContentEncoding());
+        T body = serializeFunction.apply(new InputStreamReader(is, StandardCharsets.UTF_8));
+        // consume the trailing bytes, e.g. the gzip trailer, so that the connection could be reused
+        ByteStreams.exhaust(is);
+        return new HttpResponse<>(statusCode, body);
       }
 
+      ByteStreams.exhaust(is);
+
       if (statusCode == 304) {
         return new HttpResponse<>(statusCode, null);
       }
@@ -143,17 +137,17 @@ public class HttpUtil {
     } catch (Throwable ex) {
       throw new ApolloConfigException("Could not complete get operation", ex);
     } finally {
-      if (isr != null) {
+      if (is != null) {
         try {
-          isr.close();
+          is.close();
         } catch (IOException ex) {
           // ignore
         }
       }
 
-      if (esr != null) {
+      if (es != null) {
         try {
-          esr.close();
+          es.close();
         } catch (IOException ex) {
           // ignore
         }
@@ -164,4 +158,111 @@ public class HttpUtil {
         String.format("Get operation failed for %s", httpRequest.getUrl()));
   }
 
+  private InputStream decode(InputStream is, String contentEncoding) throws IOException {
+    if (contentEncoding == null) {
+      return is;
+    }
+    contentEncoding = contentEncoding.trim();
+    if ("gzip".equalsIgnoreCase(contentEncoding) || "x-gzip".equalsIgnoreCase(contentEncoding)) {
+      return new GZIPInputStream(is);
+    }
+    if ("deflate".equalsIgnoreCase(contentEncoding)) {
+      return new InflaterInputStream(is);
+    }
+    return is;
+  }
+
+  /**
+   * Do get operation for a server-sent events stream, and hand each event's data to the handler until the stream
+   * is closed by the server or the handler.
+   *
+   * @param httpRequest the request, the read timeout should be longer than the server side heartbeat interval
+   * @param eventType   the event data type
+   * @param handler     the event handler
+   * @throws ApolloConfigException if any error happened or response code is not 200
+   */
+  public <T> void doGetEventStream(HttpRequest httpRequest, final Type eventType, HttpEventHandler<T> handler) {
+    HttpURLConnection conn = null;
+    BufferedReader reader = null;
+    try {
+      conn = openConnection(httpRequest);
+      conn.setRequestProperty("Accept", "text/event-stream");
+      conn.connect();
+
+      int statusCode = conn.getResponseCode();
+      if (statusCode != 200) {
+        throw new ApolloConfigStatusCodeException(statusCode,
+            String.format("Get event stream failed for %s", httpRequest.getUrl()));
+      }
+
+      reader = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8));
+      StringBuilder data = new StringBuilder();
+      String line;
+      while ((line = reader.readLine()) != null) {
+        // an empty line dispatches the event
+        if (line.isEmpty()) {
+          if (data.length() == 0) {
+            continue;
+          }
+          T event = GSON.fromJson(data.toString(), eventType);
+          data.setLength(0);
+          if (!handler.onEvent(event)) {
+            return;
+          }
+          continue;
+        }
+        // comments, event names and other fields are ignored
+        if (line.startsWith(EVENT_STREAM_DATA_FIELD)) {
+          if (data.length() > 0) {
+            data.append('\n');
+          }
+          data.append(line.substring(EVENT_STREAM_DATA_FIELD.length()).trim());
+        }
+      }
+    } catch (ApolloConfigStatusCodeException ex) {
+      throw ex;
+    } catch (Throwable ex) {
+      throw new ApolloConfigException("Could not complete event stream operation", ex);
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (IOException ex) {
+          // ignore
+        }
+      }
+      if (conn != null) {
+        conn.disconnect();
+      }
+    }
+  }
+
+  private HttpURLConnection openConnection(HttpRequest httpRequest) throws IOException {
+    HttpURLConnection conn = (HttpURLConnection) new URL(httpRequest.getUrl()).openConnection();
+
+    conn.setRequestMethod("GET");
+
+    Map<String, String> headers = httpRequest.getHeaders();
+    if (headers != null && headers.size() > 0) {
+      for (Map.Entry<String, String> entry : headers.entrySet()) {
+        conn.setRequestProperty(entry.getKey(), entry.getValue());
+      }
+    }
+
+    int connectTimeout = httpRequest.getConnectTimeout();
+    if (connectTimeout < 0) {
+      connectTimeout = m_configUtil.getConnectTimeout();
+    }
+
+    int readTimeout = httpRequest.getReadTimeout();
+    if (readTimeout < 0) {
+      readTimeout = m_configUtil.getReadTimeout();
+    }
+
+    conn.setConnectTimeout(connectTimeout);
+    conn.setReadTimeout(readTimeout);
+
+    return conn;
+  }
+
 }
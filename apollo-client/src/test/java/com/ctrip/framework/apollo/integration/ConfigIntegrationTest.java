@@ -2,6 +2,7 @@ package com.ctrip.framework.apollo.integration;
 
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -9,10 +10,12 @@ import com.ctrip.framework.apollo.util.OrderedProperties;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -110,6 +113,43 @@ public class ConfigIntegrationTest extends BaseIntegrationTest {
     assertEquals(someDefaultValue, config.getProperty(someNonExistedKey, someDefaultValue));
   }
 
+  @Test
+  public void testGetConfigWithGzipEncodedRemoteConfig() throws Exception {
+    String someKey = "someKey";
+    String someValue = "someValue";
+    ApolloConfig apolloConfig = assembleApolloConfig(ImmutableMap.of(someKey, someValue));
+    final List<String> acceptEncodings = Collections.synchronizedList(Lists.<String>newArrayList());
+    final String body = gson.toJson(apolloConfig);
+    ContextHandler handler = new ContextHandler("/configs/*");
+    handler.setHandler(new AbstractHandler() {
+      @Override
+      public void handle(String target, Request baseRequest, HttpServletRequest request,
+          HttpServletResponse response) throws IOException, ServletException {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        acceptEncodings.add(acceptEncoding);
+
+        response.setContentType("application/json;charset=UTF-8");
+        response.setStatus(HttpServletResponse.SC_OK);
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+          response.setHeader("Content-Encoding", "gzip");
+          try (GZIPOutputStream out = new GZIPOutputStream(response.getOutputStream())) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+          }
+        } else {
+          response.getWriter().println(body);
+        }
+        baseRequest.setHandled(true);
+      }
+    });
+    startServerWithHandlers(handler);
+
+    Config config = ConfigService.getAppConfig();
+
+    assertEquals(someValue, config.getProperty(someKey, null));
+    assertFalse(acceptEncodings.isEmpty());
+    assertTrue(acceptEncodings.get(0).contains("gzip"));
+  }
+
   @Test
   public void testOrderGetConfigWithNoLocalFileButWithRemoteConfig() throws Exception {
     setPropertiesOrderEnabled(true);
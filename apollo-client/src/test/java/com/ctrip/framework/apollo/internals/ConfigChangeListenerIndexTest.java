@@ -0,0 +1,84 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import com.ctrip.framework.apollo.ConfigChangeListener;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.util.Collections;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConfigChangeListenerIndexTest {
+  private ConfigChangeListenerIndex listenerIndex;
+  private ConfigChangeListener someListener;
+  private ConfigChangeListener anotherListener;
+  private ConfigChangeListener yetAnotherListener;
+
+  @Before
+  public void setUp() throws Exception {
+    listenerIndex = new ConfigChangeListenerIndex();
+    someListener = mock(ConfigChangeListener.class);
+    anotherListener = mock(ConfigChangeListener.class);
+    yetAnotherListener = mock(ConfigChangeListener.class);
+  }
+
+  @Test
+  public void testFindInterestedListeners() throws Exception {
+    listenerIndex.add(someListener, Sets.newHashSet("someKey"), Sets.newHashSet("some.prefix."));
+    listenerIndex.add(anotherListener, null, null);
+    listenerIndex.add(yetAnotherListener, Sets.newHashSet("anotherKey"), Sets.newHashSet("some."));
+
+    assertEquals(Lists.newArrayList(someListener, anotherListener),
+        listenerIndex.findInterestedListeners(keys("someKey")));
+    assertEquals(Lists.newArrayList(anotherListener, yetAnotherListener),
+        listenerIndex.findInterestedListeners(keys("anotherKey")));
+    assertEquals(Lists.newArrayList(someListener, anotherListener, yetAnotherListener),
+        listenerIndex.findInterestedListeners(keys("some.prefix.key")));
+    assertEquals(Lists.newArrayList(anotherListener, yetAnotherListener),
+        listenerIndex.findInterestedListeners(keys("some.key")));
+    assertEquals(Lists.newArrayList(anotherListener),
+        listenerIndex.findInterestedListeners(keys("some", "someOtherKey")));
+    assertEquals(Lists.newArrayList(anotherListener),
+        listenerIndex.findInterestedListeners(Collections.<String>emptySet()));
+  }
+
+  @Test
+  public void testFindInterestedListenersWithMoreChangedKeysThanInterestedKeys() throws Exception {
+    listenerIndex.add(someListener, Sets.newHashSet("someKey"), null);
+    listenerIndex.add(anotherListener, Sets.newHashSet("anotherKey"), null);
+
+    assertEquals(Lists.newArrayList(anotherListener),
+        listenerIndex.findInterestedListeners(keys("anotherKey", "key1", "key2", "key3")));
+  }
+
+  @Test
+  public void testEmptyPrefixMatchesAllKeys() throws Exception {
+    listenerIndex.add(someListener, null, Sets.newHashSet(""));
+
+    assertEquals(Lists.newArrayList(someListener), listenerIndex.findInterestedListeners(keys("anyKey")));
+    assertTrue(listenerIndex.findInterestedListeners(Collections.<String>emptySet()).isEmpty());
+  }
+
+  @Test
+  public void testAddAndRemove() throws Exception {
+    assertTrue(listenerIndex.add(someListener, Sets.newHashSet("someKey"), null));
+    //the interests are not changed by adding again
+    assertFalse(listenerIndex.add(someListener, null, null));
+
+    assertTrue(listenerIndex.findInterestedListeners(keys("anotherKey")).isEmpty());
+
+    assertTrue(listenerIndex.remove(someListener));
+    assertFalse(listenerIndex.remove(someListener));
+
+    assertTrue(listenerIndex.findInterestedListeners(keys("someKey")).isEmpty());
+  }
+
+  private Set<String> keys(String... keys) {
+    return Sets.newLinkedHashSet(Lists.newArrayList(keys));
+  }
+}
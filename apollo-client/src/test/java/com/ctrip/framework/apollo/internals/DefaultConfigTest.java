@@ -4,8 +4,13 @@ import static org.awaitility.Awaitility.await;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -13,6 +18,7 @@ import static org.mockito.Mockito.when;
 import com.ctrip.framework.apollo.enums.ConfigSourceType;
 import com.ctrip.framework.apollo.util.OrderedProperties;
 import com.ctrip.framework.apollo.util.factory.PropertiesFactory;
+import com.ctrip.framework.apollo.util.function.Functions;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import java.io.File;
@@ -24,6 +30,7 @@ import java.util.Set;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.base.Function;
 import com.google.common.base.Splitter;
@@ -35,6 +42,7 @@ import org.junit.Test;
 
 import com.ctrip.framework.apollo.Config;
 import com.ctrip.framework.apollo.ConfigChangeListener;
+import com.ctrip.framework.apollo.ConfigProperty;
 import com.ctrip.framework.apollo.build.MockInjector;
 import com.ctrip.framework.apollo.core.utils.ClassLoaderUtil;
 import com.ctrip.framework.apollo.enums.PropertyChangeType;
@@ -145,6 +153,41 @@ public class DefaultConfigTest {
     assertEquals(someSourceType, defaultConfig.getSourceType());
   }
 
+  @Test
+  public void testRefreshSystemProperties() throws Exception {
+    String someKey = "someKey";
+    Integer someLocalFileValue = 1;
+    Integer someSystemPropertyValue = 2;
+    Integer someDefaultValue = -1;
+
+    someProperties = new Properties();
+    someProperties.setProperty(someKey, String.valueOf(someLocalFileValue));
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    DefaultConfig defaultConfig =
+        new DefaultConfig(someNamespace, configRepository);
+
+    assertEquals(someLocalFileValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
+
+    System.setProperty(someKey, String.valueOf(someSystemPropertyValue));
+
+    try {
+      //the system properties are read when the snapshot is built
+      assertEquals(String.valueOf(someLocalFileValue), defaultConfig.getProperty(someKey, null));
+
+      DefaultConfig.refreshSystemProperties();
+
+      assertEquals(String.valueOf(someSystemPropertyValue), defaultConfig.getProperty(someKey, null));
+      assertEquals(someSystemPropertyValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
+    } finally {
+      System.clearProperty(someKey);
+    }
+
+    DefaultConfig.refreshSystemProperties();
+
+    assertEquals(someLocalFileValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
+  }
+
   @Test
   public void testGetIntProperty() throws Exception {
     String someStringKey = "someStringKey";
@@ -176,18 +219,53 @@ public class DefaultConfigTest {
     Integer someDefaultValue = -1;
 
     //set up config repo
-    someProperties = mock(Properties.class);
-    when(someProperties.getProperty(someKey)).thenReturn(String.valueOf(someValue));
+    someProperties = new Properties();
+    someProperties.setProperty(someKey, String.valueOf(someValue));
     when(configRepository.getConfig()).thenReturn(someProperties);
 
     DefaultConfig defaultConfig =
-        new DefaultConfig(someNamespace, configRepository);
+        spy(new DefaultConfig(someNamespace, configRepository));
 
     assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
     assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
     assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
 
-    verify(someProperties, times(1)).getProperty(someKey);
+    verify(defaultConfig, times(1)).getProperty(someKey, null);
+  }
+
+  @Test
+  public void testGetPrimitiveProperties() throws Exception {
+    String someIntKey = "someIntKey";
+    int someIntValue = 1000;
+    String someLongKey = "someLongKey";
+    long someLongValue = 10000000000L;
+    String someBooleanKey = "someBooleanKey";
+    String someInvalidKey = "someInvalidKey";
+    String someNonExistedKey = "someNonExistedKey";
+
+    //set up config repo
+    someProperties = new Properties();
+    someProperties.setProperty(someIntKey, String.valueOf(someIntValue));
+    someProperties.setProperty(someLongKey, String.valueOf(someLongValue));
+    someProperties.setProperty(someBooleanKey, "true");
+    someProperties.setProperty(someInvalidKey, "someInvalidValue");
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    DefaultConfig defaultConfig =
+        spy(new DefaultConfig(someNamespace, configRepository));
+
+    assertEquals(someIntValue, defaultConfig.getInt(someIntKey, -1));
+    assertEquals(someIntValue, defaultConfig.getInt(someIntKey, -1));
+    assertEquals(someLongValue, defaultConfig.getLong(someLongKey, -1));
+    assertTrue(defaultConfig.getBoolean(someBooleanKey, false));
+
+    //shares the parsed values with the boxed variants
+    assertEquals(Integer.valueOf(someIntValue), defaultConfig.getIntProperty(someIntKey, -1));
+    verify(defaultConfig, times(1)).getProperty(someIntKey, null);
+
+    assertEquals(-1, defaultConfig.getInt(someInvalidKey, -1));
+    assertEquals(-1, defaultConfig.getLong(someNonExistedKey, -1));
+    assertFalse(defaultConfig.getBoolean(someNonExistedKey, false));
   }
 
   @Test
@@ -217,72 +295,143 @@ public class DefaultConfigTest {
   }
 
   @Test
-  public void testGetIntPropertyMultipleTimesWithSmallCache() throws Exception {
+  public void testBind() throws Exception {
     String someKey = "someKey";
-    Integer someValue = 2;
-
     String anotherKey = "anotherKey";
-    Integer anotherValue = 3;
-
+    String someValue = "2";
+    String anotherValue = "3";
     Integer someDefaultValue = -1;
-
-    MockInjector.setInstance(ConfigUtil.class, new MockConfigUtilWithSmallCache());
+    final AtomicInteger parseCount = new AtomicInteger();
+    Function<String, Integer> someFunction = new Function<String, Integer>() {
+      @Override
+      public Integer apply(String input) {
+        parseCount.incrementAndGet();
+        return Integer.parseInt(input);
+      }
+    };
 
     //set up config repo
-    someProperties = mock(Properties.class);
-    when(someProperties.getProperty(someKey)).thenReturn(String.valueOf(someValue));
-    when(someProperties.getProperty(anotherKey)).thenReturn(String.valueOf(anotherValue));
+    someProperties = new Properties();
+    someProperties.setProperty(someKey, someValue);
+    someProperties.setProperty(anotherKey, someValue);
     when(configRepository.getConfig()).thenReturn(someProperties);
 
     DefaultConfig defaultConfig =
         new DefaultConfig(someNamespace, configRepository);
 
-    assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
-    assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
+    ConfigProperty<Integer> someProperty = defaultConfig.bind(someKey, someFunction, someDefaultValue);
+    ConfigProperty<Integer> someNonExistedProperty = defaultConfig.bind("someNonExistedKey", someFunction,
+        someDefaultValue);
 
-    verify(someProperties, times(1)).getProperty(someKey);
+    assertEquals(someKey, someProperty.getKey());
+    assertEquals(Integer.valueOf(someValue), someProperty.get());
+    assertEquals(someDefaultValue, someNonExistedProperty.get());
+    assertEquals(1, parseCount.get());
 
-    assertEquals(anotherValue, defaultConfig.getIntProperty(anotherKey, someDefaultValue));
-    assertEquals(anotherValue, defaultConfig.getIntProperty(anotherKey, someDefaultValue));
+    //only the changed key is parsed again
+    Properties anotherProperties = new Properties();
+    anotherProperties.setProperty(someKey, someValue);
+    anotherProperties.setProperty(anotherKey, anotherValue);
+    defaultConfig.onRepositoryChange(someNamespace, anotherProperties);
 
-    verify(someProperties, times(1)).getProperty(anotherKey);
+    assertEquals(Integer.valueOf(someValue), someProperty.get());
+    assertEquals(1, parseCount.get());
 
-    assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
+    Properties yetAnotherProperties = new Properties();
+    yetAnotherProperties.setProperty(someKey, "someInvalidValue");
+    defaultConfig.onRepositoryChange(someNamespace, yetAnotherProperties);
+
+    assertEquals(someDefaultValue, someProperty.get());
+
+    anotherProperties = new Properties();
+    anotherProperties.setProperty(someKey, anotherValue);
+    defaultConfig.onRepositoryChange(someNamespace, anotherProperties);
+
+    assertEquals(Integer.valueOf(anotherValue), someProperty.get());
+  }
+
+  @Test
+  public void testBindMultipleTimes() throws Exception {
+    String someKey = "someKey";
+    String someValue = "2";
+    String anotherValue = "3";
+    Integer someDefaultValue = -1;
+    Integer anotherDefaultValue = -2;
+    final AtomicInteger parseCount = new AtomicInteger();
+    Function<String, Integer> someFunction = new Function<String, Integer>() {
+      @Override
+      public Integer apply(String input) {
+        parseCount.incrementAndGet();
+        return Integer.parseInt(input);
+      }
+    };
+
+    //set up config repo
+    someProperties = new Properties();
+    someProperties.setProperty(someKey, someValue);
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    DefaultConfig defaultConfig =
+        new DefaultConfig(someNamespace, configRepository);
+
+    ConfigProperty<Integer> someProperty = defaultConfig.bind(someKey, someFunction, someDefaultValue);
+    for (int i = 0; i < 10; i++) {
+      assertSame(someProperty, defaultConfig.bind(someKey, someFunction, someDefaultValue));
+    }
+    ConfigProperty<Integer> anotherProperty = defaultConfig.bind(someKey, someFunction, anotherDefaultValue);
+    ConfigProperty<Long> yetAnotherProperty = defaultConfig.bind(someKey, Functions.TO_LONG_FUNCTION, -1L);
 
-    verify(someProperties, times(2)).getProperty(someKey);
+    assertNotSame(someProperty, anotherProperty);
+    assertEquals(Integer.valueOf(someValue), anotherProperty.get());
+    assertEquals(Long.valueOf(someValue), yetAnotherProperty.get());
+    assertEquals(2, parseCount.get());
+
+    //only one handle of each binding is refreshed on changes
+    Properties anotherProperties = new Properties();
+    anotherProperties.setProperty(someKey, anotherValue);
+    defaultConfig.onRepositoryChange(someNamespace, anotherProperties);
+
+    assertEquals(Integer.valueOf(anotherValue), someProperty.get());
+    assertEquals(Integer.valueOf(anotherValue), anotherProperty.get());
+    assertEquals(Long.valueOf(anotherValue), yetAnotherProperty.get());
+    assertEquals(4, parseCount.get());
   }
 
   @Test
-  public void testGetIntPropertyMultipleTimesWithShortExpireTime() throws Exception {
-    final String someKey = "someKey";
-    final Integer someValue = 2;
+  public void testGetIntPropertyMultipleTimesWithSmallCache() throws Exception {
+    String someKey = "someKey";
+    Integer someValue = 2;
+
+    String anotherKey = "anotherKey";
+    Integer anotherValue = 3;
 
-    final Integer someDefaultValue = -1;
+    Integer someDefaultValue = -1;
 
-    MockInjector.setInstance(ConfigUtil.class, new MockConfigUtilWithShortExpireTime());
+    MockInjector.setInstance(ConfigUtil.class, new MockConfigUtilWithSmallCache());
 
     //set up config repo
-    someProperties = mock(Properties.class);
-    when(someProperties.getProperty(someKey)).thenReturn(String.valueOf(someValue));
+    someProperties = new Properties();
+    someProperties.setProperty(someKey, String.valueOf(someValue));
+    someProperties.setProperty(anotherKey, String.valueOf(anotherValue));
     when(configRepository.getConfig()).thenReturn(someProperties);
 
-    final DefaultConfig defaultConfig =
-        new DefaultConfig(someNamespace, configRepository);
+    DefaultConfig defaultConfig =
+        spy(new DefaultConfig(someNamespace, configRepository));
 
     assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
     assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
 
-    verify(someProperties, times(1)).getProperty(someKey);
+    verify(defaultConfig, times(1)).getProperty(someKey, null);
 
-    await().atMost(500, TimeUnit.MILLISECONDS).untilAsserted(new ThrowingRunnable() {
-      @Override
-      public void run() throws Throwable {
-        assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
-        assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
+    //the parsed values are bounded by the keys of the config, so the cache size doesn't evict or skip any of them
+    assertEquals(anotherValue, defaultConfig.getIntProperty(anotherKey, someDefaultValue));
+    assertEquals(anotherValue, defaultConfig.getIntProperty(anotherKey, someDefaultValue));
 
-        verify(someProperties, times(2)).getProperty(someKey);
-      }
-    });
+    verify(defaultConfig, times(1)).getProperty(anotherKey, null);
+
+    assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
+
+    verify(defaultConfig, times(1)).getProperty(someKey, null);
   }
 
   @Test
@@ -459,24 +608,24 @@ public class DefaultConfigTest {
     String[] someDefaultValue = new String[]{"1", "2"};
 
     //set up config repo
-    someProperties = mock(Properties.class);
-    when(someProperties.getProperty(someKey)).thenReturn(someValue);
+    someProperties = new Properties();
+    someProperties.setProperty(someKey, someValue);
     when(configRepository.getConfig()).thenReturn(someProperties);
 
     DefaultConfig defaultConfig =
-        new DefaultConfig(someNamespace, configRepository);
+        spy(new DefaultConfig(someNamespace, configRepository));
 
     assertArrayEquals(values, defaultConfig.getArrayProperty(someKey, someDelimiter, someDefaultValue));
     assertArrayEquals(values, defaultConfig.getArrayProperty(someKey, someDelimiter, someDefaultValue));
 
-    verify(someProperties, times(1)).getProperty(someKey);
+    verify(defaultConfig, times(1)).getProperty(someKey, null);
 
     assertArrayEquals(someDefaultValue, defaultConfig.getArrayProperty(someKey, someInvalidDelimiter,
         someDefaultValue));
     assertArrayEquals(someDefaultValue, defaultConfig.getArrayProperty(someKey, someInvalidDelimiter,
         someDefaultValue));
 
-    verify(someProperties, times(3)).getProperty(someKey);
+    verify(defaultConfig, times(3)).getProperty(someKey, null);
   }
 
   @Test
@@ -689,6 +838,56 @@ public class DefaultConfigTest {
     assertEquals(anotherSourceType, defaultConfig.getSourceType());
   }
 
+  @Test
+  public void testOnRepositoryChangeWithSameProperties() throws Exception {
+    someProperties = new Properties();
+    someProperties.setProperty("someKey", "someValue");
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    DefaultConfig defaultConfig =
+        new DefaultConfig(someNamespace, configRepository);
+    ConfigChangeListener someListener = mock(ConfigChangeListener.class);
+    defaultConfig.addChangeListener(someListener);
+
+    Properties sameProperties = new Properties();
+    sameProperties.putAll(someProperties);
+    defaultConfig.onRepositoryChange(someNamespace, sameProperties);
+
+    TimeUnit.MILLISECONDS.sleep(50);
+
+    verify(someListener, never()).onChange(any(ConfigChangeEvent.class));
+  }
+
+  @Test
+  public void testCalcPropertyChangesWithOrderedProperties() throws Exception {
+    DefaultConfig defaultConfig =
+        new DefaultConfig(someNamespace, configRepository);
+
+    Properties previous = new OrderedProperties();
+    previous.setProperty("c", "1");
+    previous.setProperty("b", "1");
+    previous.setProperty("a", "1");
+    Properties current = new OrderedProperties();
+    current.setProperty("e", "1");
+    current.setProperty("a", "2");
+    current.setProperty("b", "1");
+    current.setProperty("d", "1");
+
+    List<ConfigChange> changes = defaultConfig.calcPropertyChanges(someNamespace, previous, current);
+
+    List<String> changedKeys = Lists.newArrayList();
+    for (ConfigChange change : changes) {
+      changedKeys.add(change.getPropertyName());
+    }
+    assertEquals(Lists.newArrayList("e", "a", "d", "c"), changedKeys);
+    assertEquals(PropertyChangeType.ADDED, changes.get(0).getChangeType());
+    assertEquals(PropertyChangeType.MODIFIED, changes.get(1).getChangeType());
+    assertEquals("1", changes.get(1).getOldValue());
+    assertEquals("2", changes.get(1).getNewValue());
+    assertEquals(PropertyChangeType.DELETED, changes.get(3).getChangeType());
+    assertEquals("1", changes.get(3).getOldValue());
+  }
+
   @Test
   public void testFireConfigChangeWithInterestedKeys() throws Exception {
     String someKeyChanged = "someKeyChanged";
@@ -739,6 +938,49 @@ public class DefaultConfigTest {
     assertFalse(interestedInSomeKeyNotChangedFuture.isDone());
   }
 
+  @Test
+  public void testFireConfigChangeInOrder() throws Exception {
+    final List<ConfigChangeEvent> receivedEvents = Collections.synchronizedList(
+        Lists.<ConfigChangeEvent>newArrayList());
+    final AtomicInteger concurrentCalls = new AtomicInteger();
+    final AtomicInteger maxConcurrentCalls = new AtomicInteger();
+    ConfigChangeListener someListener = new ConfigChangeListener() {
+      @Override
+      public void onChange(ConfigChangeEvent changeEvent) {
+        int calls = concurrentCalls.incrementAndGet();
+        maxConcurrentCalls.set(Math.max(maxConcurrentCalls.get(), calls));
+        try {
+          //the first one is slow
+          if (receivedEvents.isEmpty()) {
+            TimeUnit.MILLISECONDS.sleep(50);
+          }
+        } catch (InterruptedException ex) {
+          //ignore
+        }
+        receivedEvents.add(changeEvent);
+        concurrentCalls.decrementAndGet();
+      }
+    };
+
+    DefaultConfig config = new DefaultConfig(someNamespace, mock(ConfigRepository.class));
+    config.addChangeListener(someListener);
+
+    final List<ConfigChangeEvent> events = Lists.newArrayList();
+    for (int i = 0; i < 3; i++) {
+      ConfigChangeEvent event = mock(ConfigChangeEvent.class);
+      events.add(event);
+      config.fireConfigChange(event);
+    }
+
+    await().atMost(500, TimeUnit.MILLISECONDS).untilAsserted(new ThrowingRunnable() {
+      @Override
+      public void run() throws Throwable {
+        assertEquals(events, receivedEvents);
+      }
+    });
+    assertEquals(1, maxConcurrentCalls.get());
+  }
+
   @Test
   public void testRemoveChangeListener() throws Exception {
     String someNamespace = "someNamespace";
@@ -956,16 +1198,4 @@ public class DefaultConfigTest {
       return 1;
     }
   }
-
-  public static class MockConfigUtilWithShortExpireTime extends MockConfigUtil {
-    @Override
-    public long getConfigCacheExpireTime() {
-      return 50;
-    }
-
-    @Override
-    public TimeUnit getConfigCacheExpireTimeUnit() {
-      return TimeUnit.MILLISECONDS;
-    }
-  }
 }
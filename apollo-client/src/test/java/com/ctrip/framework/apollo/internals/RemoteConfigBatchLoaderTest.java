@@ -0,0 +1,291 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.http.HttpRequest;
+import com.ctrip.framework.apollo.util.http.HttpResponse;
+import com.ctrip.framework.apollo.util.http.HttpUtil;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RemoteConfigBatchLoaderTest {
+  @Mock
+  private ConfigServiceLocator configServiceLocator;
+  @Mock
+  private HttpUtil httpUtil;
+  @Mock
+  private HttpResponse<List<ApolloConfig>> someResponse;
+  private RemoteConfigBatchLoader remoteConfigBatchLoader;
+  private String someServerUrl;
+  private String someNamespace;
+  private String anotherNamespace;
+
+  private static String someAppId;
+  private static String someCluster;
+
+  @Before
+  public void setUp() throws Exception {
+    someAppId = "someAppId";
+    someCluster = "someCluster";
+    someServerUrl = "http://someServer";
+    someNamespace = "someNamespace";
+    anotherNamespace = "anotherNamespace";
+
+    ServiceDTO serviceDTO = new ServiceDTO();
+    serviceDTO.setHomepageUrl(someServerUrl);
+    when(configServiceLocator.getConfigServices()).thenReturn(Lists.newArrayList(serviceDTO));
+
+    MockInjector.setInstance(ConfigUtil.class, new MockConfigUtil());
+    MockInjector.setInstance(ConfigServiceLocator.class, configServiceLocator);
+    MockInjector.setInstance(HttpUtil.class, httpUtil);
+
+    remoteConfigBatchLoader = new RemoteConfigBatchLoader();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    MockInjector.reset();
+  }
+
+  @Test
+  public void testPrefetch() throws Exception {
+    ApolloConfig someConfig = assembleApolloConfig(someNamespace, "someReleaseKey",
+        ImmutableMap.of("someKey", "someValue"));
+    ApolloConfig anotherConfig = assembleApolloConfig(anotherNamespace, "anotherReleaseKey",
+        ImmutableMap.of("anotherKey", "anotherValue"));
+    when(someResponse.getBody()).thenReturn(Lists.newArrayList(someConfig, anotherConfig));
+    when(httpUtil.<List<ApolloConfig>>doGet(any(HttpRequest.class), any(Type.class))).thenReturn(someResponse);
+
+    remoteConfigBatchLoader.prefetch(Lists.newArrayList(someNamespace, anotherNamespace));
+
+    ArgumentCaptor<HttpRequest> request = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpUtil, times(1)).doGet(request.capture(), any(Type.class));
+    assertTrue(request.getValue().getUrl().startsWith(someServerUrl + "/configs/someAppId/someCluster?namespaces="));
+
+    assertSame(someConfig, remoteConfigBatchLoader.consume(someNamespace, null));
+    assertSame(anotherConfig, remoteConfigBatchLoader.consume(anotherNamespace, null));
+    //the prefetched config is consumed only once
+    assertNull(remoteConfigBatchLoader.consume(someNamespace, null));
+  }
+
+  @Test
+  public void testPrefetchSkipsLoadedNamespaces() throws Exception {
+    String yetAnotherNamespace = "yetAnotherNamespace";
+    remoteConfigBatchLoader.consume(someNamespace, null);
+    remoteConfigBatchLoader.consume(anotherNamespace, null);
+
+    remoteConfigBatchLoader.prefetch(Lists.newArrayList(someNamespace, anotherNamespace, yetAnotherNamespace));
+
+    //only one namespace is left, so no need to batch
+    verify(httpUtil, never()).doGet(any(HttpRequest.class), any(Type.class));
+  }
+
+  @Test
+  public void testPrefetchNotModifiedConfigs() throws Exception {
+    ApolloConfig someConfig = assembleApolloConfig(someNamespace, "someReleaseKey",
+        ImmutableMap.of("someKey", "someValue"));
+    ApolloConfig anotherConfig = assembleApolloConfig(anotherNamespace, "anotherReleaseKey",
+        ImmutableMap.of("anotherKey", "anotherValue"));
+    ApolloConfig someNotModifiedConfig = assembleApolloConfig(someNamespace, "someReleaseKey", null);
+    ApolloConfig anotherNewConfig = assembleApolloConfig(anotherNamespace, "anotherNewReleaseKey",
+        ImmutableMap.of("anotherKey", "anotherNewValue"));
+    when(someResponse.getBody()).thenReturn(Lists.newArrayList(someNotModifiedConfig, anotherNewConfig));
+    when(httpUtil.<List<ApolloConfig>>doGet(any(HttpRequest.class), any(Type.class))).thenReturn(someResponse);
+
+    Map<String, ApolloConfig> previousConfigs = Maps.newLinkedHashMap();
+    previousConfigs.put(someNamespace, someConfig);
+    previousConfigs.put(anotherNamespace, anotherConfig);
+
+    remoteConfigBatchLoader.prefetch(previousConfigs, null, null);
+
+    ArgumentCaptor<HttpRequest> request = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpUtil, times(1)).doGet(request.capture(), any(Type.class));
+    assertTrue(request.getValue().getUrl().contains("someReleaseKey"));
+    assertTrue(request.getValue().getUrl().contains("anotherReleaseKey"));
+
+    //reference equals means not modified
+    assertSame(someConfig, remoteConfigBatchLoader.consume(someNamespace, someConfig));
+    assertSame(anotherNewConfig, remoteConfigBatchLoader.consume(anotherNamespace, anotherConfig));
+  }
+
+  @Test
+  public void testConsumeWithConfigRefreshedInTheMeantime() throws Exception {
+    ApolloConfig someConfig = assembleApolloConfig(someNamespace, "someReleaseKey",
+        ImmutableMap.of("someKey", "someValue"));
+    ApolloConfig someRefreshedConfig = assembleApolloConfig(someNamespace, "someRefreshedReleaseKey",
+        ImmutableMap.of("someKey", "someRefreshedValue"));
+    ApolloConfig someNewConfig = assembleApolloConfig(someNamespace, "someNewReleaseKey",
+        ImmutableMap.of("someKey", "someNewValue"));
+    when(someResponse.getBody()).thenReturn(Lists.newArrayList(someNewConfig));
+    when(httpUtil.<List<ApolloConfig>>doGet(any(HttpRequest.class), any(Type.class))).thenReturn(someResponse);
+
+    Map<String, ApolloConfig> previousConfigs = Maps.newLinkedHashMap();
+    previousConfigs.put(someNamespace, someConfig);
+    previousConfigs.put(anotherNamespace, null);
+
+    remoteConfigBatchLoader.prefetch(previousConfigs, null, null);
+
+    assertNull(remoteConfigBatchLoader.consume(someNamespace, someRefreshedConfig));
+    //namespaces not found are left to be loaded one by one
+    assertNull(remoteConfigBatchLoader.consume(anotherNamespace, null));
+  }
+
+  @Test
+  public void testPrefetchWithBatchQueryUnsupported() throws Exception {
+    when(httpUtil.<List<ApolloConfig>>doGet(any(HttpRequest.class), any(Type.class)))
+        .thenThrow(new ApolloConfigStatusCodeException(404, "some not found message"));
+
+    remoteConfigBatchLoader.prefetch(Lists.newArrayList(someNamespace, anotherNamespace));
+    remoteConfigBatchLoader.prefetch(Lists.newArrayList(someNamespace, anotherNamespace));
+
+    verify(httpUtil, times(1)).doGet(any(HttpRequest.class), any(Type.class));
+    assertNull(remoteConfigBatchLoader.consume(someNamespace, null));
+  }
+
+  @Test
+  public void testPrefetchWithBatchQueryDisabled() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new MockConfigUtil() {
+      @Override
+      public boolean isConfigBatchQueryEnabled() {
+        return false;
+      }
+    });
+    remoteConfigBatchLoader = new RemoteConfigBatchLoader();
+
+    remoteConfigBatchLoader.prefetch(Lists.newArrayList(someNamespace, anotherNamespace));
+
+    verify(httpUtil, never()).doGet(any(HttpRequest.class), any(Type.class));
+  }
+
+  @Test
+  public void testPrefetchInChunks() throws Exception {
+    when(someResponse.getBody()).thenReturn(Lists.<ApolloConfig>newArrayList());
+    when(httpUtil.<List<ApolloConfig>>doGet(any(HttpRequest.class), any(Type.class))).thenReturn(someResponse);
+    List<String> namespaces = Lists.newArrayList();
+    for (int i = 0; i < 150; i++) {
+      namespaces.add(someNamespace + i);
+    }
+
+    remoteConfigBatchLoader.prefetch(namespaces);
+
+    verify(httpUtil, times(2)).doGet(any(HttpRequest.class), any(Type.class));
+  }
+
+  @Test
+  public void testPartition() throws Exception {
+    Map<String, ApolloConfig> previousConfigs = Maps.newLinkedHashMap();
+    for (int i = 0; i < 250; i++) {
+      previousConfigs.put(someNamespace + i, null);
+    }
+
+    List<Map<String, ApolloConfig>> chunks = remoteConfigBatchLoader.partition(previousConfigs);
+
+    assertEquals(3, chunks.size());
+    assertEquals(100, chunks.get(0).size());
+    assertEquals(100, chunks.get(1).size());
+    assertEquals(50, chunks.get(2).size());
+    assertTrue(chunks.get(0).containsKey(someNamespace + 0));
+    assertTrue(chunks.get(2).containsKey(someNamespace + 249));
+  }
+
+  @Test
+  public void testPartitionWithLongNamespaces() throws Exception {
+    String someLongNamespacePrefix = Strings.repeat("a", 200);
+    Map<String, ApolloConfig> previousConfigs = Maps.newLinkedHashMap();
+    for (int i = 0; i < 50; i++) {
+      String namespace = someLongNamespacePrefix + i;
+      previousConfigs.put(namespace, assembleApolloConfig(namespace, "someReleaseKey", null));
+    }
+
+    List<Map<String, ApolloConfig>> chunks = remoteConfigBatchLoader.partition(previousConfigs);
+
+    int namespaces = 0;
+    for (Map<String, ApolloConfig> chunk : chunks) {
+      String url = remoteConfigBatchLoader.assembleQueryConfigsUrl(someServerUrl, someAppId, someCluster, null,
+          chunk, null);
+      assertTrue(url.length() < 4096 + 100);
+      namespaces += chunk.size();
+    }
+    assertTrue(chunks.size() > 1);
+    assertEquals(previousConfigs.size(), namespaces);
+  }
+
+  @Test
+  public void testAssembleQueryConfigsUrl() throws Exception {
+    Map<String, ApolloConfig> previousConfigs = Maps.newLinkedHashMap();
+    previousConfigs.put(someNamespace, assembleApolloConfig(someNamespace, "someReleaseKey", null));
+    previousConfigs.put(anotherNamespace, null);
+
+    String url = remoteConfigBatchLoader.assembleQueryConfigsUrl(someServerUrl, someAppId, someCluster,
+        "someDC", previousConfigs, null);
+
+    assertEquals(someServerUrl + "/configs/someAppId/someCluster?namespaces="
+        + "%7B%22someNamespace%22%3A%22someReleaseKey%22%2C%22anotherNamespace%22%3A%22%22%7D"
+        + "&dataCenter=someDC", url);
+  }
+
+  private ApolloConfig assembleApolloConfig(String namespace, String releaseKey, Map<String, String> configurations) {
+    ApolloConfig apolloConfig = new ApolloConfig(someAppId, someCluster, namespace, releaseKey);
+    apolloConfig.setConfigurations(configurations);
+    return apolloConfig;
+  }
+
+  public static class MockConfigUtil extends ConfigUtil {
+    @Override
+    public String getAppId() {
+      return someAppId;
+    }
+
+    @Override
+    public String getCluster() {
+      return someCluster;
+    }
+
+    @Override
+    public String getAccessKeySecret() {
+      return null;
+    }
+
+    @Override
+    public String getDataCenter() {
+      return null;
+    }
+
+    @Override
+    public String getLocalIp() {
+      return null;
+    }
+
+    @Override
+    public boolean isConfigBatchQueryEnabled() {
+      return true;
+    }
+  }
+}
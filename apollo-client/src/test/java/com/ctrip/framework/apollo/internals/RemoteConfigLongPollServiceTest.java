@@ -6,6 +6,7 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -17,7 +18,9 @@ import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.ctrip.framework.apollo.core.dto.ServiceDTO;
 import com.ctrip.framework.apollo.core.signature.Signature;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
 import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.http.HttpEventHandler;
 import com.ctrip.framework.apollo.util.http.HttpRequest;
 import com.ctrip.framework.apollo.util.http.HttpResponse;
 import com.ctrip.framework.apollo.util.http.HttpUtil;
@@ -476,6 +479,110 @@ public class RemoteConfigLongPollServiceTest {
     assertEquals(anotherNotificationId, captured.get(anotherKey).longValue());
   }
 
+  @Test
+  public void testSubmitNotificationStream() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new MockNotificationStreamConfigUtil());
+    remoteConfigLongPollService = new RemoteConfigLongPollService();
+
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    final String someNamespace = "someNamespace";
+    final long someNotificationId = 1;
+    final ApolloConfigNotification someNotification = new ApolloConfigNotification(someNamespace, someNotificationId);
+    someNotification.addMessage("someKey", someNotificationId);
+
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        HttpRequest request = invocation.getArgumentAt(0, HttpRequest.class);
+        HttpEventHandler<List<ApolloConfigNotification>> handler = invocation.getArgumentAt(2, HttpEventHandler.class);
+
+        assertTrue(request.getUrl().contains(someServerUrl + "/notifications/v2/stream?"));
+        assertTrue(request.getUrl().contains(someNamespace));
+
+        //the stream stays open until it's stopped
+        while (handler.onEvent(Lists.newArrayList(someNotification))) {
+          TimeUnit.MILLISECONDS.sleep(10);
+        }
+        return null;
+      }
+    }).when(httpUtil).doGetEventStream(any(HttpRequest.class), eq(responseType), any(HttpEventHandler.class));
+
+    final SettableFuture<ApolloNotificationMessages> onNotified = SettableFuture.create();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        onNotified.set(invocation.getArgumentAt(1, ApolloNotificationMessages.class));
+        return null;
+      }
+    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+
+    remoteConfigLongPollService.submit(someNamespace, someRepository);
+
+    ApolloNotificationMessages messages = onNotified.get(5000, TimeUnit.MILLISECONDS);
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    assertEquals(someNotificationId, messages.get("someKey").longValue());
+    verify(httpUtil, never()).doGet(any(HttpRequest.class), eq(responseType));
+  }
+
+  @Test
+  public void testNotificationStreamFallBackToLongPolling() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new MockNotificationStreamConfigUtil());
+    remoteConfigLongPollService = new RemoteConfigLongPollService();
+
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    final String someNamespace = "someNamespace";
+
+    doThrow(new ApolloConfigStatusCodeException(HttpServletResponse.SC_NOT_FOUND, "not found")).when(httpUtil)
+        .doGetEventStream(any(HttpRequest.class), eq(responseType), any(HttpEventHandler.class));
+
+    when(pollResponse.getStatusCode()).thenReturn(HttpServletResponse.SC_NOT_MODIFIED);
+    final AtomicInteger longPollCount = new AtomicInteger();
+    final SettableFuture<Boolean> longPollFinished = SettableFuture.create();
+
+    doAnswer(new Answer<HttpResponse<List<ApolloConfigNotification>>>() {
+      @Override
+      public HttpResponse<List<ApolloConfigNotification>> answer(InvocationOnMock invocation)
+          throws Throwable {
+        HttpRequest request = invocation.getArgumentAt(0, HttpRequest.class);
+        assertTrue(request.getUrl().contains(someServerUrl + "/notifications/v2?"));
+
+        if (longPollCount.incrementAndGet() == 3) {
+          longPollFinished.set(true);
+        }
+        return pollResponse;
+      }
+    }).when(httpUtil).doGet(any(HttpRequest.class), eq(responseType));
+
+    remoteConfigLongPollService.submit(someNamespace, someRepository);
+
+    longPollFinished.get(5000, TimeUnit.MILLISECONDS);
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    //the stream is not retried once the server responds it's not supported
+    verify(httpUtil, times(1))
+        .doGetEventStream(any(HttpRequest.class), eq(responseType), any(HttpEventHandler.class));
+  }
+
+  @Test
+  public void testAssembleNotificationStreamUrl() throws Exception {
+    String someUri = someServerUrl;
+    String someNamespace = "someNamespace";
+    long someNotificationId = 1;
+    Map<String, Long> notificationsMap = ImmutableMap.of(someNamespace, someNotificationId);
+
+    String streamUrl =
+        remoteConfigLongPollService.assembleNotificationStreamUrl(someUri, someAppId, someCluster, null,
+            notificationsMap);
+
+    assertTrue(streamUrl.contains(someServerUrl + "/notifications/v2/stream?"));
+    assertTrue(streamUrl.contains("appId=" + someAppId));
+    assertTrue(streamUrl.contains("cluster=" + someCluster));
+    assertTrue(streamUrl.contains(someNamespace));
+  }
+
   @Test
   public void testAssembleLongPollRefreshUrl() throws Exception {
     String someUri = someServerUrl;
@@ -560,4 +667,10 @@ public class RemoteConfigLongPollServiceTest {
     }
   }
 
+  public static class MockNotificationStreamConfigUtil extends MockConfigUtil {
+    @Override
+    public boolean isNotificationStreamEnabled() {
+      return true;
+    }
+  }
 }
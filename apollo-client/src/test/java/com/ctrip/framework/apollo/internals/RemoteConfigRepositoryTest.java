@@ -18,7 +18,10 @@ import com.ctrip.framework.apollo.build.MockInjector;
 import com.ctrip.framework.apollo.core.dto.ApolloConfig;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.core.dto.ConfigurationChange;
 import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.core.enums.ConfigSyncType;
+import com.ctrip.framework.apollo.core.enums.ConfigurationChangeType;
 import com.ctrip.framework.apollo.core.signature.Signature;
 import com.ctrip.framework.apollo.enums.ConfigSourceType;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
@@ -347,6 +350,38 @@ public class RemoteConfigRepositoryTest {
             .escape(gson.toJson(notificationMessages))));
   }
 
+  @Test
+  public void testLoadConfigWithIncrementalSync() throws Exception {
+    Map<String, String> configurations = Maps.newHashMap();
+    configurations.put("someKey", "someValue");
+    configurations.put("anotherKey", "anotherValue");
+    ApolloConfig someApolloConfig = assembleApolloConfig(configurations);
+
+    when(someResponse.getStatusCode()).thenReturn(200);
+    when(someResponse.getBody()).thenReturn(someApolloConfig);
+
+    RemoteConfigRepository remoteConfigRepository = new RemoteConfigRepository(someNamespace);
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    ApolloConfig someIncrementalConfig = new ApolloConfig("appId", "cluster", someNamespace, "2");
+    someIncrementalConfig.setConfigSyncType(ConfigSyncType.INCREMENTAL_SYNC.getValue());
+    someIncrementalConfig.setConfigurationChanges(Lists.newArrayList(
+        new ConfigurationChange("someKey", "someNewValue", ConfigurationChangeType.MODIFIED.name()),
+        new ConfigurationChange("anotherKey", null, ConfigurationChangeType.DELETED.name()),
+        new ConfigurationChange("newKey", "newValue", ConfigurationChangeType.ADDED.name())));
+    when(someResponse.getBody()).thenReturn(someIncrementalConfig);
+
+    remoteConfigRepository.sync();
+
+    ArgumentCaptor<HttpRequest> request = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpUtil, times(2)).doGet(request.capture(), eq(ApolloConfig.class));
+    assertTrue(request.getAllValues().get(1).getUrl().contains("incrementalSync=true"));
+
+    Properties config = remoteConfigRepository.getConfig();
+    assertEquals(ImmutableMap.of("someKey", "someNewValue", "newKey", "newValue"), config);
+    assertEquals("2", remoteConfigRepository.getApolloConfig().getReleaseKey());
+  }
+
   private ApolloConfig assembleApolloConfig(Map<String, String> configurations) {
     String someAppId = "appId";
     String someClusterName = "cluster";
@@ -76,10 +76,10 @@ public class JavaConfigPlaceholderTest extends AbstractSpringIntegrationTest {
   public void testPropertiesCompatiblePropertySource() throws Exception {
     int someTimeout = 1000;
     int someBatch = 2000;
-    Properties properties = mock(Properties.class);
+    Properties properties = new Properties();
 
-    when(properties.getProperty(TIMEOUT_PROPERTY)).thenReturn(String.valueOf(someTimeout));
-    when(properties.getProperty(BATCH_PROPERTY)).thenReturn(String.valueOf(someBatch));
+    properties.setProperty(TIMEOUT_PROPERTY, String.valueOf(someTimeout));
+    properties.setProperty(BATCH_PROPERTY, String.valueOf(someBatch));
     PropertiesCompatibleConfigFile configFile = mock(PropertiesCompatibleConfigFile.class);
     when(configFile.asProperties()).thenReturn(properties);
 
@@ -92,10 +92,10 @@ public class JavaConfigPlaceholderTest extends AbstractSpringIntegrationTest {
   public void testPropertiesCompatiblePropertySourceWithNonNormalizedCase() throws Exception {
     int someTimeout = 1000;
     int someBatch = 2000;
-    Properties properties = mock(Properties.class);
+    Properties properties = new Properties();
 
-    when(properties.getProperty(TIMEOUT_PROPERTY)).thenReturn(String.valueOf(someTimeout));
-    when(properties.getProperty(BATCH_PROPERTY)).thenReturn(String.valueOf(someBatch));
+    properties.setProperty(TIMEOUT_PROPERTY, String.valueOf(someTimeout));
+    properties.setProperty(BATCH_PROPERTY, String.valueOf(someBatch));
     PropertiesCompatibleConfigFile configFile = mock(PropertiesCompatibleConfigFile.class);
     when(configFile.asProperties()).thenReturn(properties);
 
@@ -126,10 +126,10 @@ public class JavaConfigPlaceholderTest extends AbstractSpringIntegrationTest {
     int anotherTimeout = someTimeout + 1;
     int someBatch = 2000;
 
-    Properties properties = mock(Properties.class);
+    Properties properties = new Properties();
 
-    when(properties.getProperty(TIMEOUT_PROPERTY)).thenReturn(String.valueOf(someTimeout));
-    when(properties.getProperty(BATCH_PROPERTY)).thenReturn(String.valueOf(someBatch));
+    properties.setProperty(TIMEOUT_PROPERTY, String.valueOf(someTimeout));
+    properties.setProperty(BATCH_PROPERTY, String.valueOf(someBatch));
     PropertiesCompatibleConfigFile configFile = mock(PropertiesCompatibleConfigFile.class);
     when(configFile.asProperties()).thenReturn(properties);
 
@@ -7,15 +7,21 @@ import com.ctrip.framework.apollo.configservice.controller.ConfigFileController;
 import com.ctrip.framework.apollo.configservice.controller.NotificationController;
 import com.ctrip.framework.apollo.configservice.controller.NotificationControllerV2;
 import com.ctrip.framework.apollo.configservice.filter.ClientAuthenticationFilter;
+import com.ctrip.framework.apollo.configservice.filter.ReleaseMessageAuthenticationFilter;
+import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigServiceWithCache;
 import com.ctrip.framework.apollo.configservice.service.config.DefaultConfigService;
 import com.ctrip.framework.apollo.configservice.util.AccessKeyUtil;
+import com.ctrip.framework.apollo.configservice.wrapper.PreSerializedNotificationsHttpMessageConverter;
+import java.util.List;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -47,6 +53,16 @@ public class ConfigServiceAutoConfiguration {
     return (NoOpPasswordEncoder) NoOpPasswordEncoder.getInstance();
   }
 
+  @Bean
+  public WebMvcConfigurer preSerializedNotificationsConfigurer() {
+    return new WebMvcConfigurer() {
+      @Override
+      public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(0, new PreSerializedNotificationsHttpMessageConverter());
+      }
+    };
+  }
+
   @Bean
   public FilterRegistrationBean clientAuthenticationFilter(AccessKeyUtil accessKeyUtil) {
     FilterRegistrationBean filterRegistrationBean = new FilterRegistrationBean();
@@ -59,6 +75,16 @@ public class ConfigServiceAutoConfiguration {
     return filterRegistrationBean;
   }
 
+  @Bean
+  public FilterRegistrationBean releaseMessageAuthenticationFilter() {
+    FilterRegistrationBean filterRegistrationBean = new FilterRegistrationBean();
+
+    filterRegistrationBean.setFilter(new ReleaseMessageAuthenticationFilter(bizConfig));
+    filterRegistrationBean.addUrlPatterns("/release-messages/*");
+
+    return filterRegistrationBean;
+  }
+
   @Configuration
   static class MessageScannerConfiguration {
     private final NotificationController notificationController;
@@ -67,6 +93,7 @@ public class ConfigServiceAutoConfiguration {
     private final GrayReleaseRulesHolder grayReleaseRulesHolder;
     private final ReleaseMessageServiceWithCache releaseMessageServiceWithCache;
     private final ConfigService configService;
+    private final AppNamespaceServiceWithCache appNamespaceServiceWithCache;
 
     public MessageScannerConfiguration(
         final NotificationController notificationController,
@@ -74,13 +101,15 @@ public class ConfigServiceAutoConfiguration {
         final NotificationControllerV2 notificationControllerV2,
         final GrayReleaseRulesHolder grayReleaseRulesHolder,
         final ReleaseMessageServiceWithCache releaseMessageServiceWithCache,
-        final ConfigService configService) {
+        final ConfigService configService,
+        final AppNamespaceServiceWithCache appNamespaceServiceWithCache) {
       this.notificationController = notificationController;
       this.configFileController = configFileController;
       this.notificationControllerV2 = notificationControllerV2;
       this.grayReleaseRulesHolder = grayReleaseRulesHolder;
       this.releaseMessageServiceWithCache = releaseMessageServiceWithCache;
       this.configService = configService;
+      this.appNamespaceServiceWithCache = appNamespaceServiceWithCache;
     }
 
     @Bean
@@ -88,6 +117,7 @@ public class ConfigServiceAutoConfiguration {
       ReleaseMessageScanner releaseMessageScanner = new ReleaseMessageScanner();
       //0. handle release message cache
       releaseMessageScanner.addMessageListener(releaseMessageServiceWithCache);
+      releaseMessageScanner.addMessageListener(appNamespaceServiceWithCache);
       //1. handle gray release rule
       releaseMessageScanner.addMessageListener(grayReleaseRulesHolder);
       //2. handle server cache
@@ -1,7 +1,9 @@
 package com.ctrip.framework.apollo.configservice.controller;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
+import com.ctrip.framework.apollo.common.exception.BadRequestException;
 import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
 import com.ctrip.framework.apollo.configservice.util.InstanceConfigAuditUtil;
@@ -9,13 +11,18 @@ import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfig;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.core.dto.ConfigurationChange;
+import com.ctrip.framework.apollo.core.enums.ConfigSyncType;
+import com.ctrip.framework.apollo.core.enums.ConfigurationChangeType;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import org.springframework.util.CollectionUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -26,6 +33,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -39,13 +47,16 @@ import java.util.stream.Collectors;
 public class ConfigController {
   private static final Splitter X_FORWARDED_FOR_SPLITTER = Splitter.on(",").omitEmptyStrings()
       .trimResults();
+  private static final Splitter RELEASE_KEY_SPLITTER = Splitter.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+      .omitEmptyStrings();
   private final ConfigService configService;
   private final AppNamespaceServiceWithCache appNamespaceService;
   private final NamespaceUtil namespaceUtil;
   private final InstanceConfigAuditUtil instanceConfigAuditUtil;
+  private final BizConfig bizConfig;
   private final Gson gson;
 
-  private static final Type configurationTypeReference = new TypeToken<Map<String, String>>() {
+  private static final Type namespacesTypeReference = new TypeToken<LinkedHashMap<String, String>>() {
       }.getType();
 
   public ConfigController(
@@ -53,11 +64,13 @@ public class ConfigController {
       final AppNamespaceServiceWithCache appNamespaceService,
       final NamespaceUtil namespaceUtil,
       final InstanceConfigAuditUtil instanceConfigAuditUtil,
+      final BizConfig bizConfig,
       final Gson gson) {
     this.configService = configService;
     this.appNamespaceService = appNamespaceService;
     this.namespaceUtil = namespaceUtil;
     this.instanceConfigAuditUtil = instanceConfigAuditUtil;
+    this.bizConfig = bizConfig;
     this.gson = gson;
   }
 
@@ -68,12 +81,61 @@ public class ConfigController {
                                   @RequestParam(value = "releaseKey", defaultValue = "-1") String clientSideReleaseKey,
                                   @RequestParam(value = "ip", required = false) String clientIp,
                                   @RequestParam(value = "messages", required = false) String messagesAsString,
+                                  @RequestParam(value = "incrementalSync", defaultValue = "false") boolean incrementalSync,
                                   HttpServletRequest request, HttpServletResponse response) throws IOException {
-    String originalNamespace = namespace;
-    //strip out .properties suffix
-    namespace = namespaceUtil.filterNamespaceName(namespace);
-    //fix the character case issue, such as FX.apollo <-> fx.apollo
-    namespace = namespaceUtil.normalizeNamespace(appId, namespace);
+    if (Strings.isNullOrEmpty(clientIp)) {
+      clientIp = tryToGetClientIp(request);
+    }
+
+    ApolloNotificationMessages clientMessages = transformMessages(messagesAsString);
+
+    ApolloConfig apolloConfig = loadConfig(appId, clusterName, namespace, dataCenter, clientSideReleaseKey,
+        clientIp, clientMessages, incrementalSync);
+
+    if (apolloConfig == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND,
+          String.format(
+              "Could not load configurations with appId: %s, clusterName: %s, namespace: %s",
+              appId, clusterName, namespace));
+      return null;
+    }
+
+    if (isNotModified(apolloConfig)) {
+      // Client side configuration is the same with server side, return 304
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return null;
+    }
+
+    return apolloConfig;
+  }
+
+  /**
+   * Query the configs of multiple namespaces in one round trip, e.g. when the client starts up.
+   *
+   * @param namespacesAsString the namespaces to query and the release keys the client holds, in the form of
+   *                           {"namespace1": "releaseKey1", "namespace2": ""},
+   *                           the release key is empty if the client doesn't hold any config yet, at most
+   *                           {@link BizConfig#configServiceBatchQueryMaxNamespaces()} namespaces
+   * @return the configs of the namespaces found, those not modified are returned without configurations
+   */
+  @GetMapping(value = "/{appId}/{clusterName}")
+  public List<ApolloConfig> queryConfigs(@PathVariable String appId, @PathVariable String clusterName,
+                                         @RequestParam(value = "namespaces") String namespacesAsString,
+                                         @RequestParam(value = "dataCenter", required = false) String dataCenter,
+                                         @RequestParam(value = "ip", required = false) String clientIp,
+                                         @RequestParam(value = "messages", required = false) String messagesAsString,
+                                         HttpServletRequest request) {
+    Map<String, String> clientSideReleaseKeys = transformNamespaces(namespacesAsString);
+
+    if (CollectionUtils.isEmpty(clientSideReleaseKeys)) {
+      throw new BadRequestException("Invalid format of namespaces: " + namespacesAsString);
+    }
+
+    int maxNamespaces = bizConfig.configServiceBatchQueryMaxNamespaces();
+    if (clientSideReleaseKeys.size() > maxNamespaces) {
+      throw new BadRequestException(String.format("Too many namespaces: %d, the max is %d",
+          clientSideReleaseKeys.size(), maxNamespaces));
+    }
 
     if (Strings.isNullOrEmpty(clientIp)) {
       clientIp = tryToGetClientIp(request);
@@ -81,6 +143,32 @@ public class ConfigController {
 
     ApolloNotificationMessages clientMessages = transformMessages(messagesAsString);
 
+    List<ApolloConfig> apolloConfigs = Lists.newArrayListWithCapacity(clientSideReleaseKeys.size());
+    for (Map.Entry<String, String> entry : clientSideReleaseKeys.entrySet()) {
+      String clientSideReleaseKey = Strings.isNullOrEmpty(entry.getValue()) ? "-1" : entry.getValue();
+      ApolloConfig apolloConfig = loadConfig(appId, clusterName, entry.getKey(), dataCenter, clientSideReleaseKey,
+          clientIp, clientMessages, false);
+      if (apolloConfig != null) {
+        apolloConfigs.add(apolloConfig);
+      }
+    }
+
+    return apolloConfigs;
+  }
+
+  /**
+   * @param incrementalSync whether the client accepts the changes relative to the release it holds
+   * @return null if the config is not found, or the config without configurations if it's not modified
+   */
+  private ApolloConfig loadConfig(String appId, String clusterName, String namespace, String dataCenter,
+                                  String clientSideReleaseKey, String clientIp,
+                                  ApolloNotificationMessages clientMessages, boolean incrementalSync) {
+    String originalNamespace = namespace;
+    //strip out .properties suffix
+    namespace = namespaceUtil.filterNamespaceName(namespace);
+    //fix the character case issue, such as FX.apollo <-> fx.apollo
+    namespace = namespaceUtil.normalizeNamespace(appId, namespace);
+
     List<Release> releases = Lists.newLinkedList();
 
     String appClusterNameLoaded = clusterName;
@@ -105,10 +193,6 @@ public class ConfigController {
     }
 
     if (releases.isEmpty()) {
-      response.sendError(HttpServletResponse.SC_NOT_FOUND,
-          String.format(
-              "Could not load configurations with appId: %s, clusterName: %s, namespace: %s",
-              appId, clusterName, originalNamespace));
       Tracer.logEvent("Apollo.Config.NotFound",
           assembleKey(appId, clusterName, originalNamespace, dataCenter));
       return null;
@@ -119,23 +203,97 @@ public class ConfigController {
     String mergedReleaseKey = releases.stream().map(Release::getReleaseKey)
             .collect(Collectors.joining(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR));
 
+    ApolloConfig apolloConfig = new ApolloConfig(appId, appClusterNameLoaded, originalNamespace,
+        mergedReleaseKey);
+
     if (mergedReleaseKey.equals(clientSideReleaseKey)) {
-      // Client side configuration is the same with server side, return 304
-      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
       Tracer.logEvent("Apollo.Config.NotModified",
           assembleKey(appId, appClusterNameLoaded, originalNamespace, dataCenter));
-      return null;
+      return apolloConfig;
     }
 
-    ApolloConfig apolloConfig = new ApolloConfig(appId, appClusterNameLoaded, originalNamespace,
-        mergedReleaseKey);
-    apolloConfig.setConfigurations(mergeReleaseConfigurations(releases));
+    Map<String, String> configurations = mergeReleaseConfigurations(releases);
+
+    List<ConfigurationChange> configurationChanges = null;
+    if (incrementalSync && bizConfig.isConfigServiceIncrementalChangeEnabled()) {
+      configurationChanges = calcConfigurationChanges(clientSideReleaseKey, releases, configurations);
+    }
+
+    if (configurationChanges != null) {
+      apolloConfig.setConfigSyncType(ConfigSyncType.INCREMENTAL_SYNC.getValue());
+      apolloConfig.setConfigurationChanges(configurationChanges);
+      Tracer.logEvent("Apollo.Config.IncrementalSync", assembleKey(appId, appClusterNameLoaded,
+          originalNamespace, dataCenter));
+    } else {
+      apolloConfig.setConfigurations(configurations);
+    }
 
     Tracer.logEvent("Apollo.Config.Found", assembleKey(appId, appClusterNameLoaded,
         originalNamespace, dataCenter));
     return apolloConfig;
   }
 
+  private boolean isNotModified(ApolloConfig apolloConfig) {
+    return apolloConfig.getConfigurations() == null && apolloConfig.getConfigurationChanges() == null;
+  }
+
+  /**
+   * Calculate the changes relative to the releases the client holds
+   *
+   * @param clientSideReleaseKey the merged release key the client holds
+   * @param releases             the latest releases merged
+   * @param configurations       the latest merged configurations
+   * @return the changes, or null if the releases the client holds are not found or not the ones of the namespaces
+   * queried
+   */
+  private List<ConfigurationChange> calcConfigurationChanges(String clientSideReleaseKey, List<Release> releases,
+                                                             Map<String, String> configurations) {
+    List<String> clientSideReleaseKeys = RELEASE_KEY_SPLITTER.splitToList(clientSideReleaseKey);
+    if (clientSideReleaseKeys.size() != releases.size()) {
+      return null;
+    }
+
+    Map<String, Release> clientSideReleases =
+        configService.findReleasesByReleaseKeys(Sets.newHashSet(clientSideReleaseKeys));
+
+    List<Release> previousReleases = Lists.newArrayListWithCapacity(clientSideReleaseKeys.size());
+    for (int i = 0; i < clientSideReleaseKeys.size(); i++) {
+      Release release = clientSideReleases.get(clientSideReleaseKeys.get(i));
+      //the release keys are sent by the client, so the releases of other namespaces must not be diffed against
+      if (release == null || !isSameNamespace(release, releases.get(i))) {
+        return null;
+      }
+      previousReleases.add(release);
+    }
+
+    return calcConfigurationChanges(mergeReleaseConfigurations(previousReleases), configurations);
+  }
+
+  private boolean isSameNamespace(Release release, Release anotherRelease) {
+    return Objects.equals(release.getAppId(), anotherRelease.getAppId())
+        && Objects.equals(release.getClusterName(), anotherRelease.getClusterName())
+        && Objects.equals(release.getNamespaceName(), anotherRelease.getNamespaceName());
+  }
+
+  List<ConfigurationChange> calcConfigurationChanges(Map<String, String> previousConfigurations,
+                                                     Map<String, String> configurations) {
+    List<ConfigurationChange> changes = Lists.newArrayList();
+    for (Map.Entry<String, String> entry : configurations.entrySet()) {
+      String key = entry.getKey();
+      if (!previousConfigurations.containsKey(key)) {
+        changes.add(new ConfigurationChange(key, entry.getValue(), ConfigurationChangeType.ADDED.name()));
+      } else if (!Objects.equals(previousConfigurations.get(key), entry.getValue())) {
+        changes.add(new ConfigurationChange(key, entry.getValue(), ConfigurationChangeType.MODIFIED.name()));
+      }
+    }
+    for (String key : previousConfigurations.keySet()) {
+      if (!configurations.containsKey(key)) {
+        changes.add(new ConfigurationChange(key, null, ConfigurationChangeType.DELETED.name()));
+      }
+    }
+    return changes;
+  }
+
   private boolean namespaceBelongsToAppId(String appId, String namespaceName) {
     //Every app has an 'application' namespace
     if (Objects.equals(ConfigConsts.NAMESPACE_APPLICATION, namespaceName)) {
@@ -177,9 +335,13 @@ public class ConfigController {
    * Release in lower index override those in higher index
    */
   Map<String, String> mergeReleaseConfigurations(List<Release> releases) {
+    //the parsed configurations are shared, so no need to copy if there is nothing to merge
+    if (releases.size() == 1) {
+      return configService.loadConfigurations(releases.get(0));
+    }
     Map<String, String> result = Maps.newLinkedHashMap();
     for (Release release : Lists.reverse(releases)) {
-      result.putAll(gson.fromJson(release.getConfigurations(), configurationTypeReference));
+      result.putAll(configService.loadConfigurations(release));
     }
     return result;
   }
@@ -213,6 +375,17 @@ public class ConfigController {
     return request.getRemoteAddr();
   }
 
+  Map<String, String> transformNamespaces(String namespacesAsString) {
+    Map<String, String> namespaces = null;
+    try {
+      namespaces = gson.fromJson(namespacesAsString, namespacesTypeReference);
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+    }
+
+    return namespaces;
+  }
+
   ApolloNotificationMessages transformMessages(String messagesAsString) {
     ApolloNotificationMessages notificationMessages = null;
     if (!Strings.isNullOrEmpty(messagesAsString)) {
@@ -15,16 +15,18 @@ import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
 import com.google.common.cache.Weigher;
-import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
 import com.google.gson.Gson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -34,14 +36,22 @@ import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 /**
+ * The config files are cached as the encoded bytes with a strong ETag derived from the release key, so the clients
+ * polling with If-None-Match get 304 without the body, and the gzipped bytes are kept once requested.
+ *
  * @author Jason Song(song_s@ctrip.com)
  */
 @RestController
@@ -51,16 +61,22 @@ public class ConfigFileController implements ReleaseMessageListener {
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
   private static final Splitter X_FORWARDED_FOR_SPLITTER = Splitter.on(",").omitEmptyStrings()
       .trimResults();
+  private static final Splitter ETAG_SPLITTER = Splitter.on(",").omitEmptyStrings().trimResults();
+  private static final Splitter ACCEPT_ENCODING_SPLITTER = Splitter.on(",").omitEmptyStrings().trimResults();
+  private static final Splitter ACCEPT_ENCODING_PARAMETER_SPLITTER = Splitter.on(";").trimResults();
   private static final long MAX_CACHE_SIZE = 50 * 1024 * 1024; // 50MB
   private static final long EXPIRE_AFTER_WRITE = 30;
-  private final HttpHeaders propertiesResponseHeaders;
-  private final HttpHeaders jsonResponseHeaders;
-  private final ResponseEntity<String> NOT_FOUND_RESPONSE;
-  private Cache<String, String> localCache;
-  private final Multimap<String, String>
-      watchedKeys2CacheKey = Multimaps.synchronizedSetMultimap(HashMultimap.create());
-  private final Multimap<String, String>
-      cacheKey2WatchedKeys = Multimaps.synchronizedSetMultimap(HashMultimap.create());
+  private static final String GZIP = "gzip";
+  private static final String ANY_ENCODING = "*";
+  private static final String QUALITY_PARAMETER_PREFIX = "q=";
+  private static final String GZIP_ETAG_SUFFIX = "-gzip";
+  private static final String WEAK_ETAG_PREFIX = "W/";
+  private static final MediaType PROPERTIES_CONTENT_TYPE = MediaType.parseMediaType("text/plain;charset=UTF-8");
+  private static final MediaType JSON_CONTENT_TYPE = MediaType.parseMediaType("application/json;charset=UTF-8");
+  private final ResponseEntity<byte[]> NOT_FOUND_RESPONSE;
+  private Cache<String, ConfigFileCacheEntry> localCache;
+  //watched key -> cache keys, the watched keys of a cache key are kept in the cache entry
+  private final ConcurrentMap<String, Set<String>> watchedKeys2CacheKey = Maps.newConcurrentMap();
   private static final Gson GSON = new Gson();
 
   private final ConfigController configController;
@@ -75,27 +91,22 @@ public class ConfigFileController implements ReleaseMessageListener {
       final GrayReleaseRulesHolder grayReleaseRulesHolder) {
     localCache = CacheBuilder.newBuilder()
         .expireAfterWrite(EXPIRE_AFTER_WRITE, TimeUnit.MINUTES)
-        .weigher((Weigher<String, String>) (key, value) -> value == null ? 0 : value.length())
+        .weigher((Weigher<String, ConfigFileCacheEntry>) (key, value) -> value == null ? 0 : value.getWeight())
         .maximumWeight(MAX_CACHE_SIZE)
         .removalListener(notification -> {
           String cacheKey = notification.getKey();
-          logger.debug("removing cache key: {}", cacheKey);
-          if (!cacheKey2WatchedKeys.containsKey(cacheKey)) {
+          ConfigFileCacheEntry entry = notification.getValue();
+          //the new entry of the same cache key is watched by the same keys
+          if (entry == null || notification.getCause() == RemovalCause.REPLACED) {
             return;
           }
-          //create a new list to avoid ConcurrentModificationException
-          List<String> watchedKeys = new ArrayList<>(cacheKey2WatchedKeys.get(cacheKey));
-          for (String watchedKey : watchedKeys) {
-            watchedKeys2CacheKey.remove(watchedKey, cacheKey);
+          logger.debug("removing cache key: {}", cacheKey);
+          for (String watchedKey : entry.getWatchedKeys()) {
+            unwatch(watchedKey, cacheKey);
           }
-          cacheKey2WatchedKeys.removeAll(cacheKey);
           logger.debug("removed cache key: {}", cacheKey);
         })
         .build();
-    propertiesResponseHeaders = new HttpHeaders();
-    propertiesResponseHeaders.add("Content-Type", "text/plain;charset=UTF-8");
-    jsonResponseHeaders = new HttpHeaders();
-    jsonResponseHeaders.add("Content-Type", "application/json;charset=UTF-8");
     NOT_FOUND_RESPONSE = new ResponseEntity<>(HttpStatus.NOT_FOUND);
     this.configController = configController;
     this.namespaceUtil = namespaceUtil;
@@ -104,7 +115,7 @@ public class ConfigFileController implements ReleaseMessageListener {
   }
 
   @GetMapping(value = "/{appId}/{clusterName}/{namespace:.+}")
-  public ResponseEntity<String> queryConfigAsProperties(@PathVariable String appId,
+  public ResponseEntity<byte[]> queryConfigAsProperties(@PathVariable String appId,
                                                         @PathVariable String clusterName,
                                                         @PathVariable String namespace,
                                                         @RequestParam(value = "dataCenter", required = false) String dataCenter,
@@ -113,7 +124,7 @@ public class ConfigFileController implements ReleaseMessageListener {
                                                         HttpServletResponse response)
       throws IOException {
 
-    String result =
+    ConfigFileCacheEntry result =
         queryConfig(ConfigFileOutputFormat.PROPERTIES, appId, clusterName, namespace, dataCenter,
             clientIp, request, response);
 
@@ -121,11 +132,11 @@ public class ConfigFileController implements ReleaseMessageListener {
       return NOT_FOUND_RESPONSE;
     }
 
-    return new ResponseEntity<>(result, propertiesResponseHeaders, HttpStatus.OK);
+    return buildResponse(result, PROPERTIES_CONTENT_TYPE, request);
   }
 
   @GetMapping(value = "/json/{appId}/{clusterName}/{namespace:.+}")
-  public ResponseEntity<String> queryConfigAsJson(@PathVariable String appId,
+  public ResponseEntity<byte[]> queryConfigAsJson(@PathVariable String appId,
                                                   @PathVariable String clusterName,
                                                   @PathVariable String namespace,
                                                   @RequestParam(value = "dataCenter", required = false) String dataCenter,
@@ -133,7 +144,7 @@ public class ConfigFileController implements ReleaseMessageListener {
                                                   HttpServletRequest request,
                                                   HttpServletResponse response) throws IOException {
 
-    String result =
+    ConfigFileCacheEntry result =
         queryConfig(ConfigFileOutputFormat.JSON, appId, clusterName, namespace, dataCenter,
             clientIp, request, response);
 
@@ -141,13 +152,83 @@ public class ConfigFileController implements ReleaseMessageListener {
       return NOT_FOUND_RESPONSE;
     }
 
-    return new ResponseEntity<>(result, jsonResponseHeaders, HttpStatus.OK);
+    return buildResponse(result, JSON_CONTENT_TYPE, request);
+  }
+
+  private ResponseEntity<byte[]> buildResponse(ConfigFileCacheEntry entry, MediaType contentType,
+                                               HttpServletRequest request) {
+    boolean gzip = acceptsGzip(request);
+    HttpHeaders headers = new HttpHeaders();
+    headers.setETag(gzip ? entry.getGzipETag() : entry.getETag());
+    headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+    //the body is not touched if the client has the same config already
+    if (matchesETag(request.getHeader(HttpHeaders.IF_NONE_MATCH), entry)) {
+      return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+    }
+
+    headers.setContentType(contentType);
+    if (gzip) {
+      headers.set(HttpHeaders.CONTENT_ENCODING, GZIP);
+      return new ResponseEntity<>(entry.getGzipBody(), headers, HttpStatus.OK);
+    }
+    return new ResponseEntity<>(entry.getBody(), headers, HttpStatus.OK);
+  }
+
+  private boolean acceptsGzip(HttpServletRequest request) {
+    String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+    if (Strings.isNullOrEmpty(acceptEncoding)) {
+      return false;
+    }
+    boolean anyEncodingAccepted = false;
+    for (String coding : ACCEPT_ENCODING_SPLITTER.split(acceptEncoding)) {
+      List<String> parts = ACCEPT_ENCODING_PARAMETER_SPLITTER.splitToList(coding);
+      String encoding = parts.get(0);
+      //gzip;q=0 means gzip is not acceptable, and gzip listed explicitly overrides *
+      if (GZIP.equalsIgnoreCase(encoding)) {
+        return parseQuality(parts) > 0;
+      }
+      if (ANY_ENCODING.equals(encoding)) {
+        anyEncodingAccepted = parseQuality(parts) > 0;
+      }
+    }
+    return anyEncodingAccepted;
+  }
+
+  private double parseQuality(List<String> codingParts) {
+    for (String parameter : codingParts.subList(1, codingParts.size())) {
+      if (parameter.regionMatches(true, 0, QUALITY_PARAMETER_PREFIX, 0, QUALITY_PARAMETER_PREFIX.length())) {
+        try {
+          return Double.parseDouble(parameter.substring(QUALITY_PARAMETER_PREFIX.length()).trim());
+        } catch (NumberFormatException ex) {
+          //the malformed quality is treated as not acceptable
+          return 0;
+        }
+      }
+    }
+    return 1;
   }
 
-  String queryConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
-                     String namespace, String dataCenter, String clientIp,
-                     HttpServletRequest request,
-                     HttpServletResponse response) throws IOException {
+  private boolean matchesETag(String ifNoneMatch, ConfigFileCacheEntry entry) {
+    if (Strings.isNullOrEmpty(ifNoneMatch)) {
+      return false;
+    }
+    for (String eTag : ETAG_SPLITTER.split(ifNoneMatch)) {
+      //weak comparison, as the proxies might weaken the etag when transforming the body
+      if (eTag.startsWith(WEAK_ETAG_PREFIX)) {
+        eTag = eTag.substring(WEAK_ETAG_PREFIX.length());
+      }
+      if ("*".equals(eTag) || eTag.equals(entry.getETag()) || eTag.equals(entry.getGzipETag())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  ConfigFileCacheEntry queryConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
+                                   String namespace, String dataCenter, String clientIp,
+                                   HttpServletRequest request,
+                                   HttpServletResponse response) throws IOException {
     //strip out .properties suffix
     namespace = namespaceUtil.filterNamespaceName(namespace);
     //fix the character case issue, such as FX.apollo <-> fx.apollo
@@ -167,17 +248,19 @@ public class ConfigFileController implements ReleaseMessageListener {
     if (hasGrayReleaseRule) {
       Tracer.logEvent("ConfigFile.Cache.GrayRelease", cacheKey);
       return loadConfig(outputFormat, appId, clusterName, namespace, dataCenter, clientIp,
-          request, response);
+          request, response, null);
     }
 
     //3. if not gray release, check weather cache exists, if exists, return
-    String result = localCache.getIfPresent(cacheKey);
+    ConfigFileCacheEntry result = localCache.getIfPresent(cacheKey);
 
     //4. if not exists, load from ConfigController
-    if (Strings.isNullOrEmpty(result)) {
+    if (result == null) {
       Tracer.logEvent("ConfigFile.Cache.Miss", cacheKey);
+      Set<String> watchedKeys =
+          watchKeysUtil.assembleAllWatchKeys(appId, clusterName, namespace, dataCenter);
       result = loadConfig(outputFormat, appId, clusterName, namespace, dataCenter, clientIp,
-          request, response);
+          request, response, watchedKeys);
 
       if (result == null) {
         return null;
@@ -187,20 +270,15 @@ public class ConfigFileController implements ReleaseMessageListener {
       if (grayReleaseRulesHolder.hasGrayReleaseRule(appId, clientIp, namespace)) {
         Tracer.logEvent("ConfigFile.Cache.GrayReleaseConflict", cacheKey);
         return loadConfig(outputFormat, appId, clusterName, namespace, dataCenter, clientIp,
-            request, response);
+            request, response, null);
       }
 
       localCache.put(cacheKey, result);
       logger.debug("adding cache for key: {}", cacheKey);
 
-      Set<String> watchedKeys =
-          watchKeysUtil.assembleAllWatchKeys(appId, clusterName, namespace, dataCenter);
-
       for (String watchedKey : watchedKeys) {
-        watchedKeys2CacheKey.put(watchedKey, cacheKey);
+        watch(watchedKey, cacheKey);
       }
-
-      cacheKey2WatchedKeys.putAll(cacheKey, watchedKeys);
       logger.debug("added cache for key: {}", cacheKey);
     } else {
       Tracer.logEvent("ConfigFile.Cache.Hit", cacheKey);
@@ -209,12 +287,30 @@ public class ConfigFileController implements ReleaseMessageListener {
     return result;
   }
 
-  private String loadConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
-                            String namespace, String dataCenter, String clientIp,
-                            HttpServletRequest request,
-                            HttpServletResponse response) throws IOException {
+  private void watch(String watchedKey, String cacheKey) {
+    watchedKeys2CacheKey.compute(watchedKey, (key, cacheKeys) -> {
+      if (cacheKeys == null) {
+        cacheKeys = Sets.newConcurrentHashSet();
+      }
+      cacheKeys.add(cacheKey);
+      return cacheKeys;
+    });
+  }
+
+  private void unwatch(String watchedKey, String cacheKey) {
+    watchedKeys2CacheKey.computeIfPresent(watchedKey, (key, cacheKeys) -> {
+      cacheKeys.remove(cacheKey);
+      return cacheKeys.isEmpty() ? null : cacheKeys;
+    });
+  }
+
+  private ConfigFileCacheEntry loadConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
+                                          String namespace, String dataCenter, String clientIp,
+                                          HttpServletRequest request,
+                                          HttpServletResponse response,
+                                          Set<String> watchedKeys) throws IOException {
     ApolloConfig apolloConfig = configController.queryConfig(appId, clusterName, namespace,
-        dataCenter, "-1", clientIp, null, request, response);
+        dataCenter, "-1", clientIp, null, false, request, response);
 
     if (apolloConfig == null || apolloConfig.getConfigurations() == null) {
       return null;
@@ -233,7 +329,18 @@ public class ConfigFileController implements ReleaseMessageListener {
         break;
     }
 
-    return result;
+    return new ConfigFileCacheEntry(result.getBytes(StandardCharsets.UTF_8),
+        assembleETag(outputFormat, apolloConfig.getReleaseKey()), watchedKeys);
+  }
+
+  /**
+   * The merged release key identifies the releases, so the same config file is rendered for the same release key
+   */
+  private String assembleETag(ConfigFileOutputFormat outputFormat, String releaseKey) {
+    return Hashing.murmur3_128().newHasher()
+        .putString(outputFormat.getValue(), StandardCharsets.UTF_8)
+        .putString(Strings.nullToEmpty(releaseKey), StandardCharsets.UTF_8)
+        .hash().toString();
   }
 
   String assembleCacheKey(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
@@ -256,13 +363,12 @@ public class ConfigFileController implements ReleaseMessageListener {
       return;
     }
 
-    if (!watchedKeys2CacheKey.containsKey(content)) {
+    Set<String> cacheKeys = watchedKeys2CacheKey.get(content);
+    if (cacheKeys == null) {
       return;
     }
 
-    //create a new list to avoid ConcurrentModificationException
-    List<String> cacheKeys = new ArrayList<>(watchedKeys2CacheKey.get(content));
-
+    //the concurrent set could be iterated while the cache keys are removed by the removal listener
     for (String cacheKey : cacheKeys) {
       logger.debug("invalidate cache key: {}", cacheKey);
       localCache.invalidate(cacheKey);
@@ -290,4 +396,63 @@ public class ConfigFileController implements ReleaseMessageListener {
     }
     return request.getRemoteAddr();
   }
+
+  static class ConfigFileCacheEntry {
+    private final byte[] body;
+    private final String eTag;
+    private final String gzipETag;
+    private final Set<String> watchedKeys;
+    //gzipped once requested, as not all the clients accept gzip
+    private volatile byte[] gzipBody;
+
+    ConfigFileCacheEntry(byte[] body, String eTag, Set<String> watchedKeys) {
+      this.body = body;
+      this.eTag = "\"" + eTag + "\"";
+      this.gzipETag = "\"" + eTag + GZIP_ETAG_SUFFIX + "\"";
+      this.watchedKeys = watchedKeys == null ? Collections.emptySet() : watchedKeys;
+    }
+
+    byte[] getBody() {
+      return body;
+    }
+
+    byte[] getGzipBody() {
+      byte[] gzipBody = this.gzipBody;
+      if (gzipBody == null) {
+        //it's fine to gzip more than once in concurrent requests, as the results are the same
+        gzipBody = gzip(body);
+        this.gzipBody = gzipBody;
+      }
+      return gzipBody;
+    }
+
+    String getETag() {
+      return eTag;
+    }
+
+    String getGzipETag() {
+      return gzipETag;
+    }
+
+    Set<String> getWatchedKeys() {
+      return watchedKeys;
+    }
+
+    /**
+     * the gzip body is counted as large as the body, though it's usually much smaller
+     */
+    int getWeight() {
+      return body.length * 2;
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+      try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+        gzipOut.write(bytes);
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+      return out.toByteArray();
+    }
+  }
 }
@@ -6,16 +6,13 @@ import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.utils.EntityManagerUtil;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
+import com.ctrip.framework.apollo.configservice.util.WatchKeyRegistry;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
@@ -38,8 +35,8 @@ import java.util.Set;
 public class NotificationController implements ReleaseMessageListener {
   private static final Logger logger = LoggerFactory.getLogger(NotificationController.class);
   private static final long TIMEOUT = 30 * 1000;//30 seconds
-  private final Multimap<String, DeferredResult<ResponseEntity<ApolloConfigNotification>>>
-      deferredResults = Multimaps.synchronizedSetMultimap(HashMultimap.create());
+  private final WatchKeyRegistry<DeferredResult<ResponseEntity<ApolloConfigNotification>>>
+      deferredResults = new WatchKeyRegistry<>(false);
   private static final ResponseEntity<ApolloConfigNotification>
       NOT_MODIFIED_RESPONSE = new ResponseEntity<>(HttpStatus.NOT_MODIFIED);
   private static final Splitter STRING_SPLITTER =
@@ -150,9 +147,9 @@ public class NotificationController implements ReleaseMessageListener {
     if (!deferredResults.containsKey(content)) {
       return;
     }
-    //create a new list to avoid ConcurrentModificationException
+    //the registry returns a snapshot, so it's safe to iterate while clients are unregistering
     List<DeferredResult<ResponseEntity<ApolloConfigNotification>>> results =
-        Lists.newArrayList(deferredResults.get(content));
+        deferredResults.get(content);
     logger.debug("Notify {} clients for key {}", results.size(), content);
 
     for (DeferredResult<ResponseEntity<ApolloConfigNotification>> result : results) {
@@ -6,10 +6,14 @@ import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.utils.EntityManagerUtil;
 import com.ctrip.framework.apollo.common.exception.BadRequestException;
+import com.ctrip.framework.apollo.common.exception.NotFoundException;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
+import com.ctrip.framework.apollo.configservice.util.NotificationFanOutScheduler;
+import com.ctrip.framework.apollo.configservice.util.WatchKeyRegistry;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.ctrip.framework.apollo.configservice.wrapper.NotificationStream;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
@@ -19,10 +23,7 @@ import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
-import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
-import com.google.common.collect.TreeMultimap;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import org.slf4j.Logger;
@@ -35,6 +36,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.lang.reflect.Type;
 import java.util.Collection;
@@ -44,7 +46,9 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
 
 /**
@@ -54,15 +58,21 @@ import java.util.function.Function;
 @RequestMapping("/notifications/v2")
 public class NotificationControllerV2 implements ReleaseMessageListener {
   private static final Logger logger = LoggerFactory.getLogger(NotificationControllerV2.class);
-  private final Multimap<String, DeferredResultWrapper> deferredResults =
-      Multimaps.synchronizedSetMultimap(TreeMultimap.create(String.CASE_INSENSITIVE_ORDER, Ordering.natural()));
+  private static final long NOTIFICATION_STREAM_HEARTBEAT_INTERVAL_IN_SECONDS = 30;
+  private static final long NOTIFICATION_STREAM_SEND_TIMEOUT_IN_SECONDS = 10;
+  private static final int NOTIFICATION_STREAM_SEND_THREADS = 16;
+  private final WatchKeyRegistry<DeferredResultWrapper> deferredResults = new WatchKeyRegistry<>(true);
+  private final WatchKeyRegistry<NotificationStream> streams = new WatchKeyRegistry<>(true);
+  private final Set<NotificationStream> allStreams = Sets.newConcurrentHashSet();
   private static final Splitter STRING_SPLITTER =
       Splitter.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).omitEmptyStrings();
   private static final Type notificationsTypeReference =
       new TypeToken<List<ApolloConfigNotification>>() {
       }.getType();
 
-  private final ExecutorService largeNotificationBatchExecutorService;
+  private final NotificationFanOutScheduler fanOutScheduler;
+  private final ScheduledExecutorService streamScheduledExecutorService;
+  private final ExecutorService streamSendExecutorService;
 
   private final WatchKeysUtil watchKeysUtil;
   private final ReleaseMessageServiceWithCache releaseMessageService;
@@ -79,8 +89,18 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       final NamespaceUtil namespaceUtil,
       final Gson gson,
       final BizConfig bizConfig) {
-    largeNotificationBatchExecutorService = Executors.newSingleThreadExecutor(ApolloThreadFactory.create
-        ("NotificationControllerV2", true));
+    fanOutScheduler = new NotificationFanOutScheduler(bizConfig, gson);
+    //the streams are written by a bounded pool, while the scheduled tasks only queue events and never block
+    streamSendExecutorService = Executors.newFixedThreadPool(NOTIFICATION_STREAM_SEND_THREADS,
+        ApolloThreadFactory.create("NotificationControllerV2-StreamSend", true));
+    streamScheduledExecutorService = Executors.newSingleThreadScheduledExecutor(
+        ApolloThreadFactory.create("NotificationControllerV2-Stream", true));
+    streamScheduledExecutorService.scheduleWithFixedDelay(this::sendStreamHeartbeats,
+        NOTIFICATION_STREAM_HEARTBEAT_INTERVAL_IN_SECONDS, NOTIFICATION_STREAM_HEARTBEAT_INTERVAL_IN_SECONDS,
+        TimeUnit.SECONDS);
+    streamScheduledExecutorService.scheduleWithFixedDelay(this::abortTimedOutStreamSends,
+        NOTIFICATION_STREAM_SEND_TIMEOUT_IN_SECONDS, NOTIFICATION_STREAM_SEND_TIMEOUT_IN_SECONDS,
+        TimeUnit.SECONDS);
     this.watchKeysUtil = watchKeysUtil;
     this.releaseMessageService = releaseMessageService;
     this.entityManagerUtil = entityManagerUtil;
@@ -96,25 +116,8 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       @RequestParam(value = "notifications") String notificationsAsString,
       @RequestParam(value = "dataCenter", required = false) String dataCenter,
       @RequestParam(value = "ip", required = false) String clientIp) {
-    List<ApolloConfigNotification> notifications = null;
-
-    try {
-      notifications =
-          gson.fromJson(notificationsAsString, notificationsTypeReference);
-    } catch (Throwable ex) {
-      Tracer.logError(ex);
-    }
+    Map<String, ApolloConfigNotification> filteredNotifications = parseNotifications(appId, notificationsAsString);
 
-    if (CollectionUtils.isEmpty(notifications)) {
-      throw new BadRequestException("Invalid format of notifications: " + notificationsAsString);
-    }
-    
-    Map<String, ApolloConfigNotification> filteredNotifications = filterNotifications(appId, notifications);
-
-    if (CollectionUtils.isEmpty(filteredNotifications)) {
-      throw new BadRequestException("Invalid format of notifications: " + notificationsAsString);
-    }
-    
     DeferredResultWrapper deferredResultWrapper = new DeferredResultWrapper(bizConfig.longPollingTimeoutInMilli());
     Set<String> namespaces = Sets.newHashSetWithExpectedSize(filteredNotifications.size());
     Map<String, Long> clientSideNotifications = Maps.newHashMapWithExpectedSize(filteredNotifications.size());
@@ -162,6 +165,109 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
     /**
      * 2、check new release
      */
+    List<ApolloConfigNotification> newNotifications =
+        checkNewNotifications(namespaces, clientSideNotifications, watchedKeysMap, watchedKeys);
+
+    if (!CollectionUtils.isEmpty(newNotifications)) {
+      deferredResultWrapper.setResult(newNotifications);
+    }
+
+    return deferredResultWrapper.getResult();
+  }
+
+  /**
+   * Server-sent events alternative of {@link #pollNotification}, the client subscribes once and receives new
+   * notifications as they happen, until the stream is timed out and the client reconnects.
+   */
+  @GetMapping("/stream")
+  public SseEmitter streamNotifications(
+      @RequestParam(value = "appId") String appId,
+      @RequestParam(value = "cluster") String cluster,
+      @RequestParam(value = "notifications") String notificationsAsString,
+      @RequestParam(value = "dataCenter", required = false) String dataCenter,
+      @RequestParam(value = "ip", required = false) String clientIp) {
+    if (!bizConfig.isNotificationStreamEnabled()) {
+      throw new NotFoundException("Notification stream is not enabled");
+    }
+
+    Map<String, ApolloConfigNotification> filteredNotifications = parseNotifications(appId, notificationsAsString);
+
+    NotificationStream stream =
+        new NotificationStream(bizConfig.notificationStreamTimeoutInMilli(), streamSendExecutorService);
+    Set<String> namespaces = Sets.newHashSetWithExpectedSize(filteredNotifications.size());
+    Map<String, Long> clientSideNotifications = Maps.newHashMapWithExpectedSize(filteredNotifications.size());
+
+    for (Map.Entry<String, ApolloConfigNotification> notificationEntry : filteredNotifications.entrySet()) {
+      String normalizedNamespace = notificationEntry.getKey();
+      ApolloConfigNotification notification = notificationEntry.getValue();
+      namespaces.add(normalizedNamespace);
+      clientSideNotifications.put(normalizedNamespace, notification.getNotificationId());
+      if (!Objects.equals(notification.getNamespaceName(), normalizedNamespace)) {
+        stream.recordNamespaceNameNormalizedResult(notification.getNamespaceName(), normalizedNamespace);
+      }
+    }
+
+    Multimap<String, String> watchedKeysMap =
+        watchKeysUtil.assembleAllWatchKeys(appId, cluster, namespaces, dataCenter);
+
+    Set<String> watchedKeys = Sets.newHashSet(watchedKeysMap.values());
+
+    //register before the check, same as long polling
+    stream.onTimeout(() -> logWatchedKeys(watchedKeys, "Apollo.NotificationStream.TimeOutKeys"));
+    stream.onCompletion(() -> {
+      allStreams.remove(stream);
+      for (String key : watchedKeys) {
+        streams.remove(key, stream);
+      }
+      logWatchedKeys(watchedKeys, "Apollo.NotificationStream.CompletedKeys");
+    });
+
+    for (String key : watchedKeys) {
+      streams.put(key, stream);
+    }
+    allStreams.add(stream);
+
+    logWatchedKeys(watchedKeys, "Apollo.NotificationStream.RegisteredKeys");
+    logger.debug("Streaming {} to appId: {}, cluster: {}, namespace: {}, datacenter: {}",
+        watchedKeys, appId, cluster, namespaces, dataCenter);
+
+    List<ApolloConfigNotification> newNotifications =
+        checkNewNotifications(namespaces, clientSideNotifications, watchedKeysMap, watchedKeys);
+
+    if (!CollectionUtils.isEmpty(newNotifications)) {
+      stream.send(newNotifications);
+    }
+
+    return stream.getEmitter();
+  }
+
+  private Map<String, ApolloConfigNotification> parseNotifications(String appId, String notificationsAsString) {
+    List<ApolloConfigNotification> notifications = null;
+
+    try {
+      notifications =
+          gson.fromJson(notificationsAsString, notificationsTypeReference);
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+    }
+
+    if (CollectionUtils.isEmpty(notifications)) {
+      throw new BadRequestException("Invalid format of notifications: " + notificationsAsString);
+    }
+
+    Map<String, ApolloConfigNotification> filteredNotifications = filterNotifications(appId, notifications);
+
+    if (CollectionUtils.isEmpty(filteredNotifications)) {
+      throw new BadRequestException("Invalid format of notifications: " + notificationsAsString);
+    }
+
+    return filteredNotifications;
+  }
+
+  private List<ApolloConfigNotification> checkNewNotifications(Set<String> namespaces,
+                                                               Map<String, Long> clientSideNotifications,
+                                                               Multimap<String, String> watchedKeysMap,
+                                                               Set<String> watchedKeys) {
     List<ReleaseMessage> latestReleaseMessages =
         releaseMessageService.findLatestReleaseMessagesGroupByMessages(watchedKeys);
 
@@ -173,15 +279,8 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
      */
     entityManagerUtil.closeEntityManager();
 
-    List<ApolloConfigNotification> newNotifications =
-        getApolloConfigNotifications(namespaces, clientSideNotifications, watchedKeysMap,
-            latestReleaseMessages);
-
-    if (!CollectionUtils.isEmpty(newNotifications)) {
-      deferredResultWrapper.setResult(newNotifications);
-    }
-
-    return deferredResultWrapper.getResult();
+    return getApolloConfigNotifications(namespaces, clientSideNotifications, watchedKeysMap,
+        latestReleaseMessages);
   }
 
   private Map<String, ApolloConfigNotification> filterNotifications(String appId,
@@ -260,33 +359,22 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       return;
     }
 
+    ApolloConfigNotification configNotification = new ApolloConfigNotification(changedNamespace, message.getId());
+    configNotification.addMessage(content, message.getId());
+
+    notifyStreams(content, configNotification);
+
     if (!deferredResults.containsKey(content)) {
       return;
     }
 
-    //create a new list to avoid ConcurrentModificationException
-    List<DeferredResultWrapper> results = Lists.newArrayList(deferredResults.get(content));
-
-    ApolloConfigNotification configNotification = new ApolloConfigNotification(changedNamespace, message.getId());
-    configNotification.addMessage(content, message.getId());
+    //the registry returns a snapshot, so it's safe to iterate while clients are unregistering
+    List<DeferredResultWrapper> results = deferredResults.get(content);
 
-    //do async notification if too many clients
-    if (results.size() > bizConfig.releaseMessageNotificationBatch()) {
-      largeNotificationBatchExecutorService.submit(() -> {
-        logger.debug("Async notify {} clients for key {} with batch {}", results.size(), content,
-            bizConfig.releaseMessageNotificationBatch());
-        for (int i = 0; i < results.size(); i++) {
-          if (i > 0 && i % bizConfig.releaseMessageNotificationBatch() == 0) {
-            try {
-              TimeUnit.MILLISECONDS.sleep(bizConfig.releaseMessageNotificationBatchIntervalInMilli());
-            } catch (InterruptedException e) {
-              //ignore
-            }
-          }
-          logger.debug("Async notify {}", results.get(i));
-          results.get(i).setResult(configNotification);
-        }
-      });
+    //do async notification if too many clients, or coalesce into the in-flight one
+    if (results.size() > bizConfig.releaseMessageNotificationBatch() || fanOutScheduler.isFanningOut(content)) {
+      logger.debug("Async notify {} clients for key {}", results.size(), content);
+      fanOutScheduler.fanOut(content, configNotification, results);
       return;
     }
 
@@ -298,6 +386,33 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
     logger.debug("Notification completed");
   }
 
+  private void notifyStreams(String content, ApolloConfigNotification configNotification) {
+    if (!streams.containsKey(content)) {
+      return;
+    }
+    List<NotificationStream> subscribers = streams.get(content);
+
+    //share the rate limit with long polling, so that the streaming clients won't come back all at once
+    logger.debug("Stream notification to {} clients for key {}", subscribers.size(), content);
+    fanOutScheduler.fanOut(content, configNotification, subscribers);
+  }
+
+  private void sendStreamHeartbeats() {
+    for (NotificationStream stream : allStreams) {
+      stream.heartbeat();
+    }
+  }
+
+  private void abortTimedOutStreamSends() {
+    long timeoutInMilli = TimeUnit.SECONDS.toMillis(NOTIFICATION_STREAM_SEND_TIMEOUT_IN_SECONDS);
+    for (NotificationStream stream : allStreams) {
+      if (stream.isSendTimedOut(timeoutInMilli)) {
+        Tracer.logEvent("Apollo.NotificationStream.SendTimeout", String.valueOf(timeoutInMilli));
+        stream.abort(new TimeoutException("Send notification stream timeout"));
+      }
+    }
+  }
+
   private static final Function<String, String> retrieveNamespaceFromReleaseMessage =
       releaseMessage -> {
         if (Strings.isNullOrEmpty(releaseMessage)) {
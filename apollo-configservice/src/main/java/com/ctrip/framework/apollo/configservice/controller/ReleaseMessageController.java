@@ -0,0 +1,26 @@
+package com.ctrip.framework.apollo.configservice.controller;
+
+import com.ctrip.framework.apollo.biz.message.ReleaseMessageScanner;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Receives release message ids broadcast by admin services, so that new releases could be pushed
+ * to clients without waiting for the next database scan
+ */
+@RestController
+@RequestMapping("/release-messages")
+public class ReleaseMessageController {
+  private final ReleaseMessageScanner releaseMessageScanner;
+
+  public ReleaseMessageController(final ReleaseMessageScanner releaseMessageScanner) {
+    this.releaseMessageScanner = releaseMessageScanner;
+  }
+
+  @PostMapping("/{messageId}")
+  public void notifyNewMessage(@PathVariable long messageId) {
+    releaseMessageScanner.notifyNewMessage(messageId);
+  }
+}
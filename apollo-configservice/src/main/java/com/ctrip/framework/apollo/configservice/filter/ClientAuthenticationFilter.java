@@ -5,8 +5,9 @@ import com.ctrip.framework.apollo.core.signature.Signature;
 import com.ctrip.framework.apollo.core.utils.StringUtils;
 import com.google.common.net.HttpHeaders;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.List;
-import java.util.Objects;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -103,10 +104,15 @@ public class ClientAuthenticationFilter implements Filter {
         signature = split[1];
       }
     }
+    if (signature == null) {
+      return false;
+    }
 
+    byte[] signatureBytes = signature.getBytes(StandardCharsets.UTF_8);
     for (String secret : availableSecrets) {
       String availableSignature = accessKeyUtil.buildSignature(path, query, timestamp, secret);
-      if (Objects.equals(signature, availableSignature)) {
+      // compare in constant time so that the signature could not be guessed by the response time
+      if (MessageDigest.isEqual(signatureBytes, availableSignature.getBytes(StandardCharsets.UTF_8))) {
         return true;
       }
     }
@@ -0,0 +1,68 @@
+package com.ctrip.framework.apollo.configservice.filter;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.utils.AdminServiceAccessTokenUtil;
+import java.io.IOException;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Only admin services are supposed to broadcast release messages, so the broadcasts are rejected unless the
+ * broadcasting is enabled, and they are authenticated by the admin service access tokens when the admin service
+ * access control is enabled, the same as the calls from portals to admin services. So the broadcasts are open to
+ * anyone reaching the config services if the admin service access control is disabled.
+ */
+public class ReleaseMessageAuthenticationFilter implements Filter {
+
+  private static final Logger logger = LoggerFactory.getLogger(ReleaseMessageAuthenticationFilter.class);
+
+  private final BizConfig bizConfig;
+  private final AdminServiceAccessTokenUtil accessTokenUtil;
+
+  public ReleaseMessageAuthenticationFilter(BizConfig bizConfig) {
+    this.bizConfig = bizConfig;
+    this.accessTokenUtil = new AdminServiceAccessTokenUtil(bizConfig);
+  }
+
+  @Override
+  public void init(FilterConfig filterConfig) throws ServletException {
+    //nothing
+  }
+
+  @Override
+  public void doFilter(ServletRequest req, ServletResponse resp, FilterChain chain)
+      throws IOException, ServletException {
+    HttpServletRequest request = (HttpServletRequest) req;
+    HttpServletResponse response = (HttpServletResponse) resp;
+
+    if (!bizConfig.isReleaseMessageBroadcastEnabled()) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN, "Forbidden");
+      return;
+    }
+
+    if (bizConfig.isAdminServiceAccessControlEnabled()) {
+      String token = request.getHeader(HttpHeaders.AUTHORIZATION);
+      if (!accessTokenUtil.checkAccessToken(token)) {
+        logger.warn("Invalid access token: {} for uri: {}", token, request.getRequestURI());
+        response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Unauthorized");
+        return;
+      }
+    }
+
+    chain.doFilter(req, resp);
+  }
+
+  @Override
+  public void destroy() {
+    //nothing
+  }
+}
@@ -1,6 +1,9 @@
 package com.ctrip.framework.apollo.configservice.service;
 
 import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
+import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.repository.AppNamespaceRepository;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.ctrip.framework.apollo.configservice.wrapper.CaseInsensitiveMapWrapper;
@@ -28,12 +31,22 @@ import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
+ * The app namespaces are loaded once on startup, and the changes afterwards are applied incrementally:
+ * <ul>
+ *   <li>the new app namespaces are scanned by id</li>
+ *   <li>the app namespaces of an app are reloaded when the admin service publishes the app id to the
+ *   {@link Topics#APOLLO_APP_NAMESPACE_TOPIC}</li>
+ *   <li>all the cached app namespaces are checked against the database in the rebuild interval, just in case some
+ *   message is missed</li>
+ * </ul>
+ *
  * @author Jason Song(song_s@ctrip.com)
  */
 @Service
-public class AppNamespaceServiceWithCache implements InitializingBean {
+public class AppNamespaceServiceWithCache implements ReleaseMessageListener, InitializingBean {
   private static final Logger logger = LoggerFactory.getLogger(AppNamespaceServiceWithCache.class);
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
       .skipNulls();
@@ -56,6 +69,12 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
   //store id -> AppNamespace
   private Map<Long, AppNamespace> appNamespaceIdCache;
 
+  //store appId -> ids of the AppNamespaces
+  private CaseInsensitiveMapWrapper<Set<Long>> appIdCache;
+
+  //the apps whose app namespaces are to be reloaded
+  private Set<String> appIdsToReload;
+
   public AppNamespaceServiceWithCache(
       final AppNamespaceRepository appNamespaceRepository,
       final BizConfig bizConfig) {
@@ -69,6 +88,8 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
     publicAppNamespaceCache = new CaseInsensitiveMapWrapper<>(Maps.newConcurrentMap());
     appNamespaceCache = new CaseInsensitiveMapWrapper<>(Maps.newConcurrentMap());
     appNamespaceIdCache = Maps.newConcurrentMap();
+    appIdCache = new CaseInsensitiveMapWrapper<>(Maps.newConcurrentMap());
+    appIdsToReload = Sets.newConcurrentHashSet();
     scheduledExecutorService = Executors.newScheduledThreadPool(1, ApolloThreadFactory
         .create("AppNamespaceServiceWithCache", true));
   }
@@ -113,6 +134,20 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
     return result;
   }
 
+  @Override
+  public void handleMessage(ReleaseMessage message, String channel) {
+    String appId = message.getMessage();
+    if (!Topics.APOLLO_APP_NAMESPACE_TOPIC.equals(channel) || Strings.isNullOrEmpty(appId)) {
+      return;
+    }
+    //the reloads not started yet would load the same app namespaces, so only one is needed
+    if (!appIdsToReload.add(appId)) {
+      return;
+    }
+    //reload in the same thread as the scan and rebuild, so the cache is updated one at a time
+    scheduledExecutorService.submit(() -> reloadAppNamespacesWithTransaction(appId));
+  }
+
   @Override
   public void afterPropertiesSet() throws Exception {
     populateDataBaseInterval();
@@ -166,10 +201,46 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
     }
   }
 
+  private void reloadAppNamespacesWithTransaction(String appId) {
+    appIdsToReload.remove(appId);
+    Transaction transaction = Tracer.newTransaction("Apollo.AppNamespaceServiceWithCache",
+        "reloadAppNamespaces");
+    try {
+      this.reloadAppNamespaces(appId);
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.error("Reload app namespaces of {} failed", appId, ex);
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  //for those created, updated or deleted app namespaces of the app
+  private void reloadAppNamespaces(String appId) {
+    List<AppNamespace> appNamespaces = appNamespaceRepository.findByAppId(appId);
+    Set<Long> foundIds = appNamespaces.stream().map(AppNamespace::getId).collect(Collectors.toSet());
+
+    //handle deleted first, in case some app namespace is deleted and created again with the same name
+    Set<Long> cachedIds = appIdCache.get(appId);
+    if (cachedIds != null) {
+      handleDeletedAppNamespaces(Sets.newHashSet(Sets.difference(cachedIds, foundIds)));
+    }
+
+    //handle created
+    mergeAppNamespaces(appNamespaces.stream()
+        .filter(appNamespace -> !appNamespaceIdCache.containsKey(appNamespace.getId()))
+        .collect(Collectors.toList()));
+
+    //handle updated
+    handleUpdatedAppNamespaces(appNamespaces);
+  }
+
   private void mergeAppNamespaces(List<AppNamespace> appNamespaces) {
     for (AppNamespace appNamespace : appNamespaces) {
       appNamespaceCache.put(assembleAppNamespaceKey(appNamespace), appNamespace);
       appNamespaceIdCache.put(appNamespace.getId(), appNamespace);
+      addToAppIdCache(appNamespace);
       if (appNamespace.isPublic()) {
         publicAppNamespaceCache.put(appNamespace.getName(), appNamespace);
       }
@@ -213,8 +284,10 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
 
         //in case appId or namespaceName changes
         if (!newKey.equals(oldKey)) {
-          appNamespaceCache.remove(oldKey);
+          appNamespaceCache.remove(oldKey, thatInCache);
         }
+        removeFromAppIdCache(thatInCache);
+        addToAppIdCache(appNamespace);
 
         if (appNamespace.isPublic()) {
           publicAppNamespaceCache.put(appNamespace.getName(), appNamespace);
@@ -243,7 +316,9 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
       if (deleted == null) {
         continue;
       }
-      appNamespaceCache.remove(assembleAppNamespaceKey(deleted));
+      //the app namespace with the same name might be created again and cached already
+      appNamespaceCache.remove(assembleAppNamespaceKey(deleted), deleted);
+      removeFromAppIdCache(deleted);
       if (deleted.isPublic()) {
         AppNamespace publicAppNamespace = publicAppNamespaceCache.get(deleted.getName());
         // in case there is some dirty data, e.g. public namespace deleted in some app and now created in another app
@@ -255,6 +330,26 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
     }
   }
 
+  private void addToAppIdCache(AppNamespace appNamespace) {
+    Set<Long> ids = appIdCache.get(appNamespace.getAppId());
+    if (ids == null) {
+      ids = Sets.newConcurrentHashSet();
+      appIdCache.put(appNamespace.getAppId(), ids);
+    }
+    ids.add(appNamespace.getId());
+  }
+
+  private void removeFromAppIdCache(AppNamespace appNamespace) {
+    Set<Long> ids = appIdCache.get(appNamespace.getAppId());
+    if (ids == null) {
+      return;
+    }
+    ids.remove(appNamespace.getId());
+    if (ids.isEmpty()) {
+      appIdCache.remove(appNamespace.getAppId());
+    }
+  }
+
   private String assembleAppNamespaceKey(AppNamespace appNamespace) {
     return STRING_JOINER.join(appNamespace.getAppId(), appNamespace.getName());
   }
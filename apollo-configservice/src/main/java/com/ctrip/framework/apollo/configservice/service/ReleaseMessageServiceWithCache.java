@@ -25,6 +25,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -39,12 +40,16 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
   private int scanInterval;
   private TimeUnit scanIntervalTimeUnit;
 
-  private volatile long maxIdScanned;
+  //all the release messages with id no more than it are merged
+  private AtomicLong maxIdScanned;
 
+  //message -> the release message with max id
   private ConcurrentMap<String, ReleaseMessage> releaseMessageCache;
 
   private AtomicBoolean doScan;
   private ExecutorService executorService;
+  private AtomicBoolean gapFillScheduled;
+  private ExecutorService gapFillExecutorService;
 
   public ReleaseMessageServiceWithCache(
       final ReleaseMessageRepository releaseMessageRepository,
@@ -55,10 +60,14 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
   }
 
   private void initialize() {
+    maxIdScanned = new AtomicLong(0);
     releaseMessageCache = Maps.newConcurrentMap();
     doScan = new AtomicBoolean(true);
     executorService = Executors.newSingleThreadExecutor(ApolloThreadFactory
         .create("ReleaseMessageServiceWithCache", true));
+    gapFillScheduled = new AtomicBoolean(false);
+    gapFillExecutorService = Executors.newSingleThreadExecutor(ApolloThreadFactory
+        .create("ReleaseMessageServiceWithCache-GapFill", true));
   }
 
   public ReleaseMessage findLatestReleaseMessageForMessages(Set<String> messages) {
@@ -103,17 +112,44 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
 
     String content = message.getMessage();
     Tracer.logEvent("Apollo.ReleaseMessageService.UpdateCache", String.valueOf(message.getId()));
-    if (!Topics.APOLLO_RELEASE_TOPIC.equals(channel) || Strings.isNullOrEmpty(content)) {
+    if (Strings.isNullOrEmpty(content)) {
       return;
     }
 
+    //the messages of other topics are not cached, but they still count for the gap detection
+    if (Topics.APOLLO_RELEASE_TOPIC.equals(channel)) {
+      //the message is the latest one, so it's safe to merge it before the messages in the gap
+      mergeReleaseMessage(message);
+    }
+
+    long maxIdScanned = this.maxIdScanned.get();
     long gap = message.getId() - maxIdScanned;
     if (gap == 1) {
-      mergeReleaseMessage(message);
+      this.maxIdScanned.compareAndSet(maxIdScanned, message.getId());
     } else if (gap > 1) {
-      //gap found!
-      loadReleaseMessages(maxIdScanned);
+      //gap found! fill it asynchronously so that the other listeners are not blocked
+      scheduleGapFill();
+    }
+  }
+
+  private void scheduleGapFill() {
+    //the gap fills not started yet would load the same messages, so only one is needed
+    if (!gapFillScheduled.compareAndSet(false, true)) {
+      return;
     }
+    gapFillExecutorService.submit(() -> {
+      gapFillScheduled.set(false);
+      Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageServiceWithCache", "fillGap");
+      try {
+        loadReleaseMessages(maxIdScanned.get());
+        transaction.setStatus(Transaction.SUCCESS);
+      } catch (Throwable ex) {
+        transaction.setStatus(ex);
+        logger.error("Fill release messages gap failed", ex);
+      } finally {
+        transaction.complete();
+      }
+    });
   }
 
   @Override
@@ -121,14 +157,14 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
     populateDataBaseInterval();
     //block the startup process until load finished
     //this should happen before ReleaseMessageScanner due to autowire
-    loadReleaseMessages(0);
+    loadLatestReleaseMessages();
 
     executorService.submit(() -> {
       while (doScan.get() && !Thread.currentThread().isInterrupted()) {
         Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageServiceWithCache",
             "scanNewReleaseMessages");
         try {
-          loadReleaseMessages(maxIdScanned);
+          loadReleaseMessages(maxIdScanned.get());
           transaction.setStatus(Transaction.SUCCESS);
         } catch (Throwable ex) {
           transaction.setStatus(ex);
@@ -145,12 +181,29 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
     });
   }
 
-  private synchronized void mergeReleaseMessage(ReleaseMessage releaseMessage) {
-    ReleaseMessage old = releaseMessageCache.get(releaseMessage.getMessage());
-    if (old == null || releaseMessage.getId() > old.getId()) {
-      releaseMessageCache.put(releaseMessage.getMessage(), releaseMessage);
-      maxIdScanned = releaseMessage.getId();
+  private void mergeReleaseMessage(ReleaseMessage releaseMessage) {
+    //the messages loaded from database might be of other topics
+    if (!Topics.APOLLO_RELEASE_TOPIC.equals(Topics.resolveTopic(releaseMessage.getMessage()))) {
+      return;
+    }
+    releaseMessageCache.merge(releaseMessage.getMessage(), releaseMessage,
+        (oldMessage, newMessage) -> newMessage.getId() > oldMessage.getId() ? newMessage : oldMessage);
+  }
+
+  /**
+   * Load the latest release message of each message in one query, instead of scanning the whole table
+   */
+  private void loadLatestReleaseMessages() {
+    List<Object[]> latestReleaseMessages = releaseMessageRepository.findLatestReleaseMessagesGroupByMessages();
+    long maxId = 0;
+    for (Object[] latestReleaseMessage : latestReleaseMessages) {
+      ReleaseMessage releaseMessage = new ReleaseMessage((String) latestReleaseMessage[0]);
+      releaseMessage.setId((Long) latestReleaseMessage[1]);
+      mergeReleaseMessage(releaseMessage);
+      maxId = Math.max(maxId, releaseMessage.getId());
     }
+    maxIdScanned.accumulateAndGet(maxId, Math::max);
+    logger.info("Loaded {} latest release messages with maxId {}", latestReleaseMessages.size(), maxId);
   }
 
   private void loadReleaseMessages(long startId) {
@@ -165,6 +218,7 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
       releaseMessages.forEach(this::mergeReleaseMessage);
       int scanned = releaseMessages.size();
       startId = releaseMessages.get(scanned - 1).getId();
+      maxIdScanned.accumulateAndGet(startId, Math::max);
       hasMore = scanned == 500;
       logger.info("Loaded {} release messages with startId {}", scanned, startId);
     }
@@ -178,6 +232,7 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
   //only for test use
   private void reset() throws Exception {
     executorService.shutdownNow();
+    gapFillExecutorService.shutdownNow();
     initialize();
     afterPropertiesSet();
   }
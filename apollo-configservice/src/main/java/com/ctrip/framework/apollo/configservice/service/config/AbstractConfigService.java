@@ -6,7 +6,13 @@ import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 
 import com.google.common.base.Strings;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -14,6 +20,10 @@ import org.springframework.beans.factory.annotation.Autowired;
  * @author Jason Song(song_s@ctrip.com)
  */
 public abstract class AbstractConfigService implements ConfigService {
+  private static final Gson GSON = new Gson();
+  private static final Type CONFIGURATION_TYPE_REFERENCE = new TypeToken<LinkedHashMap<String, String>>() {
+  }.getType();
+
   @Autowired
   private GrayReleaseRulesHolder grayReleaseRulesHolder;
 
@@ -73,6 +83,19 @@ public abstract class AbstractConfigService implements ConfigService {
     return release;
   }
 
+  @Override
+  public Map<String, String> loadConfigurations(Release release) {
+    return parseConfigurations(release);
+  }
+
+  /**
+   * Parse the configurations json of the release
+   */
+  protected Map<String, String> parseConfigurations(Release release) {
+    Map<String, String> configurations = GSON.fromJson(release.getConfigurations(), CONFIGURATION_TYPE_REFERENCE);
+    return configurations == null ? Collections.emptyMap() : Collections.unmodifiableMap(configurations);
+  }
+
   /**
    * Find active release by id
    */
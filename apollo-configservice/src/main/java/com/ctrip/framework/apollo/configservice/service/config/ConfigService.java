@@ -4,6 +4,9 @@ import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 
+import java.util.Map;
+import java.util.Set;
+
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
@@ -23,4 +26,20 @@ public interface ConfigService extends ReleaseMessageListener {
    */
   Release loadConfig(String clientAppId, String clientIp, String configAppId, String
       configClusterName, String configNamespace, String dataCenter, ApolloNotificationMessages clientMessages);
+
+  /**
+   * Find releases by release keys, e.g. the releases the client holds
+   *
+   * @param releaseKeys the release keys
+   * @return the releases found, keyed by release key
+   */
+  Map<String, Release> findReleasesByReleaseKeys(Set<String> releaseKeys);
+
+  /**
+   * Load the configurations of the release
+   *
+   * @param release the release
+   * @return the configurations, which are shared and must not be modified
+   */
+  Map<String, String> loadConfigurations(Release release);
 }
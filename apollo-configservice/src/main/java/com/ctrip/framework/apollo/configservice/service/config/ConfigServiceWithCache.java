@@ -2,11 +2,18 @@ package com.ctrip.framework.apollo.configservice.service.config;
 
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.Weigher;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.Topics;
@@ -20,11 +27,18 @@ import com.ctrip.framework.apollo.tracer.spi.Transaction;
 
 import java.util.Optional;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.PostConstruct;
@@ -37,11 +51,20 @@ import javax.annotation.PostConstruct;
 public class ConfigServiceWithCache extends AbstractConfigService {
   private static final Logger logger = LoggerFactory.getLogger(ConfigServiceWithCache.class);
   private static final long DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES = 60;//1 hour
-  private static final String TRACER_EVENT_CACHE_INVALIDATE = "ConfigCache.Invalidate";
+  private static final String TRACER_EVENT_CACHE_REFRESH = "ConfigCache.Refresh";
   private static final String TRACER_EVENT_CACHE_LOAD = "ConfigCache.LoadFromDB";
   private static final String TRACER_EVENT_CACHE_LOAD_ID = "ConfigCache.LoadFromDBById";
   private static final String TRACER_EVENT_CACHE_GET = "ConfigCache.Get";
   private static final String TRACER_EVENT_CACHE_GET_ID = "ConfigCache.GetById";
+  private static final String TRACER_EVENT_CACHE_LOAD_RELEASE_KEY = "ConfigCache.LoadFromDBByReleaseKey";
+  private static final String TRACER_EVENT_CACHE_GET_RELEASE_KEY = "ConfigCache.GetByReleaseKey";
+  private static final String TRACER_EVENT_CACHE_PARSE_CONFIGURATIONS = "ConfigCache.ParseConfigurations";
+  private static final String TRACER_EVENT_CACHE_EVICT = "ConfigCache.Evict";
+  //rough memory overhead of a cache entry besides the configurations, in bytes
+  private static final int CACHE_ENTRY_OVERHEAD = 256;
+  //rough memory taken by the parsed configurations relative to the json, as the map nodes and strings add up to about
+  //as much as the chars of the keys and values
+  private static final int PARSED_CONFIGURATIONS_WEIGHT_FACTOR = 2;
   private static final Splitter STRING_SPLITTER =
       Splitter.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).omitEmptyStrings();
 
@@ -51,10 +74,25 @@ public class ConfigServiceWithCache extends AbstractConfigService {
   @Autowired
   private ReleaseMessageService releaseMessageService;
 
+  @Autowired
+  private BizConfig bizConfig;
+
+  @Autowired(required = false)
+  private MeterRegistry meterRegistry;
+
   private LoadingCache<String, ConfigCacheEntry> configCache;
 
   private LoadingCache<Long, Optional<Release>> configIdCache;
 
+  //the configurations of a release key never change, so no need to invalidate. The release keys not found are not
+  //cached, since they are sent by clients and could be anything
+  private Cache<String, Release> releaseKeyCache;
+
+  //keyed by the cached release instances, so the parsed configurations are dropped together with the releases
+  private LoadingCache<Release, Map<String, String>> configurationsCache;
+
+  private final ConcurrentMap<String, CompletableFuture<ConfigCacheEntry>> inFlightLoads = Maps.newConcurrentMap();
+
   private ConfigCacheEntry nullConfigCacheEntry;
 
   public ConfigServiceWithCache() {
@@ -63,45 +101,27 @@ public class ConfigServiceWithCache extends AbstractConfigService {
 
   @PostConstruct
   void initialize() {
+    //the releases of the latest config take half of the memory, the gray and client side releases share the rest
+    long maxWeight = bizConfig.configServiceCacheMaxWeightInMB() * 1024L * 1024L;
+
     configCache = CacheBuilder.newBuilder()
         .expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES)
+        .maximumWeight(maxWeight / 2)
+        .weigher((Weigher<String, ConfigCacheEntry>) (key, value) -> weigh(key, value.getRelease()))
+        .removalListener(evictionListener())
+        .recordStats()
         .build(new CacheLoader<String, ConfigCacheEntry>() {
           @Override
           public ConfigCacheEntry load(String key) throws Exception {
-            List<String> namespaceInfo = STRING_SPLITTER.splitToList(key);
-            if (namespaceInfo.size() != 3) {
-              Tracer.logError(
-                  new IllegalArgumentException(String.format("Invalid cache load key %s", key)));
-              return nullConfigCacheEntry;
-            }
-
-            Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_LOAD, key);
-            try {
-              ReleaseMessage latestReleaseMessage = releaseMessageService.findLatestReleaseMessageForMessages(Lists
-                  .newArrayList(key));
-              Release latestRelease = releaseService.findLatestActiveRelease(namespaceInfo.get(0), namespaceInfo.get(1),
-                  namespaceInfo.get(2));
-
-              transaction.setStatus(Transaction.SUCCESS);
-
-              long notificationId = latestReleaseMessage == null ? ConfigConsts.NOTIFICATION_ID_PLACEHOLDER : latestReleaseMessage
-                  .getId();
-
-              if (notificationId == ConfigConsts.NOTIFICATION_ID_PLACEHOLDER && latestRelease == null) {
-                return nullConfigCacheEntry;
-              }
-
-              return new ConfigCacheEntry(notificationId, latestRelease);
-            } catch (Throwable ex) {
-              transaction.setStatus(ex);
-              throw ex;
-            } finally {
-              transaction.complete();
-            }
+            return loadConfigCacheEntry(key);
           }
         });
     configIdCache = CacheBuilder.newBuilder()
         .expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES)
+        .maximumWeight(maxWeight / 4)
+        .weigher((Weigher<Long, Optional<Release>>) (key, value) -> weigh(null, value.orElse(null)))
+        .removalListener(evictionListener())
+        .recordStats()
         .build(new CacheLoader<Long, Optional<Release>>() {
           @Override
           public Optional<Release> load(Long key) throws Exception {
@@ -120,6 +140,117 @@ public class ConfigServiceWithCache extends AbstractConfigService {
             }
           }
         });
+    releaseKeyCache = CacheBuilder.newBuilder()
+        .expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES)
+        .maximumWeight(maxWeight / 4)
+        .weigher((Weigher<String, Release>) (key, value) -> weigh(key, value))
+        .removalListener(evictionListener())
+        .recordStats()
+        .build();
+    configurationsCache = CacheBuilder.newBuilder()
+        .weakKeys()
+        .build(new CacheLoader<Release, Map<String, String>>() {
+          @Override
+          public Map<String, String> load(Release key) throws Exception {
+            Tracer.logEvent(TRACER_EVENT_CACHE_PARSE_CONFIGURATIONS, key.getReleaseKey());
+            return parseConfigurations(key);
+          }
+        });
+
+    if (meterRegistry != null) {
+      GuavaCacheMetrics.monitor(meterRegistry, configCache, "apollo.config-service.config-cache");
+      GuavaCacheMetrics.monitor(meterRegistry, configIdCache, "apollo.config-service.config-id-cache");
+      GuavaCacheMetrics.monitor(meterRegistry, releaseKeyCache, "apollo.config-service.release-key-cache");
+    }
+  }
+
+  private ConfigCacheEntry loadConfigCacheEntry(String key) {
+    List<String> namespaceInfo = STRING_SPLITTER.splitToList(key);
+    if (namespaceInfo.size() != 3) {
+      Tracer.logError(
+          new IllegalArgumentException(String.format("Invalid cache load key %s", key)));
+      return nullConfigCacheEntry;
+    }
+
+    Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_LOAD, key);
+    try {
+      ReleaseMessage latestReleaseMessage = releaseMessageService.findLatestReleaseMessageForMessages(Lists
+          .newArrayList(key));
+      Release latestRelease = releaseService.findLatestActiveRelease(namespaceInfo.get(0), namespaceInfo.get(1),
+          namespaceInfo.get(2));
+
+      transaction.setStatus(Transaction.SUCCESS);
+
+      long notificationId = latestReleaseMessage == null ? ConfigConsts.NOTIFICATION_ID_PLACEHOLDER : latestReleaseMessage
+          .getId();
+
+      if (notificationId == ConfigConsts.NOTIFICATION_ID_PLACEHOLDER && latestRelease == null) {
+        return nullConfigCacheEntry;
+      }
+
+      return new ConfigCacheEntry(notificationId, latestRelease);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      throw ex;
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  /**
+   * Estimate the memory taken by the cache entry, which is dominated by the configurations of the release, i.e. the
+   * json and the parsed map. The parsed map is estimated from the json, since the weigher is called with the cache
+   * segment locked and parsing a large release there would block the other loads.
+   */
+  static int weigh(String key, Release release) {
+    long weight = CACHE_ENTRY_OVERHEAD;
+    if (key != null) {
+      weight += key.length() * 2L;
+    }
+    if (release != null && release.getConfigurations() != null) {
+      weight += release.getConfigurations().length() * 2L * (1 + PARSED_CONFIGURATIONS_WEIGHT_FACTOR);
+    }
+    return (int) Math.min(weight, Integer.MAX_VALUE);
+  }
+
+  private static <K, V> RemovalListener<K, V> evictionListener() {
+    return notification -> {
+      if (notification.getCause() == RemovalCause.SIZE) {
+        Tracer.logEvent(TRACER_EVENT_CACHE_EVICT, String.valueOf(notification.getKey()));
+      }
+    };
+  }
+
+  @Override
+  public Map<String, String> loadConfigurations(Release release) {
+    return configurationsCache.getUnchecked(release);
+  }
+
+  @Override
+  public Map<String, Release> findReleasesByReleaseKeys(Set<String> releaseKeys) {
+    Tracer.logEvent(TRACER_EVENT_CACHE_GET_RELEASE_KEY, String.join(",", releaseKeys));
+    Map<String, Release> result = Maps.newHashMap(releaseKeyCache.getAllPresent(releaseKeys));
+    Set<String> releaseKeysToLoad = Sets.difference(releaseKeys, result.keySet()).immutableCopy();
+    if (releaseKeysToLoad.isEmpty()) {
+      return result;
+    }
+
+    Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_LOAD_RELEASE_KEY,
+        String.join(",", releaseKeysToLoad));
+    try {
+      for (Release release : releaseService.findByReleaseKeys(releaseKeysToLoad)) {
+        releaseKeyCache.put(release.getReleaseKey(), release);
+        result.put(release.getReleaseKey(), release);
+      }
+
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      throw ex;
+    } finally {
+      transaction.complete();
+    }
+    return result;
   }
 
   @Override
@@ -140,17 +271,50 @@ public class ConfigServiceWithCache extends AbstractConfigService {
     //cache is out-dated
     if (clientMessages != null && clientMessages.has(key) &&
         clientMessages.get(key) > cacheEntry.getNotificationId()) {
-      //invalidate the cache and try to load from db again
-      invalidate(key);
-      cacheEntry = configCache.getUnchecked(key);
+      //try to load from db again
+      cacheEntry = refresh(key, clientMessages.get(key));
     }
 
     return cacheEntry.getRelease();
   }
 
-  private void invalidate(String key) {
-    configCache.invalidate(key);
-    Tracer.logEvent(TRACER_EVENT_CACHE_INVALIDATE, key);
+  /**
+   * Reload the cache entry if it's older than the notification id. Concurrent refreshes of the same key share one
+   * load, and the loaded entry never replaces a newer one.
+   *
+   * @return the latest cache entry, which might still be older than the notification id if the db is lagging behind
+   */
+  private ConfigCacheEntry refresh(String key, long notificationId) {
+    ConfigCacheEntry cacheEntry = null;
+    //the load joined might be issued before the notification id is seen, so give it another try
+    for (int i = 0; i < 2; i++) {
+      cacheEntry = configCache.getIfPresent(key);
+      if (cacheEntry != null && cacheEntry.getNotificationId() >= notificationId) {
+        return cacheEntry;
+      }
+
+      CompletableFuture<ConfigCacheEntry> load = new CompletableFuture<>();
+      CompletableFuture<ConfigCacheEntry> inFlightLoad = inFlightLoads.putIfAbsent(key, load);
+      if (inFlightLoad != null) {
+        cacheEntry = inFlightLoad.join();
+        continue;
+      }
+
+      Tracer.logEvent(TRACER_EVENT_CACHE_REFRESH, key);
+      try {
+        ConfigCacheEntry loaded = loadConfigCacheEntry(key);
+        cacheEntry = configCache.asMap().merge(key, loaded,
+            (current, candidate) -> candidate.getNotificationId() >= current.getNotificationId() ? candidate : current);
+        load.complete(cacheEntry);
+      } catch (Throwable ex) {
+        load.completeExceptionally(ex);
+        throw ex;
+      } finally {
+        inFlightLoads.remove(key, load);
+      }
+      return cacheEntry;
+    }
+    return cacheEntry;
   }
 
   @Override
@@ -161,10 +325,8 @@ public class ConfigServiceWithCache extends AbstractConfigService {
     }
 
     try {
-      invalidate(message.getMessage());
-
-      //warm up the cache
-      configCache.getUnchecked(message.getMessage());
+      //reload and warm up the cache
+      refresh(message.getMessage(), message.getId());
     } catch (Throwable ex) {
       //ignore
     }
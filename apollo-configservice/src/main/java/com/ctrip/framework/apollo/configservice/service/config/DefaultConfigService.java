@@ -5,8 +5,13 @@ import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.service.ReleaseService;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 
+import com.google.common.collect.Maps;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * config service with no cache
  *
@@ -29,6 +34,16 @@ public class DefaultConfigService extends AbstractConfigService {
         configNamespace);
   }
 
+  @Override
+  public Map<String, Release> findReleasesByReleaseKeys(Set<String> releaseKeys) {
+    List<Release> releases = releaseService.findByReleaseKeys(releaseKeys);
+    Map<String, Release> result = Maps.newHashMapWithExpectedSize(releases.size());
+    for (Release release : releases) {
+      result.put(release.getReleaseKey(), release);
+    }
+    return result;
+  }
+
   @Override
   public void handleMessage(ReleaseMessage message, String channel) {
     // since there is no cache, so do nothing
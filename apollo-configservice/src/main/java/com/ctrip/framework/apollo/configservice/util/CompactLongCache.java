@@ -0,0 +1,209 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A compact cache from long keys to long values, which is bounded by size and expires the entries after a while.
+ *
+ * <p>The entries are kept in two generations of open addressing tables with primitive arrays. New entries go to
+ * the current generation. When the current generation is full or older than half of the expiry time, it becomes the
+ * previous generation and the former previous one is dropped, which approximates LRU eviction and keeps each entry
+ * for at most the expiry time. If the cache expires after access, the entries hit in the previous generation are
+ * moved to the current one.</p>
+ *
+ * <p>Large caches are split into segments by key, each with its own generations and lock, so that they can be
+ * shared by multiple threads.</p>
+ *
+ * <p>The keys are expected to be hashes, so the key 0 is not distinguished from another fixed key.</p>
+ */
+class CompactLongCache {
+  private static final long EMPTY_KEY = 0;
+  //the key stored in place of the empty key
+  private static final long ZERO_KEY_REPLACEMENT = 0x9E3779B97F4A7C15L;
+  private static final int MAX_SEGMENTS = 16;
+  //the small caches are not striped
+  private static final int MIN_SEGMENT_SIZE = 1024;
+
+  private final long generationExpireTimeInMillis;
+  private final boolean expireAfterAccess;
+  //striped by key, so that the threads accessing different keys rarely contend for the same lock
+  private final Segment[] segments;
+  private final int segmentMask;
+
+  /**
+   * @param maximumSize the max number of entries
+   * @param expireTime the time after which the entries expire
+   * @param timeUnit the time unit of expireTime
+   * @param expireAfterAccess whether the expire time counts from the last access or from the write
+   */
+  CompactLongCache(int maximumSize, long expireTime, TimeUnit timeUnit, boolean expireAfterAccess) {
+    Preconditions.checkArgument(maximumSize > 1, "maximumSize should be greater than 1");
+    this.generationExpireTimeInMillis = Math.max(1, timeUnit.toMillis(expireTime) / 2);
+    this.expireAfterAccess = expireAfterAccess;
+    int segmentCount = Math.min(MAX_SEGMENTS, Math.max(1, Integer.highestOneBit(maximumSize / MIN_SEGMENT_SIZE)));
+    this.segments = new Segment[segmentCount];
+    this.segmentMask = segmentCount - 1;
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < segmentCount; i++) {
+      segments[i] = new Segment(maximumSize / segmentCount / 2, now);
+    }
+  }
+
+  /**
+   * @return the value of the key, or the default value if it's not cached
+   */
+  long get(long key, long defaultValue) {
+    key = normalize(key);
+    return segmentFor(key).get(key, defaultValue);
+  }
+
+  /**
+   * @return whether the key is cached with the value
+   */
+  boolean containsEntry(long key, long value) {
+    //the default value never equals the value
+    return get(key, ~value) == value;
+  }
+
+  void put(long key, long value) {
+    key = normalize(key);
+    segmentFor(key).put(key, value);
+  }
+
+  int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  private Segment segmentFor(long key) {
+    //the low bits pick the slot in the table, so use the high bits here
+    return segments[(int) (key >>> 32) & segmentMask];
+  }
+
+  private static long normalize(long key) {
+    return key == EMPTY_KEY ? ZERO_KEY_REPLACEMENT : key;
+  }
+
+  private class Segment {
+    private final int generationCapacity;
+    private Generation current;
+    private Generation previous;
+
+    Segment(int generationCapacity, long now) {
+      this.generationCapacity = generationCapacity;
+      this.current = new Generation(generationCapacity, now);
+      this.previous = new Generation(0, now);
+    }
+
+    synchronized long get(long key, long defaultValue) {
+      rotateIfExpired(System.currentTimeMillis());
+
+      int index = current.indexOf(key);
+      if (index >= 0) {
+        return current.values[index];
+      }
+
+      index = previous.indexOf(key);
+      if (index < 0) {
+        return defaultValue;
+      }
+      long value = previous.values[index];
+      if (expireAfterAccess) {
+        doPut(key, value);
+      }
+      return value;
+    }
+
+    synchronized void put(long key, long value) {
+      rotateIfExpired(System.currentTimeMillis());
+      doPut(key, value);
+    }
+
+    synchronized int size() {
+      return current.size + previous.size;
+    }
+
+    private void doPut(long key, long value) {
+      if (!current.put(key, value)) {
+        rotate(System.currentTimeMillis());
+        current.put(key, value);
+      }
+    }
+
+    private void rotateIfExpired(long now) {
+      if (now - previous.createdTime >= 2 * generationExpireTimeInMillis) {
+        previous = new Generation(0, now);
+      }
+      if (now - current.createdTime >= generationExpireTimeInMillis) {
+        rotate(now);
+      }
+    }
+
+    private void rotate(long now) {
+      previous = current;
+      current = new Generation(generationCapacity, now);
+    }
+  }
+
+  private static class Generation {
+    private final long[] keys;
+    private final long[] values;
+    private final int capacity;
+    private final int mask;
+    private final long createdTime;
+    private int size;
+
+    Generation(int capacity, long createdTime) {
+      //keep the load factor no more than 0.5
+      int tableSize = Integer.highestOneBit(Math.max(1, capacity) * 4 - 1);
+      this.keys = new long[tableSize];
+      this.values = new long[tableSize];
+      this.capacity = capacity;
+      this.mask = tableSize - 1;
+      this.createdTime = createdTime;
+    }
+
+    int indexOf(long key) {
+      for (int index = slot(key); ; index = (index + 1) & mask) {
+        long existingKey = keys[index];
+        if (existingKey == key) {
+          return index;
+        }
+        if (existingKey == EMPTY_KEY) {
+          return -1;
+        }
+      }
+    }
+
+    /**
+     * @return false if the generation is full
+     */
+    boolean put(long key, long value) {
+      int index = slot(key);
+      while (keys[index] != EMPTY_KEY) {
+        if (keys[index] == key) {
+          values[index] = value;
+          return true;
+        }
+        index = (index + 1) & mask;
+      }
+      if (size >= capacity) {
+        return false;
+      }
+      keys[index] = key;
+      values[index] = value;
+      size++;
+      return true;
+    }
+
+    private int slot(long key) {
+      //the keys are hashes already, just fold the high bits in
+      return (int) (key ^ (key >>> 32)) & mask;
+    }
+  }
+}
@@ -2,11 +2,15 @@ package com.ctrip.framework.apollo.configservice.util;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Queues;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Instance;
 import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
 import com.ctrip.framework.apollo.biz.service.InstanceService;
@@ -14,98 +18,223 @@ import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 @Service
 public class InstanceConfigAuditUtil implements InitializingBean {
-  private static final int INSTANCE_CONFIG_AUDIT_MAX_SIZE = 10000;
   private static final int INSTANCE_CACHE_MAX_SIZE = 50000;
   private static final int INSTANCE_CONFIG_CACHE_MAX_SIZE = 50000;
   private static final long OFFER_TIME_LAST_MODIFIED_TIME_THRESHOLD_IN_MILLI = TimeUnit.MINUTES.toMillis(10);//10 minutes
+  private static final long AUDIT_BATCH_WAIT_TIME_IN_MILLI = 1000;//1 second
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+  private static final long NO_INSTANCE_ID = -1;
   private final ExecutorService auditExecutorService;
   private final AtomicBoolean auditStopped;
-  private BlockingQueue<InstanceConfigAuditModel> audits = Queues.newLinkedBlockingQueue
-      (INSTANCE_CONFIG_AUDIT_MAX_SIZE);
-  private Cache<String, Long> instanceCache;
-  private Cache<String, String> instanceConfigReleaseKeyCache;
+  //the audits of one instance always go to the same queue, so that they are written in order
+  private final List<BlockingQueue<InstanceConfigAuditModel>> audits;
+  private final int auditBatch;
+  //instance hash -> instance id
+  private final CompactLongCache instanceCache;
+  //instance config hash -> release key fingerprint
+  private final CompactLongCache instanceConfigReleaseKeyCache;
+  private final AtomicLong droppedAuditCount;
+  //null if there is no meter registry
+  private final Timer auditLatencyTimer;
 
   private final InstanceService instanceService;
 
-  public InstanceConfigAuditUtil(final InstanceService instanceService) {
+  @Autowired
+  public InstanceConfigAuditUtil(final InstanceService instanceService, final BizConfig bizConfig,
+      final ObjectProvider<MeterRegistry> meterRegistryProvider) {
+    this(instanceService, bizConfig, meterRegistryProvider.getIfAvailable());
+  }
+
+  InstanceConfigAuditUtil(final InstanceService instanceService, final BizConfig bizConfig,
+      final MeterRegistry meterRegistry) {
     this.instanceService = instanceService;
-    auditExecutorService = Executors.newSingleThreadExecutor(
+    int auditThreads = bizConfig.instanceConfigAuditThreads();
+    int auditQueueSize = Math.max(1, bizConfig.instanceConfigAuditQueueSize() / auditThreads);
+    auditBatch = bizConfig.instanceConfigAuditBatch();
+    audits = Lists.newArrayListWithCapacity(auditThreads);
+    for (int i = 0; i < auditThreads; i++) {
+      audits.add(Queues.newLinkedBlockingQueue(auditQueueSize));
+    }
+    auditExecutorService = Executors.newFixedThreadPool(auditThreads,
         ApolloThreadFactory.create("InstanceConfigAuditUtil", true));
     auditStopped = new AtomicBoolean(false);
-    instanceCache = CacheBuilder.newBuilder().expireAfterAccess(1, TimeUnit.HOURS)
-        .maximumSize(INSTANCE_CACHE_MAX_SIZE).build();
-    instanceConfigReleaseKeyCache = CacheBuilder.newBuilder().expireAfterWrite(1, TimeUnit.DAYS)
-        .maximumSize(INSTANCE_CONFIG_CACHE_MAX_SIZE).build();
+    instanceCache = new CompactLongCache(INSTANCE_CACHE_MAX_SIZE, 1, TimeUnit.HOURS, true);
+    instanceConfigReleaseKeyCache = new CompactLongCache(INSTANCE_CONFIG_CACHE_MAX_SIZE, 1, TimeUnit.DAYS, false);
+
+    droppedAuditCount = new AtomicLong(0);
+
+    if (meterRegistry != null) {
+      Gauge.builder("apollo.instance-config.audit.queued", audits,
+          queues -> queues.stream().mapToInt(BlockingQueue::size).sum()).register(meterRegistry);
+      FunctionCounter.builder("apollo.instance-config.audit.dropped", droppedAuditCount, AtomicLong::get)
+          .register(meterRegistry);
+      auditLatencyTimer = Timer.builder("apollo.instance-config.audit.latency").register(meterRegistry);
+    } else {
+      auditLatencyTimer = null;
+    }
   }
 
   public boolean audit(String appId, String clusterName, String dataCenter, String
       ip, String configAppId, String configClusterName, String configNamespace, String releaseKey) {
-    return this.audits.offer(new InstanceConfigAuditModel(appId, clusterName, dataCenter, ip,
-        configAppId, configClusterName, configNamespace, releaseKey));
+    InstanceConfigAuditModel auditModel = new InstanceConfigAuditModel(appId, clusterName, dataCenter, ip,
+        configAppId, configClusterName, configNamespace, releaseKey);
+    int queueIndex = (int) ((auditModel.getInstanceHash() & Long.MAX_VALUE) % audits.size());
+    boolean offered = audits.get(queueIndex).offer(auditModel);
+    if (!offered) {
+      droppedAuditCount.incrementAndGet();
+    }
+    return offered;
   }
 
-  void doAudit(InstanceConfigAuditModel auditModel) {
-    String instanceCacheKey = assembleInstanceKey(auditModel.getAppId(), auditModel
-        .getClusterName(), auditModel.getIp(), auditModel.getDataCenter());
-    Long instanceId = instanceCache.getIfPresent(instanceCacheKey);
-    if (instanceId == null) {
-      instanceId = prepareInstanceId(auditModel);
-      instanceCache.put(instanceCacheKey, instanceId);
+  void doAudit(List<InstanceConfigAuditModel> auditModels) {
+    //only the latest audit of each instance config matters
+    Map<Long, InstanceConfigAuditModel> latestAuditModels = Maps.newLinkedHashMap();
+    for (InstanceConfigAuditModel auditModel : auditModels) {
+      latestAuditModels.put(hashInstanceConfig(auditModel.getInstanceHash(), auditModel.getConfigAppId(),
+          auditModel.getConfigNamespace()), auditModel);
     }
 
-    //load instance config release key from cache, and check if release key is the same
-    String instanceConfigCacheKey = assembleInstanceConfigKey(instanceId, auditModel
-        .getConfigAppId(), auditModel.getConfigNamespace());
-    String cacheReleaseKey = instanceConfigReleaseKeyCache.getIfPresent(instanceConfigCacheKey);
+    //group by namespace, so that the instance configs of the same namespace are loaded and written together
+    Map<String, Map<Long, InstanceConfigAuditModel>> namespaceAuditModels = Maps.newLinkedHashMap();
+    for (InstanceConfigAuditModel auditModel : latestAuditModels.values()) {
+      long instanceId = getInstanceId(auditModel);
 
-    //if release key is the same, then skip audit
-    if (cacheReleaseKey != null && Objects.equals(cacheReleaseKey, auditModel.getReleaseKey())) {
-      return;
-    }
+      //load instance config release key from cache, and check if release key is the same
+      long instanceConfigCacheKey = hashInstanceConfig(instanceId, auditModel.getConfigAppId(),
+          auditModel.getConfigNamespace());
+      long releaseKeyFingerprint = hash(auditModel.getReleaseKey());
+
+      //if release key is the same, then skip audit
+      if (instanceConfigReleaseKeyCache.containsEntry(instanceConfigCacheKey, releaseKeyFingerprint)) {
+        continue;
+      }
+
+      instanceConfigReleaseKeyCache.put(instanceConfigCacheKey, releaseKeyFingerprint);
 
-    instanceConfigReleaseKeyCache.put(instanceConfigCacheKey, auditModel.getReleaseKey());
+      namespaceAuditModels.computeIfAbsent(STRING_JOINER.join(auditModel.getConfigAppId(),
+          auditModel.getConfigNamespace()), key -> Maps.newLinkedHashMap()).put(instanceId, auditModel);
+    }
 
     //if release key is not the same or cannot find in cache, then do audit
-    InstanceConfig instanceConfig = instanceService.findInstanceConfig(instanceId, auditModel
-        .getConfigAppId(), auditModel.getConfigNamespace());
+    for (Map<Long, InstanceConfigAuditModel> instanceAuditModels : namespaceAuditModels.values()) {
+      doAudit(instanceAuditModels);
+    }
+
+    if (auditLatencyTimer != null) {
+      long now = System.currentTimeMillis();
+      for (InstanceConfigAuditModel auditModel : auditModels) {
+        auditLatencyTimer.record(now - auditModel.getOfferTime().getTime(), TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+  /**
+   * Audit the instance configs of the same namespace
+   *
+   * @param instanceAuditModels the audit models keyed by instance id
+   */
+  private void doAudit(Map<Long, InstanceConfigAuditModel> instanceAuditModels) {
+    InstanceConfigAuditModel someAuditModel = instanceAuditModels.values().iterator().next();
+    List<InstanceConfig> existedInstanceConfigs = instanceService.findInstanceConfigs(
+        someAuditModel.getConfigAppId(), someAuditModel.getConfigNamespace(), instanceAuditModels.keySet());
+    Map<Long, InstanceConfig> instanceConfigs = Maps.newHashMapWithExpectedSize(existedInstanceConfigs.size());
+    for (InstanceConfig instanceConfig : existedInstanceConfigs) {
+      instanceConfigs.put(instanceConfig.getInstanceId(), instanceConfig);
+    }
+
+    Map<String, ReleaseKeyUpdate> releaseKeyUpdates = Maps.newLinkedHashMap();
+    Set<Long> lastModifiedTimeUpdates = Sets.newHashSet();
+    Date lastModifiedTime = null;
+    List<InstanceConfig> instanceConfigsToCreate = Lists.newArrayList();
+
+    for (Map.Entry<Long, InstanceConfigAuditModel> entry : instanceAuditModels.entrySet()) {
+      InstanceConfigAuditModel auditModel = entry.getValue();
+      InstanceConfig instanceConfig = instanceConfigs.get(entry.getKey());
+
+      if (instanceConfig == null) {
+        instanceConfigsToCreate.add(assembleInstanceConfig(entry.getKey(), auditModel));
+        continue;
+      }
 
-    if (instanceConfig != null) {
       if (!Objects.equals(instanceConfig.getReleaseKey(), auditModel.getReleaseKey())) {
-        instanceConfig.setConfigClusterName(auditModel.getConfigClusterName());
-        instanceConfig.setReleaseKey(auditModel.getReleaseKey());
-        instanceConfig.setReleaseDeliveryTime(auditModel.getOfferTime());
-      } else if (offerTimeAndLastModifiedTimeCloseEnough(auditModel.getOfferTime(),
+        releaseKeyUpdates.computeIfAbsent(STRING_JOINER.join(auditModel.getConfigClusterName(),
+            auditModel.getReleaseKey()), key -> new ReleaseKeyUpdate(auditModel.getConfigClusterName(),
+            auditModel.getReleaseKey())).add(instanceConfig.getId(), auditModel.getOfferTime());
+        continue;
+      }
+
+      //when releaseKey is the same, optimize to reduce writes if the record was updated not long ago
+      if (offerTimeAndLastModifiedTimeCloseEnough(auditModel.getOfferTime(),
           instanceConfig.getDataChangeLastModifiedTime())) {
-        //when releaseKey is the same, optimize to reduce writes if the record was updated not long ago
-        return;
+        continue;
       }
-      //we need to update no matter the release key is the same or not, to ensure the
+      //we need to update even if the release key is the same, to ensure the
       //last modified time is updated each day
-      instanceConfig.setDataChangeLastModifiedTime(auditModel.getOfferTime());
-      instanceService.updateInstanceConfig(instanceConfig);
-      return;
+      lastModifiedTimeUpdates.add(instanceConfig.getId());
+      if (lastModifiedTime == null || lastModifiedTime.before(auditModel.getOfferTime())) {
+        lastModifiedTime = auditModel.getOfferTime();
+      }
+    }
+
+    for (ReleaseKeyUpdate releaseKeyUpdate : releaseKeyUpdates.values()) {
+      instanceService.batchUpdateInstanceConfigReleaseKey(releaseKeyUpdate.instanceConfigIds,
+          releaseKeyUpdate.configClusterName, releaseKeyUpdate.releaseKey, releaseKeyUpdate.releaseDeliveryTime);
+    }
+
+    if (!lastModifiedTimeUpdates.isEmpty()) {
+      instanceService.batchUpdateInstanceConfigLastModifiedTime(lastModifiedTimeUpdates, lastModifiedTime);
+    }
+
+    if (!instanceConfigsToCreate.isEmpty()) {
+      createInstanceConfigs(instanceConfigsToCreate);
     }
+  }
 
-    instanceConfig = new InstanceConfig();
+  private void createInstanceConfigs(List<InstanceConfig> instanceConfigs) {
+    try {
+      instanceService.batchCreateInstanceConfigs(instanceConfigs);
+    } catch (DataIntegrityViolationException ex) {
+      //concurrent insertion, create one by one to skip the existing ones
+      for (InstanceConfig instanceConfig : instanceConfigs) {
+        try {
+          instanceService.createInstanceConfig(instanceConfig);
+        } catch (DataIntegrityViolationException e) {
+          //concurrent insertion, safe to ignore
+        }
+      }
+    }
+  }
+
+  private InstanceConfig assembleInstanceConfig(long instanceId, InstanceConfigAuditModel auditModel) {
+    InstanceConfig instanceConfig = new InstanceConfig();
     instanceConfig.setInstanceId(instanceId);
     instanceConfig.setConfigAppId(auditModel.getConfigAppId());
     instanceConfig.setConfigClusterName(auditModel.getConfigClusterName());
@@ -113,12 +242,16 @@ public class InstanceConfigAuditUtil implements InitializingBean {
     instanceConfig.setReleaseKey(auditModel.getReleaseKey());
     instanceConfig.setReleaseDeliveryTime(auditModel.getOfferTime());
     instanceConfig.setDataChangeCreatedTime(auditModel.getOfferTime());
+    return instanceConfig;
+  }
 
-    try {
-      instanceService.createInstanceConfig(instanceConfig);
-    } catch (DataIntegrityViolationException ex) {
-      //concurrent insertion, safe to ignore
+  private long getInstanceId(InstanceConfigAuditModel auditModel) {
+    long instanceId = instanceCache.get(auditModel.getInstanceHash(), NO_INSTANCE_ID);
+    if (instanceId == NO_INSTANCE_ID) {
+      instanceId = prepareInstanceId(auditModel);
+      instanceCache.put(auditModel.getInstanceHash(), instanceId);
     }
+    return instanceId;
   }
 
   private boolean offerTimeAndLastModifiedTimeCloseEnough(Date offerTime, Date lastModifiedTime) {
@@ -150,32 +283,75 @@ public class InstanceConfigAuditUtil implements InitializingBean {
 
   @Override
   public void afterPropertiesSet() throws Exception {
-    auditExecutorService.submit(() -> {
-      while (!auditStopped.get() && !Thread.currentThread().isInterrupted()) {
-        try {
-          InstanceConfigAuditModel model = audits.poll();
-          if (model == null) {
-            TimeUnit.SECONDS.sleep(1);
-            continue;
+    for (BlockingQueue<InstanceConfigAuditModel> auditQueue : audits) {
+      auditExecutorService.submit(() -> {
+        List<InstanceConfigAuditModel> auditModels = Lists.newArrayListWithCapacity(auditBatch);
+        while (!auditStopped.get() && !Thread.currentThread().isInterrupted()) {
+          try {
+            Queues.drain(auditQueue, auditModels, auditBatch, AUDIT_BATCH_WAIT_TIME_IN_MILLI,
+                TimeUnit.MILLISECONDS);
+            if (!auditModels.isEmpty()) {
+              doAudit(auditModels);
+            }
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          } catch (Throwable ex) {
+            Tracer.logError(ex);
+          } finally {
+            auditModels.clear();
           }
-          doAudit(model);
-        } catch (Throwable ex) {
-          Tracer.logError(ex);
         }
-      }
-    });
+      });
+    }
   }
 
-  private String assembleInstanceKey(String appId, String cluster, String ip, String datacenter) {
-    List<String> keyParts = Lists.newArrayList(appId, cluster, ip);
-    if (!Strings.isNullOrEmpty(datacenter)) {
-      keyParts.add(datacenter);
-    }
-    return STRING_JOINER.join(keyParts);
+  /**
+   * The 64-bit hashes are used as cache keys instead of the joined strings, the chance of collision is negligible
+   * for the number of instances cached
+   */
+  private static long hashInstance(String appId, String cluster, String ip, String dataCenter) {
+    Hasher hasher = HASH_FUNCTION.newHasher();
+    putString(hasher, appId);
+    putString(hasher, cluster);
+    putString(hasher, ip);
+    putString(hasher, dataCenter);
+    return hasher.hash().asLong();
   }
 
-  private String assembleInstanceConfigKey(long instanceId, String configAppId, String configNamespace) {
-    return STRING_JOINER.join(instanceId, configAppId, configNamespace);
+  private static long hashInstanceConfig(long instance, String configAppId, String configNamespace) {
+    Hasher hasher = HASH_FUNCTION.newHasher().putLong(instance);
+    putString(hasher, configAppId);
+    putString(hasher, configNamespace);
+    return hasher.hash().asLong();
+  }
+
+  private static long hash(String value) {
+    return putString(HASH_FUNCTION.newHasher(), value).hash().asLong();
+  }
+
+  private static Hasher putString(Hasher hasher, String value) {
+    //prefix the length so that the boundaries of the strings are kept
+    value = Strings.nullToEmpty(value);
+    return hasher.putInt(value.length()).putUnencodedChars(value);
+  }
+
+  private static class ReleaseKeyUpdate {
+    private final String configClusterName;
+    private final String releaseKey;
+    private final Set<Long> instanceConfigIds = Sets.newHashSet();
+    private Date releaseDeliveryTime;
+
+    ReleaseKeyUpdate(String configClusterName, String releaseKey) {
+      this.configClusterName = configClusterName;
+      this.releaseKey = releaseKey;
+    }
+
+    void add(long instanceConfigId, Date offerTime) {
+      instanceConfigIds.add(instanceConfigId);
+      if (releaseDeliveryTime == null || releaseDeliveryTime.before(offerTime)) {
+        releaseDeliveryTime = offerTime;
+      }
+    }
   }
 
   public static class InstanceConfigAuditModel {
@@ -188,6 +364,7 @@ public class InstanceConfigAuditUtil implements InitializingBean {
     private String configNamespace;
     private String releaseKey;
     private Date offerTime;
+    private long instanceHash;
 
     public InstanceConfigAuditModel(String appId, String clusterName, String dataCenter, String
         clientIp, String configAppId, String configClusterName, String configNamespace, String
@@ -201,6 +378,7 @@ public class InstanceConfigAuditUtil implements InitializingBean {
       this.configClusterName = configClusterName;
       this.configNamespace = configNamespace;
       this.releaseKey = releaseKey;
+      this.instanceHash = hashInstance(appId, clusterName, clientIp, this.dataCenter);
     }
 
     public String getAppId() {
@@ -239,6 +417,10 @@ public class InstanceConfigAuditUtil implements InitializingBean {
       return offerTime;
     }
 
+    long getInstanceHash() {
+      return instanceHash;
+    }
+
     @Override
     public boolean equals(Object o) {
       if (this == o) {
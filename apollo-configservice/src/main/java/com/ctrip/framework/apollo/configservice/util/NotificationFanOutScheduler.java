@@ -0,0 +1,195 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.configservice.wrapper.NotificationSubscriber;
+import com.ctrip.framework.apollo.configservice.wrapper.PreSerializedNotifications;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Notifies large numbers of long polling clients and notification streams of a release message.
+ *
+ * <p>Clients are woken up in batches by a pool of workers, sharing one token bucket which caps the clients
+ * notified per second, so that the database is protected from the thundering herd of clients coming back
+ * for the new config.</p>
+ *
+ * <p>Release messages for a watch key which is still being fanned out are coalesced into the in-flight
+ * fan-out: the remaining clients are notified with the newest notification id, and only the clients
+ * not scheduled yet are added.</p>
+ *
+ * <p>The notification is serialized once per original namespace name and the bytes are shared by all the
+ * clients, instead of being serialized again for each response.</p>
+ */
+public class NotificationFanOutScheduler {
+  private static final Logger logger = LoggerFactory.getLogger(NotificationFanOutScheduler.class);
+
+  private final BizConfig bizConfig;
+  private final Gson gson;
+  private final int workerCount;
+  private final ExecutorService fanOutExecutorService;
+  private final RateLimiter rateLimiter;
+  private final ConcurrentMap<String, FanOut> fanOuts = Maps.newConcurrentMap();
+
+  public NotificationFanOutScheduler(final BizConfig bizConfig, final Gson gson) {
+    this.bizConfig = bizConfig;
+    this.gson = gson;
+    this.workerCount = bizConfig.releaseMessageNotificationFanOutThreads();
+    this.fanOutExecutorService = Executors.newFixedThreadPool(workerCount,
+        ApolloThreadFactory.create("NotificationFanOutScheduler", true));
+    this.rateLimiter = RateLimiter.create(bizConfig.releaseMessageNotificationRate());
+  }
+
+  /**
+   * @return whether there is an in-flight fan-out for the key
+   */
+  public boolean isFanningOut(String key) {
+    return fanOuts.containsKey(key);
+  }
+
+  public void fanOut(String key, ApolloConfigNotification notification,
+      List<? extends NotificationSubscriber> subscribers) {
+    refreshRate();
+
+    fanOuts.compute(key, (k, fanOut) -> {
+      if (fanOut == null) {
+        fanOut = new FanOut(k, notification);
+      } else {
+        fanOut.updateNotification(notification);
+        Tracer.logEvent("Apollo.LongPoll.FanOut.Coalesced", k);
+      }
+      fanOut.enqueue(subscribers);
+      fanOut.scheduleWorkers();
+      return fanOut;
+    });
+  }
+
+  private void refreshRate() {
+    int rate = bizConfig.releaseMessageNotificationRate();
+    if (rate != rateLimiter.getRate()) {
+      rateLimiter.setRate(rate);
+    }
+  }
+
+  private class FanOut {
+    private final String key;
+    private final long startTime;
+    private final BlockingQueue<NotificationSubscriber> pending = Queues.newLinkedBlockingQueue();
+    // only accessed within ConcurrentMap.compute, so no extra synchronization is needed
+    private final Set<NotificationSubscriber> scheduled = Sets.newIdentityHashSet();
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final AtomicInteger notified = new AtomicInteger();
+    private volatile NotificationPayloads payloads;
+
+    FanOut(String key, ApolloConfigNotification notification) {
+      this.key = key;
+      this.payloads = new NotificationPayloads(notification);
+      this.startTime = System.currentTimeMillis();
+    }
+
+    void updateNotification(ApolloConfigNotification newNotification) {
+      if (newNotification.getNotificationId() > payloads.notification.getNotificationId()) {
+        payloads = new NotificationPayloads(newNotification);
+      }
+    }
+
+    void enqueue(List<? extends NotificationSubscriber> subscribers) {
+      for (NotificationSubscriber subscriber : subscribers) {
+        if (scheduled.add(subscriber)) {
+          pending.offer(subscriber);
+        }
+      }
+    }
+
+    void scheduleWorkers() {
+      int batch = bizConfig.releaseMessageNotificationBatch();
+      int expectedWorkers = Math.min(workerCount, (pending.size() + batch - 1) / batch);
+      while (activeWorkers.get() < expectedWorkers) {
+        activeWorkers.incrementAndGet();
+        fanOutExecutorService.execute(this::notifyPending);
+      }
+    }
+
+    private void notifyPending() {
+      try {
+        int batch = bizConfig.releaseMessageNotificationBatch();
+        List<NotificationSubscriber> subscribers = Lists.newArrayListWithCapacity(batch);
+        while (pending.drainTo(subscribers, batch) > 0) {
+          rateLimiter.acquire(subscribers.size());
+          NotificationPayloads current = payloads;
+          for (NotificationSubscriber subscriber : subscribers) {
+            logger.debug("Async notify {}", subscriber);
+            subscriber.sendNotifications(current.payloadFor(subscriber));
+          }
+          notified.addAndGet(subscribers.size());
+          subscribers.clear();
+        }
+      } catch (Throwable ex) {
+        Tracer.logError(ex);
+        logger.error("Notify clients for key {} failed", key, ex);
+      } finally {
+        if (activeWorkers.decrementAndGet() == 0) {
+          fanOuts.computeIfPresent(key, (k, fanOut) -> fanOut == this ? tryComplete() : fanOut);
+        }
+      }
+    }
+
+    /**
+     * @return null if the fan-out is completed, otherwise this
+     */
+    private FanOut tryComplete() {
+      if (activeWorkers.get() > 0) {
+        return this;
+      }
+      if (!pending.isEmpty()) {
+        scheduleWorkers();
+        return this;
+      }
+      long timeToNotifyLastClient = System.currentTimeMillis() - startTime;
+      Tracer.logEvent("Apollo.LongPoll.FanOut.TimeToNotifyLastClient", key, Transaction.SUCCESS,
+          String.format("clients=%d&notificationId=%d&costInMillis=%d", notified.get(),
+              payloads.notification.getNotificationId(), timeToNotifyLastClient));
+      logger.debug("Notified {} clients for key {} in {} ms", notified.get(), key, timeToNotifyLastClient);
+      return null;
+    }
+  }
+
+  /**
+   * The notification and its serialized forms for each original namespace name
+   */
+  private class NotificationPayloads {
+    private final ApolloConfigNotification notification;
+    private final ConcurrentMap<String, PreSerializedNotifications> serialized = Maps.newConcurrentMap();
+
+    NotificationPayloads(ApolloConfigNotification notification) {
+      this.notification = notification;
+    }
+
+    PreSerializedNotifications payloadFor(NotificationSubscriber subscriber) {
+      String namespaceName = subscriber.getOriginalNamespaceName(notification.getNamespaceName());
+      PreSerializedNotifications payload = serialized.get(namespaceName);
+      if (payload == null) {
+        payload = serialized.computeIfAbsent(namespaceName,
+            name -> PreSerializedNotifications.of(notification, name, gson));
+      }
+      return payload;
+    }
+  }
+}
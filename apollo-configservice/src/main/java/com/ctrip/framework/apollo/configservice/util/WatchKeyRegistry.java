@@ -0,0 +1,141 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A concurrent watch key to waiters registry for long polling requests.
+ *
+ * <p>Keys are spread over a fixed number of stripes by hash, each guarded by its own lock, so that
+ * registration, unregistration and notification of different keys don't contend with each other.
+ * Waiters are kept in identity hash sets, so registering or unregistering a waiter for a key is O(1).</p>
+ *
+ * @param <T> the waiter type, e.g. a deferred result
+ */
+public class WatchKeyRegistry<T> {
+  private static final int DEFAULT_STRIPE_COUNT = 64;
+
+  private final Stripe<T>[] stripes;
+  private final int stripeMask;
+  private final boolean caseInsensitive;
+  private final AtomicInteger size = new AtomicInteger();
+
+  public WatchKeyRegistry(boolean caseInsensitive) {
+    this(DEFAULT_STRIPE_COUNT, caseInsensitive);
+  }
+
+  @SuppressWarnings("unchecked")
+  public WatchKeyRegistry(int stripeCount, boolean caseInsensitive) {
+    //round up to power of 2, so the stripe index could be computed by masking
+    int count = 1;
+    while (count < stripeCount) {
+      count <<= 1;
+    }
+    this.stripes = new Stripe[count];
+    for (int i = 0; i < count; i++) {
+      stripes[i] = new Stripe<>();
+    }
+    this.stripeMask = count - 1;
+    this.caseInsensitive = caseInsensitive;
+  }
+
+  /**
+   * @return true if the waiter was not registered for the key before
+   */
+  public boolean put(String key, T waiter) {
+    String normalizedKey = normalize(key);
+    boolean added = stripeFor(normalizedKey).put(normalizedKey, waiter);
+    if (added) {
+      size.incrementAndGet();
+    }
+    return added;
+  }
+
+  /**
+   * @return true if the waiter was registered for the key
+   */
+  public boolean remove(String key, T waiter) {
+    String normalizedKey = normalize(key);
+    boolean removed = stripeFor(normalizedKey).remove(normalizedKey, waiter);
+    if (removed) {
+      size.decrementAndGet();
+    }
+    return removed;
+  }
+
+  public boolean containsKey(String key) {
+    String normalizedKey = normalize(key);
+    return stripeFor(normalizedKey).containsKey(normalizedKey);
+  }
+
+  /**
+   * @return a snapshot of the waiters registered for the key, it's safe to iterate without holding any lock
+   */
+  public List<T> get(String key) {
+    String normalizedKey = normalize(key);
+    return stripeFor(normalizedKey).get(normalizedKey);
+  }
+
+  /**
+   * @return the total number of key-waiter registrations
+   */
+  public int size() {
+    return size.get();
+  }
+
+  private String normalize(String key) {
+    return caseInsensitive ? key.toLowerCase(Locale.ROOT) : key;
+  }
+
+  private Stripe<T> stripeFor(String normalizedKey) {
+    int hash = normalizedKey.hashCode();
+    //spread the higher bits, same as HashMap does
+    hash ^= (hash >>> 16);
+    return stripes[hash & stripeMask];
+  }
+
+  private static class Stripe<T> {
+    private final Map<String, Set<T>> waiters = Maps.newHashMap();
+
+    synchronized boolean put(String key, T waiter) {
+      Set<T> keyWaiters = waiters.get(key);
+      if (keyWaiters == null) {
+        keyWaiters = Sets.newIdentityHashSet();
+        waiters.put(key, keyWaiters);
+      }
+      return keyWaiters.add(waiter);
+    }
+
+    synchronized boolean remove(String key, T waiter) {
+      Set<T> keyWaiters = waiters.get(key);
+      if (keyWaiters == null || !keyWaiters.remove(waiter)) {
+        return false;
+      }
+      if (keyWaiters.isEmpty()) {
+        waiters.remove(key);
+      }
+      return true;
+    }
+
+    synchronized boolean containsKey(String key) {
+      return waiters.containsKey(key);
+    }
+
+    synchronized List<T> get(String key) {
+      Collection<T> keyWaiters = waiters.get(key);
+      if (keyWaiters == null) {
+        return Collections.emptyList();
+      }
+      return Lists.newArrayList(keyWaiters);
+    }
+  }
+}
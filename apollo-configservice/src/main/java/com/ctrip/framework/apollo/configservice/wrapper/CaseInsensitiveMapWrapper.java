@@ -23,4 +23,8 @@ public class CaseInsensitiveMapWrapper<T> {
   public T remove(String key) {
     return delegate.remove(key.toLowerCase());
   }
+
+  public boolean remove(String key, T value) {
+    return delegate.remove(key.toLowerCase(), value);
+  }
 }
@@ -16,7 +16,7 @@ import java.util.Map;
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
-public class DeferredResultWrapper implements Comparable<DeferredResultWrapper> {
+public class DeferredResultWrapper implements NotificationSubscriber, Comparable<DeferredResultWrapper> {
   private static final ResponseEntity<List<ApolloConfigNotification>>
       NOT_MODIFIED_RESPONSE_LIST = new ResponseEntity<>(HttpStatus.NOT_MODIFIED);
 
@@ -35,6 +35,14 @@ public class DeferredResultWrapper implements Comparable<DeferredResultWrapper>
     normalizedNamespaceNameToOriginalNamespaceName.put(normalizedNamespaceName, originalNamespaceName);
   }
 
+  @Override
+  public String getOriginalNamespaceName(String normalizedNamespaceName) {
+    if (normalizedNamespaceNameToOriginalNamespaceName == null) {
+      return normalizedNamespaceName;
+    }
+    return normalizedNamespaceNameToOriginalNamespaceName.getOrDefault(normalizedNamespaceName,
+        normalizedNamespaceName);
+  }
 
   public void onTimeout(Runnable timeoutCallback) {
     result.onTimeout(timeoutCallback);
@@ -62,6 +70,18 @@ public class DeferredResultWrapper implements Comparable<DeferredResultWrapper>
     result.setResult(new ResponseEntity<>(notifications, HttpStatus.OK));
   }
 
+  /**
+   * The notifications are already serialized with the original namespace name, see {@link #getOriginalNamespaceName}
+   */
+  public void setResult(PreSerializedNotifications notifications) {
+    result.setResult(new ResponseEntity<>(notifications, HttpStatus.OK));
+  }
+
+  @Override
+  public void sendNotifications(PreSerializedNotifications notifications) {
+    setResult(notifications);
+  }
+
   public DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> getResult() {
     return result;
   }
@@ -0,0 +1,183 @@
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A server-sent events stream which pushes notifications to the client until it's timed out or closed,
+ * as an alternative to long polling.
+ *
+ * <p>Events are queued and written by the send executor, at most one thread per stream, so a slow client
+ * neither blocks the caller nor the other streams beyond the thread writing to it. The stream is closed
+ * if too many events are queued or a send takes too long, and the client will reconnect.</p>
+ */
+public class NotificationStream implements NotificationSubscriber {
+  public static final String NOTIFICATIONS_EVENT = "notifications";
+  private static final int MAX_PENDING_EVENTS = 100;
+
+  private final SseEmitter emitter;
+  private final Executor sendExecutor;
+  private final Queue<SseEmitter.SseEventBuilder> pendingEvents = Queues.newConcurrentLinkedQueue();
+  private final AtomicInteger pendingEventCount = new AtomicInteger();
+  private final AtomicBoolean sending = new AtomicBoolean();
+  //0 if no event is being sent
+  private volatile long sendStartTime;
+  private volatile boolean broken;
+  private volatile Throwable failure;
+  private Map<String, String> normalizedNamespaceNameToOriginalNamespaceName;
+
+  public NotificationStream(long timeoutInMilli, Executor sendExecutor) {
+    this(new SseEmitter(timeoutInMilli), sendExecutor);
+  }
+
+  NotificationStream(SseEmitter emitter, Executor sendExecutor) {
+    this.emitter = emitter;
+    this.sendExecutor = sendExecutor;
+  }
+
+  public void recordNamespaceNameNormalizedResult(String originalNamespaceName, String normalizedNamespaceName) {
+    if (normalizedNamespaceNameToOriginalNamespaceName == null) {
+      normalizedNamespaceNameToOriginalNamespaceName = Maps.newHashMap();
+    }
+    normalizedNamespaceNameToOriginalNamespaceName.put(normalizedNamespaceName, originalNamespaceName);
+  }
+
+  @Override
+  public String getOriginalNamespaceName(String normalizedNamespaceName) {
+    if (normalizedNamespaceNameToOriginalNamespaceName == null) {
+      return normalizedNamespaceName;
+    }
+    return normalizedNamespaceNameToOriginalNamespaceName.getOrDefault(normalizedNamespaceName,
+        normalizedNamespaceName);
+  }
+
+  public void onTimeout(Runnable timeoutCallback) {
+    emitter.onTimeout(timeoutCallback);
+  }
+
+  public void onCompletion(Runnable completionCallback) {
+    emitter.onCompletion(completionCallback);
+  }
+
+  /**
+   * The namespace name is used as a key in client side, so we have to send the original one instead of the
+   * correct one. The notifications are copied since they might be shared by other streams.
+   */
+  public void send(List<ApolloConfigNotification> notifications) {
+    List<ApolloConfigNotification> toSend = Lists.newArrayListWithCapacity(notifications.size());
+    for (ApolloConfigNotification notification : notifications) {
+      ApolloConfigNotification copy = new ApolloConfigNotification(
+          getOriginalNamespaceName(notification.getNamespaceName()), notification.getNotificationId());
+      copy.setMessages(notification.getMessages());
+      toSend.add(copy);
+    }
+
+    send(SseEmitter.event().name(NOTIFICATIONS_EVENT).data(toSend, MediaType.APPLICATION_JSON));
+  }
+
+  @Override
+  public void sendNotifications(PreSerializedNotifications notifications) {
+    send(SseEmitter.event().name(NOTIFICATIONS_EVENT).data(notifications, MediaType.APPLICATION_JSON));
+  }
+
+  /**
+   * Send a comment line to keep the connection alive
+   */
+  public void heartbeat() {
+    send(SseEmitter.event().comment("heartbeat"));
+  }
+
+  /**
+   * @return whether the event being sent has been blocked for longer than the timeout
+   */
+  public boolean isSendTimedOut(long timeoutInMilli) {
+    long startTime = sendStartTime;
+    return !broken && startTime > 0 && System.currentTimeMillis() - startTime > timeoutInMilli;
+  }
+
+  /**
+   * Close the stream with error and drop the pending events, the client will reconnect.
+   *
+   * <p>The emitter holds its lock while sending, so if an event is being sent, the stream is completed by the
+   * sending thread once the send returns, instead of blocking the caller.</p>
+   */
+  public void abort(Throwable cause) {
+    failure = cause;
+    broken = true;
+    pendingEvents.clear();
+    if (!sending.get()) {
+      emitter.completeWithError(cause);
+    }
+  }
+
+  private void send(SseEmitter.SseEventBuilder event) {
+    if (broken) {
+      return;
+    }
+    if (pendingEventCount.incrementAndGet() > MAX_PENDING_EVENTS) {
+      abort(new TimeoutException("Too many pending events, the client is too slow"));
+      return;
+    }
+    pendingEvents.offer(event);
+    scheduleSend();
+  }
+
+  private void scheduleSend() {
+    if (!sending.compareAndSet(false, true)) {
+      //the thread sending to this stream will pick up the event
+      return;
+    }
+    try {
+      sendExecutor.execute(this::sendPendingEvents);
+    } catch (RejectedExecutionException ex) {
+      sending.set(false);
+      abort(ex);
+    }
+  }
+
+  private void sendPendingEvents() {
+    try {
+      SseEmitter.SseEventBuilder event;
+      while (!broken && (event = pendingEvents.poll()) != null) {
+        pendingEventCount.decrementAndGet();
+        sendStartTime = System.currentTimeMillis();
+        try {
+          emitter.send(event);
+        } catch (IOException | IllegalStateException ex) {
+          //the client is gone or the stream is already completed
+          abort(ex);
+        } finally {
+          sendStartTime = 0;
+        }
+      }
+    } finally {
+      sending.set(false);
+    }
+    if (broken) {
+      emitter.completeWithError(failure);
+      return;
+    }
+    //an event might be queued after the last poll but before the flag is reset
+    if (!pendingEvents.isEmpty()) {
+      scheduleSend();
+    }
+  }
+
+  public SseEmitter getEmitter() {
+    return emitter;
+  }
+}
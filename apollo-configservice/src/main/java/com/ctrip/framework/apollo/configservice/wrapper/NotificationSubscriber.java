@@ -0,0 +1,19 @@
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+/**
+ * A client waiting for notifications, either a long polling request or a notification stream
+ */
+public interface NotificationSubscriber {
+
+  /**
+   * @return the namespace name used by the client, which may differ from the normalized one in character case
+   */
+  String getOriginalNamespaceName(String normalizedNamespaceName);
+
+  /**
+   * Send the notifications to the client, which must not block on the client's network
+   *
+   * @param notifications the notifications already serialized with the original namespace name
+   */
+  void sendNotifications(PreSerializedNotifications notifications);
+}
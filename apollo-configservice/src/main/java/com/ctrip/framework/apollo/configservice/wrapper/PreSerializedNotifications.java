@@ -0,0 +1,53 @@
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Notifications serialized once and shared by all the long polling clients notified in a fan-out,
+ * the bytes are written to the response as is by {@link PreSerializedNotificationsHttpMessageConverter}.
+ *
+ * <p>Instances are immutable, since they are shared among requests.</p>
+ */
+public class PreSerializedNotifications extends AbstractList<ApolloConfigNotification> {
+  private final List<ApolloConfigNotification> notifications;
+  private final byte[] body;
+
+  private PreSerializedNotifications(List<ApolloConfigNotification> notifications, byte[] body) {
+    this.notifications = notifications;
+    this.body = body;
+  }
+
+  /**
+   * @param notification  the notification to serialize
+   * @param namespaceName the namespace name the client is listening on, which may differ from the normalized one
+   *                      in the notification
+   */
+  public static PreSerializedNotifications of(ApolloConfigNotification notification, String namespaceName,
+      Gson gson) {
+    ApolloConfigNotification copy = new ApolloConfigNotification(namespaceName, notification.getNotificationId());
+    copy.setMessages(notification.getMessages());
+    List<ApolloConfigNotification> notifications = ImmutableList.of(copy);
+    return new PreSerializedNotifications(notifications,
+        gson.toJson(notifications).getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Override
+  public ApolloConfigNotification get(int index) {
+    return notifications.get(index);
+  }
+
+  @Override
+  public int size() {
+    return notifications.size();
+  }
+
+  byte[] getBody() {
+    return body;
+  }
+}
@@ -0,0 +1,52 @@
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes {@link PreSerializedNotifications} to the response without serializing them again.
+ */
+public class PreSerializedNotificationsHttpMessageConverter
+    extends AbstractHttpMessageConverter<PreSerializedNotifications> {
+
+  public PreSerializedNotificationsHttpMessageConverter() {
+    super(StandardCharsets.UTF_8, MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+  }
+
+  @Override
+  protected boolean supports(Class<?> clazz) {
+    return PreSerializedNotifications.class.isAssignableFrom(clazz);
+  }
+
+  /**
+   * The notifications are only written to responses, they are never read from requests.
+   */
+  @Override
+  public boolean canRead(Class<?> clazz, MediaType mediaType) {
+    return false;
+  }
+
+  @Override
+  protected PreSerializedNotifications readInternal(Class<? extends PreSerializedNotifications> clazz,
+      HttpInputMessage inputMessage) throws IOException, HttpMessageNotReadableException {
+    //never called, as canRead always returns false
+    return null;
+  }
+
+  @Override
+  protected Long getContentLength(PreSerializedNotifications notifications, MediaType contentType) {
+    return (long) notifications.getBody().length;
+  }
+
+  @Override
+  protected void writeInternal(PreSerializedNotifications notifications, HttpOutputMessage outputMessage)
+      throws IOException {
+    outputMessage.getBody().write(notifications.getBody());
+  }
+}
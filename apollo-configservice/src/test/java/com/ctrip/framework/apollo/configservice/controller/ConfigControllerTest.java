@@ -1,7 +1,9 @@
 package com.ctrip.framework.apollo.configservice.controller;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
+import com.ctrip.framework.apollo.common.exception.BadRequestException;
 import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
 import com.ctrip.framework.apollo.configservice.util.InstanceConfigAuditUtil;
@@ -9,11 +11,17 @@ import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfig;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.core.dto.ConfigurationChange;
+import com.ctrip.framework.apollo.core.enums.ConfigSyncType;
+import com.ctrip.framework.apollo.core.enums.ConfigurationChangeType;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -22,6 +30,7 @@ import org.mockito.junit.MockitoJUnitRunner;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
@@ -58,12 +67,14 @@ public class ConfigControllerTest {
   private InstanceConfigAuditUtil instanceConfigAuditUtil;
   @Mock
   private HttpServletRequest someRequest;
+  @Mock
+  private BizConfig bizConfig;
   private Gson gson = new Gson();
 
   @Before
   public void setUp() throws Exception {
     configController = spy(new ConfigController(
-        configService, appNamespaceService, namespaceUtil, instanceConfigAuditUtil, gson
+        configService, appNamespaceService, namespaceUtil, instanceConfigAuditUtil, bizConfig, gson
     ));
 
     someAppId = "1";
@@ -85,6 +96,10 @@ public class ConfigControllerTest {
     when(namespaceUtil.normalizeNamespace(someAppId, defaultNamespaceName)).thenReturn(defaultNamespaceName);
     when(namespaceUtil.normalizeNamespace(someAppId, somePublicNamespaceName)).thenReturn(somePublicNamespaceName);
 
+    when(configService.loadConfigurations(any(Release.class))).thenAnswer(invocation -> gson.fromJson(
+        invocation.<Release>getArgument(0).getConfigurations(), new TypeToken<Map<String, String>>() {
+        }.getType()));
+
     someMessagesAsString = "someValidJson";
     when(configController.transformMessages(someMessagesAsString)).thenReturn(someNotificationMessages);
   }
@@ -102,7 +117,7 @@ public class ConfigControllerTest {
 
     ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
         defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
-        someClientIp, someMessagesAsString, someRequest, someResponse);
+        someClientIp, someMessagesAsString, false, someRequest, someResponse);
 
     verify(configService, times(1)).loadConfig(someAppId, someClientIp, someAppId, someClusterName,
         defaultNamespaceName, someDataCenter, someNotificationMessages);
@@ -114,6 +129,128 @@ public class ConfigControllerTest {
         someClientIp, someAppId, someClusterName, defaultNamespaceName, someServerSideNewReleaseKey);
   }
 
+  @Test
+  public void testQueryConfigWithIncrementalSync() throws Exception {
+    String someClientSideReleaseKey = "1";
+    String someServerSideNewReleaseKey = "2";
+    HttpServletResponse someResponse = mock(HttpServletResponse.class);
+    Release someClientSideRelease = mock(Release.class);
+
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideNewReleaseKey);
+    when(bizConfig.isConfigServiceIncrementalChangeEnabled()).thenReturn(true);
+    when(configService.findReleasesByReleaseKeys(Sets.newHashSet(someClientSideReleaseKey)))
+        .thenReturn(ImmutableMap.of(someClientSideReleaseKey, someClientSideRelease));
+    when(someRelease.getNamespaceName()).thenReturn(defaultNamespaceName);
+    when(someClientSideRelease.getAppId()).thenReturn(someAppId);
+    when(someClientSideRelease.getClusterName()).thenReturn(someClusterName);
+    when(someClientSideRelease.getNamespaceName()).thenReturn(defaultNamespaceName);
+    when(someClientSideRelease.getConfigurations()).thenReturn("{\"apollo.bar\": \"bar\", \"apollo.foo\": \"foo\"}");
+
+    ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
+        defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
+        someClientIp, someMessagesAsString, true, someRequest, someResponse);
+
+    assertEquals(someServerSideNewReleaseKey, result.getReleaseKey());
+    assertEquals(ConfigSyncType.INCREMENTAL_SYNC.getValue(), result.getConfigSyncType());
+    assertNull(result.getConfigurations());
+    assertEquals(2, result.getConfigurationChanges().size());
+    ConfigurationChange modified = result.getConfigurationChanges().get(0);
+    assertEquals("apollo.bar", modified.getKey());
+    assertEquals("foo", modified.getNewValue());
+    assertEquals(ConfigurationChangeType.MODIFIED.name(), modified.getConfigurationChangeType());
+    ConfigurationChange deleted = result.getConfigurationChanges().get(1);
+    assertEquals("apollo.foo", deleted.getKey());
+    assertNull(deleted.getNewValue());
+    assertEquals(ConfigurationChangeType.DELETED.name(), deleted.getConfigurationChangeType());
+  }
+
+  @Test
+  public void testQueryConfigWithIncrementalSyncAndClientSideReleaseNotFound() throws Exception {
+    String someClientSideReleaseKey = "1";
+    String someServerSideNewReleaseKey = "2";
+    HttpServletResponse someResponse = mock(HttpServletResponse.class);
+
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideNewReleaseKey);
+    when(bizConfig.isConfigServiceIncrementalChangeEnabled()).thenReturn(true);
+    when(configService.findReleasesByReleaseKeys(Sets.newHashSet(someClientSideReleaseKey)))
+        .thenReturn(ImmutableMap.of());
+
+    ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
+        defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
+        someClientIp, someMessagesAsString, true, someRequest, someResponse);
+
+    assertNull(result.getConfigSyncType());
+    assertNull(result.getConfigurationChanges());
+    assertEquals("foo", result.getConfigurations().get("apollo.bar"));
+  }
+
+  @Test
+  public void testQueryConfigWithIncrementalSyncAndClientSideReleaseOfAnotherApp() throws Exception {
+    String someClientSideReleaseKey = "1";
+    String someServerSideNewReleaseKey = "2";
+    HttpServletResponse someResponse = mock(HttpServletResponse.class);
+    Release anotherAppRelease = mock(Release.class);
+
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideNewReleaseKey);
+    when(bizConfig.isConfigServiceIncrementalChangeEnabled()).thenReturn(true);
+    when(configService.findReleasesByReleaseKeys(Sets.newHashSet(someClientSideReleaseKey)))
+        .thenReturn(ImmutableMap.of(someClientSideReleaseKey, anotherAppRelease));
+    when(anotherAppRelease.getAppId()).thenReturn("anotherAppId");
+
+    ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
+        defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
+        someClientIp, someMessagesAsString, true, someRequest, someResponse);
+
+    verify(anotherAppRelease, never()).getConfigurations();
+    assertNull(result.getConfigSyncType());
+    assertNull(result.getConfigurationChanges());
+    assertEquals("foo", result.getConfigurations().get("apollo.bar"));
+  }
+
+  @Test
+  public void testQueryConfigWithIncrementalSyncDisabled() throws Exception {
+    String someClientSideReleaseKey = "1";
+    String someServerSideNewReleaseKey = "2";
+    HttpServletResponse someResponse = mock(HttpServletResponse.class);
+
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideNewReleaseKey);
+    when(bizConfig.isConfigServiceIncrementalChangeEnabled()).thenReturn(false);
+
+    ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
+        defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
+        someClientIp, someMessagesAsString, true, someRequest, someResponse);
+
+    verify(configService, never()).findReleasesByReleaseKeys(anySet());
+    assertNull(result.getConfigSyncType());
+    assertEquals("foo", result.getConfigurations().get("apollo.bar"));
+  }
+
+  @Test
+  public void testCalcConfigurationChanges() throws Exception {
+    Map<String, String> previousConfigurations = ImmutableMap.of("a", "1", "b", "2", "c", "3");
+    Map<String, String> configurations = ImmutableMap.of("a", "1", "b", "22", "d", "4");
+
+    List<ConfigurationChange> changes =
+        configController.calcConfigurationChanges(previousConfigurations, configurations);
+
+    assertEquals(3, changes.size());
+    assertEquals("b", changes.get(0).getKey());
+    assertEquals(ConfigurationChangeType.MODIFIED.name(), changes.get(0).getConfigurationChangeType());
+    assertEquals("d", changes.get(1).getKey());
+    assertEquals("4", changes.get(1).getNewValue());
+    assertEquals(ConfigurationChangeType.ADDED.name(), changes.get(1).getConfigurationChangeType());
+    assertEquals("c", changes.get(2).getKey());
+    assertEquals(ConfigurationChangeType.DELETED.name(), changes.get(2).getConfigurationChangeType());
+  }
+
   @Test
   public void testQueryConfigFile() throws Exception {
     String someClientSideReleaseKey = "1";
@@ -129,7 +266,7 @@ public class ConfigControllerTest {
 
     ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
         someNamespaceName, someDataCenter, someClientSideReleaseKey,
-        someClientIp, someMessagesAsString, someRequest, someResponse);
+        someClientIp, someMessagesAsString, false, someRequest, someResponse);
 
     verify(configService, times(1)).loadConfig(someAppId, someClientIp, someAppId, someClusterName,
         defaultNamespaceName, someDataCenter, someNotificationMessages);
@@ -158,7 +295,7 @@ public class ConfigControllerTest {
 
     ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
         somePrivateNamespaceName, someDataCenter, someClientSideReleaseKey,
-        someClientIp, someMessagesAsString, someRequest, someResponse);
+        someClientIp, someMessagesAsString, false, someRequest, someResponse);
 
     assertEquals(someAppId, result.getAppId());
     assertEquals(someClusterName, result.getCluster());
@@ -176,7 +313,7 @@ public class ConfigControllerTest {
 
     ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
         defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
-        someClientIp, someMessagesAsString, someRequest, someResponse);
+        someClientIp, someMessagesAsString, false, someRequest, someResponse);
 
     assertNull(result);
     verify(someResponse, times(1)).sendError(eq(HttpServletResponse.SC_NOT_FOUND), anyString());
@@ -194,12 +331,74 @@ public class ConfigControllerTest {
 
     ApolloConfig result =
         configController.queryConfig(someAppId, someClusterName, defaultNamespaceName, someDataCenter,
-            someClientSideReleaseKey, someClientIp, someMessagesAsString, someRequest, someResponse);
+            someClientSideReleaseKey, someClientIp, someMessagesAsString, false, someRequest, someResponse);
 
     assertNull(result);
     verify(someResponse, times(1)).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
   }
 
+  @Test
+  public void testQueryConfigs() throws Exception {
+    String someServerSideNewReleaseKey = "2";
+    String somePrivateNamespace = "datasource";
+    String somePrivateNamespaceReleaseKey = "3";
+    String someMissingNamespace = "someMissingNamespace";
+    Release somePrivateRelease = mock(Release.class);
+    Map<String, String> clientSideReleaseKeys = Maps.newLinkedHashMap();
+    clientSideReleaseKeys.put(defaultNamespaceName, "1");
+    clientSideReleaseKeys.put(somePrivateNamespace, somePrivateNamespaceReleaseKey);
+    clientSideReleaseKeys.put(someMissingNamespace, "");
+
+    when(bizConfig.configServiceBatchQueryMaxNamespaces()).thenReturn(3);
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideNewReleaseKey);
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, somePrivateNamespace,
+        someDataCenter, someNotificationMessages)).thenReturn(somePrivateRelease);
+    when(somePrivateRelease.getReleaseKey()).thenReturn(somePrivateNamespaceReleaseKey);
+    when(somePrivateRelease.getClusterName()).thenReturn(someClusterName);
+    when(namespaceUtil.filterNamespaceName(somePrivateNamespace)).thenReturn(somePrivateNamespace);
+    when(namespaceUtil.normalizeNamespace(someAppId, somePrivateNamespace)).thenReturn(somePrivateNamespace);
+    when(appNamespaceService.findByAppIdAndNamespace(someAppId, somePrivateNamespace))
+        .thenReturn(mock(AppNamespace.class));
+    when(namespaceUtil.filterNamespaceName(someMissingNamespace)).thenReturn(someMissingNamespace);
+    when(namespaceUtil.normalizeNamespace(someAppId, someMissingNamespace)).thenReturn(someMissingNamespace);
+
+    List<ApolloConfig> result = configController.queryConfigs(someAppId, someClusterName,
+        gson.toJson(clientSideReleaseKeys), someDataCenter, someClientIp, someMessagesAsString, someRequest);
+
+    assertEquals(2, result.size());
+
+    ApolloConfig someModifiedConfig = result.get(0);
+    assertEquals(defaultNamespaceName, someModifiedConfig.getNamespaceName());
+    assertEquals(someServerSideNewReleaseKey, someModifiedConfig.getReleaseKey());
+    assertEquals("foo", someModifiedConfig.getConfigurations().get("apollo.bar"));
+
+    ApolloConfig someNotModifiedConfig = result.get(1);
+    assertEquals(somePrivateNamespace, someNotModifiedConfig.getNamespaceName());
+    assertEquals(somePrivateNamespaceReleaseKey, someNotModifiedConfig.getReleaseKey());
+    assertNull(someNotModifiedConfig.getConfigurations());
+  }
+
+  @Test(expected = BadRequestException.class)
+  public void testQueryConfigsWithInvalidNamespaces() throws Exception {
+    configController.queryConfigs(someAppId, someClusterName, "invalid", someDataCenter, someClientIp,
+        someMessagesAsString, someRequest);
+  }
+
+  @Test(expected = BadRequestException.class)
+  public void testQueryConfigsWithTooManyNamespaces() throws Exception {
+    Map<String, String> clientSideReleaseKeys = Maps.newLinkedHashMap();
+    clientSideReleaseKeys.put(defaultNamespaceName, "");
+    clientSideReleaseKeys.put("someNamespace", "");
+    clientSideReleaseKeys.put("anotherNamespace", "");
+
+    when(bizConfig.configServiceBatchQueryMaxNamespaces()).thenReturn(2);
+
+    configController.queryConfigs(someAppId, someClusterName, gson.toJson(clientSideReleaseKeys), someDataCenter,
+        someClientIp, someMessagesAsString, someRequest);
+  }
+
   @Test
   public void testQueryConfigWithAppOwnNamespace() throws Exception {
     String someClientSideReleaseKey = "1";
@@ -220,7 +419,7 @@ public class ConfigControllerTest {
     ApolloConfig result =
         configController
             .queryConfig(someAppId, someClusterName, someAppOwnNamespaceName, someDataCenter,
-                someClientSideReleaseKey, someClientIp, someMessagesAsString, someRequest, someResponse);
+                someClientSideReleaseKey, someClientIp, someMessagesAsString, false, someRequest, someResponse);
 
     assertEquals(someServerSideReleaseKey, result.getReleaseKey());
     assertEquals(someAppId, result.getAppId());
@@ -252,7 +451,7 @@ public class ConfigControllerTest {
 
     ApolloConfig result = configController
         .queryConfig(someAppId, someClusterName, somePublicNamespaceName, someDataCenter,
-            someClientSideReleaseKey, someClientIp, someMessagesAsString, someRequest, someResponse);
+            someClientSideReleaseKey, someClientIp, someMessagesAsString, false, someRequest, someResponse);
 
     assertEquals(someServerSideReleaseKey, result.getReleaseKey());
     assertEquals(someAppId, result.getAppId());
@@ -286,7 +485,7 @@ public class ConfigControllerTest {
 
     ApolloConfig result = configController
         .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter,
-            someClientSideReleaseKey, someClientIp, someMessagesAsString, someRequest, someResponse);
+            someClientSideReleaseKey, someClientIp, someMessagesAsString, false, someRequest, someResponse);
 
     assertEquals(someServerSideReleaseKey, result.getReleaseKey());
     assertEquals(someAppId, result.getAppId());
@@ -325,7 +524,7 @@ public class ConfigControllerTest {
     ApolloConfig result =
         configController
             .queryConfig(someAppId, someClusterName, somePublicNamespaceName, someDataCenter,
-                someAppSideReleaseKey, someClientIp, someMessagesAsString, someRequest, someResponse);
+                someAppSideReleaseKey, someClientIp, someMessagesAsString, false, someRequest, someResponse);
 
     assertEquals(Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
             .join(someAppSideReleaseKey, somePublicAppSideReleaseKey),
@@ -386,7 +585,7 @@ public class ConfigControllerTest {
 
     ApolloConfig result = configController.queryConfig(appId, someClusterName,
         defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
-        someClientIp, someMessagesAsString, someRequest, someResponse);
+        someClientIp, someMessagesAsString, false, someRequest, someResponse);
 
     verify(configService, never()).loadConfig(appId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
         someDataCenter, someNotificationMessages);
@@ -414,7 +613,7 @@ public class ConfigControllerTest {
 
     ApolloConfig result = configController.queryConfig(appId, someClusterName,
         somePublicNamespaceName, someDataCenter, someClientSideReleaseKey,
-        someClientIp, someMessagesAsString, someRequest, someResponse);
+        someClientIp, someMessagesAsString, false, someRequest, someResponse);
 
     verify(configService, never()).loadConfig(appId, someClientIp, appId, someClusterName,
         somePublicNamespaceName, someDataCenter, someNotificationMessages);
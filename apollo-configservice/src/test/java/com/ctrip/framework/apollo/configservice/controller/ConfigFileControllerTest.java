@@ -9,13 +9,17 @@ import com.ctrip.framework.apollo.core.dto.ApolloConfig;
 import com.google.common.cache.Cache;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
 import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
+import java.io.ByteArrayInputStream;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.GZIPInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.junit.Before;
@@ -23,11 +27,14 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
@@ -58,8 +65,8 @@ public class ConfigFileControllerTest {
   private HttpServletResponse someResponse;
   @Mock
   private HttpServletRequest someRequest;
-  Multimap<String, String> watchedKeys2CacheKey;
-  Multimap<String, String> cacheKey2WatchedKeys;
+  Map<String, Set<String>> watchedKeys2CacheKey;
+  Cache<String, ConfigFileController.ConfigFileCacheEntry> localCache;
 
   private static final Gson GSON = new Gson();
 
@@ -81,11 +88,11 @@ public class ConfigFileControllerTest {
         .thenReturn(false);
 
     watchedKeys2CacheKey =
-        (Multimap<String, String>) ReflectionTestUtils
+        (Map<String, Set<String>>) ReflectionTestUtils
             .getField(configFileController, "watchedKeys2CacheKey");
-    cacheKey2WatchedKeys =
-        (Multimap<String, String>) ReflectionTestUtils
-            .getField(configFileController, "cacheKey2WatchedKeys");
+    localCache =
+        (Cache<String, ConfigFileController.ConfigFileCacheEntry>) ReflectionTestUtils
+            .getField(configFileController, "localCache");
   }
 
   @Test
@@ -108,29 +115,27 @@ public class ConfigFileControllerTest {
     ApolloConfig someApolloConfig = mock(ApolloConfig.class);
     when(someApolloConfig.getConfigurations()).thenReturn(configurations);
     when(configController
-        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null, false,
             someRequest, someResponse)).thenReturn(someApolloConfig);
     when(watchKeysUtil
         .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
         .thenReturn(watchKeys);
 
-    ResponseEntity<String> response =
+    ResponseEntity<byte[]> response =
         configFileController
             .queryConfigAsProperties(someAppId, someClusterName, someNamespace, someDataCenter,
                 someClientIp, someRequest, someResponse);
 
     assertEquals(2, watchedKeys2CacheKey.size());
-    assertEquals(2, cacheKey2WatchedKeys.size());
-    assertTrue(watchedKeys2CacheKey.containsEntry(someWatchKey, cacheKey));
-    assertTrue(watchedKeys2CacheKey.containsEntry(anotherWatchKey, cacheKey));
-    assertTrue(cacheKey2WatchedKeys.containsEntry(cacheKey, someWatchKey));
-    assertTrue(cacheKey2WatchedKeys.containsEntry(cacheKey, anotherWatchKey));
+    assertEquals(Sets.newHashSet(cacheKey), watchedKeys2CacheKey.get(someWatchKey));
+    assertEquals(Sets.newHashSet(cacheKey), watchedKeys2CacheKey.get(anotherWatchKey));
+    assertEquals(watchKeys, localCache.getIfPresent(cacheKey).getWatchedKeys());
 
     assertEquals(HttpStatus.OK, response.getStatusCode());
-    assertTrue(response.getBody().contains(String.format("%s=%s", someKey, someValue)));
-    assertTrue(response.getBody().contains(String.format("%s=%s", anotherKey, anotherValue)));
+    assertTrue(asString(response).contains(String.format("%s=%s", someKey, someValue)));
+    assertTrue(asString(response).contains(String.format("%s=%s", anotherKey, anotherValue)));
 
-    ResponseEntity<String> anotherResponse =
+    ResponseEntity<byte[]> anotherResponse =
         configFileController
             .queryConfigAsProperties(someAppId, someClusterName, someNamespace, someDataCenter,
                 someClientIp, someRequest, someResponse);
@@ -138,7 +143,7 @@ public class ConfigFileControllerTest {
     assertEquals(response, anotherResponse);
 
     verify(configController, times(1))
-        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null, false,
             someRequest, someResponse);
   }
 
@@ -156,20 +161,20 @@ public class ConfigFileControllerTest {
         ImmutableMap.of(someKey, someValue);
     ApolloConfig someApolloConfig = mock(ApolloConfig.class);
     when(configController
-        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null, false,
             someRequest, someResponse)).thenReturn(someApolloConfig);
     when(someApolloConfig.getConfigurations()).thenReturn(configurations);
     when(watchKeysUtil
         .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
         .thenReturn(watchKeys);
 
-    ResponseEntity<String> response =
+    ResponseEntity<byte[]> response =
         configFileController
             .queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter,
                 someClientIp, someRequest, someResponse);
 
     assertEquals(HttpStatus.OK, response.getStatusCode());
-    assertEquals(configurations, GSON.fromJson(response.getBody(), responseType));
+    assertEquals(configurations, GSON.fromJson(asString(response), responseType));
   }
 
   @Test
@@ -187,27 +192,27 @@ public class ConfigFileControllerTest {
     ApolloConfig someApolloConfig = mock(ApolloConfig.class);
     when(someApolloConfig.getConfigurations()).thenReturn(configurations);
     when(configController
-        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null, false,
             someRequest, someResponse)).thenReturn(someApolloConfig);
 
-    ResponseEntity<String> response =
+    ResponseEntity<byte[]> response =
         configFileController
             .queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter,
                 someClientIp, someRequest, someResponse);
 
-    ResponseEntity<String> anotherResponse =
+    ResponseEntity<byte[]> anotherResponse =
         configFileController
             .queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter,
                 someClientIp, someRequest, someResponse);
 
     verify(configController, times(2))
-        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null, false,
             someRequest, someResponse);
 
     assertEquals(HttpStatus.OK, response.getStatusCode());
-    assertEquals(configurations, GSON.fromJson(response.getBody(), responseType));
+    assertEquals(configurations, GSON.fromJson(asString(response), responseType));
     assertTrue(watchedKeys2CacheKey.isEmpty());
-    assertTrue(cacheKey2WatchedKeys.isEmpty());
+    assertEquals(0, localCache.size());
   }
 
   @Test
@@ -216,25 +221,152 @@ public class ConfigFileControllerTest {
     String anotherWatchKey = "anotherWatchKey";
     String someCacheKey = "someCacheKey";
     String anotherCacheKey = "anotherCacheKey";
-    String someValue = "someValue";
+    Set<String> watchKeys = Sets.newHashSet(someWatchKey, anotherWatchKey);
 
     ReleaseMessage someReleaseMessage = mock(ReleaseMessage.class);
     when(someReleaseMessage.getMessage()).thenReturn(someWatchKey);
 
-    Cache<String, String> cache =
-        (Cache<String, String>) ReflectionTestUtils.getField(configFileController, "localCache");
-    cache.put(someCacheKey, someValue);
-    cache.put(anotherCacheKey, someValue);
+    localCache.put(someCacheKey, new ConfigFileController.ConfigFileCacheEntry(new byte[0], "someETag", watchKeys));
+    localCache.put(anotherCacheKey, new ConfigFileController.ConfigFileCacheEntry(new byte[0], "someETag", watchKeys));
 
-    watchedKeys2CacheKey.putAll(someWatchKey, Lists.newArrayList(someCacheKey, anotherCacheKey));
-    watchedKeys2CacheKey.putAll(anotherWatchKey, Lists.newArrayList(someCacheKey, anotherCacheKey));
-
-    cacheKey2WatchedKeys.putAll(someCacheKey, Lists.newArrayList(someWatchKey, anotherWatchKey));
-    cacheKey2WatchedKeys.putAll(anotherCacheKey, Lists.newArrayList(someWatchKey, anotherWatchKey));
+    watchedKeys2CacheKey.put(someWatchKey, Sets.newConcurrentHashSet(Lists.newArrayList(someCacheKey, anotherCacheKey)));
+    watchedKeys2CacheKey.put(anotherWatchKey, Sets.newConcurrentHashSet(Lists.newArrayList(someCacheKey, anotherCacheKey)));
 
     configFileController.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
 
     assertTrue(watchedKeys2CacheKey.isEmpty());
-    assertTrue(cacheKey2WatchedKeys.isEmpty());
+    assertEquals(0, localCache.size());
+  }
+
+  @Test
+  public void testQueryConfigWithETag() throws Exception {
+    String someReleaseKey = "someReleaseKey";
+    String anotherReleaseKey = "anotherReleaseKey";
+    Map<String, String> configurations = ImmutableMap.of("someKey", "someValue");
+    ApolloConfig someApolloConfig = mock(ApolloConfig.class);
+    when(someApolloConfig.getConfigurations()).thenReturn(configurations);
+    when(someApolloConfig.getReleaseKey()).thenReturn(someReleaseKey, anotherReleaseKey);
+    when(configController
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null, false,
+            someRequest, someResponse)).thenReturn(someApolloConfig);
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
+        .thenReturn(Sets.newHashSet("someWatchKey"));
+
+    ResponseEntity<byte[]> response = configFileController.queryConfigAsJson(someAppId, someClusterName,
+        someNamespace, someDataCenter, someClientIp, someRequest, someResponse);
+    String someETag = response.getHeaders().getETag();
+
+    when(someRequest.getHeader(HttpHeaders.IF_NONE_MATCH)).thenReturn(someETag);
+
+    ResponseEntity<byte[]> notModifiedResponse = configFileController.queryConfigAsJson(someAppId,
+        someClusterName, someNamespace, someDataCenter, someClientIp, someRequest, someResponse);
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertTrue(someETag.startsWith("\""));
+    assertEquals(HttpStatus.NOT_MODIFIED, notModifiedResponse.getStatusCode());
+    assertEquals(someETag, notModifiedResponse.getHeaders().getETag());
+    assertNull(notModifiedResponse.getBody());
+
+    //the properties file of the same release is another representation
+    ResponseEntity<byte[]> propertiesResponse = configFileController.queryConfigAsProperties(someAppId,
+        someClusterName, someNamespace, someDataCenter, someClientIp, someRequest, someResponse);
+
+    assertEquals(HttpStatus.OK, propertiesResponse.getStatusCode());
+    assertNotEquals(someETag, propertiesResponse.getHeaders().getETag());
+  }
+
+  @Test
+  public void testQueryConfigWithGzip() throws Exception {
+    Map<String, String> configurations = ImmutableMap.of("someKey", "someValue");
+    Type responseType = new TypeToken<Map<String, String>>(){}.getType();
+    ApolloConfig someApolloConfig = mock(ApolloConfig.class);
+    when(someApolloConfig.getConfigurations()).thenReturn(configurations);
+    when(configController
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null, false,
+            someRequest, someResponse)).thenReturn(someApolloConfig);
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
+        .thenReturn(Sets.newHashSet("someWatchKey"));
+
+    ResponseEntity<byte[]> response = configFileController.queryConfigAsJson(someAppId, someClusterName,
+        someNamespace, someDataCenter, someClientIp, someRequest, someResponse);
+
+    when(someRequest.getHeader(HttpHeaders.ACCEPT_ENCODING)).thenReturn("gzip, deflate");
+
+    ResponseEntity<byte[]> gzipResponse = configFileController.queryConfigAsJson(someAppId, someClusterName,
+        someNamespace, someDataCenter, someClientIp, someRequest, someResponse);
+
+    assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    assertEquals("gzip", gzipResponse.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    assertNotEquals(response.getHeaders().getETag(), gzipResponse.getHeaders().getETag());
+    assertEquals(configurations, GSON.fromJson(
+        new String(ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(gzipResponse.getBody()))),
+            StandardCharsets.UTF_8), responseType));
+
+    verify(configController, times(1))
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null, false,
+            someRequest, someResponse);
+  }
+
+  @Test
+  public void testQueryConfigWithGzipNotAcceptable() throws Exception {
+    Map<String, String> configurations = ImmutableMap.of("someKey", "someValue");
+    ApolloConfig someApolloConfig = mock(ApolloConfig.class);
+    when(someApolloConfig.getConfigurations()).thenReturn(configurations);
+    when(configController
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null, false,
+            someRequest, someResponse)).thenReturn(someApolloConfig);
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
+        .thenReturn(Sets.newHashSet("someWatchKey"));
+
+    for (String acceptEncoding : Lists.newArrayList("gzip;q=0", "deflate, GZIP ; Q=0.0", "*;q=0", "gzip;q=0, *",
+        "x-gzip, deflate")) {
+      when(someRequest.getHeader(HttpHeaders.ACCEPT_ENCODING)).thenReturn(acceptEncoding);
+
+      ResponseEntity<byte[]> response = configFileController.queryConfigAsJson(someAppId, someClusterName,
+          someNamespace, someDataCenter, someClientIp, someRequest, someResponse);
+
+      assertNull(acceptEncoding, response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    for (String acceptEncoding : Lists.newArrayList("GZIP", "deflate;q=1, gzip;q=0.5", "*", "deflate;q=0, *;q=0.1")) {
+      when(someRequest.getHeader(HttpHeaders.ACCEPT_ENCODING)).thenReturn(acceptEncoding);
+
+      ResponseEntity<byte[]> response = configFileController.queryConfigAsJson(someAppId, someClusterName,
+          someNamespace, someDataCenter, someClientIp, someRequest, someResponse);
+
+      assertEquals(acceptEncoding, "gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+  }
+
+  @Test
+  public void testQueryConfigWithGzipInTurkishLocale() throws Exception {
+    Locale defaultLocale = Locale.getDefault();
+    Locale.setDefault(new Locale("tr", "TR"));
+    try {
+      ApolloConfig someApolloConfig = mock(ApolloConfig.class);
+      when(someApolloConfig.getConfigurations()).thenReturn(ImmutableMap.of("someKey", "someValue"));
+      when(configController
+          .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null, false,
+              someRequest, someResponse)).thenReturn(someApolloConfig);
+      when(watchKeysUtil
+          .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
+          .thenReturn(Sets.newHashSet("someWatchKey"));
+      //the dotted capital i in the turkish locale
+      when(someRequest.getHeader(HttpHeaders.ACCEPT_ENCODING)).thenReturn("GZIP");
+
+      ResponseEntity<byte[]> response = configFileController.queryConfigAsJson(someAppId, someClusterName,
+          someNamespace, someDataCenter, someClientIp, someRequest, someResponse);
+
+      assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    } finally {
+      Locale.setDefault(defaultLocale);
+    }
+  }
+
+  private String asString(ResponseEntity<byte[]> response) {
+    return new String(response.getBody(), StandardCharsets.UTF_8);
   }
 }
@@ -5,11 +5,11 @@ import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.utils.EntityManagerUtil;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
+import com.ctrip.framework.apollo.configservice.util.WatchKeyRegistry;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 import com.google.common.base.Joiner;
-import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import org.junit.Before;
 import org.junit.Test;
@@ -49,7 +49,7 @@ public class NotificationControllerTest {
   @Mock
   private WatchKeysUtil watchKeysUtil;
 
-  private Multimap<String, DeferredResult<ResponseEntity<ApolloConfigNotification>>>
+  private WatchKeyRegistry<DeferredResult<ResponseEntity<ApolloConfigNotification>>>
       deferredResults;
 
   @Before
@@ -66,7 +66,7 @@ public class NotificationControllerTest {
     when(namespaceUtil.filterNamespaceName(defaultNamespace)).thenReturn(defaultNamespace);
 
     deferredResults =
-        (Multimap<String, DeferredResult<ResponseEntity<ApolloConfigNotification>>>) ReflectionTestUtils
+        (WatchKeyRegistry<DeferredResult<ResponseEntity<ApolloConfigNotification>>>) ReflectionTestUtils
             .getField(controller, "deferredResults");
   }
 
@@ -6,6 +6,7 @@ import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.utils.EntityManagerUtil;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
+import com.ctrip.framework.apollo.configservice.util.WatchKeyRegistry;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
 import com.ctrip.framework.apollo.core.ConfigConsts;
@@ -63,17 +64,18 @@ public class NotificationControllerV2Test {
 
   private Gson gson;
 
-  private Multimap<String, DeferredResultWrapper> deferredResults;
+  private WatchKeyRegistry<DeferredResultWrapper> deferredResults;
 
   @Before
   public void setUp() throws Exception {
     gson = new Gson();
+    when(bizConfig.releaseMessageNotificationFanOutThreads()).thenReturn(2);
+    when(bizConfig.releaseMessageNotificationRate()).thenReturn(20000);
     controller = new NotificationControllerV2(
         watchKeysUtil, releaseMessageService, entityManagerUtil, namespaceUtil, gson, bizConfig
     );
 
     when(bizConfig.releaseMessageNotificationBatch()).thenReturn(100);
-    when(bizConfig.releaseMessageNotificationBatchIntervalInMilli()).thenReturn(5);
 
     someAppId = "someAppId";
     someCluster = "someCluster";
@@ -90,7 +92,7 @@ public class NotificationControllerV2Test {
     when(namespaceUtil.normalizeNamespace(someAppId, somePublicNamespace)).thenReturn(somePublicNamespace);
 
     deferredResults =
-        (Multimap<String, DeferredResultWrapper>) ReflectionTestUtils.getField(controller, "deferredResults");
+        (WatchKeyRegistry<DeferredResultWrapper>) ReflectionTestUtils.getField(controller, "deferredResults");
   }
 
   @Test
@@ -302,7 +304,7 @@ public class NotificationControllerV2Test {
     String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
         .join(someAppId, someCluster, defaultNamespace);
     int someBatch = 1;
-    int someBatchInterval = 10;
+    int someRate = 2;
 
     Multimap<String, String> watchKeysMap =
         assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
@@ -315,7 +317,7 @@ public class NotificationControllerV2Test {
             someDataCenter)).thenReturn(watchKeysMap);
 
     when(bizConfig.releaseMessageNotificationBatch()).thenReturn(someBatch);
-    when(bizConfig.releaseMessageNotificationBatchIntervalInMilli()).thenReturn(someBatchInterval);
+    when(bizConfig.releaseMessageNotificationRate()).thenReturn(someRate);
 
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
@@ -336,7 +338,7 @@ public class NotificationControllerV2Test {
     assertFalse(deferredResult.hasResult() && anotherDeferredResult.hasResult());
 
     //now both of them should have result
-    await().atMost(someBatchInterval * 500, TimeUnit.MILLISECONDS).untilAsserted(
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(
         () -> assertTrue(deferredResult.hasResult() && anotherDeferredResult.hasResult()));
   }
 
@@ -0,0 +1,98 @@
+package com.ctrip.framework.apollo.configservice.filter;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpHeaders;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReleaseMessageAuthenticationFilterTest {
+
+  private ReleaseMessageAuthenticationFilter authenticationFilter;
+
+  @Mock
+  private BizConfig bizConfig;
+  @Mock
+  private HttpServletRequest request;
+  @Mock
+  private HttpServletResponse response;
+  @Mock
+  private FilterChain filterChain;
+
+  @Before
+  public void setUp() throws Exception {
+    authenticationFilter = new ReleaseMessageAuthenticationFilter(bizConfig);
+  }
+
+  @Test
+  public void testWithBroadcastDisabled() throws Exception {
+    when(bizConfig.isReleaseMessageBroadcastEnabled()).thenReturn(false);
+
+    authenticationFilter.doFilter(request, response, filterChain);
+
+    verify(response).sendError(HttpServletResponse.SC_FORBIDDEN, "Forbidden");
+    verify(filterChain, never()).doFilter(request, response);
+  }
+
+  @Test
+  public void testWithAccessControlDisabled() throws Exception {
+    when(bizConfig.isReleaseMessageBroadcastEnabled()).thenReturn(true);
+    when(bizConfig.isAdminServiceAccessControlEnabled()).thenReturn(false);
+
+    authenticationFilter.doFilter(request, response, filterChain);
+
+    verify(filterChain).doFilter(request, response);
+    verify(response, never()).sendError(anyInt(), anyString());
+  }
+
+  @Test
+  public void testWithValidToken() throws Exception {
+    String someToken = "someToken";
+    when(bizConfig.isReleaseMessageBroadcastEnabled()).thenReturn(true);
+    when(bizConfig.isAdminServiceAccessControlEnabled()).thenReturn(true);
+    when(bizConfig.getAdminServiceAccessTokens()).thenReturn("anotherToken," + someToken);
+    when(request.getHeader(HttpHeaders.AUTHORIZATION)).thenReturn(someToken);
+
+    authenticationFilter.doFilter(request, response, filterChain);
+
+    verify(filterChain).doFilter(request, response);
+    verify(response, never()).sendError(anyInt(), anyString());
+  }
+
+  @Test
+  public void testWithInvalidToken() throws Exception {
+    when(bizConfig.isReleaseMessageBroadcastEnabled()).thenReturn(true);
+    when(bizConfig.isAdminServiceAccessControlEnabled()).thenReturn(true);
+    when(bizConfig.getAdminServiceAccessTokens()).thenReturn("someToken");
+    when(request.getHeader(HttpHeaders.AUTHORIZATION)).thenReturn("someInvalidToken");
+
+    authenticationFilter.doFilter(request, response, filterChain);
+
+    verify(response).sendError(HttpServletResponse.SC_UNAUTHORIZED, "Unauthorized");
+    verify(filterChain, never()).doFilter(request, response);
+  }
+
+  @Test
+  public void testWithNoToken() throws Exception {
+    when(bizConfig.isReleaseMessageBroadcastEnabled()).thenReturn(true);
+    when(bizConfig.isAdminServiceAccessControlEnabled()).thenReturn(true);
+    when(bizConfig.getAdminServiceAccessTokens()).thenReturn("someToken");
+
+    authenticationFilter.doFilter(request, response, filterChain);
+
+    verify(response).sendError(HttpServletResponse.SC_UNAUTHORIZED, "Unauthorized");
+    verify(filterChain, never()).doFilter(request, response);
+  }
+}
@@ -126,5 +126,10 @@ public abstract class AbstractBaseIntegrationTest {
     public TimeUnit appNamespaceCacheScanIntervalTimeUnit() {
       return TimeUnit.MILLISECONDS;
     }
+
+    @Override
+    public boolean isNotificationStreamEnabled() {
+      return true;
+    }
   }
 }
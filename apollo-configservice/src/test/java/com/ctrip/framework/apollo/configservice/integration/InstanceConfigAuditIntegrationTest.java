@@ -0,0 +1,98 @@
+package com.ctrip.framework.apollo.configservice.integration;
+
+import com.ctrip.framework.apollo.biz.entity.Instance;
+import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
+import com.ctrip.framework.apollo.biz.service.InstanceService;
+import com.ctrip.framework.apollo.configservice.util.InstanceConfigAuditUtil;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.jdbc.Sql;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class InstanceConfigAuditIntegrationTest extends AbstractBaseIntegrationTest {
+  @Autowired
+  private InstanceConfigAuditUtil instanceConfigAuditUtil;
+  @Autowired
+  private InstanceService instanceService;
+
+  private String someAppId = "someAuditAppId";
+  private String someClusterName = "someClusterName";
+  private String someDataCenter = "someDataCenter";
+  private String someConfigAppId = "someConfigAppId";
+  private String someConfigClusterName = "default";
+
+  @Test(timeout = 60000)
+  @Sql(scripts = "/integration-test/cleanup.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+  public void testAuditInBatch() throws Exception {
+    int someInstanceCount = 500;
+    int someRounds = 10;
+    List<String> someConfigNamespaces = Lists.newArrayList("application", "someNamespace");
+    String someReleaseKey = "someReleaseKey";
+    String anotherReleaseKey = "anotherReleaseKey";
+
+    //the instances keep asking for config, and switch to another release in the last round
+    for (int round = 0; round < someRounds; round++) {
+      String releaseKey = round < someRounds - 1 ? someReleaseKey : anotherReleaseKey;
+      for (int i = 0; i < someInstanceCount; i++) {
+        for (String configNamespace : someConfigNamespaces) {
+          while (!instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter, assembleIp(i),
+              someConfigAppId, someConfigClusterName, configNamespace, releaseKey)) {
+            TimeUnit.MILLISECONDS.sleep(10);
+          }
+        }
+      }
+    }
+
+    for (String configNamespace : someConfigNamespaces) {
+      Set<Long> instanceIds = Sets.newHashSet();
+      for (int i = 0; i < someInstanceCount; i++) {
+        Instance instance = waitForInstance(assembleIp(i));
+        assertNotNull(instance);
+        instanceIds.add(instance.getId());
+      }
+
+      List<InstanceConfig> instanceConfigs = waitForInstanceConfigs(configNamespace, instanceIds,
+          anotherReleaseKey);
+
+      assertEquals(someInstanceCount, instanceConfigs.size());
+      for (InstanceConfig instanceConfig : instanceConfigs) {
+        assertEquals(anotherReleaseKey, instanceConfig.getReleaseKey());
+      }
+    }
+  }
+
+  private Instance waitForInstance(String ip) throws InterruptedException {
+    Instance instance = instanceService.findInstance(someAppId, someClusterName, someDataCenter, ip);
+    while (instance == null) {
+      TimeUnit.MILLISECONDS.sleep(100);
+      instance = instanceService.findInstance(someAppId, someClusterName, someDataCenter, ip);
+    }
+    return instance;
+  }
+
+  private List<InstanceConfig> waitForInstanceConfigs(String configNamespace, Set<Long> instanceIds,
+                                                      String releaseKey) throws InterruptedException {
+    while (true) {
+      List<InstanceConfig> instanceConfigs = instanceService.findInstanceConfigs(someConfigAppId, configNamespace,
+          instanceIds);
+      if (instanceConfigs.size() == instanceIds.size() && instanceConfigs.stream()
+          .allMatch(instanceConfig -> releaseKey.equals(instanceConfig.getReleaseKey()))) {
+        return instanceConfigs;
+      }
+      TimeUnit.MILLISECONDS.sleep(100);
+    }
+  }
+
+  private String assembleIp(int index) {
+    return String.format("10.0.%d.%d", index / 256, index % 256);
+  }
+}
@@ -5,6 +5,7 @@ import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
 import com.ctrip.framework.apollo.core.ConfigConsts;
@@ -14,12 +15,20 @@ import org.junit.Before;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
@@ -86,6 +95,52 @@ public class NotificationControllerV2IntegrationTest extends AbstractBaseIntegra
     assertNotEquals(ConfigConsts.NOTIFICATION_ID_PLACEHOLDER, messages.get(key).longValue());
   }
 
+  @Test(timeout = 5000L)
+  @Sql(scripts = "/integration-test/cleanup.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+  public void testStreamNotificationWithDefaultNamespace() throws Exception {
+    AtomicBoolean stop = new AtomicBoolean();
+    String key = assembleKey(someAppId, someCluster, defaultNamespace);
+    periodicSendMessage(executorService, key, stop);
+
+    URL url = new URL(String.format("http://%s/notifications/v2/stream?appId=%s&cluster=%s&notifications=%s",
+        getHostUrl(), someAppId, someCluster, URLEncoder.encode(
+            transformApolloConfigNotificationsToString(defaultNamespace, ConfigConsts.NOTIFICATION_ID_PLACEHOLDER),
+            StandardCharsets.UTF_8.name())));
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setRequestProperty(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE);
+
+    String data = null;
+    try {
+      assertEquals(HttpStatus.OK.value(), connection.getResponseCode());
+      BufferedReader reader = new BufferedReader(
+          new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+      String line;
+      //the stream is kept open by server, so read until the first event
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith("data:")) {
+          data = line.substring("data:".length());
+          break;
+        }
+      }
+    } finally {
+      connection.disconnect();
+    }
+
+    stop.set(true);
+
+    List<ApolloConfigNotification> notifications =
+        gson.fromJson(data, new TypeToken<List<ApolloConfigNotification>>() {
+        }.getType());
+    assertEquals(1, notifications.size());
+    assertEquals(defaultNamespace, notifications.get(0).getNamespaceName());
+    assertNotEquals(0, notifications.get(0).getNotificationId());
+
+    ApolloNotificationMessages messages = notifications.get(0).getMessages();
+    assertEquals(1, messages.getDetails().size());
+    assertTrue(messages.has(key));
+    assertNotEquals(ConfigConsts.NOTIFICATION_ID_PLACEHOLDER, messages.get(key).longValue());
+  }
+
   @Test(timeout = 5000L)
   @Sql(scripts = "/integration-test/cleanup.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
   public void testPollNotificationWithDefaultNamespaceAsFile() throws Exception {
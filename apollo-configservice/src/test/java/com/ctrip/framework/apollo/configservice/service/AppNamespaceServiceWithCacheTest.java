@@ -1,6 +1,8 @@
 package com.ctrip.framework.apollo.configservice.service;
 
 import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.repository.AppNamespaceRepository;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.google.common.collect.Lists;
@@ -22,6 +24,9 @@ import java.util.concurrent.TimeUnit;
 
 import static org.awaitility.Awaitility.await;
 import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -265,6 +270,91 @@ public class AppNamespaceServiceWithCacheTest {
     });
   }
 
+  @Test
+  public void testReloadAppNamespacesOnMessage() throws Exception {
+    String someAppId = "someAppId";
+    String anotherAppId = "anotherAppId";
+    String somePrivateNamespace = "somePrivateNamespace";
+    String somePublicNamespace = "somePublicNamespace";
+    String anotherPrivateNamespace = "anotherPrivateNamespace";
+    AppNamespace somePrivateAppNamespace = assembleAppNamespace(1, someAppId, somePrivateNamespace, false);
+    AppNamespace somePublicAppNamespace = assembleAppNamespace(2, someAppId, somePublicNamespace, true);
+    AppNamespace anotherAppNamespace = assembleAppNamespace(3, anotherAppId, somePrivateNamespace, false);
+    AppNamespace anotherPrivateAppNamespace = assembleAppNamespace(4, someAppId, anotherPrivateNamespace, false);
+    AppNamespace somePrivateAppNamespaceNew = assembleAppNamespace(1, someAppId, somePrivateNamespace, true);
+    somePrivateAppNamespaceNew.setDataChangeLastModifiedTime(newDateWithDelta(
+        somePrivateAppNamespace.getDataChangeLastModifiedTime(), 1));
+
+    //only the messages could update the cache in time
+    when(bizConfig.appNamespaceCacheRebuildInterval()).thenReturn(Integer.MAX_VALUE);
+    when(appNamespaceRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0)).thenReturn(Lists.newArrayList(
+        somePrivateAppNamespace, somePublicAppNamespace, anotherAppNamespace));
+
+    appNamespaceServiceWithCache.afterPropertiesSet();
+
+    assertEquals(somePublicAppNamespace, appNamespaceServiceWithCache.findPublicNamespaceByName(somePublicNamespace));
+
+    //some private namespace is made public, some public namespace is deleted and another private namespace is created
+    when(appNamespaceRepository.findByAppId(someAppId)).thenReturn(Lists.newArrayList(somePrivateAppNamespaceNew,
+        anotherPrivateAppNamespace));
+
+    appNamespaceServiceWithCache.handleMessage(assembleMessage(someAppId), Topics.APOLLO_APP_NAMESPACE_TOPIC);
+    //the messages of other topics are ignored
+    appNamespaceServiceWithCache.handleMessage(assembleMessage(anotherAppId), Topics.APOLLO_RELEASE_TOPIC);
+
+    await().untilAsserted(() -> {
+      assertEquals(somePrivateAppNamespaceNew,
+          appNamespaceServiceWithCache.findByAppIdAndNamespace(someAppId, somePrivateNamespace));
+      assertEquals(somePrivateAppNamespaceNew,
+          appNamespaceServiceWithCache.findPublicNamespaceByName(somePrivateNamespace));
+      assertNull(appNamespaceServiceWithCache.findByAppIdAndNamespace(someAppId, somePublicNamespace));
+      assertNull(appNamespaceServiceWithCache.findPublicNamespaceByName(somePublicNamespace));
+      assertEquals(anotherPrivateAppNamespace,
+          appNamespaceServiceWithCache.findByAppIdAndNamespace(someAppId, anotherPrivateNamespace));
+    });
+    assertEquals(anotherAppNamespace,
+        appNamespaceServiceWithCache.findByAppIdAndNamespace(anotherAppId, somePrivateNamespace));
+    verify(appNamespaceRepository, never()).findByAppId(anotherAppId);
+    verify(appNamespaceRepository, never()).findAllById(any());
+  }
+
+  @Test
+  public void testReloadAppNamespacesOnMessageWithAppNamespaceDeletedAndCreatedAgain() throws Exception {
+    String someAppId = "someAppId";
+    String somePublicNamespace = "somePublicNamespace";
+    AppNamespace somePublicAppNamespace = assembleAppNamespace(1, someAppId, somePublicNamespace, true);
+    AppNamespace somePublicAppNamespaceCreatedAgain = assembleAppNamespace(2, someAppId, somePublicNamespace, true);
+
+    //only the messages could update the cache in time
+    when(bizConfig.appNamespaceCacheRebuildInterval()).thenReturn(Integer.MAX_VALUE);
+    when(appNamespaceRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0)).thenReturn(Lists.newArrayList(
+        somePublicAppNamespace));
+
+    appNamespaceServiceWithCache.afterPropertiesSet();
+
+    assertEquals(somePublicAppNamespace,
+        appNamespaceServiceWithCache.findByAppIdAndNamespace(someAppId, somePublicNamespace));
+
+    //some public namespace is deleted and created again with the same name
+    when(appNamespaceRepository.findByAppId(someAppId)).thenReturn(Lists.newArrayList(
+        somePublicAppNamespaceCreatedAgain));
+
+    appNamespaceServiceWithCache.handleMessage(assembleMessage(someAppId), Topics.APOLLO_APP_NAMESPACE_TOPIC);
+
+    await().untilAsserted(() -> {
+      assertEquals(somePublicAppNamespaceCreatedAgain,
+          appNamespaceServiceWithCache.findByAppIdAndNamespace(someAppId, somePublicNamespace));
+      assertEquals(somePublicAppNamespaceCreatedAgain,
+          appNamespaceServiceWithCache.findPublicNamespaceByName(somePublicNamespace));
+    });
+  }
+
+  private ReleaseMessage assembleMessage(String appId) {
+    ReleaseMessage message = new ReleaseMessage(appId);
+    message.setId(1);
+    return message;
+  }
+
   private void check(List<AppNamespace> someList, List<AppNamespace> anotherList) {
     someList.sort(appNamespaceComparator);
     anotherList.sort(appNamespaceComparator);
@@ -11,13 +11,16 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.awaitility.Awaitility.await;
 import static org.junit.Assert.*;
@@ -56,8 +59,7 @@ public class ReleaseMessageServiceWithCacheTest {
 
   @Test
   public void testWhenNoReleaseMessages() throws Exception {
-    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn
-        (Collections.emptyList());
+    when(releaseMessageRepository.findLatestReleaseMessagesGroupByMessages()).thenReturn(Collections.emptyList());
 
     releaseMessageServiceWithCache.afterPropertiesSet();
 
@@ -73,13 +75,11 @@ public class ReleaseMessageServiceWithCacheTest {
   @Test
   public void testWhenHasReleaseMsgAndHasRepeatMsg() throws Exception {
     String someMsgContent = "msg1";
-    ReleaseMessage someMsg = assembleReleaseMsg(1, someMsgContent);
     String anotherMsgContent = "msg2";
-    ReleaseMessage anotherMsg = assembleReleaseMsg(2, anotherMsgContent);
-    ReleaseMessage anotherRepeatMsg = assembleReleaseMsg(3, anotherMsgContent);
 
-    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
-        .thenReturn(Arrays.asList(someMsg, anotherMsg, anotherRepeatMsg));
+    //the latest release messages of msg1 and msg2
+    when(releaseMessageRepository.findLatestReleaseMessagesGroupByMessages())
+        .thenReturn(Arrays.asList(new Object[]{someMsgContent, 1L}, new Object[]{anotherMsgContent, 3L}));
 
     releaseMessageServiceWithCache.afterPropertiesSet();
 
@@ -108,50 +108,103 @@ public class ReleaseMessageServiceWithCacheTest {
   }
 
   @Test
-  public void testWhenReleaseMsgSizeBiggerThan500() throws Exception {
+  public void testHandleMessageWithGapBiggerThan500() throws Exception {
     String someMsgContent = "msg1";
+    String antherMsgContent = "msg2";
+    String yetAnotherMsgContent = "msg3";
     List<ReleaseMessage> firstBatchReleaseMsg = new ArrayList<>(500);
     for (int i = 0; i < 500; i++) {
       firstBatchReleaseMsg.add(assembleReleaseMsg(i + 1, someMsgContent));
     }
-
-    String antherMsgContent = "msg2";
     ReleaseMessage antherMsg = assembleReleaseMsg(501, antherMsgContent);
+    ReleaseMessage yetAnotherMsg = assembleReleaseMsg(502, yetAnotherMsgContent);
 
+    when(releaseMessageRepository.findLatestReleaseMessagesGroupByMessages()).thenReturn(Collections.emptyList());
     when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
         .thenReturn(firstBatchReleaseMsg);
     when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(500L))
-        .thenReturn(Collections.singletonList(antherMsg));
+        .thenReturn(Lists.newArrayList(antherMsg, yetAnotherMsg));
 
     releaseMessageServiceWithCache.afterPropertiesSet();
+    releaseMessageServiceWithCache.handleMessage(yetAnotherMsg, Topics.APOLLO_RELEASE_TOPIC);
 
-    verify(releaseMessageRepository, times(1)).findFirst500ByIdGreaterThanOrderByIdAsc(500L);
+    //the message received is merged at once
+    assertEquals(yetAnotherMsg, releaseMessageServiceWithCache
+        .findLatestReleaseMessageForMessages(Sets.newHashSet(yetAnotherMsgContent)));
 
-    ReleaseMessage latestReleaseMsg =
-        releaseMessageServiceWithCache
-            .findLatestReleaseMessageForMessages(Sets.newHashSet(someMsgContent, antherMsgContent));
+    //the gap is filled asynchronously
+    await().atMost(scanInterval * 500, scanIntervalTimeUnit).untilAsserted(() -> {
+      List<ReleaseMessage> latestReleaseMsgGroupByMsgContent =
+          releaseMessageServiceWithCache.findLatestReleaseMessagesGroupByMessages(
+              Sets.newLinkedHashSet(Arrays.asList(someMsgContent, antherMsgContent, yetAnotherMsgContent)));
+
+      assertEquals(3, latestReleaseMsgGroupByMsgContent.size());
+      assertEquals(500, latestReleaseMsgGroupByMsgContent.get(0).getId());
+      assertEquals(501, latestReleaseMsgGroupByMsgContent.get(1).getId());
+      assertEquals(502, latestReleaseMsgGroupByMsgContent.get(2).getId());
+    });
+  }
 
-    assertNotNull(latestReleaseMsg);
-    assertEquals(501, latestReleaseMsg.getId());
-    assertEquals(antherMsgContent, latestReleaseMsg.getMessage());
+  @Test
+  public void testHandleMessageWithGapNotBlocked() throws Exception {
+    String someMessageContent = "someMessage";
+    ReleaseMessage someMessage = assembleReleaseMsg(1, someMessageContent);
+    ReleaseMessage anotherMessage = assembleReleaseMsg(3, someMessageContent);
+    CountDownLatch loadLatch = new CountDownLatch(1);
+    CountDownLatch gapFillStarted = new CountDownLatch(1);
+
+    when(releaseMessageRepository.findLatestReleaseMessagesGroupByMessages())
+        .thenReturn(Collections.singletonList(new Object[]{someMessageContent, 1L}));
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(1L)).thenAnswer(invocation -> {
+      //the periodic scan loads the same messages, so tell the gap fill apart by its thread
+      if (Thread.currentThread().getName().contains("-GapFill-")) {
+        gapFillStarted.countDown();
+      }
+      loadLatch.await(5, TimeUnit.SECONDS);
+      return Collections.emptyList();
+    });
 
-    List<ReleaseMessage> latestReleaseMsgGroupByMsgContent =
-        releaseMessageServiceWithCache
-            .findLatestReleaseMessagesGroupByMessages(Sets.newHashSet(someMsgContent, antherMsgContent));
+    releaseMessageServiceWithCache.afterPropertiesSet();
 
-    assertEquals(2, latestReleaseMsgGroupByMsgContent.size());
-    assertEquals(500, latestReleaseMsgGroupByMsgContent.get(1).getId());
-    assertEquals(501, latestReleaseMsgGroupByMsgContent.get(0).getId());
+    assertEquals(someMessage.getId(), releaseMessageServiceWithCache
+        .findLatestReleaseMessageForMessages(Sets.newHashSet(someMessageContent)).getId());
+
+    releaseMessageServiceWithCache.handleMessage(anotherMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    //the gap is being filled by the gap fill thread, while the message is available already
+    assertTrue(gapFillStarted.await(5, TimeUnit.SECONDS));
+    assertEquals(anotherMessage, releaseMessageServiceWithCache
+        .findLatestReleaseMessageForMessages(Sets.newHashSet(someMessageContent)));
+
+    loadLatch.countDown();
+  }
+
+  @Test
+  public void testMessagesOfOtherTopicsNotCached() throws Exception {
+    String someAppId = "someAppId";
+    String someSavedMessage = Topics.assembleMessage(Topics.APOLLO_APP_NAMESPACE_TOPIC, someAppId);
+    ReleaseMessage someMessage = assembleReleaseMsg(2, someAppId);
+
+    when(releaseMessageRepository.findLatestReleaseMessagesGroupByMessages())
+        .thenReturn(Collections.singletonList(new Object[]{someSavedMessage, 1L}));
+
+    releaseMessageServiceWithCache.afterPropertiesSet();
+    releaseMessageServiceWithCache.handleMessage(someMessage, Topics.APOLLO_APP_NAMESPACE_TOPIC);
+
+    assertNull(releaseMessageServiceWithCache.findLatestReleaseMessageForMessages(Sets.newHashSet(someSavedMessage)));
+    assertNull(releaseMessageServiceWithCache.findLatestReleaseMessageForMessages(Sets.newHashSet(someAppId)));
+    //the messages of other topics are not taken as gaps
+    assertEquals(someMessage.getId(),
+        ((AtomicLong) ReflectionTestUtils.getField(releaseMessageServiceWithCache, "maxIdScanned")).get());
   }
 
   @Test
   public void testNewReleaseMessagesBeforeHandleMessage() throws Exception {
     String someMessageContent = "someMessage";
     long someMessageId = 1;
-    ReleaseMessage someMessage = assembleReleaseMsg(someMessageId, someMessageContent);
 
-    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists.newArrayList
-        (someMessage));
+    when(releaseMessageRepository.findLatestReleaseMessagesGroupByMessages())
+        .thenReturn(Collections.singletonList(new Object[]{someMessageContent, someMessageId}));
 
     releaseMessageServiceWithCache.afterPropertiesSet();
 
@@ -192,10 +245,9 @@ public class ReleaseMessageServiceWithCacheTest {
   public void testNewReleasesWithHandleMessage() throws Exception {
     String someMessageContent = "someMessage";
     long someMessageId = 1;
-    ReleaseMessage someMessage = assembleReleaseMsg(someMessageId, someMessageContent);
 
-    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists.newArrayList
-        (someMessage));
+    when(releaseMessageRepository.findLatestReleaseMessagesGroupByMessages())
+        .thenReturn(Collections.singletonList(new Object[]{someMessageContent, someMessageId}));
 
     releaseMessageServiceWithCache.afterPropertiesSet();
 
@@ -1,8 +1,12 @@
 package com.ctrip.framework.apollo.configservice.service.config;
 
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.Topics;
@@ -17,8 +21,21 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -36,6 +53,8 @@ public class ConfigServiceWithCacheTest {
   @Mock
   private ReleaseMessageService releaseMessageService;
   @Mock
+  private BizConfig bizConfig;
+  @Mock
   private Release someRelease;
   @Mock
   private ReleaseMessage someReleaseMessage;
@@ -52,6 +71,9 @@ public class ConfigServiceWithCacheTest {
     configServiceWithCache = new ConfigServiceWithCache();
     ReflectionTestUtils.setField(configServiceWithCache, "releaseService", releaseService);
     ReflectionTestUtils.setField(configServiceWithCache, "releaseMessageService", releaseMessageService);
+    ReflectionTestUtils.setField(configServiceWithCache, "bizConfig", bizConfig);
+
+    when(bizConfig.configServiceCacheMaxWeightInMB()).thenReturn(1);
 
     configServiceWithCache.initialize();
 
@@ -247,6 +269,78 @@ public class ConfigServiceWithCacheTest {
     verify(releaseService, times(2)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
   }
 
+  @Test
+  public void testFindLatestActiveReleaseConcurrentlyWithReleaseMessageNotification() throws Exception {
+    long someNewNotificationId = someNotificationId + 1;
+    int someConcurrency = 50;
+    ReleaseMessage anotherReleaseMessage = mock(ReleaseMessage.class);
+    Release anotherRelease = mock(Release.class);
+    AtomicInteger loadTimes = new AtomicInteger();
+    CountDownLatch loadStarted = new CountDownLatch(1);
+    CountDownLatch loadReleased = new CountDownLatch(1);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn
+        (someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName)).thenReturn
+        (someRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+
+    Release release = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn
+        (anotherReleaseMessage);
+    //hold the db load until the release message notification arrives
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName)).thenAnswer(
+        invocation -> {
+          loadTimes.incrementAndGet();
+          loadStarted.countDown();
+          loadReleased.await(5, TimeUnit.SECONDS);
+          return anotherRelease;
+        });
+    when(anotherReleaseMessage.getId()).thenReturn(someNewNotificationId);
+    when(anotherReleaseMessage.getMessage()).thenReturn(someKey);
+
+    ApolloNotificationMessages newNotificationMessages = new ApolloNotificationMessages();
+    newNotificationMessages.put(someKey, someNewNotificationId);
+
+    ExecutorService executorService = Executors.newFixedThreadPool(someConcurrency + 1);
+    List<Future<Release>> results = Lists.newArrayList();
+    for (int i = 0; i < someConcurrency; i++) {
+      results.add(executorService.submit(() -> configServiceWithCache.findLatestActiveRelease(someAppId,
+          someClusterName, someNamespaceName, newNotificationMessages)));
+    }
+
+    //the clients aware of the new release are blocked by the load, then the notification arrives
+    assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+    Future<?> handled = executorService.submit(() -> configServiceWithCache.handleMessage(anotherReleaseMessage,
+        Topics.APOLLO_RELEASE_TOPIC));
+
+    //the notification joins the load in flight instead of loading again
+    TimeUnit.MILLISECONDS.sleep(100);
+    assertFalse(handled.isDone());
+    for (Future<Release> result : results) {
+      assertFalse(result.isDone());
+    }
+    assertEquals(1, loadTimes.get());
+
+    loadReleased.countDown();
+
+    handled.get(5, TimeUnit.SECONDS);
+    for (Future<Release> result : results) {
+      assertEquals(anotherRelease, result.get(5, TimeUnit.SECONDS));
+    }
+    executorService.shutdown();
+
+    //the stale client doesn't trigger reload
+    assertEquals(anotherRelease, configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName, someNotificationMessages));
+
+    assertEquals(someRelease, release);
+    assertEquals(1, loadTimes.get());
+    verify(releaseMessageService, times(2)).findLatestReleaseMessageForMessages(Lists.newArrayList(someKey));
+  }
+
   @Test
   public void testFindLatestActiveReleaseWithIrrelevantMessages() throws Exception {
     long someNewNotificationId = someNotificationId + 1;
@@ -276,4 +370,61 @@ public class ConfigServiceWithCacheTest {
     verify(releaseMessageService, times(1)).findLatestReleaseMessageForMessages(Lists.newArrayList(someKey));
     verify(releaseService, times(1)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
   }
+
+  @Test
+  public void testLoadConfigurationsMultipleTimes() throws Exception {
+    when(someRelease.getConfigurations()).thenReturn("{\"someKey\": \"someValue\"}");
+
+    Map<String, String> configurations = configServiceWithCache.loadConfigurations(someRelease);
+
+    assertEquals(ImmutableMap.of("someKey", "someValue"), configurations);
+    assertSame(configurations, configServiceWithCache.loadConfigurations(someRelease));
+
+    verify(someRelease, times(1)).getConfigurations();
+  }
+
+  @Test
+  public void testFindReleasesByReleaseKeysMultipleTimes() throws Exception {
+    String someReleaseKey = "someReleaseKey";
+    String anotherReleaseKey = "anotherReleaseKey";
+    Set<String> releaseKeys = Sets.newHashSet(someReleaseKey, anotherReleaseKey);
+
+    when(someRelease.getReleaseKey()).thenReturn(someReleaseKey);
+    when(releaseService.findByReleaseKeys(releaseKeys)).thenReturn(Lists.newArrayList(someRelease));
+
+    Map<String, Release> releases = configServiceWithCache.findReleasesByReleaseKeys(releaseKeys);
+    Map<String, Release> anotherReleases = configServiceWithCache.findReleasesByReleaseKeys(releaseKeys);
+
+    assertEquals(ImmutableMap.of(someReleaseKey, someRelease), releases);
+    assertEquals(releases, anotherReleases);
+
+    verify(releaseService, times(1)).findByReleaseKeys(releaseKeys);
+    //the release keys not found are not cached
+    verify(releaseService, times(1)).findByReleaseKeys(Sets.newHashSet(anotherReleaseKey));
+  }
+
+  @Test
+  public void testFindActiveOneWithCacheMaxWeightExceeded() throws Exception {
+    long someId = 1;
+    //the json alone takes less memory than the config id cache is allowed to, i.e. 256KB, but not together with the
+    //estimated parsed configurations
+    String someLargeConfigurations = String.format("{\"someKey\": \"%s\"}", Strings.repeat("a", 96 * 1024));
+
+    when(someRelease.getConfigurations()).thenReturn(someLargeConfigurations);
+    when(releaseService.findActiveOne(someId)).thenReturn(someRelease);
+
+    assertEquals(someRelease, configServiceWithCache.findActiveOne(someId, someNotificationMessages));
+    assertEquals(someRelease, configServiceWithCache.findActiveOne(someId, someNotificationMessages));
+
+    verify(releaseService, times(2)).findActiveOne(someId);
+  }
+
+  @Test
+  public void testWeigh() throws Exception {
+    when(someRelease.getConfigurations()).thenReturn("{}");
+
+    //the json and the parsed configurations estimated from it
+    assertEquals(ConfigServiceWithCache.weigh(null, null) + 2 * 2 + 2 * 2 * 3,
+        ConfigServiceWithCache.weigh("ab", someRelease));
+  }
 }
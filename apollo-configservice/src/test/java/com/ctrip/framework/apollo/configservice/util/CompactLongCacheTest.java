@@ -0,0 +1,148 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompactLongCacheTest {
+  private long someDefaultValue = -1;
+
+  @Test
+  public void testGetAndPut() throws Exception {
+    CompactLongCache cache = new CompactLongCache(10, 1, TimeUnit.HOURS, true);
+    long someKey = 1;
+    long anotherKey = 0;
+    long someValue = 2;
+    long anotherValue = 3;
+
+    assertEquals(someDefaultValue, cache.get(someKey, someDefaultValue));
+
+    cache.put(someKey, someValue);
+    cache.put(anotherKey, anotherValue);
+
+    assertEquals(someValue, cache.get(someKey, someDefaultValue));
+    assertEquals(anotherValue, cache.get(anotherKey, someDefaultValue));
+
+    cache.put(someKey, anotherValue);
+
+    assertEquals(anotherValue, cache.get(someKey, someDefaultValue));
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void testContainsEntry() throws Exception {
+    CompactLongCache cache = new CompactLongCache(10, 1, TimeUnit.HOURS, false);
+    long someKey = 1;
+    long someValue = 2;
+    long anotherValue = 3;
+
+    assertFalse(cache.containsEntry(someKey, someValue));
+
+    cache.put(someKey, someValue);
+
+    assertTrue(cache.containsEntry(someKey, someValue));
+    assertFalse(cache.containsEntry(someKey, anotherValue));
+  }
+
+  @Test
+  public void testEvictWhenMaximumSizeExceeded() throws Exception {
+    int someMaximumSize = 100;
+    CompactLongCache cache = new CompactLongCache(someMaximumSize, 1, TimeUnit.HOURS, false);
+
+    for (long key = 1; key <= someMaximumSize * 2; key++) {
+      cache.put(key, key);
+    }
+
+    assertTrue(cache.size() <= someMaximumSize);
+    //the latest entries are kept while the eldest are evicted
+    assertEquals(someMaximumSize * 2, cache.get(someMaximumSize * 2, someDefaultValue));
+    assertEquals(someDefaultValue, cache.get(1, someDefaultValue));
+  }
+
+  @Test
+  public void testGetAndPutWithSegments() throws Exception {
+    int someMaximumSize = 50000;
+    CompactLongCache cache = new CompactLongCache(someMaximumSize, 1, TimeUnit.HOURS, false);
+    Random random = new Random();
+    long[] someKeys = new long[1000];
+
+    for (int i = 0; i < someKeys.length; i++) {
+      someKeys[i] = random.nextLong();
+      cache.put(someKeys[i], i);
+    }
+
+    for (int i = 0; i < someKeys.length; i++) {
+      assertEquals(i, cache.get(someKeys[i], someDefaultValue));
+    }
+
+    for (int i = 0; i < someMaximumSize * 2; i++) {
+      cache.put(random.nextLong(), i);
+    }
+
+    assertTrue(cache.size() <= someMaximumSize);
+  }
+
+  @Test
+  public void testKeepAccessedEntries() throws Exception {
+    int someMaximumSize = 100;
+    CompactLongCache cache = new CompactLongCache(someMaximumSize, 1, TimeUnit.HOURS, true);
+    long someKey = 1;
+
+    for (long key = 1; key <= someMaximumSize * 2; key++) {
+      cache.put(key, key);
+      //keep accessing some key
+      assertEquals(someKey, cache.get(someKey, someDefaultValue));
+    }
+
+    assertEquals(someKey, cache.get(someKey, someDefaultValue));
+  }
+
+  @Test
+  public void testExpireAfterWrite() throws Exception {
+    long someExpireTimeInMillis = 100;
+    CompactLongCache cache = new CompactLongCache(10, someExpireTimeInMillis, TimeUnit.MILLISECONDS, false);
+    long someKey = 1;
+    long someValue = 2;
+
+    cache.put(someKey, someValue);
+
+    long start = System.currentTimeMillis();
+    while (System.currentTimeMillis() - start <= someExpireTimeInMillis * 2) {
+      TimeUnit.MILLISECONDS.sleep(10);
+      if (System.currentTimeMillis() - start < someExpireTimeInMillis / 2) {
+        assertEquals(someValue, cache.get(someKey, someDefaultValue));
+      } else {
+        cache.get(someKey, someDefaultValue);
+      }
+    }
+
+    //the accesses don't matter if expire after write
+    assertEquals(someDefaultValue, cache.get(someKey, someDefaultValue));
+  }
+
+  @Test
+  public void testExpireAfterAccess() throws Exception {
+    long someExpireTimeInMillis = 100;
+    CompactLongCache cache = new CompactLongCache(10, someExpireTimeInMillis, TimeUnit.MILLISECONDS, true);
+    long someKey = 1;
+    long anotherKey = 2;
+    long someValue = 3;
+
+    cache.put(someKey, someValue);
+    cache.put(anotherKey, someValue);
+
+    long start = System.currentTimeMillis();
+    while (System.currentTimeMillis() - start <= someExpireTimeInMillis * 2) {
+      TimeUnit.MILLISECONDS.sleep(10);
+      assertEquals(someValue, cache.get(someKey, someDefaultValue));
+    }
+
+    assertEquals(someValue, cache.get(someKey, someDefaultValue));
+    assertEquals(someDefaultValue, cache.get(anotherKey, someDefaultValue));
+  }
+}
@@ -1,18 +1,30 @@
 package com.ctrip.framework.apollo.configservice.util;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Instance;
 import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
 import com.ctrip.framework.apollo.biz.service.InstanceService;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
@@ -25,7 +37,10 @@ public class InstanceConfigAuditUtilTest {
 
   @Mock
   private InstanceService instanceService;
-  private BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel> audits;
+  @Mock
+  private BizConfig bizConfig;
+  private List<BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel>> audits;
+  private MeterRegistry meterRegistry;
 
   private String someAppId;
   private String someConfigClusterName;
@@ -40,9 +55,14 @@ public class InstanceConfigAuditUtilTest {
 
   @Before
   public void setUp() throws Exception {
-    instanceConfigAuditUtil = new InstanceConfigAuditUtil(instanceService);
+    when(bizConfig.instanceConfigAuditThreads()).thenReturn(1);
+    when(bizConfig.instanceConfigAuditQueueSize()).thenReturn(10);
+    when(bizConfig.instanceConfigAuditBatch()).thenReturn(10);
+
+    meterRegistry = new SimpleMeterRegistry();
+    instanceConfigAuditUtil = new InstanceConfigAuditUtil(instanceService, bizConfig, meterRegistry);
 
-    audits = (BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel>)
+    audits = (List<BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel>>)
         ReflectionTestUtils.getField(instanceConfigAuditUtil, "audits");
 
     someAppId = "someAppId";
@@ -64,12 +84,25 @@ public class InstanceConfigAuditUtilTest {
     boolean result = instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
         someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey);
 
-    InstanceConfigAuditUtil.InstanceConfigAuditModel audit = audits.poll();
+    InstanceConfigAuditUtil.InstanceConfigAuditModel audit = audits.get(0).poll();
 
     assertTrue(result);
     assertTrue(Objects.equals(someAuditModel, audit));
   }
 
+  @Test
+  public void testAuditWithQueueFull() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      assertTrue(instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+          someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey));
+    }
+
+    assertFalse(instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+        someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey));
+    assertEquals(1, meterRegistry.get("apollo.instance-config.audit.dropped").functionCounter().count(), 0);
+    assertEquals(10, meterRegistry.get("apollo.instance-config.audit.queued").gauge().value(), 0);
+  }
+
   @Test
   public void testDoAudit() throws Exception {
     long someInstanceId = 1;
@@ -77,16 +110,86 @@ public class InstanceConfigAuditUtilTest {
 
     when(someInstance.getId()).thenReturn(someInstanceId);
     when(instanceService.createInstance(any(Instance.class))).thenReturn(someInstance);
+    when(instanceService.findInstanceConfigs(someConfigAppId, someConfigNamespace,
+        Sets.newHashSet(someInstanceId))).thenReturn(Collections.emptyList());
 
-    instanceConfigAuditUtil.doAudit(someAuditModel);
+    instanceConfigAuditUtil.doAudit(Lists.newArrayList(someAuditModel));
 
+    ArgumentCaptor<List> instanceConfigs = ArgumentCaptor.forClass(List.class);
     verify(instanceService, times(1)).findInstance(someAppId, someClusterName, someDataCenter,
         someIp);
     verify(instanceService, times(1)).createInstance(any(Instance.class));
-    verify(instanceService, times(1)).findInstanceConfig(someInstanceId, someConfigAppId,
-        someConfigNamespace);
-    verify(instanceService, times(1)).createInstanceConfig(any(InstanceConfig.class));
+    verify(instanceService, times(1)).batchCreateInstanceConfigs(instanceConfigs.capture());
+    assertEquals(1, instanceConfigs.getValue().size());
+    InstanceConfig instanceConfig = (InstanceConfig) instanceConfigs.getValue().get(0);
+    assertEquals(someInstanceId, instanceConfig.getInstanceId());
+    assertEquals(someReleaseKey, instanceConfig.getReleaseKey());
   }
 
+  @Test
+  public void testDoAuditInBatch() throws Exception {
+    long someInstanceId = 1;
+    long anotherInstanceId = 2;
+    long yetAnotherInstanceId = 3;
+    long someInstanceConfigId = 11;
+    long anotherInstanceConfigId = 12;
+    long yetAnotherInstanceConfigId = 13;
+    String anotherIp = "anotherIp";
+    String yetAnotherIp = "yetAnotherIp";
+    String someNewReleaseKey = "someNewReleaseKey";
+    Date someRecentTime = new Date();
+    Date someOldTime = new Date(someRecentTime.getTime() - TimeUnit.DAYS.toMillis(1));
+
+    InstanceConfigAuditUtil.InstanceConfigAuditModel someOutdatedAuditModel = someAuditModel;
+    InstanceConfigAuditUtil.InstanceConfigAuditModel anotherAuditModel = assembleAuditModel(anotherIp,
+        someNewReleaseKey);
+    InstanceConfigAuditUtil.InstanceConfigAuditModel someNewAuditModel = assembleAuditModel(someIp,
+        someNewReleaseKey);
+    InstanceConfigAuditUtil.InstanceConfigAuditModel yetAnotherAuditModel = assembleAuditModel(yetAnotherIp,
+        someReleaseKey);
+
+    mockInstance(someIp, someInstanceId);
+    mockInstance(anotherIp, anotherInstanceId);
+    mockInstance(yetAnotherIp, yetAnotherInstanceId);
+    when(instanceService.findInstanceConfigs(someConfigAppId, someConfigNamespace,
+        Sets.newHashSet(someInstanceId, anotherInstanceId, yetAnotherInstanceId))).thenReturn(Lists.newArrayList(
+        assembleInstanceConfig(someInstanceConfigId, someInstanceId, someReleaseKey, someRecentTime),
+        assembleInstanceConfig(anotherInstanceConfigId, anotherInstanceId, someReleaseKey, someRecentTime),
+        assembleInstanceConfig(yetAnotherInstanceConfigId, yetAnotherInstanceId, someReleaseKey, someOldTime)));
+
+    instanceConfigAuditUtil.doAudit(Lists.newArrayList(someOutdatedAuditModel, anotherAuditModel,
+        someNewAuditModel, yetAnotherAuditModel));
+
+    //the instances switched to the same release are updated together
+    verify(instanceService, times(1)).batchUpdateInstanceConfigReleaseKey(
+        Sets.newHashSet(someInstanceConfigId, anotherInstanceConfigId), someConfigClusterName,
+        someNewReleaseKey, someNewAuditModel.getOfferTime());
+    verify(instanceService, times(1)).batchUpdateInstanceConfigLastModifiedTime(
+        Sets.newHashSet(yetAnotherInstanceConfigId), yetAnotherAuditModel.getOfferTime());
+    verify(instanceService, never()).batchCreateInstanceConfigs(anyList());
+  }
+
+  private void mockInstance(String ip, long instanceId) {
+    Instance instance = mock(Instance.class);
+    when(instance.getId()).thenReturn(instanceId);
+    when(instanceService.findInstance(someAppId, someClusterName, someDataCenter, ip)).thenReturn(instance);
+  }
 
+  private InstanceConfigAuditUtil.InstanceConfigAuditModel assembleAuditModel(String ip, String releaseKey) {
+    return new InstanceConfigAuditUtil.InstanceConfigAuditModel(someAppId, someClusterName, someDataCenter, ip,
+        someConfigAppId, someConfigClusterName, someConfigNamespace, releaseKey);
+  }
+
+  private InstanceConfig assembleInstanceConfig(long id, long instanceId, String releaseKey,
+                                                Date lastModifiedTime) {
+    InstanceConfig instanceConfig = new InstanceConfig();
+    instanceConfig.setId(id);
+    instanceConfig.setInstanceId(instanceId);
+    instanceConfig.setConfigAppId(someConfigAppId);
+    instanceConfig.setConfigClusterName(someConfigClusterName);
+    instanceConfig.setConfigNamespaceName(someConfigNamespace);
+    instanceConfig.setReleaseKey(releaseKey);
+    instanceConfig.setDataChangeLastModifiedTime(lastModifiedTime);
+    return instanceConfig;
+  }
 }
@@ -0,0 +1,195 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.ctrip.framework.apollo.configservice.wrapper.NotificationSubscriber;
+import com.ctrip.framework.apollo.configservice.wrapper.PreSerializedNotifications;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NotificationFanOutSchedulerTest {
+  private static final Logger logger = LoggerFactory.getLogger(NotificationFanOutSchedulerTest.class);
+  private NotificationFanOutScheduler scheduler;
+  @Mock
+  private BizConfig bizConfig;
+
+  private String someKey;
+  private String someNamespace;
+
+  @Before
+  public void setUp() throws Exception {
+    when(bizConfig.releaseMessageNotificationFanOutThreads()).thenReturn(4);
+    when(bizConfig.releaseMessageNotificationRate()).thenReturn(100000);
+    when(bizConfig.releaseMessageNotificationBatch()).thenReturn(10);
+    scheduler = new NotificationFanOutScheduler(bizConfig, new Gson());
+
+    someKey = "someAppId+default+application";
+    someNamespace = "application";
+  }
+
+  @Test
+  public void testFanOut() throws Exception {
+    List<DeferredResultWrapper> results = assembleResults(1000);
+    long someId = 1;
+
+    scheduler.fanOut(someKey, new ApolloConfigNotification(someNamespace, someId), results);
+
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> assertAllNotified(results, someId));
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> assertFalse(scheduler.isFanningOut(someKey)));
+  }
+
+  @Test
+  public void testFanOutIsRateLimited() throws Exception {
+    when(bizConfig.releaseMessageNotificationRate()).thenReturn(10);
+    List<DeferredResultWrapper> results = assembleResults(30);
+
+    scheduler.fanOut(someKey, new ApolloConfigNotification(someNamespace, 1), results);
+
+    TimeUnit.MILLISECONDS.sleep(500);
+    assertTrue(scheduler.isFanningOut(someKey));
+    assertFalse(results.stream().allMatch(result -> result.getResult().hasResult()));
+
+    await().atMost(10, TimeUnit.SECONDS).untilAsserted(() -> assertAllNotified(results, 1));
+  }
+
+  @Test
+  public void testFanOutToStreamsIsRateLimited() throws Exception {
+    when(bizConfig.releaseMessageNotificationRate()).thenReturn(10);
+    List<NotificationSubscriber> streams = Lists.newArrayList();
+    for (int i = 0; i < 30; i++) {
+      NotificationSubscriber stream = mock(NotificationSubscriber.class);
+      when(stream.getOriginalNamespaceName(someNamespace)).thenReturn(someNamespace);
+      streams.add(stream);
+    }
+    long someId = 1;
+
+    scheduler.fanOut(someKey, new ApolloConfigNotification(someNamespace, someId), streams);
+
+    TimeUnit.MILLISECONDS.sleep(500);
+    assertTrue(scheduler.isFanningOut(someKey));
+
+    for (NotificationSubscriber stream : streams) {
+      ArgumentCaptor<PreSerializedNotifications> notifications =
+          ArgumentCaptor.forClass(PreSerializedNotifications.class);
+      verify(stream, timeout(10000)).sendNotifications(notifications.capture());
+      assertEquals(someId, notifications.getValue().get(0).getNotificationId());
+    }
+  }
+
+  @Test
+  public void testCoalesceMessagesForSameKey() throws Exception {
+    when(bizConfig.releaseMessageNotificationRate()).thenReturn(20);
+    List<DeferredResultWrapper> results = assembleResults(40);
+    List<DeferredResultWrapper> newResults = assembleResults(5);
+    List<DeferredResultWrapper> allResults = Lists.newArrayList(results);
+    allResults.addAll(newResults);
+    long someId = 1;
+    long anotherId = 2;
+
+    scheduler.fanOut(someKey, new ApolloConfigNotification(someNamespace, someId), results);
+    scheduler.fanOut(someKey, new ApolloConfigNotification(someNamespace, anotherId), allResults);
+
+    await().atMost(10, TimeUnit.SECONDS).untilAsserted(
+        () -> assertTrue(allResults.stream().allMatch(result -> result.getResult().hasResult())));
+
+    //the clients notified after coalescing carry the newest notification id
+    for (DeferredResultWrapper result : newResults) {
+      assertEquals(anotherId, notificationId(result));
+    }
+    assertEquals(anotherId, notificationId(results.get(results.size() - 1)));
+  }
+
+  @Test
+  public void testPayloadIsSharedByOriginalNamespaceName() throws Exception {
+    String someOriginalNamespace = "Application";
+    List<DeferredResultWrapper> results = assembleResults(100);
+    DeferredResultWrapper someResultWithOriginalNamespace = new DeferredResultWrapper(60000);
+    someResultWithOriginalNamespace.recordNamespaceNameNormalizedResult(someOriginalNamespace, someNamespace);
+    DeferredResultWrapper anotherResultWithOriginalNamespace = new DeferredResultWrapper(60000);
+    anotherResultWithOriginalNamespace.recordNamespaceNameNormalizedResult(someOriginalNamespace, someNamespace);
+    results.add(someResultWithOriginalNamespace);
+    results.add(anotherResultWithOriginalNamespace);
+
+    scheduler.fanOut(someKey, new ApolloConfigNotification(someNamespace, 1), results);
+
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> assertAllNotified(results, 1));
+
+    assertSame(body(results.get(0)), body(results.get(1)));
+    assertSame(body(someResultWithOriginalNamespace), body(anotherResultWithOriginalNamespace));
+    assertEquals(someNamespace, body(results.get(0)).get(0).getNamespaceName());
+    assertEquals(someOriginalNamespace, body(someResultWithOriginalNamespace).get(0).getNamespaceName());
+  }
+
+  /**
+   * Fan-out to 50k clients, which serializes the notification only once
+   */
+  @Test
+  public void testFanOutToLargeNumberOfClients() throws Exception {
+    int clients = 50000;
+    List<DeferredResultWrapper> results = assembleResults(clients);
+    when(bizConfig.releaseMessageNotificationBatch()).thenReturn(1000);
+    when(bizConfig.releaseMessageNotificationRate()).thenReturn(Integer.MAX_VALUE);
+
+    long start = System.nanoTime();
+    scheduler.fanOut(someKey, new ApolloConfigNotification(someNamespace, 1), results);
+    await().atMost(30, TimeUnit.SECONDS).untilAsserted(() -> assertFalse(scheduler.isFanningOut(someKey)));
+    logger.info("Fan-out to {} clients took {} ms", clients,
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+    assertAllNotified(results, 1);
+    List<ApolloConfigNotification> someBody = body(results.get(0));
+    for (DeferredResultWrapper result : results) {
+      assertSame(someBody, body(result));
+    }
+  }
+
+  private void assertAllNotified(List<DeferredResultWrapper> results, long notificationId) {
+    for (DeferredResultWrapper result : results) {
+      assertTrue(result.getResult().hasResult());
+      assertEquals(notificationId, notificationId(result));
+    }
+  }
+
+  private long notificationId(DeferredResultWrapper result) {
+    return body(result).get(0).getNotificationId();
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<ApolloConfigNotification> body(DeferredResultWrapper result) {
+    ResponseEntity<List<ApolloConfigNotification>> response =
+        (ResponseEntity<List<ApolloConfigNotification>>) result.getResult().getResult();
+    return response.getBody();
+  }
+
+  private List<DeferredResultWrapper> assembleResults(int size) {
+    List<DeferredResultWrapper> results = Lists.newArrayListWithCapacity(size);
+    for (int i = 0; i < size; i++) {
+      results.add(new DeferredResultWrapper(60000));
+    }
+    return results;
+  }
+}
@@ -0,0 +1,162 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.TreeMultimap;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Excluded from the default test run, run it with mvn test -Dtest=WatchKeyRegistryLoadTest -DfailIfNoTests=false
+ */
+public class WatchKeyRegistryLoadTest {
+  private static final Logger logger = LoggerFactory.getLogger(WatchKeyRegistryLoadTest.class);
+  private static final int LOAD_TEST_CLIENTS = 200000;
+  private static final int LOAD_TEST_NAMESPACES_PER_CLIENT = 5;
+  private static final int LOAD_TEST_APPS = 1000;
+  private static final int LOAD_TEST_THREADS = 8;
+
+  /**
+   * Simulates 200k long polling clients watching 5 namespaces each, and compares the register/notify/unregister
+   * throughput with the previous synchronized TreeMultimap based registry.
+   */
+  @Test
+  public void testLoad() throws Exception {
+    Multimap<String, DeferredResultWrapper> legacy =
+        Multimaps.synchronizedSetMultimap(TreeMultimap.create(String.CASE_INSENSITIVE_ORDER, Ordering.natural()));
+    runLoadTest("synchronized TreeMultimap", new LoadTestRegistry() {
+      @Override
+      public void put(String key, DeferredResultWrapper waiter) {
+        legacy.put(key, waiter);
+      }
+
+      @Override
+      public void remove(String key, DeferredResultWrapper waiter) {
+        legacy.remove(key, waiter);
+      }
+
+      @Override
+      public int notify(String key) {
+        synchronized (legacy) {
+          return Lists.newArrayList(legacy.get(key)).size();
+        }
+      }
+
+      @Override
+      public int size() {
+        return legacy.size();
+      }
+    });
+
+    WatchKeyRegistry<DeferredResultWrapper> striped = new WatchKeyRegistry<>(true);
+    runLoadTest("WatchKeyRegistry", new LoadTestRegistry() {
+      @Override
+      public void put(String key, DeferredResultWrapper waiter) {
+        striped.put(key, waiter);
+      }
+
+      @Override
+      public void remove(String key, DeferredResultWrapper waiter) {
+        striped.remove(key, waiter);
+      }
+
+      @Override
+      public int notify(String key) {
+        return striped.get(key).size();
+      }
+
+      @Override
+      public int size() {
+        return striped.size();
+      }
+    });
+  }
+
+  private void runLoadTest(String name, LoadTestRegistry registry) throws Exception {
+    DeferredResultWrapper[] clients = new DeferredResultWrapper[LOAD_TEST_CLIENTS];
+    for (int i = 0; i < clients.length; i++) {
+      clients[i] = new DeferredResultWrapper(60000);
+    }
+    int operations = LOAD_TEST_CLIENTS * LOAD_TEST_NAMESPACES_PER_CLIENT;
+
+    long registerNanos = runConcurrently((client, namespace) -> registry.put(watchKey(client, namespace),
+        clients[client]));
+    assertEquals(operations, registry.size());
+
+    AtomicInteger notified = new AtomicInteger();
+    long notifyNanos = runConcurrently((client, namespace) -> {
+      //notify each key once, it's the first client of each app that owns the key
+      if (client < LOAD_TEST_APPS) {
+        notified.addAndGet(registry.notify(watchKey(client, namespace)));
+      }
+    });
+    assertEquals(operations, notified.get());
+
+    long unregisterNanos = runConcurrently((client, namespace) -> registry.remove(watchKey(client, namespace),
+        clients[client]));
+    assertEquals(0, registry.size());
+
+    logger.info("{}: register {} ops/s, notify {} clients/s, unregister {} ops/s", name,
+        throughput(operations, registerNanos), throughput(operations, notifyNanos),
+        throughput(operations, unregisterNanos));
+  }
+
+  private long runConcurrently(ClientOperation operation) throws Exception {
+    ExecutorService executorService = Executors.newFixedThreadPool(LOAD_TEST_THREADS);
+    CountDownLatch latch = new CountDownLatch(LOAD_TEST_THREADS);
+    long start = System.nanoTime();
+    for (int i = 0; i < LOAD_TEST_THREADS; i++) {
+      int thread = i;
+      executorService.submit(() -> {
+        try {
+          for (int client = thread; client < LOAD_TEST_CLIENTS; client += LOAD_TEST_THREADS) {
+            for (int namespace = 0; namespace < LOAD_TEST_NAMESPACES_PER_CLIENT; namespace++) {
+              operation.apply(client, namespace);
+            }
+          }
+        } finally {
+          latch.countDown();
+        }
+      });
+    }
+    assertTrue(latch.await(60, TimeUnit.SECONDS));
+    long elapsed = System.nanoTime() - start;
+    executorService.shutdown();
+    return elapsed;
+  }
+
+  private String watchKey(int client, int namespace) {
+    return "app" + (client % LOAD_TEST_APPS) + "+default+namespace" + namespace;
+  }
+
+  private long throughput(int operations, long nanos) {
+    return operations * TimeUnit.SECONDS.toNanos(1) / Math.max(1, nanos);
+  }
+
+  private interface ClientOperation {
+    void apply(int client, int namespace);
+  }
+
+  private interface LoadTestRegistry {
+    void put(String key, DeferredResultWrapper waiter);
+
+    void remove(String key, DeferredResultWrapper waiter);
+
+    int notify(String key);
+
+    int size();
+  }
+}
@@ -0,0 +1,144 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WatchKeyRegistryTest {
+  private WatchKeyRegistry<Object> registry;
+
+  @Before
+  public void setUp() throws Exception {
+    registry = new WatchKeyRegistry<>(true);
+  }
+
+  @Test
+  public void testPutAndRemove() throws Exception {
+    String someKey = "someAppId+default+application";
+    Object someWaiter = new Object();
+    Object anotherWaiter = new Object();
+
+    assertTrue(registry.put(someKey, someWaiter));
+    assertFalse(registry.put(someKey, someWaiter));
+    assertTrue(registry.put(someKey, anotherWaiter));
+
+    assertEquals(2, registry.size());
+    assertTrue(registry.containsKey(someKey));
+    assertEquals(2, registry.get(someKey).size());
+
+    assertTrue(registry.remove(someKey, someWaiter));
+    assertFalse(registry.remove(someKey, someWaiter));
+
+    assertEquals(1, registry.size());
+    assertEquals(Lists.newArrayList(anotherWaiter), registry.get(someKey));
+
+    assertTrue(registry.remove(someKey, anotherWaiter));
+
+    assertEquals(0, registry.size());
+    assertFalse(registry.containsKey(someKey));
+    assertTrue(registry.get(someKey).isEmpty());
+  }
+
+  @Test
+  public void testCaseInsensitive() throws Exception {
+    Object someWaiter = new Object();
+
+    registry.put("someAppId+default+FX.apollo", someWaiter);
+
+    assertTrue(registry.containsKey("someappid+default+fx.apollo"));
+    assertEquals(Lists.newArrayList(someWaiter), registry.get("SOMEAPPID+DEFAULT+FX.APOLLO"));
+  }
+
+  @Test
+  public void testCaseSensitive() throws Exception {
+    WatchKeyRegistry<Object> caseSensitiveRegistry = new WatchKeyRegistry<>(false);
+
+    caseSensitiveRegistry.put("someAppId+default+FX.apollo", new Object());
+
+    assertFalse(caseSensitiveRegistry.containsKey("someappid+default+fx.apollo"));
+  }
+
+  @Test
+  public void testWaitersWithSameHashCode() throws Exception {
+    String someKey = "someKey";
+    Object someWaiter = new CollidingWaiter();
+    Object anotherWaiter = new CollidingWaiter();
+
+    registry.put(someKey, someWaiter);
+    registry.put(someKey, anotherWaiter);
+
+    assertEquals(2, registry.get(someKey).size());
+  }
+
+  @Test
+  public void testGetReturnsSnapshot() throws Exception {
+    String someKey = "someKey";
+    Object someWaiter = new Object();
+    registry.put(someKey, someWaiter);
+
+    List<Object> snapshot = registry.get(someKey);
+    registry.remove(someKey, someWaiter);
+
+    assertEquals(Lists.newArrayList(someWaiter), snapshot);
+  }
+
+  @Test
+  public void testConcurrentPutAndRemove() throws Exception {
+    int threads = 8;
+    int waitersPerThread = 2000;
+    String[] keys = {"key1", "key2", "key3"};
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    CountDownLatch latch = new CountDownLatch(threads);
+
+    for (int i = 0; i < threads; i++) {
+      executorService.submit(() -> {
+        try {
+          for (int j = 0; j < waitersPerThread; j++) {
+            Object waiter = new Object();
+            for (String key : keys) {
+              registry.put(key, waiter);
+            }
+            if (j % 2 == 0) {
+              for (String key : keys) {
+                registry.remove(key, waiter);
+              }
+            }
+          }
+        } finally {
+          latch.countDown();
+        }
+      });
+    }
+
+    assertTrue(latch.await(30, TimeUnit.SECONDS));
+    executorService.shutdown();
+
+    int expectedWaitersPerKey = threads * waitersPerThread / 2;
+    assertEquals(expectedWaitersPerKey * keys.length, registry.size());
+    for (String key : keys) {
+      assertEquals(expectedWaitersPerKey, registry.get(key).size());
+    }
+  }
+
+  private static class CollidingWaiter {
+    @Override
+    public int hashCode() {
+      return 1;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof CollidingWaiter;
+    }
+  }
+}
@@ -64,4 +64,16 @@ public class CaseInsensitiveMapWrapperTest {
 
     verify(someMap, times(1)).remove(someKey.toLowerCase());
   }
+
+  @Test
+  public void testRemoveWithValue() throws Exception {
+    String someKey = "someKey";
+    Object someValue = mock(Object.class);
+
+    when(someMap.remove(someKey.toLowerCase(), someValue)).thenReturn(true);
+
+    assertTrue(caseInsensitiveMapWrapper.remove(someKey, someValue));
+
+    verify(someMap, times(1)).remove(someKey.toLowerCase(), someValue);
+  }
 }
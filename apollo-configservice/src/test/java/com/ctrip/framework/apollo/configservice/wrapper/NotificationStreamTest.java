@@ -0,0 +1,126 @@
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NotificationStreamTest {
+  @Mock
+  private SseEmitter someEmitter;
+  @Mock
+  private SseEmitter slowEmitter;
+  private ExecutorService sendExecutor;
+  private CountDownLatch slowSendLatch;
+
+  @Before
+  public void setUp() throws Exception {
+    sendExecutor = Executors.newFixedThreadPool(2);
+    slowSendLatch = new CountDownLatch(1);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    slowSendLatch.countDown();
+    sendExecutor.shutdownNow();
+  }
+
+  @Test
+  public void testSlowStreamDoesNotBlockOthers() throws Exception {
+    blockSends(slowEmitter);
+    NotificationStream slowStream = new NotificationStream(slowEmitter, sendExecutor);
+    NotificationStream someStream = new NotificationStream(someEmitter, sendExecutor);
+
+    slowStream.heartbeat();
+    slowStream.heartbeat();
+    someStream.heartbeat();
+    someStream.heartbeat();
+
+    verify(someEmitter, timeout(5000).times(2)).send(any(SseEmitter.SseEventBuilder.class));
+    verify(slowEmitter, times(1)).send(any(SseEmitter.SseEventBuilder.class));
+  }
+
+  @Test
+  public void testAbortTimedOutSend() throws Exception {
+    blockSends(slowEmitter);
+    NotificationStream slowStream = new NotificationStream(slowEmitter, sendExecutor);
+
+    slowStream.heartbeat();
+    slowStream.heartbeat();
+
+    await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> assertTrue(slowStream.isSendTimedOut(0)));
+
+    TimeoutException someTimeout = new TimeoutException();
+    slowStream.abort(someTimeout);
+
+    //the caller is not blocked by the send in progress, which completes the stream when it returns
+    assertFalse(slowStream.isSendTimedOut(0));
+    verify(slowEmitter, never()).completeWithError(any(Throwable.class));
+
+    slowSendLatch.countDown();
+
+    verify(slowEmitter, timeout(5000)).completeWithError(someTimeout);
+    verify(slowEmitter, times(1)).send(any(SseEmitter.SseEventBuilder.class));
+  }
+
+  @Test
+  public void testAbortWhenTooManyPendingEvents() throws Exception {
+    blockSends(slowEmitter);
+    NotificationStream slowStream = new NotificationStream(slowEmitter, sendExecutor);
+
+    slowStream.heartbeat();
+    verify(slowEmitter, timeout(5000)).send(any(SseEmitter.SseEventBuilder.class));
+
+    for (int i = 0; i < 200; i++) {
+      slowStream.heartbeat();
+    }
+    slowSendLatch.countDown();
+
+    verify(slowEmitter, timeout(5000)).completeWithError(any(TimeoutException.class));
+    verify(slowEmitter, times(1)).send(any(SseEmitter.SseEventBuilder.class));
+  }
+
+  @Test
+  public void testSendFailed() throws Exception {
+    IOException someException = new IOException("Broken pipe");
+    doThrow(someException).when(someEmitter).send(any(SseEmitter.SseEventBuilder.class));
+    NotificationStream someStream = new NotificationStream(someEmitter, sendExecutor);
+
+    someStream.heartbeat();
+
+    verify(someEmitter, timeout(5000)).completeWithError(someException);
+
+    someStream.heartbeat();
+
+    verify(someEmitter, times(1)).send(any(SseEmitter.SseEventBuilder.class));
+  }
+
+  private void blockSends(SseEmitter emitter) throws IOException {
+    doAnswer(invocation -> {
+      slowSendLatch.await();
+      return null;
+    }).when(emitter).send(any(SseEmitter.SseEventBuilder.class));
+  }
+}
@@ -0,0 +1,57 @@
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PreSerializedNotificationsHttpMessageConverterTest {
+  private PreSerializedNotificationsHttpMessageConverter converter;
+  private Gson gson;
+
+  @Before
+  public void setUp() throws Exception {
+    converter = new PreSerializedNotificationsHttpMessageConverter();
+    gson = new Gson();
+  }
+
+  @Test
+  public void testWrite() throws Exception {
+    String someNamespace = "someNamespace";
+    String someOriginalNamespace = "SomeNamespace";
+    long someId = 1;
+    ApolloConfigNotification notification = new ApolloConfigNotification(someNamespace, someId);
+    notification.addMessage("someAppId+default+someNamespace", someId);
+
+    PreSerializedNotifications notifications =
+        PreSerializedNotifications.of(notification, someOriginalNamespace, gson);
+    MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+
+    converter.write(notifications, MediaType.APPLICATION_JSON, outputMessage);
+
+    ApolloConfigNotification expected = new ApolloConfigNotification(someOriginalNamespace, someId);
+    expected.setMessages(notification.getMessages());
+    assertEquals(gson.toJson(Lists.newArrayList(expected)), outputMessage.getBodyAsString(StandardCharsets.UTF_8));
+    assertEquals(someOriginalNamespace, notifications.get(0).getNamespaceName());
+    //the original notification is not changed
+    assertEquals(someNamespace, notification.getNamespaceName());
+  }
+
+  @Test
+  public void testSupports() throws Exception {
+    assertTrue(converter.canWrite(PreSerializedNotifications.class, MediaType.APPLICATION_JSON));
+    assertFalse(converter.canWrite(ArrayList.class, MediaType.APPLICATION_JSON));
+    assertFalse(converter.canRead(PreSerializedNotifications.class, MediaType.APPLICATION_JSON));
+    assertFalse(converter.canRead(PreSerializedNotifications.class, null));
+  }
+}
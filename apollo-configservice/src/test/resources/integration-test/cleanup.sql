@@ -7,3 +7,5 @@ DELETE FROM ReleaseMessage;
 DELETE FROM GrayReleaseRule;
 
 
+DELETE FROM Instance;
+DELETE FROM InstanceConfig;
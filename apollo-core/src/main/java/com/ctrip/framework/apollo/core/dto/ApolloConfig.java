@@ -1,5 +1,6 @@
 package com.ctrip.framework.apollo.core.dto;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -17,6 +18,10 @@ public class ApolloConfig {
 
   private String releaseKey;
 
+  private String configSyncType;
+
+  private List<ConfigurationChange> configurationChanges;
+
   public ApolloConfig() {
   }
 
@@ -70,6 +75,28 @@ public class ApolloConfig {
     this.configurations = configurations;
   }
 
+  /**
+   * @return the sync type, see {@link com.ctrip.framework.apollo.core.enums.ConfigSyncType}, null means full sync
+   */
+  public String getConfigSyncType() {
+    return configSyncType;
+  }
+
+  public void setConfigSyncType(String configSyncType) {
+    this.configSyncType = configSyncType;
+  }
+
+  /**
+   * @return the changes relative to the release the client holds, only available in incremental sync
+   */
+  public List<ConfigurationChange> getConfigurationChanges() {
+    return configurationChanges;
+  }
+
+  public void setConfigurationChanges(List<ConfigurationChange> configurationChanges) {
+    this.configurationChanges = configurationChanges;
+  }
+
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder("ApolloConfig{");
@@ -78,6 +105,8 @@ public class ApolloConfig {
     sb.append(", namespaceName='").append(namespaceName).append('\'');
     sb.append(", configurations=").append(configurations);
     sb.append(", releaseKey='").append(releaseKey).append('\'');
+    sb.append(", configSyncType='").append(configSyncType).append('\'');
+    sb.append(", configurationChanges=").append(configurationChanges);
     sb.append('}');
     return sb.toString();
   }
@@ -0,0 +1,53 @@
+package com.ctrip.framework.apollo.core.dto;
+
+/**
+ * A configuration change relative to the release the client holds
+ */
+public class ConfigurationChange {
+  private String key;
+  private String newValue;
+  private String configurationChangeType;
+
+  public ConfigurationChange() {
+  }
+
+  public ConfigurationChange(String key, String newValue, String configurationChangeType) {
+    this.key = key;
+    this.newValue = newValue;
+    this.configurationChangeType = configurationChangeType;
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  public void setKey(String key) {
+    this.key = key;
+  }
+
+  public String getNewValue() {
+    return newValue;
+  }
+
+  public void setNewValue(String newValue) {
+    this.newValue = newValue;
+  }
+
+  public String getConfigurationChangeType() {
+    return configurationChangeType;
+  }
+
+  public void setConfigurationChangeType(String configurationChangeType) {
+    this.configurationChangeType = configurationChangeType;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder("ConfigurationChange{");
+    sb.append("key='").append(key).append('\'');
+    sb.append(", newValue='").append(newValue).append('\'');
+    sb.append(", configurationChangeType='").append(configurationChangeType).append('\'');
+    sb.append('}');
+    return sb.toString();
+  }
+}
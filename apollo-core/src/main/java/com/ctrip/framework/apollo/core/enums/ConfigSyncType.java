@@ -0,0 +1,25 @@
+package com.ctrip.framework.apollo.core.enums;
+
+/**
+ * How the configurations are synced to the client
+ */
+public enum ConfigSyncType {
+  /**
+   * all the configurations are returned
+   */
+  FULL_SYNC("FullSync"),
+  /**
+   * only the changes relative to the release the client holds are returned
+   */
+  INCREMENTAL_SYNC("IncrementalSync");
+
+  private final String value;
+
+  ConfigSyncType(String value) {
+    this.value = value;
+  }
+
+  public String getValue() {
+    return value;
+  }
+}
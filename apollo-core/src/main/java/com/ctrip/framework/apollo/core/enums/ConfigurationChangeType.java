@@ -0,0 +1,8 @@
+package com.ctrip.framework.apollo.core.enums;
+
+/**
+ * The change type of a configuration in incremental sync
+ */
+public enum ConfigurationChangeType {
+  ADDED, MODIFIED, DELETED
+}
@@ -4,6 +4,8 @@ import com.google.common.io.BaseEncoding;
 import java.io.UnsupportedEncodingException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -14,18 +16,43 @@ public class HmacSha1Utils {
 
   private static final String ALGORITHM_NAME = "HmacSHA1";
   private static final String ENCODING = "UTF-8";
+  private static final int MAX_MACS_PER_THREAD = 16;
+
+  //secret -> the mac initialized with the secret, so that the key is not prepared again for each signature
+  private static final ThreadLocal<Map<String, Mac>> MACS = new ThreadLocal<Map<String, Mac>>() {
+    @Override
+    protected Map<String, Mac> initialValue() {
+      return new LinkedHashMap<String, Mac>(MAX_MACS_PER_THREAD, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Mac> eldest) {
+          return size() > MAX_MACS_PER_THREAD;
+        }
+      };
+    }
+  };
 
   public static String signString(String stringToSign, String accessKeySecret) {
     try {
-      Mac mac = Mac.getInstance(ALGORITHM_NAME);
+      //doFinal resets the mac with the same key, so it could be reused afterwards
+      byte[] signData = getMac(accessKeySecret).doFinal(stringToSign.getBytes(ENCODING));
+      return BaseEncoding.base64().encode(signData);
+    } catch (NoSuchAlgorithmException | UnsupportedEncodingException | InvalidKeyException e) {
+      throw new IllegalArgumentException(e.toString());
+    }
+  }
+
+  private static Mac getMac(String accessKeySecret)
+      throws NoSuchAlgorithmException, UnsupportedEncodingException, InvalidKeyException {
+    Map<String, Mac> macs = MACS.get();
+    Mac mac = macs.get(accessKeySecret);
+    if (mac == null) {
+      mac = Mac.getInstance(ALGORITHM_NAME);
       mac.init(new SecretKeySpec(
           accessKeySecret.getBytes(ENCODING),
           ALGORITHM_NAME
       ));
-      byte[] signData = mac.doFinal(stringToSign.getBytes(ENCODING));
-      return BaseEncoding.base64().encode(signData);
-    } catch (NoSuchAlgorithmException | UnsupportedEncodingException | InvalidKeyException e) {
-      throw new IllegalArgumentException(e.toString());
+      macs.put(accessKeySecret, mac);
     }
+    return mac;
   }
 }